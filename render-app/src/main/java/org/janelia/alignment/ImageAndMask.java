@@ -150,7 +150,12 @@ public class ImageAndMask implements Serializable {
         if ((scheme == null) || FILE_SCHEME.equals(scheme)) {
             final File file;
             try {
-                file = new File(uri);
+                if (uri.getFragment() == null) {
+                    file = new File(uri);
+                } else {
+                    // fragments identify levels within mipmap containers, so validate the container file
+                    file = new File(new URI(scheme, uri.getSchemeSpecificPart(), null));
+                }
             } catch (final Exception e) {
                 throw new IllegalArgumentException("failed to convert '" + uri + "' to a file reference", e);
             }
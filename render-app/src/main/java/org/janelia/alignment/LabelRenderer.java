@@ -16,14 +16,31 @@
  */
 package org.janelia.alignment;
 
+import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferUShort;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
+import mpicbg.models.AffineModel2D;
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
 import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+import mpicbg.trakem2.util.Pair;
 
+import org.janelia.alignment.mapper.LabelMapper;
+import org.janelia.alignment.mipmap.RenderedCanvasMipmapSource;
+import org.janelia.alignment.spec.ChannelSpec;
+import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.util.LabelImageProcessorCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Render a set of image tiles as a short (16-bit) label image.
@@ -54,6 +71,170 @@ public class LabelRenderer {
         Renderer.renderToBufferedImage(renderParameters, targetImage, labelImageProcessorCache, CONVERTER);
     }
 
+    /**
+     * Renders labels directly into the specified 16-bit target image.
+     *
+     * Instead of rendering each tile's label pixels into a float canvas and then converting the canvas,
+     * each tile's label is written straight into the target's short pixel array with {@link LabelMapper}.
+     * Masks are sampled with nearest neighbor lookups and no interpolation is ever applied,
+     * so every rendered pixel is either an exact tile label or empty (white for DMG).
+     *
+     * @param  renderParameters          specifies what to render.
+     * @param  targetImage               target for rendered result (must be TYPE_USHORT_GRAY).
+     * @param  labelImageProcessorCache  cache of source tile labels and masks.
+     *
+     * @throws IllegalArgumentException
+     *   if rendering fails for any reason.
+     */
+    public static void renderDirect(final RenderParameters renderParameters,
+                                    final BufferedImage targetImage,
+                                    final LabelImageProcessorCache labelImageProcessorCache)
+            throws IllegalArgumentException {
+
+        if (targetImage.getType() != BufferedImage.TYPE_USHORT_GRAY) {
+            throw new IllegalArgumentException("label target image must be TYPE_USHORT_GRAY");
+        }
+
+        final long renderStart = System.currentTimeMillis();
+
+        final short[] targetPixels = ((DataBufferUShort) targetImage.getRaster().getDataBuffer()).getData();
+        final LabelMapper labelMapper = new LabelMapper(targetPixels, targetImage.getWidth(), targetImage.getHeight());
+
+        final int numberOfTileSpecs = renderParameters.numberOfTileSpecs();
+        if (numberOfTileSpecs > 0) {
+            // map black to white for DMG
+            Arrays.fill(targetPixels, (short) LabelImageProcessorCache.MAX_LABEL_INTENSITY);
+        }
+
+        for (final TileSpec tileSpec : renderParameters.getTileSpecs()) {
+            mapTileLabel(renderParameters, tileSpec, labelImageProcessorCache, labelMapper);
+        }
+
+        LOG.debug("renderDirect: exit, {} tiles processed in {} milliseconds",
+                  numberOfTileSpecs, System.currentTimeMillis() - renderStart);
+    }
+
+    /**
+     * Maps the specified tile's label into the target using the same mesh (and source mipmap level)
+     * the standard rendering path would use.
+     */
+    private static void mapTileLabel(final RenderParameters renderParameters,
+                                     final TileSpec tileSpec,
+                                     final LabelImageProcessorCache labelImageProcessorCache,
+                                     final LabelMapper labelMapper) {
+
+        final List<ChannelSpec> channelSpecs = tileSpec.getChannels(renderParameters.getChannelNames());
+
+        if (channelSpecs.size() > 0) {
+
+            final double levelZeroScale = renderParameters.getScale();
+            final double meshCellSize = renderParameters.getRes(levelZeroScale);
+
+            final CoordinateTransformList<CoordinateTransform> renderTransformList =
+                    RenderedCanvasMipmapSource.addRenderScaleAndOffset(tileSpec.getTransforms().getNewInstanceAsList(),
+                                                                       levelZeroScale,
+                                                                       levelZeroScale,
+                                                                       renderParameters.getX(),
+                                                                       renderParameters.getY());
+
+            final double averageScale = Utils.sampleAverageScale(renderTransformList,
+                                                                 tileSpec.getWidth(),
+                                                                 tileSpec.getHeight(),
+                                                                 meshCellSize);
+            final int mipmapLevel = Utils.bestMipmapLevel(averageScale);
+            final int mipmapWidth = tileSpec.getWidth() >> mipmapLevel;
+            final int mipmapHeight = tileSpec.getHeight() >> mipmapLevel;
+
+            if ((mipmapWidth > 0) && (mipmapHeight > 0)) {
+
+                final ChannelSpec firstChannelSpec = channelSpecs.get(0);
+                final short label =
+                        labelImageProcessorCache.getLabelForUrl(firstChannelSpec.getFloorMipmapEntry(0)
+                                                                        .getValue().getImageUrl());
+
+                final byte[] maskPixels = loadMaskPixels(renderParameters,
+                                                         tileSpec,
+                                                         firstChannelSpec,
+                                                         mipmapLevel,
+                                                         mipmapWidth,
+                                                         mipmapHeight,
+                                                         labelImageProcessorCache);
+
+                final RenderTransformMesh mesh =
+                        RenderedCanvasMipmapSource.createRenderMesh(mipmapLevel,
+                                                                    renderTransformList,
+                                                                    tileSpec.getWidth(),
+                                                                    meshCellSize,
+                                                                    mipmapWidth,
+                                                                    mipmapHeight);
+
+                final List<Pair<AffineModel2D, double[][]>> triangles = mesh.getAV();
+
+                // triangles from the same mesh do not overlap, so they can be filled in parallel
+                IntStream triangleIndexes = IntStream.range(0, triangles.size());
+                if (renderParameters.getNumberOfThreads() > 1) {
+                    triangleIndexes = triangleIndexes.parallel();
+                }
+
+                triangleIndexes.forEach(i -> {
+                    final Pair<AffineModel2D, double[][]> triangle = triangles.get(i);
+                    if (maskPixels == null) {
+                        labelMapper.fillTriangle(triangle.b, label);
+                    } else {
+                        final double[] inverse = new double[6];
+                        triangle.a.createInverse().toArray(inverse);
+                        labelMapper.fillMaskedTriangle(triangle.b, inverse, label,
+                                                       maskPixels, mipmapWidth, mipmapHeight);
+                    }
+                });
+
+            } else {
+                LOG.debug("mapTileLabel: skipping tile '{}' with zero dimension at mipmap level {}",
+                          tileSpec.getTileId(), mipmapLevel);
+            }
+
+        }
+    }
+
+    /**
+     * @return mask pixels for the specified tile at the specified mipmap level or
+     *         null if the tile does not have a (usable) mask.
+     */
+    private static byte[] loadMaskPixels(final RenderParameters renderParameters,
+                                         final TileSpec tileSpec,
+                                         final ChannelSpec channelSpec,
+                                         final int mipmapLevel,
+                                         final int mipmapWidth,
+                                         final int mipmapHeight,
+                                         final LabelImageProcessorCache labelImageProcessorCache) {
+
+        byte[] maskPixels = null;
+
+        final Map.Entry<Integer, ImageAndMask> mipmapEntry = channelSpec.getFloorMipmapEntry(mipmapLevel);
+        final String maskUrl = mipmapEntry.getValue().getMaskUrl();
+
+        if ((maskUrl != null) && (! renderParameters.excludeMask())) {
+
+            final int downSampleLevels = Math.max(0, mipmapLevel - mipmapEntry.getKey());
+            final ImageProcessor maskProcessor = labelImageProcessorCache.get(maskUrl, downSampleLevels, true, false);
+
+            if ((maskProcessor.getWidth() == mipmapWidth) && (maskProcessor.getHeight() == mipmapHeight)) {
+                if (maskProcessor instanceof ByteProcessor) {
+                    maskPixels = (byte[]) maskProcessor.getPixels();
+                } else {
+                    maskPixels = (byte[]) maskProcessor.convertToByteProcessor(false).getPixels();
+                }
+            } else {
+                LOG.warn("loadMaskPixels: ignoring tile '{}' mask {} because its size ({}x{}) differs from the " +
+                         "level {} label size ({}x{})",
+                         tileSpec.getTileId(), maskUrl, maskProcessor.getWidth(), maskProcessor.getHeight(),
+                         mipmapLevel, mipmapWidth, mipmapHeight);
+            }
+        }
+
+        return maskPixels;
+    }
+
     /**
      * Converts the processor to a short (16-bit) label image.
      *
@@ -93,6 +274,8 @@ public class LabelRenderer {
         return image;
     }
 
+    private static final Logger LOG = LoggerFactory.getLogger(LabelRenderer.class);
+
     private static final Renderer.ProcessorWithMasksConverter CONVERTER =
             (renderParameters, renderedImageProcessorWithMasks) -> targetToLabelImage(renderedImageProcessorWithMasks);
 }
@@ -14,10 +14,20 @@ import java.math.BigInteger;
 import java.net.URI;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -26,6 +36,7 @@ import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import mpicbg.trakem2.util.Downsampler;
 
+import org.janelia.alignment.mipmap.MipmapContainer;
 import org.janelia.alignment.spec.ChannelSpec;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.util.ImageProcessorCache;
@@ -76,7 +87,9 @@ public class MipmapGenerator {
                 final MipmapGenerator mipmapGenerator = new MipmapGenerator(params.getRootDirectory(),
                                                                             params.getFormat(),
                                                                             params.getQuality(),
-                                                                            params.consolidateMasks());
+                                                                            params.consolidateMasks(),
+                                                                            params.cascade(),
+                                                                            params.container());
 
                 final int mipmapLevel = params.getMipmapLevel();
                 final boolean forceBoxCalculation =  params.forceBoxCalculation();
@@ -131,6 +144,8 @@ public class MipmapGenerator {
     private final String format;
     private final float jpegQuality;
     private final boolean consolidateMasks;
+    private final boolean cascade;
+    private final boolean container;
     private MessageDigest messageDigest;
     private Map<String, File> sourceDigestToMaskMipmapBaseFileMap;
 
@@ -146,10 +161,39 @@ public class MipmapGenerator {
                            final String format,
                            final float jpegQuality,
                            final boolean consolidateMasks) {
+        this(rootDirectory, format, jpegQuality, consolidateMasks, false, false);
+    }
+
+    /**
+     * Constructs a generator for use with a specific base path.
+     *
+     * @param  rootDirectory     the root directory for all generated mipmap files.
+     * @param  format            the format for all generated mipmap files.
+     * @param  jpegQuality       the jpg quality factor (0.0 to 1.0) which is only used when generating jpg mipmaps.
+     * @param  consolidateMasks  if true, consolidate equivalent zipped TrakEM2 mask files.
+     * @param  cascade           if true, decode each level zero source once and derive all other levels in memory
+     *                           (instead of decoding each generated level to produce the next one).
+     * @param  container         if true, store all generated levels (and masks) of each tile in one
+     *                           {@link MipmapContainer} file instead of in separate level files
+     *                           (levels are always cascaded when this is true).
+     */
+    public MipmapGenerator(final File rootDirectory,
+                           final String format,
+                           final float jpegQuality,
+                           final boolean consolidateMasks,
+                           final boolean cascade,
+                           final boolean container) {
+
+        if (consolidateMasks && container) {
+            throw new IllegalArgumentException("masks cannot be consolidated when levels are stored in containers");
+        }
+
         this.rootDirectory = rootDirectory;
         this.format = format;
         this.jpegQuality = jpegQuality;
         this.consolidateMasks = consolidateMasks;
+        this.cascade = cascade;
+        this.container = container;
 
         if (consolidateMasks) {
             try {
@@ -207,26 +251,45 @@ public class MipmapGenerator {
 
             }
 
-            File imageMipmapFile;
-            File maskMipmapFile;
-            for (int mipmapLevel = 1; mipmapLevel <= greatestMipmapLevel; mipmapLevel++) {
-                if (! channelSpec.hasMipmap(mipmapLevel)) {
-                    imageMipmapFile = getMipmapFile(imageMipmapBaseFile, mipmapLevel);
-                    generateMipmapFile(imageAndMask.getImageUrl(), imageMipmapFile, 1);
+            if (container) {
 
-                    if (hasMask) {
-                        maskMipmapFile = getMipmapFile(maskMipmapBaseFile, mipmapLevel);
-                        generateMipmapFile(imageAndMask.getMaskUrl(), maskMipmapFile, 1);
-                    } else {
-                        maskMipmapFile = null;
-                    }
+                generateMipmapContainer(channelSpec,
+                                        imageAndMask,
+                                        imageMipmapBaseFile,
+                                        greatestMipmapLevel);
+
+            } else if (cascade) {
+
+                generateCascadedMipmapFiles(channelSpec,
+                                            imageAndMask,
+                                            imageMipmapBaseFile,
+                                            maskMipmapBaseFile,
+                                            greatestMipmapLevel);
+
+            } else {
 
-                    imageAndMask = new ImageAndMask(imageMipmapFile, maskMipmapFile);
-                    channelSpec.putMipmap(mipmapLevel, imageAndMask);
+                File imageMipmapFile;
+                File maskMipmapFile;
+                for (int mipmapLevel = 1; mipmapLevel <= greatestMipmapLevel; mipmapLevel++) {
+                    if (! channelSpec.hasMipmap(mipmapLevel)) {
+                        imageMipmapFile = getMipmapFile(imageMipmapBaseFile, mipmapLevel);
+                        generateMipmapFile(imageAndMask.getImageUrl(), imageMipmapFile, 1);
 
-                } else {
-                    imageAndMask = channelSpec.getMipmap(mipmapLevel);
+                        if (hasMask) {
+                            maskMipmapFile = getMipmapFile(maskMipmapBaseFile, mipmapLevel);
+                            generateMipmapFile(imageAndMask.getMaskUrl(), maskMipmapFile, 1);
+                        } else {
+                            maskMipmapFile = null;
+                        }
+
+                        imageAndMask = new ImageAndMask(imageMipmapFile, maskMipmapFile);
+                        channelSpec.putMipmap(mipmapLevel, imageAndMask);
+
+                    } else {
+                        imageAndMask = channelSpec.getMipmap(mipmapLevel);
+                    }
                 }
+
             }
         }
     }
@@ -302,6 +365,238 @@ public class MipmapGenerator {
         }
     }
 
+    /**
+     * Decodes the level zero image (and mask) once and derives each missing level by down-sampling
+     * the previous in-memory level.  Derived levels are encoded and written concurrently, but all writes
+     * are complete before this method returns so that consolidated masks are never generated twice.
+     */
+    private void generateCascadedMipmapFiles(final ChannelSpec channelSpec,
+                                             final ImageAndMask levelZeroImageAndMask,
+                                             final File imageMipmapBaseFile,
+                                             final File maskMipmapBaseFile,
+                                             final int greatestMipmapLevel)
+            throws IllegalArgumentException, IOException {
+
+        final boolean hasMask = levelZeroImageAndMask.hasMask();
+
+        final Set<Integer> missingLevels = new HashSet<>();
+        for (int mipmapLevel = 1; mipmapLevel <= greatestMipmapLevel; mipmapLevel++) {
+            if (! channelSpec.hasMipmap(mipmapLevel)) {
+                missingLevels.add(mipmapLevel);
+            }
+        }
+
+        final List<Future<Void>> writeFutures = new ArrayList<>();
+        try {
+            submitCascadedWrites(levelZeroImageAndMask.getImageUrl(),
+                                 imageMipmapBaseFile,
+                                 missingLevels,
+                                 writeFutures);
+            if (hasMask) {
+                submitCascadedWrites(levelZeroImageAndMask.getMaskUrl(),
+                                     maskMipmapBaseFile,
+                                     missingLevels,
+                                     writeFutures);
+            }
+        } finally {
+            waitForWrites(writeFutures);
+        }
+
+        File maskMipmapFile = null;
+        for (final Integer mipmapLevel : missingLevels) {
+            if (hasMask) {
+                maskMipmapFile = getMipmapFile(maskMipmapBaseFile, mipmapLevel);
+            }
+            channelSpec.putMipmap(mipmapLevel,
+                                  new ImageAndMask(getMipmapFile(imageMipmapBaseFile, mipmapLevel), maskMipmapFile));
+        }
+    }
+
+    /**
+     * Submits write tasks for all missing level files of the specified source.
+     * The source is only decoded if at least one of those files does not exist.
+     */
+    private void submitCascadedWrites(final String levelZeroSourceUrl,
+                                      final File mipmapBaseFile,
+                                      final Set<Integer> missingLevels,
+                                      final List<Future<Void>> writeFutures)
+            throws IllegalArgumentException {
+
+        int greatestLevelToWrite = 0;
+        for (final Integer mipmapLevel : missingLevels) {
+            if (! getMipmapFile(mipmapBaseFile, mipmapLevel).exists()) {
+                greatestLevelToWrite = Math.max(greatestLevelToWrite, mipmapLevel);
+            }
+        }
+
+        if (greatestLevelToWrite > 0) {
+
+            final ImagePlus sourceImagePlus = Utils.openImagePlusUrl(levelZeroSourceUrl);
+            if (sourceImagePlus == null) {
+                throw new IllegalArgumentException("failed to load '" + levelZeroSourceUrl + "' for scaling");
+            }
+
+            ImageProcessor levelProcessor = sourceImagePlus.getProcessor();
+            for (int mipmapLevel = 1; mipmapLevel <= greatestLevelToWrite; mipmapLevel++) {
+
+                levelProcessor = Downsampler.downsampleImageProcessor(levelProcessor, 1);
+
+                final File mipmapFile = getMipmapFile(mipmapBaseFile, mipmapLevel);
+                if (missingLevels.contains(mipmapLevel) && (! mipmapFile.exists())) {
+                    // convert on this thread so that the processor is never shared with writer threads
+                    final BufferedImage levelImage = levelProcessor.getBufferedImage();
+                    writeFutures.add(LEVEL_WRITER_EXECUTOR.submit(() -> {
+                        writeMipmapFile(levelImage, mipmapFile);
+                        return null;
+                    }));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the level zero image (and mask) once, derives each missing level in memory, and stores
+     * all of those levels in the tile's container file.  An existing container is reused if it already
+     * holds all missing levels, otherwise it is replaced by a container that holds the missing levels
+     * along with every level that was already stored (and may be referenced by existing tile specs).
+     */
+    private void generateMipmapContainer(final ChannelSpec channelSpec,
+                                         final ImageAndMask levelZeroImageAndMask,
+                                         final File imageMipmapBaseFile,
+                                         final int greatestMipmapLevel)
+            throws IllegalArgumentException, IOException {
+
+        final boolean hasMask = levelZeroImageAndMask.hasMask();
+        final File containerFile = MipmapContainer.getContainerFile(imageMipmapBaseFile);
+
+        final Set<Integer> missingLevels = new HashSet<>();
+        for (int mipmapLevel = 1; mipmapLevel <= greatestMipmapLevel; mipmapLevel++) {
+            if (! channelSpec.hasMipmap(mipmapLevel)) {
+                missingLevels.add(mipmapLevel);
+            }
+        }
+
+        if (missingLevels.size() > 0) {
+
+            boolean isContainerComplete = false;
+            if (containerFile.exists()) {
+                final Set<String> storedLevelNames = MipmapContainer.readLevelNames(containerFile);
+                isContainerComplete = true;
+                for (final Integer mipmapLevel : missingLevels) {
+                    isContainerComplete = isContainerComplete &&
+                                          storedLevelNames.contains(MipmapContainer.getLevelName(mipmapLevel, false)) &&
+                                          ((! hasMask) ||
+                                           storedLevelNames.contains(MipmapContainer.getLevelName(mipmapLevel, true)));
+                }
+            }
+
+            if (! isContainerComplete) {
+
+                final MipmapContainer.Writer containerWriter = new MipmapContainer.Writer(format, jpegQuality);
+                final List<Future<Void>> encodeFutures = new ArrayList<>();
+                try {
+                    submitContainerEncodes(levelZeroImageAndMask.getImageUrl(),
+                                           false,
+                                           missingLevels,
+                                           containerWriter,
+                                           encodeFutures);
+                    if (hasMask) {
+                        submitContainerEncodes(levelZeroImageAndMask.getMaskUrl(),
+                                               true,
+                                               missingLevels,
+                                               containerWriter,
+                                               encodeFutures);
+                    }
+                } finally {
+                    waitForWrites(encodeFutures);
+                }
+
+                if (containerFile.exists()) {
+                    containerWriter.addLevels(containerFile);
+                }
+
+                containerWriter.write(containerFile);
+            }
+        }
+
+        String maskLevelUrl = null;
+        for (final Integer mipmapLevel : missingLevels) {
+            if (hasMask) {
+                maskLevelUrl = MipmapContainer.getLevelUrl(containerFile, mipmapLevel, true);
+            }
+            channelSpec.putMipmap(mipmapLevel,
+                                  new ImageAndMask(MipmapContainer.getLevelUrl(containerFile, mipmapLevel, false),
+                                                   maskLevelUrl));
+        }
+    }
+
+    /**
+     * Decodes the specified source and submits encode tasks that add each missing level to the container.
+     */
+    private void submitContainerEncodes(final String levelZeroSourceUrl,
+                                        final boolean isMask,
+                                        final Set<Integer> missingLevels,
+                                        final MipmapContainer.Writer containerWriter,
+                                        final List<Future<Void>> encodeFutures)
+            throws IllegalArgumentException {
+
+        final ImagePlus sourceImagePlus = Utils.openImagePlusUrl(levelZeroSourceUrl);
+        if (sourceImagePlus == null) {
+            throw new IllegalArgumentException("failed to load '" + levelZeroSourceUrl + "' for scaling");
+        }
+
+        final int greatestMissingLevel = Collections.max(missingLevels);
+
+        ImageProcessor levelProcessor = sourceImagePlus.getProcessor();
+        for (int mipmapLevel = 1; mipmapLevel <= greatestMissingLevel; mipmapLevel++) {
+
+            levelProcessor = Downsampler.downsampleImageProcessor(levelProcessor, 1);
+
+            if (missingLevels.contains(mipmapLevel)) {
+                // convert on this thread so that the processor is never shared with writer threads
+                final BufferedImage levelImage = levelProcessor.getBufferedImage();
+                final int level = mipmapLevel;
+                encodeFutures.add(LEVEL_WRITER_EXECUTOR.submit(() -> {
+                    containerWriter.addLevel(level, isMask, levelImage);
+                    return null;
+                }));
+            }
+        }
+    }
+
+    private void writeMipmapFile(final BufferedImage image,
+                                 final File targetMipmapFile)
+            throws IOException {
+        try (final FileOutputStream outputStream = new FileOutputStream(targetMipmapFile)) {
+            final ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream);
+            Utils.writeImage(image, format, false, jpegQuality, imageOutputStream);
+        }
+    }
+
+    private static void waitForWrites(final List<Future<Void>> writeFutures)
+            throws IOException {
+
+        IOException failure = null;
+        for (final Future<Void> future : writeFutures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new IOException("interrupted while waiting for mipmap files to be written", e);
+                }
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = new IOException("failed to write mipmap file", e.getCause());
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     private String getDigest(final File file)
             throws IOException {
 
@@ -425,4 +720,15 @@ public class MipmapGenerator {
 
     private static final Logger LOG = LoggerFactory.getLogger(MipmapGenerator.class);
 
+    /** Small shared pool for encoding and writing cascaded levels (threads are daemons, so no shutdown is needed). */
+    private static final ExecutorService LEVEL_WRITER_EXECUTOR = Executors.newFixedThreadPool(4, new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "mipmap-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
 }
@@ -64,6 +64,12 @@ public class MipmapGeneratorParameters {
     @Parameter(names = "--force_box", description = "Force calculation of tile bounding box attributes", required = false)
     private final boolean forceBoxCalculation;
 
+    @Parameter(names = "--cascade", description = "Decode each level zero source once and derive all other levels in memory", required = false)
+    private final boolean cascade;
+
+    @Parameter(names = "--container", description = "Store all generated levels (and masks) of each tile in one container file", required = false)
+    private final boolean container;
+
     /** List of tile specifications parsed from --url or deserialized directly from json. */
     private List<TileSpec> tileSpecs;
 
@@ -90,6 +96,8 @@ public class MipmapGeneratorParameters {
         this.outputFileName = null;
         this.consolidateMasks = false;
         this.forceBoxCalculation = false;
+        this.cascade = false;
+        this.container = false;
 
         this.tileSpecs = new ArrayList<>();
         this.transformIdToSpecMap = new HashMap<>();
@@ -235,6 +243,14 @@ public class MipmapGeneratorParameters {
         return consolidateMasks;
     }
 
+    public boolean cascade() {
+        return cascade;
+    }
+
+    public boolean container() {
+        return container;
+    }
+
     public boolean forceBoxCalculation() {
         return forceBoxCalculation;
     }
@@ -291,6 +307,10 @@ public class MipmapGeneratorParameters {
             throw new IllegalArgumentException("quality (" + quality + ") should be between 0.0 and 1.0");
         }
 
+        if (consolidateMasks && container) {
+            throw new IllegalArgumentException("masks cannot be consolidated when levels are stored in containers");
+        }
+
         final File outputFile = getOutputFile();
         if (outputFile.exists()) {
             if (! rootDirectory.canWrite()) {
@@ -327,6 +347,8 @@ public class MipmapGeneratorParameters {
                ", url='" + url + '\'' +
                ", outputFileName='" + outputFileName + '\'' +
                ", consolidateMasks=" + consolidateMasks +
+               ", cascade=" + cascade +
+               ", container=" + container +
                ", numberOfTileSpecs=" + numberOfTileSpecs() +
                ", initialized=" + initialized +
                '}';
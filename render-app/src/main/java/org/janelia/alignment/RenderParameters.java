@@ -441,6 +441,41 @@ public class RenderParameters implements Serializable {
 
     }
 
+    /**
+     * @return new parameters for rendering the specified box with the same options as these parameters
+     *         (e.g. intensity range, filters, channels, and mipmap path builder).
+     *         Tile specs are not copied, so the returned parameters initially have no tile specs.
+     */
+    public RenderParameters copyOptionsForBox(final double x,
+                                              final double y,
+                                              final int width,
+                                              final int height,
+                                              final Double scale) {
+
+        final RenderParameters copy = new RenderParameters(null, x, y, width, height, scale);
+
+        copy.meshCellSize = meshCellSize;
+        copy.minMeshCellSize = minMeshCellSize;
+        copy.areaOffset = areaOffset;
+        copy.minIntensity = minIntensity;
+        copy.maxIntensity = maxIntensity;
+        copy.convertToGray = convertToGray;
+        copy.quality = quality;
+        copy.numberOfThreads = numberOfThreads;
+        copy.skipInterpolation = skipInterpolation;
+        copy.binaryMask = binaryMask;
+        copy.excludeMask = excludeMask;
+        copy.doFilter = doFilter;
+        copy.addWarpFieldDebugOverlay = addWarpFieldDebugOverlay;
+        copy.backgroundRGBColor = backgroundRGBColor;
+        copy.fillWithNoise = fillWithNoise;
+        copy.channels = channels;
+        copy.mipmapPathBuilder = mipmapPathBuilder;
+        copy.setFilterSpecs(filterSpecs);
+
+        return copy;
+    }
+
     /**
      * Initialize derived parameter values.
      */
@@ -34,6 +34,7 @@ import javax.imageio.ImageWriter;
 import javax.imageio.stream.FileImageOutputStream;
 import javax.imageio.stream.ImageOutputStream;
 
+import org.janelia.alignment.mipmap.MipmapContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -216,8 +217,14 @@ public class Utils {
      * Open an ImagePlus from a URL
      */
     public static ImagePlus openImagePlusUrl(final String urlString) {
-        final Opener opener = new Opener();
-        return opener.openURL(urlString);
+        final ImagePlus imagePlus;
+        if (MipmapContainer.isLevelUrl(urlString)) {
+            imagePlus = MipmapContainer.openLevel(urlString);
+        } else {
+            final Opener opener = new Opener();
+            imagePlus = opener.openURL(urlString);
+        }
+        return imagePlus;
     }
 
 //    /**
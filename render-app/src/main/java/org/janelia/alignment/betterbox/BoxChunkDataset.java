@@ -0,0 +1,439 @@
+package org.janelia.alignment.betterbox;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores a box pyramid as a chunked multiscale array dataset (in N5 format) instead of as individual image files.
+ *
+ * Each mipmap level is stored as a separate 3D dataset (s0, s1, ...) with one chunk (N5 block) per box:
+ * <pre>
+ *         [root directory]/s[level]/[column]/[row]/[z]
+ * </pre>
+ *
+ * Chunks at the right and bottom edges of a level are cropped to the level dimensions.
+ * Since box rows, columns, and layer z values are used directly as chunk grid positions,
+ * stacks with negative bounds and layers with non-integral z values are not supported.
+ * Non-label boxes are stored as 8-bit gray (uint8) and label boxes are stored as 16-bit (uint16) data.
+ *
+ * Chunk existence is tracked in a manifest (separate from the chunks themselves) so that
+ * restarted runs can identify completed boxes without checking for each chunk file.
+ * Each render process appends manifest fragments for the boxes it has completed:
+ * <pre>
+ *         [root directory]/manifest/s[level]/[z]/[unique id].txt
+ * </pre>
+ *
+ * @author Eric Trautman
+ */
+public class BoxChunkDataset
+        implements Serializable {
+
+    public static final String GZIP_COMPRESSION = "gzip";
+    public static final String RAW_COMPRESSION = "raw";
+
+    private final String rootPath;
+    private final int boxWidth;
+    private final int boxHeight;
+    private final boolean isLabel;
+    private final String compression;
+    private final long levelZeroWidth;
+    private final long levelZeroHeight;
+    private final long depth;
+
+    /**
+     * Base constructor.
+     *
+     * @param  rootPath     root directory for the dataset (e.g. [stack directory]/[tile width]x[tile height].n5).
+     * @param  boxWidth     width of each box (chunk).
+     * @param  boxHeight    height of each box (chunk).
+     * @param  isLabel      indicates whether boxes contain 16-bit labels.
+     * @param  compression  chunk compression ({@link #GZIP_COMPRESSION} or {@link #RAW_COMPRESSION}).
+     * @param  stackBounds  bounds for the stack being rendered.
+     *
+     * @throws IllegalArgumentException
+     *   if the compression type is not supported or the stack bounds include negative coordinates.
+     */
+    public BoxChunkDataset(final String rootPath,
+                           final int boxWidth,
+                           final int boxHeight,
+                           final boolean isLabel,
+                           final String compression,
+                           final Bounds stackBounds)
+            throws IllegalArgumentException {
+
+        if (! (GZIP_COMPRESSION.equals(compression) || RAW_COMPRESSION.equals(compression))) {
+            throw new IllegalArgumentException("unsupported chunk compression '" + compression +
+                                               "', valid values are " + GZIP_COMPRESSION + " or " + RAW_COMPRESSION);
+        }
+
+        if ((stackBounds.getMinX() < 0) || (stackBounds.getMinY() < 0) || (stackBounds.getMinZ() < 0)) {
+            throw new IllegalArgumentException("stack bounds " + stackBounds + " include negative coordinates " +
+                                               "that cannot be mapped to chunk positions");
+        }
+
+        this.rootPath = rootPath;
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
+        this.isLabel = isLabel;
+        this.compression = compression;
+        this.levelZeroWidth = (long) Math.ceil(stackBounds.getMaxX());
+        this.levelZeroHeight = (long) Math.ceil(stackBounds.getMaxY());
+        this.depth = stackBounds.getMaxZ().longValue() + 1;
+    }
+
+    public String getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * @return dataset name for the specified level (e.g. s2).
+     */
+    public static String getDatasetName(final int level) {
+        return "s" + level;
+    }
+
+    /**
+     * @return [width, height, depth] of the dataset for the specified level.
+     */
+    public long[] getDimensions(final int level) {
+        final long scaleFactor = 1L << level;
+        return new long[] {
+                (levelZeroWidth + scaleFactor - 1) / scaleFactor,
+                (levelZeroHeight + scaleFactor - 1) / scaleFactor,
+                depth
+        };
+    }
+
+    /**
+     * Writes group and dataset attributes for levels 0 through maxLevel.
+     * Existing attributes are replaced.
+     *
+     * @throws IOException
+     *   if the attributes cannot be written.
+     */
+    public void writeAttributes(final int maxLevel)
+            throws IOException {
+
+        final List<int[]> scales = new ArrayList<>();
+
+        for (int level = 0; level <= maxLevel; level++) {
+
+            final int scaleFactor = 1 << level;
+            final int[] downsamplingFactors = { scaleFactor, scaleFactor, 1 };
+            scales.add(downsamplingFactors);
+
+            final Map<String, Object> compressionAttributes = new LinkedHashMap<>();
+            compressionAttributes.put("type", compression);
+            if (GZIP_COMPRESSION.equals(compression)) {
+                compressionAttributes.put("level", -1);
+                compressionAttributes.put("useZlib", false);
+            }
+
+            final Map<String, Object> datasetAttributes = new LinkedHashMap<>();
+            datasetAttributes.put("dimensions", getDimensions(level));
+            datasetAttributes.put("blockSize", new int[] { boxWidth, boxHeight, 1 });
+            datasetAttributes.put("dataType", isLabel ? "uint16" : "uint8");
+            datasetAttributes.put("compression", compressionAttributes);
+            datasetAttributes.put("downsamplingFactors", downsamplingFactors);
+
+            writeJson(new File(rootPath, getDatasetName(level)), datasetAttributes);
+        }
+
+        final Map<String, Object> rootAttributes = new LinkedHashMap<>();
+        rootAttributes.put("n5", N5_VERSION);
+        rootAttributes.put("scales", scales);
+
+        writeJson(new File(rootPath), rootAttributes);
+    }
+
+    /**
+     * @return the chunk (dataset) z position for the specified layer.
+     *
+     * @throws IllegalArgumentException
+     *   if the layer z value is negative or not an integer.
+     */
+    public static long getZIndex(final double z)
+            throws IllegalArgumentException {
+        if ((z < 0) || (z != Math.rint(z))) {
+            throw new IllegalArgumentException("layer z value " + z + " cannot be stored in a chunked dataset " +
+                                               "because it is not a non-negative integer");
+        }
+        return (long) z;
+    }
+
+    /**
+     * @return the chunk file for the specified box.
+     *
+     * @throws IllegalArgumentException
+     *   if the box's z value cannot be mapped to a chunk position.
+     */
+    public File getChunkFile(final BoxData boxData)
+            throws IllegalArgumentException {
+        return new File(rootPath,
+                        getDatasetName(boxData.getLevel()) + File.separatorChar +
+                        boxData.getColumn() + File.separatorChar +
+                        boxData.getRow() + File.separatorChar +
+                        getZIndex(boxData.getZ()));
+    }
+
+    /**
+     * Writes the specified box image as a chunk, replacing any existing chunk for the box.
+     * Images are converted to the dataset data type if necessary.
+     *
+     * @throws IOException
+     *   if the chunk cannot be written.
+     */
+    public void writeChunk(final BoxData boxData,
+                           final BufferedImage image)
+            throws IOException {
+
+        final int[] chunkSize = getChunkSize(boxData);
+        final int chunkWidth = chunkSize[0];
+        final int chunkHeight = chunkSize[1];
+
+        final BufferedImage chunkImage = convertImage(image);
+
+        final File chunkFile = getChunkFile(boxData);
+        FileUtil.ensureWritableDirectory(chunkFile.getParentFile());
+
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(chunkFile)))) {
+
+            out.writeShort(DEFAULT_BLOCK_MODE);
+            out.writeShort(3);
+            out.writeInt(chunkWidth);
+            out.writeInt(chunkHeight);
+            out.writeInt(1);
+
+            out.flush();
+
+            try (final DataOutputStream dataOut = new DataOutputStream(getCompressedStream(out))) {
+                if (isLabel) {
+                    final short[] pixels = ((DataBufferUShort) chunkImage.getRaster().getDataBuffer()).getData();
+                    for (int y = 0; y < chunkHeight; y++) {
+                        final int rowOffset = y * boxWidth;
+                        for (int x = 0; x < chunkWidth; x++) {
+                            dataOut.writeShort(pixels[rowOffset + x]);
+                        }
+                    }
+                } else {
+                    final byte[] pixels = ((DataBufferByte) chunkImage.getRaster().getDataBuffer()).getData();
+                    for (int y = 0; y < chunkHeight; y++) {
+                        dataOut.write(pixels, y * boxWidth, chunkWidth);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return full box size image with pixels loaded from the specified box's chunk.
+     *
+     * @throws IOException
+     *   if the chunk cannot be read.
+     */
+    public BufferedImage readChunk(final BoxData boxData)
+            throws IOException {
+
+        final File chunkFile = getChunkFile(boxData);
+        final BufferedImage image = new BufferedImage(boxWidth, boxHeight, getImageType());
+
+        try (final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(chunkFile)))) {
+
+            final short mode = in.readShort();
+            final short numberOfDimensions = in.readShort();
+            if ((mode != DEFAULT_BLOCK_MODE) || (numberOfDimensions != 3)) {
+                throw new IOException("unsupported chunk header (mode " + mode + ", " + numberOfDimensions +
+                                      " dimensions) in " + chunkFile.getAbsolutePath());
+            }
+
+            final int chunkWidth = in.readInt();
+            final int chunkHeight = in.readInt();
+            in.readInt(); // depth is always 1
+
+            if ((chunkWidth > boxWidth) || (chunkHeight > boxHeight)) {
+                throw new IOException("chunk size " + chunkWidth + "x" + chunkHeight + " in " +
+                                      chunkFile.getAbsolutePath() + " exceeds box size " + boxWidth + "x" + boxHeight);
+            }
+
+            final DataInputStream dataIn = new DataInputStream(getDecompressedStream(in));
+
+            if (isLabel) {
+                final short[] pixels = ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+                for (int y = 0; y < chunkHeight; y++) {
+                    final int rowOffset = y * boxWidth;
+                    for (int x = 0; x < chunkWidth; x++) {
+                        pixels[rowOffset + x] = dataIn.readShort();
+                    }
+                }
+            } else {
+                final byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                for (int y = 0; y < chunkHeight; y++) {
+                    dataIn.readFully(pixels, y * boxWidth, chunkWidth);
+                }
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * @return key that identifies the specified box within a level manifest.
+     */
+    public static String getManifestKey(final BoxData boxData) {
+        return boxData.getRow() + "," + boxData.getColumn();
+    }
+
+    /**
+     * @return keys (see {@link #getManifestKey}) for all boxes with completed chunks in the specified layer level.
+     *
+     * @throws IOException
+     *   if the manifest cannot be read.
+     */
+    public Set<String> readManifest(final int level,
+                                    final double z)
+            throws IOException {
+
+        final Set<String> keys = new HashSet<>();
+
+        final File[] fragmentFiles = getManifestDirectory(level, z).listFiles(
+                (dir, name) -> name.endsWith(MANIFEST_FRAGMENT_SUFFIX));
+
+        if (fragmentFiles != null) {
+            for (final File fragmentFile : fragmentFiles) {
+                keys.addAll(Files.readAllLines(fragmentFile.toPath(), StandardCharsets.UTF_8));
+            }
+        }
+
+        LOG.info("readManifest: found {} completed chunks for level {} of layer {}", keys.size(), level, z);
+
+        return keys;
+    }
+
+    /**
+     * Records that chunks for the specified boxes (all in the same layer level) are complete.
+     * A new uniquely named manifest fragment is written (atomically) for each call,
+     * so concurrent writers never conflict and readers never see partial fragments.
+     *
+     * @throws IOException
+     *   if the manifest fragment cannot be written.
+     */
+    public void appendManifest(final int level,
+                               final double z,
+                               final Collection<BoxData> completedBoxes)
+            throws IOException {
+
+        if (completedBoxes.size() > 0) {
+
+            final File manifestDirectory = getManifestDirectory(level, z);
+            FileUtil.ensureWritableDirectory(manifestDirectory);
+
+            final List<String> keys = new ArrayList<>(completedBoxes.size());
+            for (final BoxData boxData : completedBoxes) {
+                keys.add(getManifestKey(boxData));
+            }
+
+            final String fragmentName = UUID.randomUUID().toString();
+            final Path tempPath = new File(manifestDirectory, fragmentName + ".tmp").toPath();
+            Files.write(tempPath, keys, StandardCharsets.UTF_8);
+            Files.move(tempPath,
+                       new File(manifestDirectory, fragmentName + MANIFEST_FRAGMENT_SUFFIX).toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+
+    }
+
+    private File getManifestDirectory(final int level,
+                                      final double z) {
+        return new File(rootPath,
+                        "manifest" + File.separatorChar + getDatasetName(level) + File.separatorChar + getZIndex(z));
+    }
+
+    private int[] getChunkSize(final BoxData boxData) {
+        final long[] dimensions = getDimensions(boxData.getLevel());
+        final long chunkWidth = Math.min(boxWidth, dimensions[0] - ((long) boxData.getColumn() * boxWidth));
+        final long chunkHeight = Math.min(boxHeight, dimensions[1] - ((long) boxData.getRow() * boxHeight));
+        if ((chunkWidth < 1) || (chunkHeight < 1)) {
+            throw new IllegalArgumentException("box " + boxData + " is outside of level " + boxData.getLevel() +
+                                               " dimensions " + Arrays.toString(dimensions));
+        }
+        return new int[] { (int) chunkWidth, (int) chunkHeight };
+    }
+
+    private int getImageType() {
+        return isLabel ? BufferedImage.TYPE_USHORT_GRAY : BufferedImage.TYPE_BYTE_GRAY;
+    }
+
+    private BufferedImage convertImage(final BufferedImage image) {
+        final BufferedImage convertedImage;
+        if ((image.getType() == getImageType()) &&
+            (image.getWidth() == boxWidth) && (image.getHeight() == boxHeight)) {
+            convertedImage = image;
+        } else {
+            // same conversion used by Utils.saveImage for gray images
+            convertedImage = new BufferedImage(boxWidth, boxHeight, getImageType());
+            final Graphics2D g2d = convertedImage.createGraphics();
+            g2d.drawImage(image, 0, 0, null);
+            g2d.dispose();
+        }
+        return convertedImage;
+    }
+
+    private OutputStream getCompressedStream(final OutputStream out)
+            throws IOException {
+        return GZIP_COMPRESSION.equals(compression) ? new GZIPOutputStream(out) : out;
+    }
+
+    private InputStream getDecompressedStream(final InputStream in)
+            throws IOException {
+        return GZIP_COMPRESSION.equals(compression) ? new GZIPInputStream(in) : in;
+    }
+
+    private static void writeJson(final File directory,
+                                  final Map<String, Object> attributes)
+            throws IOException {
+        FileUtil.ensureWritableDirectory(directory);
+        JsonUtils.MAPPER.writeValue(new File(directory, "attributes.json"), attributes);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoxChunkDataset.class);
+
+    private static final String N5_VERSION = "2.0.0";
+    private static final short DEFAULT_BLOCK_MODE = 0;
+    private static final String MANIFEST_FRAGMENT_SUFFIX = ".txt";
+}
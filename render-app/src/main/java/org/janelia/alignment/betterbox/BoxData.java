@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.Serializable;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -202,14 +203,39 @@ public class BoxData
     public String getServicePath(final int boxWidth,
                                  final int boxHeight) {
 
-        final double scale = 1.0 / Math.pow(2, level);
+        final int[] fullScaleBox = getFullScaleBox(boxWidth, boxHeight);
+
+        return "/z/" + z + "/box/" + fullScaleBox[0] + ',' + fullScaleBox[1] + ',' +
+               fullScaleBox[2] + ',' + fullScaleBox[3] + ',' + getScale();
+    }
+
+    /**
+     * @return render scale for this box's level (e.g. 0.25 for level 2).
+     */
+    public double getScale() {
+        return 1.0 / Math.pow(2, level);
+    }
+
+    /**
+     * @param  boxWidth   width of all boxes in the mipmap pyramid.
+     * @param  boxHeight  height of all boxes in the mipmap pyramid.
+     *
+     * @return full scale [x, y, width, height] of the area covered by this box
+     *         (the same values used in this box's {@link #getServicePath service path}).
+     */
+    public int[] getFullScaleBox(final int boxWidth,
+                                 final int boxHeight) {
+
+        final double scale = getScale();
         final double fullScaleWidth = boxWidth / scale;
         final double fullScaleHeight = boxHeight / scale;
-        final int x = (int) Math.floor(column * fullScaleWidth);
-        final int y = (int) Math.floor(row * fullScaleHeight);
 
-        return "/z/" + z + "/box/" + x + ',' + y + ',' +
-               (int) Math.ceil(fullScaleWidth) + ',' + (int) Math.ceil(fullScaleHeight) + ',' + scale;
+        return new int[] {
+                (int) Math.floor(column * fullScaleWidth),
+                (int) Math.floor(row * fullScaleHeight),
+                (int) Math.ceil(fullScaleWidth),
+                (int) Math.ceil(fullScaleHeight)
+        };
     }
 
     /**
@@ -324,6 +350,49 @@ public class BoxData
         return result;
     }
 
+    /**
+     * @return position of this box along a Hilbert curve that covers all boxes in the same layer and level.
+     *         Consecutive positions are always adjacent boxes and the children of each parent box
+     *         (any aligned 2x2 group of boxes) always occupy consecutive positions.
+     */
+    public long getHilbertIndex() {
+        long x = column;
+        long y = row;
+        long index = 0;
+        for (long s = HILBERT_GRID_SIZE / 2; s > 0; s /= 2) {
+            final long rx = (x & s) > 0 ? 1 : 0;
+            final long ry = (y & s) > 0 ? 1 : 0;
+            index += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant so that the curve stays continuous
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_GRID_SIZE - 1 - x;
+                    y = HILBERT_GRID_SIZE - 1 - y;
+                }
+                final long swap = x;
+                x = y;
+                y = swap;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sorts boxes by layer, level, and then position along a Hilbert curve (see {@link #getHilbertIndex}).
+     * Like the natural ordering, sibling boxes are kept together but consecutive families are also always
+     * adjacent, so source tiles that span multiple boxes are more likely to be reused by consecutive boxes.
+     */
+    public static final Comparator<BoxData> HILBERT_ORDER_COMPARATOR = (o1, o2) -> {
+        int result = Integer.compare((int) o1.z, (int) o2.z);
+        if (result == 0) {
+            result = Integer.compare(o1.level, o2.level);
+            if (result == 0) {
+                result = Long.compare(o1.getHilbertIndex(), o2.getHilbertIndex());
+            }
+        }
+        return result;
+    };
+
     /**
      * Deserializes the specified string into a box instance.
      *
@@ -376,4 +445,7 @@ public class BoxData
 
     private static final Pattern PATH_PATTERN = Pattern.compile(",");
 
+    /** Hilbert curve grid size (must be a power of 2 that exceeds the maximum row and column). */
+    private static final long HILBERT_GRID_SIZE = 1L << 31;
+
 }
@@ -3,10 +3,12 @@ package org.janelia.alignment.betterbox;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.TileBounds;
@@ -29,12 +31,13 @@ public class BoxDataPyramidForLayer
     final boolean excludeAlreadyRenderedBoxes;
     final String baseBoxPath;
     final String pathSuffix;
+    private final DirtyBoxesForLayer dirtyBoxes;
 
     private final List<BoxData> pyramidList;
     private final List<Integer> levelBoxCounts;
 
     /**
-     * Constructs a pyramid for the specified layer.
+     * Constructs a pyramid for the specified layer with boxes in each level sorted by parent location.
      *
      * @param  z                            layer position.
      * @param  layerBounds                  bounding box for all tiles in the layer.
@@ -56,6 +59,70 @@ public class BoxDataPyramidForLayer
                                   final boolean excludeAlreadyRenderedBoxes,
                                   final String baseBoxPath,
                                   final String pathSuffix) {
+        this(z, layerBounds, boxWidth, boxHeight, tileBoundsList, maxLevel, excludeAlreadyRenderedBoxes,
+             baseBoxPath, pathSuffix, Comparator.naturalOrder());
+    }
+
+    /**
+     * Constructs a pyramid for the specified layer.
+     *
+     * @param  z                            layer position.
+     * @param  layerBounds                  bounding box for all tiles in the layer.
+     * @param  boxWidth                     width of each mipmap box.
+     * @param  boxHeight                    height of each mipmap box.
+     * @param  tileBoundsList               list of bounding boxes for each tile in the layer.
+     * @param  maxLevel                     maximum level to construct.
+     * @param  excludeAlreadyRenderedBoxes  if true, already rendered boxes will be excluded from the pyramid.
+     * @param  baseBoxPath                  base path for all rendered boxes
+     *                                      (e.g. '/nrs/spc/rendered_boxes/spc/aibs_mm2_data/1024x1024').
+     * @param  pathSuffix                   suffix for all rendered boxes (e.g. '.jpg').
+     * @param  boxComparator                ordering for the boxes in each level (and their layer level indexes),
+     *                                      must keep siblings together (e.g. {@link BoxData#HILBERT_ORDER_COMPARATOR}).
+     */
+    public BoxDataPyramidForLayer(final double z,
+                                  final Bounds layerBounds,
+                                  final int boxWidth,
+                                  final int boxHeight,
+                                  final List<TileBounds> tileBoundsList,
+                                  final int maxLevel,
+                                  final boolean excludeAlreadyRenderedBoxes,
+                                  final String baseBoxPath,
+                                  final String pathSuffix,
+                                  final Comparator<BoxData> boxComparator) {
+        this(z, layerBounds, boxWidth, boxHeight, tileBoundsList, maxLevel, excludeAlreadyRenderedBoxes,
+             baseBoxPath, pathSuffix, boxComparator, null);
+    }
+
+    /**
+     * Constructs a pyramid for the specified layer that (optionally) only includes dirty boxes.
+     *
+     * @param  z                            layer position.
+     * @param  layerBounds                  bounding box for all tiles in the layer.
+     * @param  boxWidth                     width of each mipmap box.
+     * @param  boxHeight                    height of each mipmap box.
+     * @param  tileBoundsList               list of bounding boxes for each tile in the layer.
+     * @param  maxLevel                     maximum level to construct.
+     * @param  excludeAlreadyRenderedBoxes  if true, already rendered boxes will be excluded from the pyramid
+     *                                      (ignored when dirty boxes are specified).
+     * @param  baseBoxPath                  base path for all rendered boxes
+     *                                      (e.g. '/nrs/spc/rendered_boxes/spc/aibs_mm2_data/1024x1024').
+     * @param  pathSuffix                   suffix for all rendered boxes (e.g. '.jpg').
+     * @param  boxComparator                ordering for the boxes in each level (and their layer level indexes),
+     *                                      must keep siblings together (e.g. {@link BoxData#HILBERT_ORDER_COMPARATOR}).
+     * @param  dirtyBoxes                   if specified, only these boxes will be included in the pyramid
+     *                                      (or null to include all boxes).
+     */
+    public BoxDataPyramidForLayer(final double z,
+                                  final Bounds layerBounds,
+                                  final int boxWidth,
+                                  final int boxHeight,
+                                  final List<TileBounds> tileBoundsList,
+                                  final int maxLevel,
+                                  final boolean excludeAlreadyRenderedBoxes,
+                                  final String baseBoxPath,
+                                  final String pathSuffix,
+                                  final Comparator<BoxData> boxComparator,
+                                  final DirtyBoxesForLayer dirtyBoxes) {
 
         // calculate row and column 'bounds', making sure starting values are even
         int firstRow = layerBounds.getMinY() > 0 ? (int) (layerBounds.getMinY() / boxHeight) : 0;
@@ -75,6 +142,7 @@ public class BoxDataPyramidForLayer
         this.excludeAlreadyRenderedBoxes = excludeAlreadyRenderedBoxes;
         this.baseBoxPath = baseBoxPath;
         this.pathSuffix = pathSuffix;
+        this.dirtyBoxes = dirtyBoxes;
 
         this.pyramidList = new ArrayList<>();
         this.levelBoxCounts = new ArrayList<>();
@@ -82,7 +150,8 @@ public class BoxDataPyramidForLayer
         buildPyramid(firstRow, lastRow,
                      firstColumn, lastColumn,
                      boxWidth, boxHeight,
-                     tileBoundsList);
+                     tileBoundsList,
+                     boxComparator);
 
     }
 
@@ -91,7 +160,7 @@ public class BoxDataPyramidForLayer
     }
 
     /**
-     * @return list of all boxes sorted by level and parent location.
+     * @return list of all boxes sorted by level and then by the pyramid's box ordering (parent location by default).
      */
     public List<BoxData> getPyramidList() {
         return pyramidList;
@@ -114,16 +183,37 @@ public class BoxDataPyramidForLayer
         return pyramidList.size();
     }
 
+    /**
+     * @return list of dirty boxes that are not in this pyramid because they no longer contain any tiles
+     *         (the images for these boxes are obsolete and should be removed),
+     *         the list is empty if this pyramid was not constructed with dirty boxes.
+     */
+    public List<BoxData> getObsoleteBoxes() {
+        final List<BoxData> obsoleteBoxes = new ArrayList<>();
+        if (dirtyBoxes != null) {
+            final Set<BoxData> pyramidBoxes = new HashSet<>(pyramidList);
+            for (final BoxData dirtyBox : dirtyBoxes.getBoxes()) {
+                if (! pyramidBoxes.contains(dirtyBox)) {
+                    obsoleteBoxes.add(dirtyBox);
+                }
+            }
+            obsoleteBoxes.sort(Comparator.naturalOrder());
+        }
+        return obsoleteBoxes;
+    }
+
     private void buildPyramid(final int firstRow,
                               final int lastRow,
                               final int firstColumn,
                               final int lastColumn,
                               final int boxWidth,
                               final int boxHeight,
-                              final List<TileBounds> tileBoundsList) {
+                              final List<TileBounds> tileBoundsList,
+                              final Comparator<BoxData> boxComparator) {
 
         LOG.info("buildPyramid: entry, z={}", z);
 
+        final List<BoxData> levelZeroBoxes = new ArrayList<>();
         List<BoxData> parentBoxes = new ArrayList<>();
 
         final TileBoundsRTree rTree = new TileBoundsRTree(z, tileBoundsList);
@@ -156,8 +246,7 @@ public class BoxDataPyramidForLayer
                             levelZeroBox = new BoxData(z, 0, childRow, childColumn);
 
                             if (boxNeedsToBeRendered(levelZeroBox)) {
-                                levelZeroBox.setLayerLevelIndex(pyramidList.size());
-                                pyramidList.add(levelZeroBox);
+                                levelZeroBoxes.add(levelZeroBox);
                             }
 
                             levelOneBox.addChild(levelZeroBox);
@@ -173,15 +262,22 @@ public class BoxDataPyramidForLayer
             }
         }
 
+        // level zero boxes are built in parent location order, so re-sort them if necessary
+        levelZeroBoxes.sort(boxComparator);
+        for (final BoxData box : levelZeroBoxes) {
+            box.setLayerLevelIndex(pyramidList.size());
+            pyramidList.add(box);
+        }
+
         levelBoxCounts.add(pyramidList.size());
 
         while ((parentBoxes.size() > 0) && (parentBoxes.get(0).getLevel() < maxLevel)) {
-            addParentBoxesForLevel(parentBoxes);
+            addParentBoxesForLevel(parentBoxes, boxComparator);
             parentBoxes = buildNextLevel(parentBoxes);
         }
 
         if (maxLevel > 0) {
-            addParentBoxesForLevel(parentBoxes);
+            addParentBoxesForLevel(parentBoxes, boxComparator);
         }
 
         LOG.info("buildPyramid: exit, z={}, pyramidList.size={}, levelBoxCounts={}",
@@ -190,16 +286,19 @@ public class BoxDataPyramidForLayer
 
     private boolean boxNeedsToBeRendered(final BoxData boxData) {
         boolean renderBox = true;
-        if (excludeAlreadyRenderedBoxes) {
+        if (dirtyBoxes != null) {
+            renderBox = dirtyBoxes.contains(boxData);
+        } else if (excludeAlreadyRenderedBoxes) {
             final File boxFile = boxData.getAbsoluteLevelFile(baseBoxPath, pathSuffix);
             renderBox = ! boxFile.exists();
         }
         return renderBox;
     }
 
-    private void addParentBoxesForLevel(final List<BoxData> parentBoxes) {
+    private void addParentBoxesForLevel(final List<BoxData> parentBoxes,
+                                        final Comparator<BoxData> boxComparator) {
 
-        Collections.sort(parentBoxes); // sort by row and column to keep geographically close boxes together
+        parentBoxes.sort(boxComparator); // keep geographically close boxes together
 
         int layerLevelIndex = 0;
 
@@ -0,0 +1,243 @@
+package org.janelia.alignment.betterbox;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a parent box image by reducing (downsampling) its four child box images by a factor of two.
+ *
+ * Each parent pixel is derived from the 2x2 block of child pixels it covers.
+ * Reduction works directly on raw pixel arrays with output rows processed in parallel:
+ * <ul>
+ *     <li>8-bit gray children (when all children are gray) are averaged,</li>
+ *     <li>ARGB children (or children with mixed types) are averaged with each color weighted by its alpha
+ *         so that transparent pixels contribute the same as black pixels in a gray conversion, and</li>
+ *     <li>16-bit label children are reduced to the most common non-zero label in each block
+ *         (ties go to the first label in upper left, upper right, lower left, lower right order)
+ *         so that label values are never blended.</li>
+ * </ul>
+ *
+ * Missing children are treated as empty (zero valued) pixels.
+ *
+ * @author Eric Trautman
+ */
+public class BoxReducer {
+
+    /**
+     * @param  children   child images indexed by position within the parent
+     *                    (0: upper left, 1: upper right, 2: lower left, 3: lower right),
+     *                    null elements identify missing children.
+     * @param  boxWidth   width of the parent box (and its children boxes).
+     * @param  boxHeight  height of the parent box (and its children boxes).
+     * @param  isLabel    indicates whether children contain 16-bit labels.
+     *
+     * @return reduced parent image (TYPE_USHORT_GRAY for labels, TYPE_BYTE_GRAY when all children are
+     *         TYPE_BYTE_GRAY, otherwise TYPE_INT_ARGB).
+     */
+    public static BufferedImage reduce(final BufferedImage[] children,
+                                       final int boxWidth,
+                                       final int boxHeight,
+                                       final boolean isLabel) {
+
+        final BufferedImage parentImage;
+
+        if (isLabel) {
+
+            final int[][] childPixels = getSamples(children, boxWidth, boxHeight);
+            parentImage = new BufferedImage(boxWidth, boxHeight, BufferedImage.TYPE_USHORT_GRAY);
+            final short[] parentPixels = ((DataBufferUShort) parentImage.getRaster().getDataBuffer()).getData();
+            reduceRows(boxWidth, boxHeight, childPixels,
+                       (parentIndex, ul, ur, ll, lr) -> parentPixels[parentIndex] = (short) mode(ul, ur, ll, lr));
+
+        } else if (isGray(children)) {
+
+            final int[][] childPixels = getSamples(children, boxWidth, boxHeight);
+            parentImage = new BufferedImage(boxWidth, boxHeight, BufferedImage.TYPE_BYTE_GRAY);
+            final byte[] parentPixels = ((DataBufferByte) parentImage.getRaster().getDataBuffer()).getData();
+            reduceRows(boxWidth, boxHeight, childPixels,
+                       (parentIndex, ul, ur, ll, lr) -> parentPixels[parentIndex] = (byte) ((ul + ur + ll + lr + 2) >> 2));
+
+        } else {
+
+            final int[][] childPixels = getArgb(children, boxWidth, boxHeight);
+            parentImage = new BufferedImage(boxWidth, boxHeight, BufferedImage.TYPE_INT_ARGB);
+            final int[] parentPixels = ((DataBufferInt) parentImage.getRaster().getDataBuffer()).getData();
+            reduceRows(boxWidth, boxHeight, childPixels,
+                       (parentIndex, ul, ur, ll, lr) -> parentPixels[parentIndex] = averageArgb(ul, ur, ll, lr));
+
+        }
+
+        return parentImage;
+    }
+
+    /**
+     * @return most common non-zero value of the specified values (or zero if all values are zero).
+     *         Ties go to the value that appears first.
+     */
+    static int mode(final int v0,
+                    final int v1,
+                    final int v2,
+                    final int v3) {
+
+        final int[] values = { v0, v1, v2, v3 };
+        int modeValue = 0;
+        int modeCount = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                int count = 1;
+                for (int j = i + 1; j < values.length; j++) {
+                    if (values[j] == values[i]) {
+                        count++;
+                    }
+                }
+                if (count > modeCount) {
+                    modeValue = values[i];
+                    modeCount = count;
+                }
+            }
+        }
+        return modeValue;
+    }
+
+    /**
+     * @return alpha weighted average of the specified ARGB values.
+     */
+    static int averageArgb(final int p0,
+                           final int p1,
+                           final int p2,
+                           final int p3) {
+
+        final int[] pixels = { p0, p1, p2, p3 };
+        long alphaSum = 0;
+        long redSum = 0;
+        long greenSum = 0;
+        long blueSum = 0;
+        for (final int pixel : pixels) {
+            final int alpha = pixel >>> 24;
+            alphaSum += alpha;
+            redSum += ((pixel >> 16) & 0xff) * alpha;
+            greenSum += ((pixel >> 8) & 0xff) * alpha;
+            blueSum += (pixel & 0xff) * alpha;
+        }
+
+        int argb = 0;
+        if (alphaSum > 0) {
+            final long halfAlphaSum = alphaSum / 2;
+            argb = (int) (((alphaSum + 2) / 4) << 24) |
+                   (int) (((redSum + halfAlphaSum) / alphaSum) << 16) |
+                   (int) (((greenSum + halfAlphaSum) / alphaSum) << 8) |
+                   (int) ((blueSum + halfAlphaSum) / alphaSum);
+        }
+        return argb;
+    }
+
+    /**
+     * Consumer for the four child values that cover one parent pixel.
+     */
+    private interface BlockReducer {
+        void reduce(int parentIndex, int upperLeft, int upperRight, int lowerLeft, int lowerRight);
+    }
+
+    private static void reduceRows(final int boxWidth,
+                                   final int boxHeight,
+                                   final int[][] childPixels,
+                                   final BlockReducer blockReducer) {
+
+        // map each parent column to the child column (and child x) for its left and right source pixels
+        final int[] leftChild = new int[boxWidth];
+        final int[] leftX = new int[boxWidth];
+        final int[] rightChild = new int[boxWidth];
+        final int[] rightX = new int[boxWidth];
+        for (int x = 0; x < boxWidth; x++) {
+            leftChild[x] = (2 * x) < boxWidth ? 0 : 1;
+            leftX[x] = (2 * x) - (leftChild[x] * boxWidth);
+            rightChild[x] = (2 * x + 1) < boxWidth ? 0 : 1;
+            rightX[x] = (2 * x + 1) - (rightChild[x] * boxWidth);
+        }
+
+        IntStream.range(0, boxHeight).parallel().forEach(y -> {
+
+            final int topChildRow = (2 * y) < boxHeight ? 0 : 2;
+            final int topOffset = ((2 * y) - ((topChildRow / 2) * boxHeight)) * boxWidth;
+            final int bottomChildRow = (2 * y + 1) < boxHeight ? 0 : 2;
+            final int bottomOffset = ((2 * y + 1) - ((bottomChildRow / 2) * boxHeight)) * boxWidth;
+
+            final int parentRowOffset = y * boxWidth;
+            for (int x = 0; x < boxWidth; x++) {
+                blockReducer.reduce(parentRowOffset + x,
+                                    getValue(childPixels[topChildRow + leftChild[x]], topOffset + leftX[x]),
+                                    getValue(childPixels[topChildRow + rightChild[x]], topOffset + rightX[x]),
+                                    getValue(childPixels[bottomChildRow + leftChild[x]], bottomOffset + leftX[x]),
+                                    getValue(childPixels[bottomChildRow + rightChild[x]], bottomOffset + rightX[x]));
+            }
+        });
+    }
+
+    private static int getValue(final int[] pixels,
+                                final int index) {
+        return pixels == null ? 0 : pixels[index];
+    }
+
+    private static boolean isGray(final BufferedImage[] children) {
+        boolean isGray = true;
+        for (final BufferedImage child : children) {
+            if ((child != null) && (child.getType() != BufferedImage.TYPE_BYTE_GRAY)) {
+                isGray = false;
+                break;
+            }
+        }
+        return isGray;
+    }
+
+    /**
+     * @return first band samples for each child (null for missing children),
+     *         children with different dimensions are cropped or padded with zeros.
+     */
+    private static int[][] getSamples(final BufferedImage[] children,
+                                      final int boxWidth,
+                                      final int boxHeight) {
+        final int[][] childPixels = new int[children.length][];
+        for (int i = 0; i < children.length; i++) {
+            final BufferedImage child = children[i];
+            if (child != null) {
+                final int width = Math.min(boxWidth, child.getWidth());
+                final int height = Math.min(boxHeight, child.getHeight());
+                childPixels[i] = new int[boxWidth * boxHeight];
+                if (width == boxWidth) {
+                    child.getRaster().getSamples(0, 0, width, height, 0, childPixels[i]);
+                } else {
+                    final int[] rowPixels = new int[width];
+                    for (int y = 0; y < height; y++) {
+                        child.getRaster().getSamples(0, y, width, 1, 0, rowPixels);
+                        System.arraycopy(rowPixels, 0, childPixels[i], y * boxWidth, width);
+                    }
+                }
+            }
+        }
+        return childPixels;
+    }
+
+    /**
+     * @return ARGB pixels for each child (null for missing children),
+     *         children with different dimensions are cropped or padded with zeros.
+     */
+    private static int[][] getArgb(final BufferedImage[] children,
+                                   final int boxWidth,
+                                   final int boxHeight) {
+        final int[][] childPixels = new int[children.length][];
+        for (int i = 0; i < children.length; i++) {
+            final BufferedImage child = children[i];
+            if (child != null) {
+                final int width = Math.min(boxWidth, child.getWidth());
+                final int height = Math.min(boxHeight, child.getHeight());
+                childPixels[i] = new int[boxWidth * boxHeight];
+                child.getRGB(0, 0, width, height, childPixels[i], 0, boxWidth);
+            }
+        }
+        return childPixels;
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.janelia.alignment.betterbox;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.spec.TileBounds;
+
+/**
+ * Identifies the boxes in a layer that need to be re-rendered because some of the layer's tiles have changed.
+ *
+ * Level zero boxes are dirty if they intersect the prior or current bounds of a changed tile.
+ * Every (parent) box in the ancestor chain of a dirty level zero box up to the maximum level is also dirty.
+ *
+ * @author Eric Trautman
+ */
+public class DirtyBoxesForLayer
+        implements Serializable {
+
+    private final double z;
+    private final int boxWidth;
+    private final int boxHeight;
+    private final int maxLevel;
+    private final Set<BoxData> boxes;
+
+    /**
+     * @param  z          layer position.
+     * @param  boxWidth   width of each mipmap box.
+     * @param  boxHeight  height of each mipmap box.
+     * @param  maxLevel   maximum level for ancestor boxes.
+     */
+    public DirtyBoxesForLayer(final double z,
+                              final int boxWidth,
+                              final int boxHeight,
+                              final int maxLevel) {
+        this.z = z;
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
+        this.maxLevel = maxLevel;
+        this.boxes = new HashSet<>();
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * @return all dirty boxes (for all levels) in this layer.
+     */
+    public Set<BoxData> getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * @return true if the specified box is dirty; otherwise false.
+     */
+    public boolean contains(final BoxData boxData) {
+        return boxes.contains(boxData);
+    }
+
+    /**
+     * @return the number of dirty boxes (for all levels) in this layer.
+     */
+    public int size() {
+        return boxes.size();
+    }
+
+    /**
+     * Marks the level zero boxes that intersect the specified bounds and all of their ancestors as dirty.
+     *
+     * @param  bounds  changed world region.
+     */
+    public void addBounds(final Bounds bounds) {
+
+        final int firstRow = Math.max(0, (int) Math.floor(bounds.getMinY() / boxHeight));
+        final int lastRow = (int) Math.floor(bounds.getMaxY() / boxHeight);
+        final int firstColumn = Math.max(0, (int) Math.floor(bounds.getMinX() / boxWidth));
+        final int lastColumn = (int) Math.floor(bounds.getMaxX() / boxWidth);
+
+        BoxData box;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                box = new BoxData(z, 0, row, column);
+                // once an already dirty box is found, all of its ancestors are also known to be dirty
+                while ((box.getLevel() <= maxLevel) && boxes.add(box)) {
+                    box = box.getParentBoxData();
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks boxes that intersect changed tiles as dirty.
+     * A tile has changed if its id is in the explicit changed tile id set or if a prior tile list is specified and
+     * the tile was added, removed, or has different bounds in the current list.
+     * Both the prior and current bounds of each changed tile are marked.
+     * Without a prior tile list, only current bounds are known, so boxes at the prior location of a moved tile
+     * and boxes for removed tiles are not marked.
+     *
+     * @param  priorTileBoundsList    bounds for the layer's tiles when boxes were last rendered
+     *                                (or null if only explicitly changed tiles should be marked).
+     * @param  currentTileBoundsList  current bounds for the layer's tiles.
+     * @param  changedTileIds         ids of tiles that have explicitly changed (or null if none have).
+     *
+     * @return number of changed tiles found in this layer.
+     */
+    public int addChangedTiles(final List<TileBounds> priorTileBoundsList,
+                               final List<TileBounds> currentTileBoundsList,
+                               final Set<String> changedTileIds) {
+
+        final Map<String, TileBounds> priorTileIdToBounds = new HashMap<>();
+        if (priorTileBoundsList != null) {
+            for (final TileBounds tileBounds : priorTileBoundsList) {
+                priorTileIdToBounds.put(tileBounds.getTileId(), tileBounds);
+            }
+        }
+
+        int changedTileCount = 0;
+
+        for (final TileBounds currentTileBounds : currentTileBoundsList) {
+
+            final String tileId = currentTileBounds.getTileId();
+            final TileBounds priorTileBounds = priorTileIdToBounds.remove(tileId);
+
+            final boolean isExplicitlyChanged = (changedTileIds != null) && changedTileIds.contains(tileId);
+            final boolean isMovedOrAdded = (priorTileBoundsList != null) &&
+                                           (! hasSameBounds(priorTileBounds, currentTileBounds));
+
+            if (isExplicitlyChanged || isMovedOrAdded) {
+                addBounds(currentTileBounds);
+                if (priorTileBounds != null) {
+                    addBounds(priorTileBounds);
+                }
+                changedTileCount++;
+            }
+        }
+
+        // any remaining prior tiles have been removed from the layer
+        for (final TileBounds removedTileBounds : priorTileIdToBounds.values()) {
+            addBounds(removedTileBounds);
+            changedTileCount++;
+        }
+
+        return changedTileCount;
+    }
+
+    @Override
+    public String toString() {
+        return "{ z: " + z + ", dirtyBoxCount: " + boxes.size() + " }";
+    }
+
+    private static boolean hasSameBounds(final TileBounds prior,
+                                         final TileBounds current) {
+        return (prior != null) &&
+               Objects.equals(prior.getMinX(), current.getMinX()) &&
+               Objects.equals(prior.getMinY(), current.getMinY()) &&
+               Objects.equals(prior.getMaxX(), current.getMaxX()) &&
+               Objects.equals(prior.getMaxY(), current.getMaxY());
+    }
+
+}
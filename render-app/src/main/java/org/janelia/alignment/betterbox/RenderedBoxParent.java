@@ -1,14 +1,9 @@
 package org.janelia.alignment.betterbox;
 
-import ij.ImagePlus;
-import ij.process.ImageProcessor;
-
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-
-import mpicbg.trakem2.util.Downsampler;
+import java.util.Set;
 
 /**
  * Cached pixels for the rendered components (child boxes) of a parent level box along with
@@ -55,6 +50,12 @@ public class RenderedBoxParent {
         return (childCount > 0);
     }
 
+    /**
+     * @return number of defined child boxes for this parent.
+     */
+    public int getChildCount() {
+        return childCount;
+    }
 
     /**
      * Adds the specified child information to this parent box.
@@ -79,58 +80,79 @@ public class RenderedBoxParent {
         childCount++;
     }
 
+    /**
+     * Adds the specified parent's children (e.g. children still resident in memory
+     * from the render of a prior level) to this parent box.
+     * Children that have already been set in this parent are kept.
+     *
+     * @param  residentParent  parent with children to add.
+     */
+    public void addChildren(final RenderedBoxParent residentParent) {
+        for (int index = 0; index < residentParent.children.length; index++) {
+            if ((children[index] == null) && (residentParent.children[index] != null)) {
+                setChild(residentParent.children[index], index);
+            }
+        }
+    }
+
     /**
      * Loads the pixel data for this box's children from disk.
+     * Children that have already been set are not reloaded.
      */
     public void loadChildren() {
         for (final BoxData childData : boxData.getChildren()) {
-            final RenderedBox renderedChild = new RenderedBox(childData.getAbsoluteLevelFile(baseBoxPath, pathSuffix));
-            setChild(renderedChild, childData.getParentIndex());
+            if (children[childData.getParentIndex()] == null) {
+                final RenderedBox renderedChild =
+                        new RenderedBox(childData.getAbsoluteLevelFile(baseBoxPath, pathSuffix));
+                setChild(renderedChild, childData.getParentIndex());
+            }
         }
     }
 
     /**
-     * Builds this box's pixel data from it's children's pixel data.
-     *
-     * @param  boxWidth   width of this box (and its children boxes).
-     * @param  boxHeight  height of this box (and its children boxes).
+     * Loads the pixel data for this box's children from the specified chunked dataset.
+     * Children that have already been set are not reloaded.
      *
-     * @return pixel data for this box.
+     * @param  dataset             dataset containing child chunks.
+     * @param  completedChildKeys  manifest keys for all completed chunks in the child level
+     *                             (children that have not been completed are skipped).
      *
      * @throws IOException
-     *   if this box cannot be rendered.
+     *   if any completed child chunk cannot be read.
      */
-    public BufferedImage buildImage(final int boxWidth,
-                                    final int boxHeight)
+    public void loadChildren(final BoxChunkDataset dataset,
+                             final Set<String> completedChildKeys)
             throws IOException {
-
-        final BufferedImage fourTileImage = new BufferedImage(boxWidth * 2,
-                                                              boxHeight * 2,
-                                                              BufferedImage.TYPE_INT_ARGB);
-
-        final Graphics2D fourTileGraphics = fourTileImage.createGraphics();
-
-        drawImage(children[0], 0, 0, fourTileGraphics);
-        drawImage(children[1], boxWidth, 0, fourTileGraphics);
-        drawImage(children[2], 0, boxHeight, fourTileGraphics);
-        drawImage(children[3], boxWidth, boxHeight, fourTileGraphics);
-
-        final ImagePlus fourTileImagePlus = new ImagePlus("", fourTileImage);
-
-        fourTileGraphics.dispose();
-
-        final ImageProcessor parentProcessor =
-                Downsampler.downsampleImageProcessor(fourTileImagePlus.getProcessor());
-
-        return parentProcessor.getBufferedImage();
+        for (final BoxData childData : boxData.getChildren()) {
+            if ((children[childData.getParentIndex()] == null) &&
+                completedChildKeys.contains(BoxChunkDataset.getManifestKey(childData))) {
+                final RenderedBox renderedChild = new RenderedBox(dataset.getChunkFile(childData),
+                                                                  dataset.readChunk(childData));
+                setChild(renderedChild, childData.getParentIndex());
+            }
+        }
     }
 
-    private void drawImage(final RenderedBox renderedBox,
-                           final int x,
-                           final int y,
-                           final Graphics2D fourTileGraphics) {
-        if (renderedBox != null) {
-            fourTileGraphics.drawImage(renderedBox.getImage(), x, y, null);
+    /**
+     * Builds this box's pixel data from it's children's pixel data (see {@link BoxReducer}).
+     *
+     * @param  boxWidth   width of this box (and its children boxes).
+     * @param  boxHeight  height of this box (and its children boxes).
+     * @param  isLabel    indicates whether children contain 16-bit labels.
+     *
+     * @return pixel data for this box.
+     */
+    public BufferedImage buildImage(final int boxWidth,
+                                    final int boxHeight,
+                                    final boolean isLabel) {
+
+        final BufferedImage[] childImages = new BufferedImage[children.length];
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] != null) {
+                childImages[i] = children[i].getImage();
+            }
         }
+
+        return BoxReducer.reduce(childImages, boxWidth, boxHeight, isLabel);
     }
 }
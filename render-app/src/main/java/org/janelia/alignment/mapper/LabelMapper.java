@@ -0,0 +1,221 @@
+package org.janelia.alignment.mapper;
+
+import java.util.Arrays;
+
+/**
+ * Maps constant label tiles directly into a 16-bit (short) label target one mesh triangle at a time.
+ *
+ * Unlike the {@link PixelMapper} implementations that (potentially interpolate and) blend source pixels
+ * into a float target, every target pixel inside a triangle simply receives the tile's label,
+ * so label values are preserved exactly.
+ * Unmasked triangles are filled one row span at a time using {@link Arrays#fill} (a loop the JIT can vectorize).
+ * Masked triangles use nearest neighbor mask samples and only label pixels with a non-zero mask value.
+ *
+ * Triangle coverage is derived with the same test used by
+ * {@link org.janelia.alignment.RenderTransformMesh#isInTargetTriangle} so that labelled regions
+ * match the regions mapped by the standard rendering path.
+ *
+ * @author Eric Trautman
+ */
+public class LabelMapper {
+
+    private final short[] targetPixels;
+    private final int targetWidth;
+    private final int targetHeight;
+
+    /**
+     * @param  targetPixels  pixels for the target (row major order).
+     * @param  targetWidth   width of the target.
+     * @param  targetHeight  height of the target.
+     */
+    public LabelMapper(final short[] targetPixels,
+                       final int targetWidth,
+                       final int targetHeight) {
+
+        if (targetPixels.length < (targetWidth * targetHeight)) {
+            throw new IllegalArgumentException("target has " + targetPixels.length + " pixels but " +
+                                               targetWidth + "x" + targetHeight + " pixels are needed");
+        }
+
+        this.targetPixels = targetPixels;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    /**
+     * Sets all target pixels inside the specified triangle to the specified label.
+     *
+     * @param  pq     triangle point matches [{px, py, qx, qy}] (see RenderTransformMesh.getAV),
+     *                only the target (q) coordinates are used.
+     * @param  label  label for all pixels inside the triangle.
+     */
+    public void fillTriangle(final double[][] pq,
+                             final short label) {
+        mapTriangle(pq, label, null, null, 0, 0);
+    }
+
+    /**
+     * Sets target pixels inside the specified triangle to the specified label
+     * if their nearest source mask pixel is not zero.
+     *
+     * @param  pq          triangle point matches [{px, py, qx, qy}] (see RenderTransformMesh.getAV).
+     * @param  inverse     target to source affine for the triangle as [m00, m10, m01, m11, m02, m12].
+     * @param  label       label for unmasked pixels inside the triangle.
+     * @param  maskPixels  source mask pixels (row major order).
+     * @param  maskWidth   width of the source mask.
+     * @param  maskHeight  height of the source mask.
+     */
+    public void fillMaskedTriangle(final double[][] pq,
+                                   final double[] inverse,
+                                   final short label,
+                                   final byte[] maskPixels,
+                                   final int maskWidth,
+                                   final int maskHeight) {
+        mapTriangle(pq, label, inverse, maskPixels, maskWidth, maskHeight);
+    }
+
+    private void mapTriangle(final double[][] pq,
+                             final short label,
+                             final double[] inverse,
+                             final byte[] maskPixels,
+                             final int maskWidth,
+                             final int maskHeight) {
+
+        final double ax = pq[2][0];
+        final double ay = pq[3][0];
+        final double bx = pq[2][1];
+        final double by = pq[3][1];
+        final double cx = pq[2][2];
+        final double cy = pq[3][2];
+
+        // degenerate triangles do not contain any pixels
+        final double area = ((bx - ax) * (cy - ay)) - ((by - ay) * (cx - ax));
+
+        if (area != 0) {
+
+            final int minX = Math.max(0, roundPos(Math.min(ax, Math.min(bx, cx))));
+            final int minY = Math.max(0, roundPos(Math.min(ay, Math.min(by, cy))));
+            final int maxX = Math.min(targetWidth - 1, roundPos(Math.max(ax, Math.max(bx, cx))));
+            final int maxY = Math.min(targetHeight - 1, roundPos(Math.max(ay, Math.max(by, cy))));
+
+            final double orientation = area > 0 ? 1.0 : -1.0;
+
+            for (int targetY = minY; targetY <= maxY; targetY++) {
+
+                // intersect the row with each edge's inner half-plane to find the covered span ...
+                final double[] span = { minX, maxX };
+                if (clipSpan(ax, ay, bx, by, targetY, orientation, span) &&
+                    clipSpan(bx, by, cx, cy, targetY, orientation, span) &&
+                    clipSpan(cx, cy, ax, ay, targetY, orientation, span)) {
+
+                    // ... then settle the span ends with the exact per pixel test
+                    int startX = Math.max(minX, (int) Math.ceil(span[0]) - 1);
+                    int stopX = Math.min(maxX, (int) Math.floor(span[1]) + 1);
+                    while ((startX <= stopX) && (! isInTriangle(ax, ay, bx, by, cx, cy, startX, targetY))) {
+                        startX++;
+                    }
+                    while ((stopX >= startX) && (! isInTriangle(ax, ay, bx, by, cx, cy, stopX, targetY))) {
+                        stopX--;
+                    }
+
+                    if (startX <= stopX) {
+                        final int rowOffset = targetY * targetWidth;
+                        if (maskPixels == null) {
+                            Arrays.fill(targetPixels, rowOffset + startX, rowOffset + stopX + 1, label);
+                        } else {
+                            fillMaskedSpan(rowOffset, startX, stopX, targetY, label,
+                                           inverse, maskPixels, maskWidth, maskHeight);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void fillMaskedSpan(final int rowOffset,
+                                final int startX,
+                                final int stopX,
+                                final int targetY,
+                                final short label,
+                                final double[] inverse,
+                                final byte[] maskPixels,
+                                final int maskWidth,
+                                final int maskHeight) {
+
+        final double rowSourceX = (inverse[2] * targetY) + inverse[4];
+        final double rowSourceY = (inverse[3] * targetY) + inverse[5];
+
+        for (int targetX = startX; targetX <= stopX; targetX++) {
+            final int sourceX = clamp((int) Math.round((inverse[0] * targetX) + rowSourceX), maskWidth);
+            final int sourceY = clamp((int) Math.round((inverse[1] * targetX) + rowSourceY), maskHeight);
+            if (maskPixels[(sourceY * maskWidth) + sourceX] != 0) {
+                targetPixels[rowOffset + targetX] = label;
+            }
+        }
+    }
+
+    /**
+     * Clips the specified span to the part of row y that is on the inner side of edge (x1, y1) to (x2, y2).
+     *
+     * @return false if no part of the span remains; otherwise true.
+     */
+    private static boolean clipSpan(final double x1,
+                                    final double y1,
+                                    final double x2,
+                                    final double y2,
+                                    final double y,
+                                    final double orientation,
+                                    final double[] span) {
+
+        // inner side: orientation * ((x2 - x1) * (y - y1) - (y2 - y1) * (x - x1)) >= 0
+        final double slope = -orientation * (y2 - y1);
+        final double offset = orientation * (((x2 - x1) * (y - y1)) + ((y2 - y1) * x1));
+
+        if (slope > 0) {
+            span[0] = Math.max(span[0], -offset / slope);
+        } else if (slope < 0) {
+            span[1] = Math.min(span[1], -offset / slope);
+        } else if (offset < 0) {
+            span[1] = span[0] - 1;
+        }
+
+        // allow for rounding errors since span ends are settled with the exact test later
+        return span[0] <= (span[1] + 1);
+    }
+
+    /**
+     * Same test as {@link org.janelia.alignment.RenderTransformMesh#isInTriangle}
+     * (repeated here to keep this mapper independent of mesh classes).
+     */
+    static boolean isInTriangle(final double ax,
+                                final double ay,
+                                final double bx,
+                                final double by,
+                                final double cx,
+                                final double cy,
+                                final double tx,
+                                final double ty) {
+
+        final boolean d = ((bx - ax) * (ty - ay)) - ((by - ay) * (tx - ax)) < 0;
+        return (d == (((cx - bx) * (ty - by)) - ((cy - by) * (tx - bx)) < 0)) &&
+               (d == (((ax - cx) * (ty - cy)) - ((ay - cy) * (tx - cx)) < 0));
+    }
+
+    private static int roundPos(final double value) {
+        return (int) (value + 0.5);
+    }
+
+    private static int clamp(final int value,
+                             final int size) {
+        return value < 0 ? 0 : (value >= size ? size - 1 : value);
+    }
+
+}
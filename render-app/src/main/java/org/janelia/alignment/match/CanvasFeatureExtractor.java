@@ -55,6 +55,20 @@ public class CanvasFeatureExtractor implements Serializable {
         this.fillWithNoise = fillWithNoise;
     }
 
+    /**
+     * @return string that uniquely identifies all parameters that affect extraction results
+     *         (useful for building content based feature cache keys).
+     */
+    public String getParameterSignature() {
+        return "fdSize=" + coreSiftParameters.fdSize +
+               ",fdBins=" + coreSiftParameters.fdBins +
+               ",steps=" + coreSiftParameters.steps +
+               ",initialSigma=" + coreSiftParameters.initialSigma +
+               ",minScale=" + minScale +
+               ",maxScale=" + maxScale +
+               ",fillWithNoise=" + fillWithNoise;
+    }
+
     /**
      * Extract SIFT features from canvas built from specified render parameters.
      *
@@ -0,0 +1,198 @@
+package org.janelia.alignment.match;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of {@link RenderableCanvasIdPairs} that can be written (and read) one pair at a time.
+ *
+ * <pre>
+ *   int     magic
+ *   UTF     renderParametersUrlTemplate
+ *   records (each starts with a record type byte):
+ *     PAIR:  p canvas, q canvas
+ *     RESET: clears the string dictionary
+ *     END:   marks the end of the stream
+ * </pre>
+ *
+ * Each canvas is written as a groupId string reference, an id string reference, and a relative position byte
+ * (0 for null, otherwise position ordinal + 1).  Each string reference is a dictionary index followed by the
+ * string itself (in UTF form) when the index is the next unused dictionary index.
+ * The dictionary is reset whenever it grows to {@link #MAX_DICTIONARY_SIZE} strings so that readers and
+ * writers of long streams only need to retain a bounded number of strings.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairStream {
+
+    /** Identifies the start of a pair stream ("CPS1"). */
+    public static final int MAGIC = 0x43505331;
+
+    /** Media type for web service requests and responses. */
+    public static final String MEDIA_TYPE = "application/octet-stream";
+
+    /** Maximum number of strings tracked before the dictionary is reset. */
+    public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    /**
+     * Writes pairs to a stream one at a time.
+     */
+    public static class Writer {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> dictionary;
+        private int pairCount;
+
+        /**
+         * Writes the stream header.
+         *
+         * @param  outputStream                 target stream (which will not be closed by this writer).
+         * @param  renderParametersUrlTemplate  URL template for rendering canvases.
+         *
+         * @throws IOException
+         *   if the header cannot be written.
+         */
+        public Writer(final OutputStream outputStream,
+                      final String renderParametersUrlTemplate)
+                throws IOException {
+
+            this.out = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+            this.dictionary = new HashMap<>();
+            this.pairCount = 0;
+
+            out.writeInt(MAGIC);
+            out.writeUTF(renderParametersUrlTemplate == null ? "" : renderParametersUrlTemplate);
+        }
+
+        public int getPairCount() {
+            return pairCount;
+        }
+
+        public void write(final OrderedCanvasIdPair pair)
+                throws IOException {
+
+            // reset before writing the pair so that all four strings fit in the dictionary
+            if (dictionary.size() > MAX_DICTIONARY_SIZE - 4) {
+                out.writeByte(RESET_RECORD);
+                dictionary.clear();
+            }
+
+            out.writeByte(PAIR_RECORD);
+            writeCanvas(pair.getP());
+            writeCanvas(pair.getQ());
+            pairCount++;
+        }
+
+        /**
+         * Writes the end of stream marker and flushes (but does not close) the target stream.
+         */
+        public void finish()
+                throws IOException {
+            out.writeByte(END_RECORD);
+            out.flush();
+        }
+
+        private void writeCanvas(final CanvasId canvasId)
+                throws IOException {
+            writeString(canvasId.getGroupId());
+            writeString(canvasId.getId());
+            final MontageRelativePosition position = canvasId.getRelativePosition();
+            out.writeByte(position == null ? 0 : position.ordinal() + 1);
+        }
+
+        private void writeString(final String value)
+                throws IOException {
+            final Integer index = dictionary.get(value);
+            if (index == null) {
+                final int newIndex = dictionary.size();
+                dictionary.put(value, newIndex);
+                out.writeInt(newIndex);
+                out.writeUTF(value);
+            } else {
+                out.writeInt(index);
+            }
+        }
+    }
+
+    /**
+     * @return pairs loaded from the specified stream (which is not closed by this method).
+     *
+     * @throws IOException
+     *   if the stream cannot be read or does not contain a valid pair stream.
+     */
+    public static RenderableCanvasIdPairs readFrom(final InputStream inputStream)
+            throws IOException {
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+
+        final int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("invalid canvas id pair stream, expected magic value " +
+                                  Integer.toHexString(MAGIC) + " but found " + Integer.toHexString(magic));
+        }
+
+        final String renderParametersUrlTemplate = in.readUTF();
+
+        final List<OrderedCanvasIdPair> pairs = new ArrayList<>();
+        final List<String> dictionary = new ArrayList<>();
+        final MontageRelativePosition[] positions = MontageRelativePosition.values();
+
+        for (byte recordType = in.readByte(); recordType != END_RECORD; recordType = in.readByte()) {
+            if (recordType == PAIR_RECORD) {
+                final CanvasId p = readCanvas(in, dictionary, positions);
+                final CanvasId q = readCanvas(in, dictionary, positions);
+                pairs.add(new OrderedCanvasIdPair(p, q));
+            } else if (recordType == RESET_RECORD) {
+                dictionary.clear();
+            } else {
+                throw new IOException("invalid canvas id pair stream, unknown record type " + recordType +
+                                      " found after " + pairs.size() + " pairs");
+            }
+        }
+
+        return new RenderableCanvasIdPairs(renderParametersUrlTemplate.length() == 0 ? null : renderParametersUrlTemplate,
+                                           pairs);
+    }
+
+    private static CanvasId readCanvas(final DataInputStream in,
+                                       final List<String> dictionary,
+                                       final MontageRelativePosition[] positions)
+            throws IOException {
+        final String groupId = readString(in, dictionary);
+        final String id = readString(in, dictionary);
+        final int position = in.readByte();
+        return new CanvasId(groupId, id, position == 0 ? null : positions[position - 1]);
+    }
+
+    private static String readString(final DataInputStream in,
+                                     final List<String> dictionary)
+            throws IOException {
+        final int index = in.readInt();
+        final String value;
+        if (index == dictionary.size()) {
+            value = in.readUTF();
+            dictionary.add(value);
+        } else if ((index >= 0) && (index < dictionary.size())) {
+            value = dictionary.get(index);
+        } else {
+            throw new IOException("invalid canvas id pair stream, string index " + index +
+                                  " is outside of dictionary with " + dictionary.size() + " strings");
+        }
+        return value;
+    }
+
+    private static final byte END_RECORD = 0;
+    private static final byte PAIR_RECORD = 1;
+    private static final byte RESET_RECORD = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+}
@@ -0,0 +1,72 @@
+package org.janelia.alignment.match;
+
+import java.io.Serializable;
+
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Counts for one batch of streamed match pairs written to a match collection.
+ *
+ * @author Eric Trautman
+ */
+public class MatchBatchResult
+        implements Serializable {
+
+    private final Integer batchIndex;
+    private final Integer pairCount;
+    private final Integer insertedCount;
+    private final Integer modifiedCount;
+
+    // no-arg constructor needed for JSON deserialization
+    @SuppressWarnings("unused")
+    private MatchBatchResult() {
+        this(null, null, null, null);
+    }
+
+    public MatchBatchResult(final Integer batchIndex,
+                            final Integer pairCount,
+                            final Integer insertedCount,
+                            final Integer modifiedCount) {
+        this.batchIndex = batchIndex;
+        this.pairCount = pairCount;
+        this.insertedCount = insertedCount;
+        this.modifiedCount = modifiedCount;
+    }
+
+    public Integer getBatchIndex() {
+        return batchIndex;
+    }
+
+    /**
+     * @return number of pairs submitted in the batch.
+     */
+    public Integer getPairCount() {
+        return pairCount;
+    }
+
+    /**
+     * @return number of pairs that did not previously exist in the collection.
+     */
+    public Integer getInsertedCount() {
+        return insertedCount;
+    }
+
+    /**
+     * @return number of existing pairs that were replaced.
+     */
+    public Integer getModifiedCount() {
+        return modifiedCount;
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    public String toJson() {
+        return JSON_HELPER.toJson(this);
+    }
+
+    private static final JsonUtils.Helper<MatchBatchResult> JSON_HELPER =
+            new JsonUtils.Helper<>(MatchBatchResult.class);
+}
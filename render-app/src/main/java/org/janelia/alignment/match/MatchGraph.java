@@ -0,0 +1,205 @@
+package org.janelia.alignment.match;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory graph of {@link MatchGraphEdge} data that supports fast connectivity analysis.
+ *
+ * Canvases are mapped to integer indexes and connected components are derived with a
+ * (path compressed, size balanced) union-find forest, so the graph can handle
+ * millions of edges without recursion or per-canvas set allocation.
+ *
+ * @author Eric Trautman
+ */
+public class MatchGraph
+        implements Serializable {
+
+    private final List<CanvasId> canvasIds;
+    private final int[] degrees;
+    private final int[] parents;
+    private final int[] sizes;
+    private final int edgeCount;
+    private final int minMatchCount;
+    private final int maxMatchCount;
+    private final long totalMatchCount;
+
+    /**
+     * Builds a graph from the specified edges.
+     *
+     * @param  edges  edges to include in the graph.
+     */
+    public MatchGraph(final Collection<MatchGraphEdge> edges) {
+
+        final Map<CanvasId, Integer> canvasIdToIndex = new HashMap<>(edges.size());
+        this.canvasIds = new ArrayList<>(edges.size());
+
+        final int[] pIndexes = new int[edges.size()];
+        final int[] qIndexes = new int[edges.size()];
+
+        int minMatchCount = Integer.MAX_VALUE;
+        int maxMatchCount = 0;
+        long totalMatchCount = 0;
+
+        int edgeIndex = 0;
+        for (final MatchGraphEdge edge : edges) {
+            pIndexes[edgeIndex] = getIndex(edge.getP(), canvasIdToIndex);
+            qIndexes[edgeIndex] = getIndex(edge.getQ(), canvasIdToIndex);
+
+            final int matchCount = edge.getMatchCount() == null ? 0 : edge.getMatchCount();
+            minMatchCount = Math.min(minMatchCount, matchCount);
+            maxMatchCount = Math.max(maxMatchCount, matchCount);
+            totalMatchCount += matchCount;
+
+            edgeIndex++;
+        }
+
+        final int canvasCount = canvasIds.size();
+
+        this.degrees = new int[canvasCount];
+        this.parents = new int[canvasCount];
+        this.sizes = new int[canvasCount];
+
+        for (int i = 0; i < canvasCount; i++) {
+            parents[i] = i;
+            sizes[i] = 1;
+        }
+
+        for (int i = 0; i < pIndexes.length; i++) {
+            degrees[pIndexes[i]]++;
+            degrees[qIndexes[i]]++;
+            union(pIndexes[i], qIndexes[i]);
+        }
+
+        this.edgeCount = edges.size();
+        this.minMatchCount = edgeCount == 0 ? 0 : minMatchCount;
+        this.maxMatchCount = maxMatchCount;
+        this.totalMatchCount = totalMatchCount;
+    }
+
+    public int getCanvasCount() {
+        return canvasIds.size();
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return list of connected canvas components sorted by size (largest to smallest).
+     *         Canvases within each component are sorted by their natural order.
+     */
+    public List<List<CanvasId>> getSortedConnectedComponents() {
+
+        final Map<Integer, List<CanvasId>> rootToComponent = new HashMap<>();
+        for (int i = 0; i < canvasIds.size(); i++) {
+            final int root = find(i);
+            rootToComponent.computeIfAbsent(root, k -> new ArrayList<>(sizes[root])).add(canvasIds.get(i));
+        }
+
+        final List<List<CanvasId>> components = new ArrayList<>(rootToComponent.values());
+        for (final List<CanvasId> component : components) {
+            Collections.sort(component);
+        }
+
+        components.sort((c1, c2) -> {
+            int result = Integer.compare(c2.size(), c1.size());
+            if (result == 0) {
+                result = c1.get(0).compareTo(c2.get(0));
+            }
+            return result;
+        });
+
+        return components;
+    }
+
+    /**
+     * @return connectivity and degree statistics for this graph.
+     */
+    public MatchGraphStatistics getStatistics() {
+
+        final List<Integer> componentSizes = new ArrayList<>();
+        for (int i = 0; i < parents.length; i++) {
+            if (find(i) == i) {
+                componentSizes.add(sizes[i]);
+            }
+        }
+        componentSizes.sort(Collections.reverseOrder());
+
+        final Map<Integer, Integer> degreeHistogram = new TreeMap<>();
+        int minDegree = degrees.length == 0 ? 0 : Integer.MAX_VALUE;
+        int maxDegree = 0;
+        for (final int degree : degrees) {
+            minDegree = Math.min(minDegree, degree);
+            maxDegree = Math.max(maxDegree, degree);
+            degreeHistogram.merge(degree, 1, Integer::sum);
+        }
+
+        final double averageDegree = degrees.length == 0 ? 0.0 : (2.0 * edgeCount) / degrees.length;
+
+        return new MatchGraphStatistics(canvasIds.size(),
+                                        edgeCount,
+                                        componentSizes.size(),
+                                        componentSizes,
+                                        minDegree,
+                                        maxDegree,
+                                        averageDegree,
+                                        degreeHistogram,
+                                        minMatchCount,
+                                        maxMatchCount,
+                                        totalMatchCount);
+    }
+
+    @Override
+    public String toString() {
+        return getCanvasCount() + " canvases connected by " + edgeCount + " edges";
+    }
+
+    private int getIndex(final CanvasId canvasId,
+                         final Map<CanvasId, Integer> canvasIdToIndex) {
+        Integer index = canvasIdToIndex.get(canvasId);
+        if (index == null) {
+            index = canvasIds.size();
+            canvasIdToIndex.put(canvasId, index);
+            canvasIds.add(canvasId);
+        }
+        return index;
+    }
+
+    private int find(final int index) {
+        int root = index;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        // compress path
+        int current = index;
+        while (parents[current] != root) {
+            final int next = parents[current];
+            parents[current] = root;
+            current = next;
+        }
+        return root;
+    }
+
+    private void union(final int oneIndex,
+                       final int anotherIndex) {
+        int oneRoot = find(oneIndex);
+        int anotherRoot = find(anotherIndex);
+        if (oneRoot != anotherRoot) {
+            if (sizes[oneRoot] < sizes[anotherRoot]) {
+                final int swap = oneRoot;
+                oneRoot = anotherRoot;
+                anotherRoot = swap;
+            }
+            parents[anotherRoot] = oneRoot;
+            sizes[oneRoot] += sizes[anotherRoot];
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.janelia.alignment.match;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Compact summary of a stored match pair that identifies the connected canvases
+ * and the number of matches between them (but excludes the match points themselves).
+ *
+ * @author Eric Trautman
+ */
+public class MatchGraphEdge
+        implements Serializable {
+
+    private final String pGroupId;
+    private final String pId;
+    private final String qGroupId;
+    private final String qId;
+    private final Integer matchCount;
+
+    // no-arg constructor needed for JSON deserialization
+    @SuppressWarnings("unused")
+    private MatchGraphEdge() {
+        this(null, null, null, null, null);
+    }
+
+    public MatchGraphEdge(final String pGroupId,
+                          final String pId,
+                          final String qGroupId,
+                          final String qId,
+                          final Integer matchCount) {
+        this.pGroupId = pGroupId;
+        this.pId = pId;
+        this.qGroupId = qGroupId;
+        this.qId = qId;
+        this.matchCount = matchCount;
+    }
+
+    public String getpGroupId() {
+        return pGroupId;
+    }
+
+    public String getpId() {
+        return pId;
+    }
+
+    public String getqGroupId() {
+        return qGroupId;
+    }
+
+    public String getqId() {
+        return qId;
+    }
+
+    public Integer getMatchCount() {
+        return matchCount;
+    }
+
+    public CanvasId getP() {
+        return new CanvasId(pGroupId, pId);
+    }
+
+    public CanvasId getQ() {
+        return new CanvasId(qGroupId, qId);
+    }
+
+    @Override
+    public String toString() {
+        return pGroupId + "::" + pId + " <-> " + qGroupId + "::" + qId + " (" + matchCount + " matches)";
+    }
+
+    public String toJson() {
+        return JSON_HELPER.toJson(this);
+    }
+
+    public static MatchGraphEdge fromJson(final String json) {
+        return JSON_HELPER.fromJson(json);
+    }
+
+    public static List<MatchGraphEdge> fromJsonArray(final Reader json) {
+        try {
+            return Arrays.asList(JsonUtils.MAPPER.readValue(json, MatchGraphEdge[].class));
+        } catch (final IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static final JsonUtils.Helper<MatchGraphEdge> JSON_HELPER =
+            new JsonUtils.Helper<>(MatchGraphEdge.class);
+}
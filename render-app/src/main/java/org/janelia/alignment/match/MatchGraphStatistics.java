@@ -0,0 +1,124 @@
+package org.janelia.alignment.match;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Connectivity and degree statistics for a match graph where canvases are nodes and match pairs are edges.
+ *
+ * @author Eric Trautman
+ */
+public class MatchGraphStatistics
+        implements Serializable {
+
+    private final Integer canvasCount;
+    private final Integer edgeCount;
+    private final Integer componentCount;
+    private final List<Integer> componentSizes;
+    private final Integer minDegree;
+    private final Integer maxDegree;
+    private final Double averageDegree;
+    private final Map<Integer, Integer> degreeHistogram;
+    private final Integer minMatchCount;
+    private final Integer maxMatchCount;
+    private final Long totalMatchCount;
+
+    // no-arg constructor needed for JSON deserialization
+    @SuppressWarnings("unused")
+    private MatchGraphStatistics() {
+        this(null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    public MatchGraphStatistics(final Integer canvasCount,
+                                final Integer edgeCount,
+                                final Integer componentCount,
+                                final List<Integer> componentSizes,
+                                final Integer minDegree,
+                                final Integer maxDegree,
+                                final Double averageDegree,
+                                final Map<Integer, Integer> degreeHistogram,
+                                final Integer minMatchCount,
+                                final Integer maxMatchCount,
+                                final Long totalMatchCount) {
+        this.canvasCount = canvasCount;
+        this.edgeCount = edgeCount;
+        this.componentCount = componentCount;
+        this.componentSizes = componentSizes;
+        this.minDegree = minDegree;
+        this.maxDegree = maxDegree;
+        this.averageDegree = averageDegree;
+        this.degreeHistogram = degreeHistogram;
+        this.minMatchCount = minMatchCount;
+        this.maxMatchCount = maxMatchCount;
+        this.totalMatchCount = totalMatchCount;
+    }
+
+    public Integer getCanvasCount() {
+        return canvasCount;
+    }
+
+    public Integer getEdgeCount() {
+        return edgeCount;
+    }
+
+    public Integer getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return number of canvases in each connected component, sorted from largest to smallest.
+     */
+    public List<Integer> getComponentSizes() {
+        return componentSizes;
+    }
+
+    public Integer getMinDegree() {
+        return minDegree;
+    }
+
+    public Integer getMaxDegree() {
+        return maxDegree;
+    }
+
+    public Double getAverageDegree() {
+        return averageDegree;
+    }
+
+    /**
+     * @return map of degree (number of connected canvases) to the number of canvases with that degree.
+     */
+    public Map<Integer, Integer> getDegreeHistogram() {
+        return degreeHistogram;
+    }
+
+    public Integer getMinMatchCount() {
+        return minMatchCount;
+    }
+
+    public Integer getMaxMatchCount() {
+        return maxMatchCount;
+    }
+
+    public Long getTotalMatchCount() {
+        return totalMatchCount;
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    public String toJson() {
+        return JSON_HELPER.toJson(this);
+    }
+
+    public static MatchGraphStatistics fromJson(final String json) {
+        return JSON_HELPER.fromJson(json);
+    }
+
+    private static final JsonUtils.Helper<MatchGraphStatistics> JSON_HELPER =
+            new JsonUtils.Helper<>(MatchGraphStatistics.class);
+}
@@ -2,6 +2,7 @@ package org.janelia.alignment.match;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -22,21 +23,44 @@ public class SortedConnectedCanvasIdClusters
 
         final Map<CanvasId, Set<CanvasId>> connectionsMap = new HashMap<>();
 
-        Set<CanvasId> pSet;
-        Set<CanvasId> qSet;
-
         for (final CanvasMatches matches : matchesList) {
-            final CanvasId pCanvasId = new CanvasId(matches.getpGroupId(), matches.getpId());
-            final CanvasId qCanvasId = new CanvasId(matches.getqGroupId(), matches.getqId());
+            addConnection(new CanvasId(matches.getpGroupId(), matches.getpId()),
+                          new CanvasId(matches.getqGroupId(), matches.getqId()),
+                          connectionsMap);
+        }
+
+        this.sortedConnectedCanvasIdSets = findSortedConnectedSets(connectionsMap);
+    }
 
-            pSet = connectionsMap.computeIfAbsent(pCanvasId, k -> new HashSet<>());
-            pSet.add(qCanvasId);
+    /**
+     * @return clusters derived from the specified match graph edges
+     *         (avoids loading full match documents just to find connections).
+     */
+    public static SortedConnectedCanvasIdClusters fromEdges(final Collection<MatchGraphEdge> edges) {
 
-            qSet = connectionsMap.computeIfAbsent(qCanvasId, k -> new HashSet<>());
-            qSet.add(pCanvasId);
+        final Map<CanvasId, Set<CanvasId>> connectionsMap = new HashMap<>();
+
+        for (final MatchGraphEdge edge : edges) {
+            addConnection(edge.getP(), edge.getQ(), connectionsMap);
         }
 
-        this.sortedConnectedCanvasIdSets = new ArrayList<>();
+        return new SortedConnectedCanvasIdClusters(connectionsMap);
+    }
+
+    private SortedConnectedCanvasIdClusters(final Map<CanvasId, Set<CanvasId>> connectionsMap) {
+        this.sortedConnectedCanvasIdSets = findSortedConnectedSets(connectionsMap);
+    }
+
+    private static void addConnection(final CanvasId pCanvasId,
+                                      final CanvasId qCanvasId,
+                                      final Map<CanvasId, Set<CanvasId>> connectionsMap) {
+        connectionsMap.computeIfAbsent(pCanvasId, k -> new HashSet<>()).add(qCanvasId);
+        connectionsMap.computeIfAbsent(qCanvasId, k -> new HashSet<>()).add(pCanvasId);
+    }
+
+    private static List<Set<CanvasId>> findSortedConnectedSets(final Map<CanvasId, Set<CanvasId>> connectionsMap) {
+
+        final List<Set<CanvasId>> sortedConnectedCanvasIdSets = new ArrayList<>();
 
         while (connectionsMap.size() > 0) {
             final CanvasId canvasId = connectionsMap.keySet().stream().findFirst().get();
@@ -46,6 +70,8 @@ public class SortedConnectedCanvasIdClusters
         }
 
         sortedConnectedCanvasIdSets.sort((s1, s2) -> Integer.compare(s2.size(), s1.size()));
+
+        return sortedConnectedCanvasIdSets;
     }
 
     public List<Set<String>> getSortedConnectedGroupIdSets() {
@@ -83,7 +109,7 @@ public class SortedConnectedCanvasIdClusters
         return size() + " clusters with sizes " + getClusterSizes();
     }
 
-    private void addConnectedCanvases(final CanvasId canvasId,
+    private static void addConnectedCanvases(final CanvasId canvasId,
                                       final Map<CanvasId, Set<CanvasId>> connectionsMap,
                                       final Set<CanvasId> connectedTileSet) {
 
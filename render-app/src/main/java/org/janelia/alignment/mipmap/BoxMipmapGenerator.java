@@ -310,7 +310,7 @@ public class BoxMipmapGenerator {
         if (imageProcessorCache instanceof LabelImageProcessorCache) {
 
             boxImage = renderParameters.openTargetImage(BufferedImage.TYPE_USHORT_GRAY);
-            LabelRenderer.render(renderParameters, boxImage, (LabelImageProcessorCache) imageProcessorCache);
+            LabelRenderer.renderDirect(renderParameters, boxImage, (LabelImageProcessorCache) imageProcessorCache);
 
         } else {
 
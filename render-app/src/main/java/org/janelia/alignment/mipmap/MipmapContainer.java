@@ -0,0 +1,415 @@
+package org.janelia.alignment.mipmap;
+
+import ij.ImagePlus;
+import ij.io.Opener;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.janelia.alignment.Utils;
+
+/**
+ * Single file container for all generated mipmap levels (and masks) of a tile.
+ *
+ * Storing levels together avoids creating (and later opening) a separate small file for each level.
+ * Each level is stored as a complete encoded image so that it can be read with one byte range read
+ * without touching any other level.
+ *
+ * <pre>
+ *   int     magic
+ *   int     header length (number of bytes that follow up to the start of level data)
+ *   UTF     format of all encoded levels (e.g. png)
+ *   int     number of entries
+ *   entries:
+ *     byte  type (0 for image, 1 for mask)
+ *     byte  level
+ *     long  offset of encoded level data (relative to the start of level data)
+ *     int   length of encoded level data
+ *   level data
+ * </pre>
+ *
+ * Individual levels are addressed with URLs that reference the container file and
+ * identify the level with a fragment (e.g. file:/mipmaps/data/file1.tif.mipmaps#image_level_2).
+ *
+ * @author Eric Trautman
+ */
+public class MipmapContainer {
+
+    /** Identifies the start of a container file ("RMC1"). */
+    public static final int MAGIC = 0x524d4331;
+
+    /** Extension appended to a tile's mipmap base path to form its container path. */
+    public static final String FILE_EXTENSION = ".mipmaps";
+
+    /**
+     * @return the container file for the specified mipmap base file
+     *         (e.g. /mipmaps/data/file1.tif.mipmaps for /mipmaps/data/file1.tif).
+     */
+    public static File getContainerFile(final File mipmapBaseFile) {
+        return new File(mipmapBaseFile.getAbsolutePath() + FILE_EXTENSION);
+    }
+
+    /**
+     * @return name that identifies the specified level within a container (e.g. image_level_2).
+     */
+    public static String getLevelName(final int level,
+                                      final boolean isMask) {
+        return (isMask ? MASK_PREFIX : IMAGE_PREFIX) + LEVEL_PREFIX + level;
+    }
+
+    /**
+     * @return URL string that addresses the specified level within the specified container.
+     */
+    public static String getLevelUrl(final File containerFile,
+                                     final int level,
+                                     final boolean isMask) {
+        return containerFile.toURI().toString() + '#' + getLevelName(level, isMask);
+    }
+
+    /**
+     * @return true if the specified URL string addresses a level within a container; otherwise false.
+     */
+    public static boolean isLevelUrl(final String url) {
+        return (url != null) && url.contains(FILE_EXTENSION + '#');
+    }
+
+    /**
+     * @return names of all levels stored in the specified container.
+     *
+     * @throws IOException
+     *   if the container header cannot be read.
+     */
+    public static Set<String> readLevelNames(final File containerFile)
+            throws IOException {
+        try (final FileChannel channel = FileChannel.open(containerFile.toPath(), StandardOpenOption.READ)) {
+            return readHeader(channel, containerFile).nameToRangeMap.keySet();
+        }
+    }
+
+    /**
+     * Opens the level addressed by the specified URL.
+     * Only the container header and the bytes for the addressed level are read.
+     *
+     * @param  levelUrl  URL string for a level within a container (see {@link #getLevelUrl}).
+     *
+     * @return image for the addressed level.
+     *
+     * @throws IllegalArgumentException
+     *   if the URL is invalid or the level cannot be loaded.
+     */
+    public static ImagePlus openLevel(final String levelUrl)
+            throws IllegalArgumentException {
+
+        final int fragmentIndex = levelUrl.lastIndexOf('#');
+        if (fragmentIndex < 0) {
+            throw new IllegalArgumentException("container level url '" + levelUrl + "' is missing a level name");
+        }
+
+        final File containerFile = new File(Utils.convertPathOrUriStringToUri(levelUrl.substring(0, fragmentIndex)));
+        final String levelName = levelUrl.substring(fragmentIndex + 1);
+
+        try (final FileChannel channel = FileChannel.open(containerFile.toPath(), StandardOpenOption.READ)) {
+
+            final Header header = readHeader(channel, containerFile);
+            final LevelRange range = header.nameToRangeMap.get(levelName);
+            if (range == null) {
+                throw new IllegalArgumentException(levelName + " is not stored in " + containerFile.getAbsolutePath());
+            }
+
+            final byte[] levelBytes = readFully(channel, range.offset, range.length, containerFile);
+
+            return decodeLevel(levelBytes, header.format, containerFile.getName() + '#' + levelName);
+
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to load '" + levelUrl + "'", e);
+        }
+    }
+
+    private static ImagePlus decodeLevel(final byte[] levelBytes,
+                                         final String format,
+                                         final String title)
+            throws IOException {
+
+        final ImagePlus imagePlus;
+        if (isTiff(format)) {
+            imagePlus = new Opener().openTiff(new ByteArrayInputStream(levelBytes), title);
+        } else {
+            final BufferedImage image = ImageIO.read(new ByteArrayInputStream(levelBytes));
+            imagePlus = image == null ? null : new ImagePlus(title, image);
+        }
+
+        if (imagePlus == null) {
+            throw new IOException("failed to decode " + title);
+        }
+
+        return imagePlus;
+    }
+
+    /**
+     * Collects encoded levels and writes them to a container file.
+     * Levels can be added concurrently from multiple threads.
+     */
+    public static class Writer {
+
+        private final String format;
+        private final float jpegQuality;
+        private final List<Entry> entries;
+
+        /**
+         * @param  format       format for all encoded levels (e.g. {@link Utils#PNG_FORMAT}).
+         * @param  jpegQuality  the jpg quality factor (0.0 to 1.0) which is only used for jpg levels.
+         */
+        public Writer(final String format,
+                      final float jpegQuality) {
+            this.format = format;
+            this.jpegQuality = jpegQuality;
+            this.entries = new ArrayList<>();
+        }
+
+        /**
+         * Encodes the specified image and adds it to this container.
+         *
+         * @throws IOException
+         *   if the image cannot be encoded.
+         */
+        public void addLevel(final int level,
+                             final boolean isMask,
+                             final BufferedImage image)
+                throws IOException {
+
+            final ByteArrayOutputStream encodedBytes = new ByteArrayOutputStream(image.getWidth() * image.getHeight());
+            if (isTiff(format)) {
+                Utils.writeTiffImage(image, encodedBytes);
+            } else {
+                try (final ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(encodedBytes)) {
+                    Utils.writeImage(image, format, false, jpegQuality, imageOutputStream);
+                }
+            }
+
+            synchronized (entries) {
+                entries.add(new Entry(level, isMask, encodedBytes.toByteArray()));
+            }
+        }
+
+        /**
+         * Adds all levels stored in the specified existing container that have not already been added
+         * to this container.  Levels stored in this container's format are copied without being decoded,
+         * levels stored in any other format are decoded and re-encoded.
+         *
+         * @throws IOException
+         *   if the existing container cannot be read or any of its levels cannot be re-encoded.
+         */
+        public void addLevels(final File existingContainerFile)
+                throws IOException {
+
+            try (final FileChannel channel = FileChannel.open(existingContainerFile.toPath(),
+                                                              StandardOpenOption.READ)) {
+
+                final Header header = readHeader(channel, existingContainerFile);
+
+                for (final Map.Entry<String, LevelRange> mapEntry : header.nameToRangeMap.entrySet()) {
+
+                    final LevelRange range = mapEntry.getValue();
+                    if (! hasLevel(range.level, range.isMask)) {
+
+                        final byte[] levelBytes =
+                                readFully(channel, range.offset, range.length, existingContainerFile);
+
+                        if (format.equals(header.format)) {
+                            synchronized (entries) {
+                                entries.add(new Entry(range.level, range.isMask, levelBytes));
+                            }
+                        } else {
+                            final String title = existingContainerFile.getName() + '#' + mapEntry.getKey();
+                            final ImagePlus levelImagePlus = decodeLevel(levelBytes, header.format, title);
+                            addLevel(range.level, range.isMask, levelImagePlus.getProcessor().getBufferedImage());
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean hasLevel(final int level,
+                                 final boolean isMask) {
+            boolean hasLevel = false;
+            synchronized (entries) {
+                for (final Entry entry : entries) {
+                    if ((entry.level == level) && (entry.isMask == isMask)) {
+                        hasLevel = true;
+                        break;
+                    }
+                }
+            }
+            return hasLevel;
+        }
+
+        /**
+         * Writes all added levels to the specified container file.
+         * Data is first written to a temporary file that then replaces any existing container,
+         * so readers never see a partially written container.
+         *
+         * @throws IOException
+         *   if the container cannot be written.
+         */
+        public void write(final File containerFile)
+                throws IOException {
+
+            final List<Entry> sortedEntries;
+            synchronized (entries) {
+                sortedEntries = new ArrayList<>(entries);
+            }
+            sortedEntries.sort(Comparator.comparing((Entry entry) -> entry.isMask).thenComparing(entry -> entry.level));
+
+            final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            final DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeUTF(format);
+            header.writeInt(sortedEntries.size());
+            long offset = 0;
+            for (final Entry entry : sortedEntries) {
+                header.writeByte(entry.isMask ? MASK_TYPE : IMAGE_TYPE);
+                header.writeByte(entry.level);
+                header.writeLong(offset);
+                header.writeInt(entry.encodedBytes.length);
+                offset += entry.encodedBytes.length;
+            }
+            header.flush();
+
+            final File tempFile = new File(containerFile.getAbsolutePath() + ".tmp");
+            try (final DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+                out.writeInt(MAGIC);
+                out.writeInt(headerBytes.size());
+                headerBytes.writeTo(out);
+                for (final Entry entry : sortedEntries) {
+                    out.write(entry.encodedBytes);
+                }
+            }
+
+            Files.move(tempFile.toPath(), containerFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Header readHeader(final FileChannel channel,
+                                                  final File containerFile)
+            throws IOException {
+
+        final DataInputStream prefix = new DataInputStream(
+                new ByteArrayInputStream(readFully(channel, 0, 8, containerFile)));
+        final int magic = prefix.readInt();
+        if (magic != MAGIC) {
+            throw new IOException(containerFile.getAbsolutePath() + " is not a mipmap container, expected magic value " +
+                                  Integer.toHexString(MAGIC) + " but found " + Integer.toHexString(magic));
+        }
+        final int headerLength = prefix.readInt();
+        final long dataStart = 8 + headerLength;
+
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(readFully(channel, 8, headerLength, containerFile)));
+        final Header header = new Header(in.readUTF());
+        final int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+            final boolean isMask = in.readByte() == MASK_TYPE;
+            final int level = in.readByte();
+            final long offset = in.readLong();
+            final int length = in.readInt();
+            header.nameToRangeMap.put(getLevelName(level, isMask),
+                                      new LevelRange(level, isMask, dataStart + offset, length));
+        }
+
+        return header;
+    }
+
+    private static byte[] readFully(final FileChannel channel,
+                                    final long position,
+                                    final int length,
+                                    final File containerFile)
+            throws IOException {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            final int bytesRead = channel.read(buffer, position + buffer.position());
+            if (bytesRead < 0) {
+                throw new IOException("unexpected end of " + containerFile.getAbsolutePath() + " reached after " +
+                                      (position + buffer.position()) + " bytes");
+            }
+        }
+        return buffer.array();
+    }
+
+    private static boolean isTiff(final String format) {
+        return Utils.TIFF_FORMAT.equals(format) || Utils.TIF_FORMAT.equals(format);
+    }
+
+    private static class Header {
+
+        private final String format;
+
+        /** Maps level names to absolute byte ranges. */
+        private final Map<String, LevelRange> nameToRangeMap;
+
+        Header(final String format) {
+            this.format = format;
+            this.nameToRangeMap = new LinkedHashMap<>();
+        }
+    }
+
+    private static class LevelRange {
+
+        private final int level;
+        private final boolean isMask;
+        private final long offset;
+        private final int length;
+
+        LevelRange(final int level,
+                   final boolean isMask,
+                   final long offset,
+                   final int length) {
+            this.level = level;
+            this.isMask = isMask;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class Entry {
+
+        private final int level;
+        private final boolean isMask;
+        private final byte[] encodedBytes;
+
+        Entry(final int level,
+              final boolean isMask,
+              final byte[] encodedBytes) {
+            this.level = level;
+            this.isMask = isMask;
+            this.encodedBytes = encodedBytes;
+        }
+    }
+
+    private static final byte IMAGE_TYPE = 0;
+    private static final byte MASK_TYPE = 1;
+
+    private static final String IMAGE_PREFIX = "image";
+    private static final String MASK_PREFIX = "mask";
+    private static final String LEVEL_PREFIX = "_level_";
+}
@@ -0,0 +1,435 @@
+package org.janelia.alignment.spec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformMesh;
+import mpicbg.models.NoninvertibleModelException;
+
+import org.janelia.alignment.util.ProcessTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps large numbers of coordinates between local and world space.
+ *
+ * Rather than mapping points one at a time (and building transform instances for each point),
+ * requested points are first grouped by tile.  Each tile's transform list (or inverse mesh)
+ * is then instantiated once and used to map all of the tile's points in a tight loop
+ * over primitive coordinate arrays.  Tiles are processed in parallel by a work-stealing pool
+ * so that a few tiles with many points do not hold up the other threads.
+ * Long running processes that map coordinates for many concurrent requests (e.g. web services)
+ * should share one bounded pool across all mappers.
+ *
+ * Results and errors are reported in the same form as the point-at-a-time methods in {@link TileCoordinates}.
+ *
+ * @author Eric Trautman
+ */
+public class BulkCoordinateMapper {
+
+    private final ResolvedTileSpecCollection tiles;
+    private final int numberOfThreads;
+    private final ForkJoinPool sharedPool;
+
+    /**
+     * @param  tiles            resolved specs for all tiles referenced by coordinates to be mapped.
+     * @param  numberOfThreads  number of threads to use for mapping
+     *                          (a pool with this many threads is created for and shut down after each mapping).
+     */
+    public BulkCoordinateMapper(final ResolvedTileSpecCollection tiles,
+                                final int numberOfThreads) {
+        this.tiles = tiles;
+        this.numberOfThreads = numberOfThreads;
+        this.sharedPool = null;
+    }
+
+    /**
+     * @param  tiles       resolved specs for all tiles referenced by coordinates to be mapped.
+     * @param  sharedPool  pool to use for mapping (the pool is never shut down by this mapper).
+     */
+    public BulkCoordinateMapper(final ResolvedTileSpecCollection tiles,
+                                final ForkJoinPool sharedPool) {
+        this.tiles = tiles;
+        this.numberOfThreads = sharedPool.getParallelism();
+        this.sharedPool = sharedPool;
+    }
+
+    /**
+     * @param  localCoordinatesList  list of local coordinates, each identifying its tile.
+     *
+     * @return list of world coordinates in the same order as the specified local coordinates.
+     *         Any coordinates that cannot be mapped are returned with an error message.
+     */
+    public List<TileCoordinates> localToWorld(final List<TileCoordinates> localCoordinatesList) {
+
+        final ProcessTimer timer = new ProcessTimer();
+        final int pointCount = localCoordinatesList.size();
+
+        LOG.info("localToWorld: entry, mapping {} points using {} threads", pointCount, numberOfThreads);
+
+        final PointSlots slots = new PointSlots(pointCount);
+        final Map<String, TileGroup> tileIdToGroupMap = new LinkedHashMap<>();
+
+        TileCoordinates coordinates;
+        String tileId;
+        double[] local;
+        for (int i = 0; i < pointCount; i++) {
+            coordinates = localCoordinatesList.get(i);
+            if (coordinates == null) {
+                slots.errors[i] = "coordinates are missing";
+            } else {
+                tileId = coordinates.getTileId();
+                local = coordinates.getLocal();
+                if (tileId == null) {
+                    slots.errors[i] = "tileId is missing";
+                } else if (local == null) {
+                    slots.errors[i] = "local values are missing";
+                } else if (local.length < 2) {
+                    slots.errors[i] = "local values must include both x and y";
+                } else {
+                    addPoint(tileIdToGroupMap, tileId, i, local);
+                }
+            }
+        }
+
+        mapGroups(tileIdToGroupMap, slots, false);
+
+        final List<TileCoordinates> worldCoordinatesList = new ArrayList<>(pointCount);
+        int errorCount = 0;
+        for (int i = 0; i < pointCount; i++) {
+            coordinates = localCoordinatesList.get(i);
+            if (slots.errors[i] == null) {
+                worldCoordinatesList.add(TileCoordinates.buildWorldInstance(coordinates.getTileId(),
+                                                                            slots.getMappedValues(i)));
+            } else {
+                if (coordinates == null) {
+                    coordinates = TileCoordinates.buildLocalInstance(null, null);
+                }
+                coordinates.setError(slots.errors[i]);
+                worldCoordinatesList.add(coordinates);
+                errorCount++;
+            }
+        }
+
+        LOG.info("localToWorld: exit, transformed {} points in {} tiles with {} errors in {} seconds",
+                 pointCount, tileIdToGroupMap.size(), errorCount, timer.getElapsedSeconds());
+
+        return worldCoordinatesList;
+    }
+
+    /**
+     * @param  worldListOfLists  list of world coordinate lists.
+     *                           Each list contains one element for each tile that contains the
+     *                           world point (order of list is assumed to be the same order used for rendering).
+     *
+     * @return list of local coordinate lists in the same order as the specified world lists.
+     *         Each local list contains one element for each invertible tile with the
+     *         visible (last drawn) tile marked.  Any coordinates that cannot be mapped
+     *         are returned as single element lists with an error message.
+     */
+    public List<List<TileCoordinates>> worldToLocal(final List<List<TileCoordinates>> worldListOfLists) {
+
+        final ProcessTimer timer = new ProcessTimer();
+        final int pointCount = worldListOfLists.size();
+
+        LOG.info("worldToLocal: entry, mapping {} points using {} threads", pointCount, numberOfThreads);
+
+        // each world point has one slot for each tile that contains it
+        final int[] firstSlotForPoint = new int[pointCount + 1];
+        final String[] pointErrors = new String[pointCount];
+        List<TileCoordinates> coordinatesList;
+        int slotCount = 0;
+        for (int i = 0; i < pointCount; i++) {
+            firstSlotForPoint[i] = slotCount;
+            coordinatesList = worldListOfLists.get(i);
+            if (coordinatesList != null) {
+                slotCount += coordinatesList.size();
+            }
+        }
+        firstSlotForPoint[pointCount] = slotCount;
+
+        final PointSlots slots = new PointSlots(slotCount);
+        final Map<String, TileGroup> tileIdToGroupMap = new LinkedHashMap<>();
+
+        TileCoordinates coordinates;
+        String tileId;
+        double[] world;
+        int slot;
+        for (int i = 0; i < pointCount; i++) {
+            coordinatesList = worldListOfLists.get(i);
+            if ((coordinatesList == null) || (coordinatesList.size() == 0)) {
+                pointErrors[i] = "coordinates are missing";
+                continue;
+            }
+
+            world = coordinatesList.get(0).getWorld();
+            if (world == null) {
+                pointErrors[i] = "world values are missing";
+            } else if (world.length < 2) {
+                pointErrors[i] = "world values must include both x and y";
+            } else {
+                slot = firstSlotForPoint[i];
+                for (final TileCoordinates tileCoordinates : coordinatesList) {
+                    tileId = tileCoordinates.getTileId();
+                    if ((tileId != null) && (tiles.getTileSpec(tileId) != null)) {
+                        addPoint(tileIdToGroupMap, tileId, slot, world);
+                    } else {
+                        slots.errors[slot] = MISSING_TILE;
+                    }
+                    slot++;
+                }
+            }
+        }
+
+        mapGroups(tileIdToGroupMap, slots, true);
+
+        final List<List<TileCoordinates>> localListOfLists = new ArrayList<>(pointCount);
+        int errorCount = 0;
+        for (int i = 0; i < pointCount; i++) {
+
+            coordinatesList = worldListOfLists.get(i);
+            String error = pointErrors[i];
+
+            if (error == null) {
+
+                final List<TileCoordinates> localList = new ArrayList<>();
+                List<String> nonInvertibleTileIds = null;
+                for (slot = firstSlotForPoint[i]; slot < firstSlotForPoint[i + 1]; slot++) {
+                    tileId = coordinatesList.get(slot - firstSlotForPoint[i]).getTileId();
+                    //noinspection StringEquality
+                    if (slots.errors[slot] == null) {
+                        localList.add(TileCoordinates.buildLocalInstance(tileId, slots.getMappedValues(slot)));
+                    } else if (slots.errors[slot] == NON_INVERTIBLE) {
+                        if (nonInvertibleTileIds == null) {
+                            nonInvertibleTileIds = new ArrayList<>();
+                        }
+                        nonInvertibleTileIds.add(tileId);
+                    } else if (slots.errors[slot] != MISSING_TILE) {
+                        error = slots.errors[slot];
+                        break;
+                    }
+                }
+
+                if (error != null) {
+                    LOG.warn("worldToLocal: failed to map point {}, {}", i, error);
+                } else if (localList.size() > 0) {
+                    // for overlapping regions, the last tile is visible since it is rendered "on top of" the others
+                    localList.get(localList.size() - 1).setVisible(true);
+                    localListOfLists.add(localList);
+                } else {
+                    world = coordinatesList.get(0).getWorld();
+                    if (nonInvertibleTileIds == null) {
+                        error = "no tile specifications found for " + Arrays.toString(world);
+                    } else {
+                        error = "world coordinate (" + world[0] + ", " + world[1] + ") found in tile id(s) " +
+                                nonInvertibleTileIds + " cannot be inverted";
+                    }
+                }
+            }
+
+            if (error != null) {
+                if ((coordinatesList == null) || (coordinatesList.size() == 0)) {
+                    coordinates = TileCoordinates.buildWorldInstance(null, null);
+                } else {
+                    coordinates = coordinatesList.get(0);
+                }
+                coordinates.setError(error);
+                localListOfLists.add(Collections.singletonList(coordinates));
+                errorCount++;
+            }
+        }
+
+        LOG.info("worldToLocal: exit, inversely transformed {} points in {} tiles with {} errors in {} seconds",
+                 pointCount, tileIdToGroupMap.size(), errorCount, timer.getElapsedSeconds());
+
+        return localListOfLists;
+    }
+
+    private void addPoint(final Map<String, TileGroup> tileIdToGroupMap,
+                          final String tileId,
+                          final int slot,
+                          final double[] values) {
+        TileGroup group = tileIdToGroupMap.get(tileId);
+        if (group == null) {
+            group = new TileGroup(tileId);
+            tileIdToGroupMap.put(tileId, group);
+        }
+        group.add(slot, values[0], values[1]);
+    }
+
+    private void mapGroups(final Map<String, TileGroup> tileIdToGroupMap,
+                           final PointSlots slots,
+                           final boolean inverse) {
+
+        final List<Callable<Void>> tasks = new ArrayList<>(tileIdToGroupMap.size());
+        for (final TileGroup group : tileIdToGroupMap.values()) {
+            tasks.add(() -> {
+                group.map(tiles.getTileSpec(group.tileId), slots, inverse);
+                return null;
+            });
+        }
+
+        if ((numberOfThreads > 1) && (tasks.size() > 1)) {
+
+            final ForkJoinPool pool = sharedPool == null ? new ForkJoinPool(numberOfThreads) : sharedPool;
+            try {
+                for (final Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (final InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("failed to map coordinates", e);
+            } finally {
+                if (pool != sharedPool) {
+                    pool.shutdown();
+                }
+            }
+
+        } else {
+
+            for (final Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (final Exception e) {
+                    throw new IllegalStateException("failed to map coordinates", e);
+                }
+            }
+
+        }
+    }
+
+    /**
+     * Mapping results for all requested points, stored in primitive arrays indexed by slot.
+     */
+    private static class PointSlots {
+
+        private final double[] mappedX;
+        private final double[] mappedY;
+        private final Double[] mappedZ;
+        private final String[] errors;
+
+        PointSlots(final int size) {
+            this.mappedX = new double[size];
+            this.mappedY = new double[size];
+            this.mappedZ = new Double[size];
+            this.errors = new String[size];
+        }
+
+        double[] getMappedValues(final int slot) {
+            final double[] values;
+            if (mappedZ[slot] == null) {
+                values = new double[] { mappedX[slot], mappedY[slot] };
+            } else {
+                values = new double[] { mappedX[slot], mappedY[slot], mappedZ[slot] };
+            }
+            return values;
+        }
+    }
+
+    /**
+     * All points to be mapped with the same tile.
+     */
+    private static class TileGroup {
+
+        private final String tileId;
+        private int size;
+        private int[] slots;
+        private double[] x;
+        private double[] y;
+
+        TileGroup(final String tileId) {
+            this.tileId = tileId;
+            this.size = 0;
+            this.slots = new int[16];
+            this.x = new double[16];
+            this.y = new double[16];
+        }
+
+        void add(final int slot,
+                 final double pointX,
+                 final double pointY) {
+            if (size == slots.length) {
+                final int newLength = size * 2;
+                slots = Arrays.copyOf(slots, newLength);
+                x = Arrays.copyOf(x, newLength);
+                y = Arrays.copyOf(y, newLength);
+            }
+            slots[size] = slot;
+            x[size] = pointX;
+            y[size] = pointY;
+            size++;
+        }
+
+        void map(final TileSpec tileSpec,
+                 final PointSlots results,
+                 final boolean inverse) {
+
+            final Double z = tileSpec == null ? null : tileSpec.getZ();
+
+            CoordinateTransform transform = null;
+            CoordinateTransformMesh mesh = null;
+            String groupError = null;
+
+            if (tileSpec == null) {
+                groupError = "tileId " + tileId + " cannot be found";
+            } else if (tileSpec.hasTransforms()) {
+                try {
+                    if (inverse) {
+                        mesh = tileSpec.getCoordinateTransformMesh(tileSpec.getMeshCellSize());
+                    } else {
+                        transform = tileSpec.getTransformList();
+                    }
+                } catch (final Throwable t) {
+                    LOG.warn("map: failed to build transform for tile " + tileId, t);
+                    groupError = t.getMessage() == null ? t.getClass().getName() : t.getMessage();
+                }
+            }
+
+            final double[] point = new double[2];
+            int slot;
+            for (int i = 0; i < size; i++) {
+
+                slot = slots[i];
+
+                if (groupError != null) {
+                    results.errors[slot] = groupError;
+                    continue;
+                }
+
+                point[0] = x[i];
+                point[1] = y[i];
+
+                if (mesh != null) {
+                    try {
+                        mesh.applyInverseInPlace(point);
+                    } catch (final NoninvertibleModelException e) {
+                        results.errors[slot] = NON_INVERTIBLE;
+                        continue;
+                    }
+                } else if (transform != null) {
+                    transform.applyInPlace(point);
+                }
+
+                results.mappedX[slot] = point[0];
+                results.mappedY[slot] = point[1];
+                results.mappedZ[slot] = z;
+            }
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkCoordinateMapper.class);
+
+    /** Marks world-to-local slots for tiles that could not be found (these are simply skipped). */
+    private static final String MISSING_TILE = "missing tile";
+
+    /** Marks world-to-local slots for tiles that cannot invert the point. */
+    private static final String NON_INVERTIBLE = "not invertible";
+}
@@ -47,6 +47,13 @@ public class ChannelSpec implements Serializable {
         this.mipmapPathBuilder = mipmapPathBuilder;
     }
 
+    /**
+     * @return copy of this channel with its own intensity range, mipmap levels, and path builder.
+     */
+    ChannelSpec getCopy() {
+        return new ChannelSpec(name, minIntensity, maxIntensity, new TreeMap<>(mipmapLevels), mipmapPathBuilder);
+    }
+
     public String getName() {
         return name;
     }
@@ -105,13 +105,19 @@ public class LeafTransformSpec extends TransformSpec {
     protected CoordinateTransform buildInstance()
             throws IllegalArgumentException {
 
-        final mpicbg.trakem2.transform.CoordinateTransform ct = newInstance();
+        getClazz(); // validate class before looking for cached instances
+
         if (dataString == null) {
             throw new IllegalArgumentException("no dataString defined for leaf transform spec with id '" +
                                                getId() + "'");
         }
-        ct.init(dataString);
-        return ct;
+
+        // large data strings are only parsed once, subsequent instances are copied from a cached prototype
+        return TransformPrototypeCache.getInstance(className, dataString, () -> {
+            final mpicbg.trakem2.transform.CoordinateTransform ct = newInstance();
+            ct.init(dataString);
+            return ct;
+        });
     }
 
     private Class getClazz() throws IllegalArgumentException {
@@ -0,0 +1,538 @@
+package org.janelia.alignment.spec;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable, array backed R-tree of axis aligned rectangles that is bulk loaded with the
+ * Sort-Tile-Recursive (STR) algorithm
+ * (see <a href="https://doi.org/10.1109/ICDE.1997.582015">Leutenegger, Lopez, and Edgington 1997</a>).
+ *
+ * All rectangle coordinates are kept in primitive arrays.  Nodes for every level are stored in
+ * a single set of arrays (leaf nodes first, root node last) and each node references a contiguous
+ * range of children, so searches don't allocate anything other than a small traversal stack.
+ *
+ * Items are identified by their index in the coordinate arrays originally used to build the tree.
+ * Rectangles are closed, so rectangles that share an edge intersect.
+ *
+ * @author Eric Trautman
+ */
+class PackedRTree {
+
+    /** Maximum number of children for each node. */
+    static final int NODE_CAPACITY = 16;
+
+    private final int size;
+
+    // item data in packed (tree) order
+    private final int[] itemIndexes;
+    private final double[] itemMinX;
+    private final double[] itemMinY;
+    private final double[] itemMaxX;
+    private final double[] itemMaxY;
+
+    // node data for all levels, leaf nodes first and root node last
+    private final int leafNodeCount;
+    private final int height;
+    private final double[] nodeMinX;
+    private final double[] nodeMinY;
+    private final double[] nodeMaxX;
+    private final double[] nodeMaxY;
+    private final int[] childStart;
+    private final int[] childStop;
+
+    /**
+     * Bulk loads a tree for the specified rectangles.
+     * All arrays must have the same length.
+     */
+    PackedRTree(final double[] minX,
+                final double[] minY,
+                final double[] maxX,
+                final double[] maxY) {
+
+        this.size = minX.length;
+
+        final int[] itemOrder = getStrOrder(minX, minY, maxX, maxY, size);
+
+        this.itemIndexes = itemOrder;
+        this.itemMinX = permute(minX, itemOrder);
+        this.itemMinY = permute(minY, itemOrder);
+        this.itemMaxX = permute(maxX, itemOrder);
+        this.itemMaxY = permute(maxY, itemOrder);
+
+        // count nodes for all levels
+        int levelNodeCount = getParentCount(size);
+        int totalNodeCount = levelNodeCount;
+        int levelCount = size > 0 ? 1 : 0;
+        while (levelNodeCount > 1) {
+            levelNodeCount = getParentCount(levelNodeCount);
+            totalNodeCount += levelNodeCount;
+            levelCount++;
+        }
+
+        this.leafNodeCount = getParentCount(size);
+        this.height = levelCount;
+        this.nodeMinX = new double[totalNodeCount];
+        this.nodeMinY = new double[totalNodeCount];
+        this.nodeMaxX = new double[totalNodeCount];
+        this.nodeMaxY = new double[totalNodeCount];
+        this.childStart = new int[totalNodeCount];
+        this.childStop = new int[totalNodeCount];
+
+        if (size > 0) {
+            packLevels();
+        }
+    }
+
+    /**
+     * @return number of items in this tree.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Passes the index of every item that intersects the specified rectangle to the consumer.
+     */
+    void search(final double minX,
+                final double minY,
+                final double maxX,
+                final double maxY,
+                final IntConsumer consumer) {
+        visitPacked(minX, minY, maxX, maxY, i -> consumer.accept(itemIndexes[i]));
+    }
+
+    /**
+     * Passes the index of every item that intersects the specified circle to the consumer.
+     */
+    void searchCircle(final double centerX,
+                      final double centerY,
+                      final double radius,
+                      final IntConsumer consumer) {
+
+        final double radiusSquared = radius * radius;
+
+        visitPacked(centerX - radius, centerY - radius, centerX + radius, centerY + radius,
+                    i -> {
+                        final double dx = Math.max(Math.max(itemMinX[i] - centerX, 0), centerX - itemMaxX[i]);
+                        final double dy = Math.max(Math.max(itemMinY[i] - centerY, 0), centerY - itemMaxY[i]);
+                        if (((dx * dx) + (dy * dy)) <= radiusSquared) {
+                            consumer.accept(itemIndexes[i]);
+                        }
+                    });
+    }
+
+    /**
+     * Passes the packed position of every item that intersects the specified rectangle to the consumer.
+     */
+    private void visitPacked(final double minX,
+                             final double minY,
+                             final double maxX,
+                             final double maxY,
+                             final IntConsumer packedPositionConsumer) {
+
+        if (size > 0) {
+
+            final int[] stack = new int[(height * NODE_CAPACITY) + 1];
+            int stackSize = 0;
+            stack[stackSize++] = getRoot();
+
+            int node;
+            while (stackSize > 0) {
+                node = stack[--stackSize];
+                if (intersects(nodeMinX[node], nodeMinY[node], nodeMaxX[node], nodeMaxY[node],
+                               minX, minY, maxX, maxY)) {
+                    if (node < leafNodeCount) {
+                        for (int i = childStart[node]; i < childStop[node]; i++) {
+                            if (intersects(itemMinX[i], itemMinY[i], itemMaxX[i], itemMaxY[i],
+                                           minX, minY, maxX, maxY)) {
+                                packedPositionConsumer.accept(i);
+                            }
+                        }
+                    } else {
+                        for (int child = childStart[node]; child < childStop[node]; child++) {
+                            stack[stackSize++] = child;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return indexes of (up to maxCount) items less than maxDistance from the specified rectangle,
+     *         ordered by increasing distance.
+     */
+    int[] nearest(final double minX,
+                  final double minY,
+                  final double maxX,
+                  final double maxY,
+                  final double maxDistance,
+                  final int maxCount) {
+
+        final int[] nearestIndexes = new int[Math.min(Math.max(maxCount, 0), size)];
+        int nearestCount = 0;
+
+        if (nearestIndexes.length > 0) {
+
+            // best-first traversal: candidates are nodes (id >= 0) or packed items (id < 0)
+            final PriorityQueue<Candidate> queue =
+                    new PriorityQueue<>(Comparator.comparingDouble(candidate -> candidate.distance));
+            final int root = getRoot();
+            queue.add(new Candidate(root,
+                                    distance(nodeMinX[root], nodeMinY[root], nodeMaxX[root], nodeMaxY[root],
+                                             minX, minY, maxX, maxY)));
+
+            Candidate candidate;
+            double distance;
+            while ((nearestCount < nearestIndexes.length) && (! queue.isEmpty())) {
+
+                candidate = queue.poll();
+
+                if (candidate.distance >= maxDistance) {
+                    break;
+                }
+
+                if (candidate.id < 0) {
+                    nearestIndexes[nearestCount++] = itemIndexes[-candidate.id - 1];
+                } else if (candidate.id < leafNodeCount) {
+                    for (int i = childStart[candidate.id]; i < childStop[candidate.id]; i++) {
+                        distance = distance(itemMinX[i], itemMinY[i], itemMaxX[i], itemMaxY[i],
+                                            minX, minY, maxX, maxY);
+                        queue.add(new Candidate(-i - 1, distance));
+                    }
+                } else {
+                    for (int child = childStart[candidate.id]; child < childStop[candidate.id]; child++) {
+                        distance = distance(nodeMinX[child], nodeMinY[child], nodeMaxX[child], nodeMaxY[child],
+                                            minX, minY, maxX, maxY);
+                        queue.add(new Candidate(child, distance));
+                    }
+                }
+            }
+        }
+
+        return nearestCount == nearestIndexes.length ? nearestIndexes : Arrays.copyOf(nearestIndexes, nearestCount);
+    }
+
+    /**
+     * Visitor for {@link #join} results.
+     */
+    interface JoinVisitor {
+        /**
+         * Called for each pair of items with intersecting rectangles.
+         *
+         * @param  queryIndex  index of item in the query tree.
+         * @param  dataIndex   index of item in the data tree.
+         */
+        void visit(int queryIndex,
+                   int dataIndex);
+    }
+
+    /**
+     * Finds all pairs of intersecting items in the specified trees by traversing both trees simultaneously.
+     * This is typically much faster than searching the data tree separately for each query item because
+     * whole subtrees of query items are pruned at once.
+     */
+    static void join(final PackedRTree queryTree,
+                     final PackedRTree dataTree,
+                     final JoinVisitor visitor) {
+
+        if ((queryTree.size > 0) && (dataTree.size > 0)) {
+
+            // each stack entry holds a query node and a data node
+            int[] stack = new int[64];
+            int stackSize = 0;
+            stack[stackSize++] = queryTree.getRoot();
+            stack[stackSize++] = dataTree.getRoot();
+
+            int queryNode;
+            int dataNode;
+            boolean isQueryLeaf;
+            boolean isDataLeaf;
+            while (stackSize > 0) {
+
+                dataNode = stack[--stackSize];
+                queryNode = stack[--stackSize];
+
+                if (! intersects(queryTree.nodeMinX[queryNode], queryTree.nodeMinY[queryNode],
+                                 queryTree.nodeMaxX[queryNode], queryTree.nodeMaxY[queryNode],
+                                 dataTree.nodeMinX[dataNode], dataTree.nodeMinY[dataNode],
+                                 dataTree.nodeMaxX[dataNode], dataTree.nodeMaxY[dataNode])) {
+                    continue;
+                }
+
+                isQueryLeaf = queryNode < queryTree.leafNodeCount;
+                isDataLeaf = dataNode < dataTree.leafNodeCount;
+
+                if (isQueryLeaf && isDataLeaf) {
+
+                    joinLeaves(queryTree, queryNode, dataTree, dataNode, visitor);
+
+                } else {
+
+                    // descend into one node at a time (the larger one unless it is a leaf)
+                    final boolean descendQuery = isDataLeaf ||
+                                                 ((! isQueryLeaf) &&
+                                                  (queryTree.getArea(queryNode) > dataTree.getArea(dataNode)));
+
+                    if (stackSize + (2 * NODE_CAPACITY) > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+
+                    if (descendQuery) {
+                        for (int q = queryTree.childStart[queryNode]; q < queryTree.childStop[queryNode]; q++) {
+                            stack[stackSize++] = q;
+                            stack[stackSize++] = dataNode;
+                        }
+                    } else {
+                        for (int d = dataTree.childStart[dataNode]; d < dataTree.childStop[dataNode]; d++) {
+                            stack[stackSize++] = queryNode;
+                            stack[stackSize++] = d;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void joinLeaves(final PackedRTree queryTree,
+                                   final int queryNode,
+                                   final PackedRTree dataTree,
+                                   final int dataNode,
+                                   final JoinVisitor visitor) {
+
+        final int dataFrom = dataTree.childStart[dataNode];
+        final int dataTo = dataTree.childStop[dataNode];
+
+        for (int q = queryTree.childStart[queryNode]; q < queryTree.childStop[queryNode]; q++) {
+            for (int d = dataFrom; d < dataTo; d++) {
+                if (intersects(queryTree.itemMinX[q], queryTree.itemMinY[q],
+                               queryTree.itemMaxX[q], queryTree.itemMaxY[q],
+                               dataTree.itemMinX[d], dataTree.itemMinY[d],
+                               dataTree.itemMaxX[d], dataTree.itemMaxY[d])) {
+                    visitor.visit(queryTree.itemIndexes[q], dataTree.itemIndexes[d]);
+                }
+            }
+        }
+    }
+
+    private int getRoot() {
+        return nodeMinX.length - 1;
+    }
+
+    private double getArea(final int node) {
+        return (nodeMaxX[node] - nodeMinX[node]) * (nodeMaxY[node] - nodeMinY[node]);
+    }
+
+    /**
+     * Packs the leaf level (items are already in STR order) and then recursively packs each parent level.
+     */
+    private void packLevels() {
+
+        // leaf level
+        int levelCount = leafNodeCount;
+        for (int node = 0; node < levelCount; node++) {
+            final int from = node * NODE_CAPACITY;
+            final int to = Math.min(from + NODE_CAPACITY, size);
+            childStart[node] = from;
+            childStop[node] = to;
+            setUnionBounds(node, itemMinX, itemMinY, itemMaxX, itemMaxY, from, to);
+        }
+
+        int levelOffset = 0;
+        while (levelCount > 1) {
+
+            // STR sort the current level (and keep each node's child range with it)
+            final double[] minX = Arrays.copyOfRange(nodeMinX, levelOffset, levelOffset + levelCount);
+            final double[] minY = Arrays.copyOfRange(nodeMinY, levelOffset, levelOffset + levelCount);
+            final double[] maxX = Arrays.copyOfRange(nodeMaxX, levelOffset, levelOffset + levelCount);
+            final double[] maxY = Arrays.copyOfRange(nodeMaxY, levelOffset, levelOffset + levelCount);
+            final int[] start = Arrays.copyOfRange(childStart, levelOffset, levelOffset + levelCount);
+            final int[] stop = Arrays.copyOfRange(childStop, levelOffset, levelOffset + levelCount);
+
+            final int[] order = getStrOrder(minX, minY, maxX, maxY, levelCount);
+            for (int i = 0; i < levelCount; i++) {
+                final int from = order[i];
+                final int to = levelOffset + i;
+                nodeMinX[to] = minX[from];
+                nodeMinY[to] = minY[from];
+                nodeMaxX[to] = maxX[from];
+                nodeMaxY[to] = maxY[from];
+                childStart[to] = start[from];
+                childStop[to] = stop[from];
+            }
+
+            // build parent level
+            final int parentOffset = levelOffset + levelCount;
+            final int parentCount = getParentCount(levelCount);
+            for (int p = 0; p < parentCount; p++) {
+                final int parent = parentOffset + p;
+                final int from = levelOffset + (p * NODE_CAPACITY);
+                final int to = Math.min(from + NODE_CAPACITY, parentOffset);
+                childStart[parent] = from;
+                childStop[parent] = to;
+                setUnionBounds(parent, nodeMinX, nodeMinY, nodeMaxX, nodeMaxY, from, to);
+            }
+
+            levelOffset = parentOffset;
+            levelCount = parentCount;
+        }
+    }
+
+    private void setUnionBounds(final int node,
+                                final double[] minX,
+                                final double[] minY,
+                                final double[] maxX,
+                                final double[] maxY,
+                                final int from,
+                                final int to) {
+        double unionMinX = Double.POSITIVE_INFINITY;
+        double unionMinY = Double.POSITIVE_INFINITY;
+        double unionMaxX = Double.NEGATIVE_INFINITY;
+        double unionMaxY = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            unionMinX = Math.min(unionMinX, minX[i]);
+            unionMinY = Math.min(unionMinY, minY[i]);
+            unionMaxX = Math.max(unionMaxX, maxX[i]);
+            unionMaxY = Math.max(unionMaxY, maxY[i]);
+        }
+        nodeMinX[node] = unionMinX;
+        nodeMinY[node] = unionMinY;
+        nodeMaxX[node] = unionMaxX;
+        nodeMaxY[node] = unionMaxY;
+    }
+
+    /**
+     * @return Sort-Tile-Recursive order for the specified rectangles:
+     *         rectangles are sorted by center x, split into sqrt(leafCount) vertical slices,
+     *         and then sorted by center y within each slice.
+     */
+    private static int[] getStrOrder(final double[] minX,
+                                     final double[] minY,
+                                     final double[] maxX,
+                                     final double[] maxY,
+                                     final int count) {
+
+        final int[] order = new int[count];
+        final double[] centerX = new double[count];
+        final double[] centerY = new double[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            // centers are compared as sums to avoid unnecessary division
+            centerX[i] = minX[i] + maxX[i];
+            centerY[i] = minY[i] + maxY[i];
+        }
+
+        final int leafCount = getParentCount(count);
+        final int sliceCount = (int) Math.ceil(Math.sqrt(leafCount));
+        final int sliceSize = sliceCount * NODE_CAPACITY;
+
+        sort(order, centerX, 0, count);
+        for (int from = 0; from < count; from += sliceSize) {
+            sort(order, centerY, from, Math.min(from + sliceSize, count));
+        }
+
+        return order;
+    }
+
+    /**
+     * Sorts the specified range of indexes by their key values
+     * (avoids boxing indexes for large trees).
+     */
+    private static void sort(final int[] indexes,
+                             final double[] keys,
+                             final int from,
+                             final int to) {
+
+        if ((to - from) < 16) {
+
+            // insertion sort for small ranges
+            for (int i = from + 1; i < to; i++) {
+                final int index = indexes[i];
+                final double key = keys[index];
+                int j = i - 1;
+                while ((j >= from) && (keys[indexes[j]] > key)) {
+                    indexes[j + 1] = indexes[j];
+                    j--;
+                }
+                indexes[j + 1] = index;
+            }
+
+        } else {
+
+            final double pivot = keys[indexes[(from + to) >>> 1]];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (keys[indexes[i]] < pivot) {
+                    i++;
+                }
+                while (keys[indexes[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int swap = indexes[i];
+                    indexes[i] = indexes[j];
+                    indexes[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+
+            sort(indexes, keys, from, j + 1);
+            sort(indexes, keys, i, to);
+        }
+    }
+
+    private static int getParentCount(final int count) {
+        return (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+    }
+
+    private static double[] permute(final double[] values,
+                                    final int[] order) {
+        final double[] permutedValues = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            permutedValues[i] = values[order[i]];
+        }
+        return permutedValues;
+    }
+
+    private static boolean intersects(final double aMinX,
+                                      final double aMinY,
+                                      final double aMaxX,
+                                      final double aMaxY,
+                                      final double bMinX,
+                                      final double bMinY,
+                                      final double bMaxX,
+                                      final double bMaxY) {
+        return (aMinX <= bMaxX) && (bMinX <= aMaxX) && (aMinY <= bMaxY) && (bMinY <= aMaxY);
+    }
+
+    private static double distance(final double aMinX,
+                                   final double aMinY,
+                                   final double aMaxX,
+                                   final double aMaxY,
+                                   final double bMinX,
+                                   final double bMinY,
+                                   final double bMaxX,
+                                   final double bMaxY) {
+        final double dx = Math.max(Math.max(aMinX - bMaxX, bMinX - aMaxX), 0);
+        final double dy = Math.max(Math.max(aMinY - bMaxY, bMinY - aMaxY), 0);
+        return Math.sqrt((dx * dx) + (dy * dy));
+    }
+
+    private static class Candidate {
+
+        private final int id;
+        private final double distance;
+
+        Candidate(final int id,
+                  final double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+}
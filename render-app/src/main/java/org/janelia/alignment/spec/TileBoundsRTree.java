@@ -10,6 +10,7 @@ import com.github.davidmoten.rtree.geometry.Rectangle;
 import java.awt.geom.Area;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -25,13 +26,18 @@ import rx.Observable;
 /**
  * RTree collection of {@link TileBounds} instances for (in-memory) geometric searching.
  *
+ * Tiles provided at construction time are bulk loaded into an immutable {@link PackedRTree}.
+ * Tiles added later with {@link #addTile} are kept in a (typically small) dynamic tree
+ * and searches consult both trees.
+ *
  * @author Eric Trautman
  */
 public class TileBoundsRTree {
 
     private final Double z;
     private final List<TileBounds> tileBoundsList;
-    private RTree<TileBounds, Geometry> tree;
+    private final PackedRTree packedTree;
+    private RTree<TileBounds, Geometry> addedTree;
 
     /**
      * Construct a tree from the specified list of tile bounds.
@@ -43,12 +49,24 @@ public class TileBoundsRTree {
                            final List<TileBounds> tileBoundsList) {
 
         this.z = z;
-        this.tileBoundsList = new ArrayList<>(tileBoundsList.size());
-        this.tree = RTree.create();
-        for (final TileBounds tileBounds : tileBoundsList) {
-            addTile(tileBounds);
+        this.tileBoundsList = new ArrayList<>(tileBoundsList);
+
+        final int count = tileBoundsList.size();
+        final double[] minX = new double[count];
+        final double[] minY = new double[count];
+        final double[] maxX = new double[count];
+        final double[] maxY = new double[count];
+        for (int i = 0; i < count; i++) {
+            final TileBounds tileBounds = this.tileBoundsList.get(i);
+            minX[i] = tileBounds.getMinX();
+            minY[i] = tileBounds.getMinY();
+            maxX[i] = tileBounds.getMaxX();
+            maxY[i] = tileBounds.getMaxY();
         }
 
+        this.packedTree = new PackedRTree(minX, minY, maxX, maxY);
+        this.addedTree = null;
+
         LOG.debug("constructed tree for {} tiles", tileBoundsList.size());
     }
 
@@ -72,12 +90,15 @@ public class TileBoundsRTree {
      * @param  tileBounds  bounds for the tile.
      */
     public void addTile(final TileBounds tileBounds) {
+        if (addedTree == null) {
+            addedTree = RTree.create();
+        }
         tileBoundsList.add(tileBounds);
-        tree = tree.add(tileBounds,
-                        Geometries.rectangle(tileBounds.getMinX(),
-                                             tileBounds.getMinY(),
-                                             tileBounds.getMaxX(),
-                                             tileBounds.getMaxY()));
+        addedTree = addedTree.add(tileBounds,
+                                  Geometries.rectangle(tileBounds.getMinX(),
+                                                       tileBounds.getMinY(),
+                                                       tileBounds.getMaxX(),
+                                                       tileBounds.getMaxY()));
     }
 
     /**
@@ -88,9 +109,13 @@ public class TileBoundsRTree {
                                            final double maxX,
                                            final double maxY) {
 
-        final Rectangle rectangle = Geometries.rectangle(minX, minY, maxX, maxY);
-        final Observable<Entry<TileBounds, Geometry>> searchResults = tree.search(rectangle);
-        return convertResultsToList(searchResults);
+        final List<TileBounds> matchingTiles = new ArrayList<>();
+        packedTree.search(minX, minY, maxX, maxY, i -> matchingTiles.add(tileBoundsList.get(i)));
+        if (addedTree != null) {
+            final Rectangle rectangle = Geometries.rectangle(minX, minY, maxX, maxY);
+            addResultsToList(addedTree.search(rectangle), matchingTiles);
+        }
+        return matchingTiles;
     }
 
     /**
@@ -99,15 +124,43 @@ public class TileBoundsRTree {
     List<TileBounds> findTilesInCircle(final double centerX,
                                        final double centerY,
                                        final double radius) {
-        return findTilesInCircle(Geometries.circle(centerX, centerY, radius));
+        final List<TileBounds> matchingTiles = new ArrayList<>();
+        packedTree.searchCircle(centerX, centerY, radius, i -> matchingTiles.add(tileBoundsList.get(i)));
+        if (addedTree != null) {
+            final Circle circle = Geometries.circle(centerX, centerY, radius);
+            addResultsToList(addedTree.search(circle), matchingTiles);
+        }
+        return matchingTiles;
     }
 
     /**
-     * @return all tiles that intersect the specified circle.
+     * Finds the tiles that intersect each of the specified circles.
+     * Circles are bulk loaded into their own packed tree which is then
+     * joined with this tree's tiles (traversing both trees simultaneously).
+     *
+     * @return list of intersecting tiles for each circle (in circle order).
      */
-    private List<TileBounds> findTilesInCircle(final Circle circle) {
-        final Observable<Entry<TileBounds, Geometry>> searchResults = tree.search(circle);
-        return convertResultsToList(searchResults);
+    List<List<TileBounds>> findTilesInCircles(final Circles circles) {
+
+        final List<List<TileBounds>> matchingTileLists = new ArrayList<>(circles.size());
+        for (int i = 0; i < circles.size(); i++) {
+            matchingTileLists.add(new ArrayList<>());
+        }
+
+        PackedRTree.join(circles.tree, packedTree, (circleIndex, tileIndex) -> {
+            if (circles.intersects(circleIndex, tileBoundsList.get(tileIndex))) {
+                matchingTileLists.get(circleIndex).add(tileBoundsList.get(tileIndex));
+            }
+        });
+
+        if (addedTree != null) {
+            for (int i = 0; i < circles.size(); i++) {
+                final Circle circle = Geometries.circle(circles.centerX[i], circles.centerY[i], circles.radius[i]);
+                addResultsToList(addedTree.search(circle), matchingTileLists.get(i));
+            }
+        }
+
+        return matchingTileLists;
     }
 
     /**
@@ -154,9 +207,23 @@ public class TileBoundsRTree {
                                                   final double maxDistance,
                                                   final int maxCount) {
 
-        final Rectangle rectangle = Geometries.rectangle(minX, minY, maxX, maxY);
-        final Observable<Entry<TileBounds, Geometry>> searchResults = tree.nearest(rectangle, maxDistance, maxCount);
-        return convertResultsToList(searchResults);
+        final List<TileBounds> nearestTiles = new ArrayList<>();
+        for (final int i : packedTree.nearest(minX, minY, maxX, maxY, maxDistance, maxCount)) {
+            nearestTiles.add(tileBoundsList.get(i));
+        }
+
+        if (addedTree != null) {
+            final Rectangle rectangle = Geometries.rectangle(minX, minY, maxX, maxY);
+            addResultsToList(addedTree.nearest(rectangle, maxDistance, maxCount), nearestTiles);
+
+            // merge results from both trees
+            nearestTiles.sort(Comparator.comparingDouble(tile -> getDistance(tile, minX, minY, maxX, maxY)));
+            if (nearestTiles.size() > maxCount) {
+                nearestTiles.subList(maxCount, nearestTiles.size()).clear();
+            }
+        }
+
+        return nearestTiles;
     }
 
     /**
@@ -198,42 +265,20 @@ public class TileBoundsRTree {
 
         final Set<OrderedCanvasIdPair> neighborTileIdPairs = new HashSet<>(50000);
 
-        double tileWidth;
-        double tileHeight;
-        double centerX;
-        double centerY;
-        double radius;
-        Circle circle;
-        List<TileBounds> searchResults;
-        for (final TileBounds tileBounds : sourceTileBoundsList) {
-
-            tileWidth = tileBounds.getDeltaX();
-            tileHeight = tileBounds.getDeltaY();
-
-            centerX = tileBounds.getMinX() + (tileWidth / 2);
-            centerY = tileBounds.getMinY() + (tileHeight / 2);
-            if (explicitRadius == null) {
-                radius = Math.max(tileWidth, tileHeight) * neighborRadiusFactor;
-            } else {
-                radius = explicitRadius;
-            }
-
-            circle = Geometries.circle(centerX, centerY, radius);
+        // search for the neighbors of all source tiles at once by joining a tree of source tile circles
+        // with this tree and each neighbor tree
+        final Circles circles = new Circles(sourceTileBoundsList, neighborRadiusFactor, explicitRadius);
 
-            if (! excludeSameLayerNeighbors) {
-                searchResults = findTilesInCircle(circle);
-
-                neighborTileIdPairs.addAll(
-                        getDistinctPairs(tileBounds, searchResults,
-                                         excludeCornerNeighbors, excludeSameSectionNeighbors, true));
-            }
+        if (! excludeSameLayerNeighbors) {
+            addDistinctPairs(sourceTileBoundsList, findTilesInCircles(circles),
+                             excludeCornerNeighbors, excludeSameSectionNeighbors, true,
+                             neighborTileIdPairs);
+        }
 
-            for (final TileBoundsRTree neighborTree : neighborTrees) {
-                searchResults = neighborTree.findTilesInCircle(circle);
-                neighborTileIdPairs.addAll(
-                        getDistinctPairs(tileBounds, searchResults,
-                                         excludeCornerNeighbors, excludeSameSectionNeighbors, false));
-            }
+        for (final TileBoundsRTree neighborTree : neighborTrees) {
+            addDistinctPairs(sourceTileBoundsList, neighborTree.findTilesInCircles(circles),
+                             excludeCornerNeighbors, excludeSameSectionNeighbors, false,
+                             neighborTileIdPairs);
         }
 
         LOG.debug("getCircleNeighbors: exit, returning {} pairs", neighborTileIdPairs.size());
@@ -276,6 +321,21 @@ public class TileBoundsRTree {
                                                             final boolean excludeSameSectionNeighbors,
                                                             final boolean includeRelativePosition) {
         final Set<OrderedCanvasIdPair> pairs = new HashSet<>(toTiles.size() * 2);
+        addDistinctPairs(fromTile, toTiles, excludeCornerNeighbors, excludeSameSectionNeighbors,
+                         includeRelativePosition, pairs);
+        return pairs;
+    }
+
+    /**
+     * Adds distinct pairs of the fromTile with each toTile to the specified set.
+     * If the fromTile is in the toTiles list, it is ignored (fromTile won't be paired with itself).
+     */
+    private static void addDistinctPairs(final TileBounds fromTile,
+                                         final List<TileBounds> toTiles,
+                                         final boolean excludeCornerNeighbors,
+                                         final boolean excludeSameSectionNeighbors,
+                                         final boolean includeRelativePosition,
+                                         final Set<OrderedCanvasIdPair> pairs) {
         final String pTileId = fromTile.getTileId();
 
         final double fromMinX = fromTile.getMinX();
@@ -314,8 +374,19 @@ public class TileBoundsRTree {
 
             }
         }
+    }
 
-        return pairs;
+    private static void addDistinctPairs(final List<TileBounds> fromTiles,
+                                         final List<List<TileBounds>> toTileLists,
+                                         final boolean excludeCornerNeighbors,
+                                         final boolean excludeSameSectionNeighbors,
+                                         final boolean includeRelativePosition,
+                                         final Set<OrderedCanvasIdPair> pairs) {
+        for (int i = 0; i < fromTiles.size(); i++) {
+            addDistinctPairs(fromTiles.get(i), toTileLists.get(i),
+                             excludeCornerNeighbors, excludeSameSectionNeighbors, includeRelativePosition,
+                             pairs);
+        }
     }
 
     private static boolean isNeighborCenterInRange(final double min,
@@ -326,9 +397,18 @@ public class TileBoundsRTree {
         return ((neighborCenter >= min) && (neighborCenter <= max));
     }
 
-    private List<TileBounds> convertResultsToList(final Observable<Entry<TileBounds, Geometry>> searchResults) {
+    private static double getDistance(final TileBounds tile,
+                                      final double minX,
+                                      final double minY,
+                                      final double maxX,
+                                      final double maxY) {
+        final double dx = Math.max(Math.max(tile.getMinX() - maxX, minX - tile.getMaxX()), 0);
+        final double dy = Math.max(Math.max(tile.getMinY() - maxY, minY - tile.getMaxY()), 0);
+        return Math.sqrt((dx * dx) + (dy * dy));
+    }
 
-        final List<TileBounds> matchingTiles = new ArrayList<>();
+    private static void addResultsToList(final Observable<Entry<TileBounds, Geometry>> searchResults,
+                                         final List<TileBounds> matchingTiles) {
 
         // TODO: make sure use of toBlocking() here is appropriate
 
@@ -336,8 +416,66 @@ public class TileBoundsRTree {
         for (final Entry<TileBounds, Geometry> entry : collectedResultList) {
             matchingTiles.add(entry.value());
         }
+    }
 
-        return matchingTiles;
+    /**
+     * Neighbor search circles for a list of source tiles along with a packed tree of their bounding boxes.
+     */
+    static class Circles {
+
+        private final double[] centerX;
+        private final double[] centerY;
+        private final double[] radius;
+        private final PackedRTree tree;
+
+        Circles(final List<TileBounds> sourceTileBoundsList,
+                final double neighborRadiusFactor,
+                final Double explicitRadius) {
+
+            final int count = sourceTileBoundsList.size();
+            this.centerX = new double[count];
+            this.centerY = new double[count];
+            this.radius = new double[count];
+
+            final double[] minX = new double[count];
+            final double[] minY = new double[count];
+            final double[] maxX = new double[count];
+            final double[] maxY = new double[count];
+
+            for (int i = 0; i < count; i++) {
+                final TileBounds tileBounds = sourceTileBoundsList.get(i);
+                final double tileWidth = tileBounds.getDeltaX();
+                final double tileHeight = tileBounds.getDeltaY();
+
+                centerX[i] = tileBounds.getMinX() + (tileWidth / 2);
+                centerY[i] = tileBounds.getMinY() + (tileHeight / 2);
+                if (explicitRadius == null) {
+                    radius[i] = Math.max(tileWidth, tileHeight) * neighborRadiusFactor;
+                } else {
+                    radius[i] = explicitRadius;
+                }
+
+                minX[i] = centerX[i] - radius[i];
+                minY[i] = centerY[i] - radius[i];
+                maxX[i] = centerX[i] + radius[i];
+                maxY[i] = centerY[i] + radius[i];
+            }
+
+            this.tree = new PackedRTree(minX, minY, maxX, maxY);
+        }
+
+        int size() {
+            return radius.length;
+        }
+
+        boolean intersects(final int index,
+                           final TileBounds tileBounds) {
+            final double dx = Math.max(Math.max(tileBounds.getMinX() - centerX[index], 0),
+                                       centerX[index] - tileBounds.getMaxX());
+            final double dy = Math.max(Math.max(tileBounds.getMinY() - centerY[index], 0),
+                                       centerY[index] - tileBounds.getMaxY());
+            return ((dx * dx) + (dy * dy)) <= (radius[index] * radius[index]);
+        }
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(TileBoundsRTree.class);
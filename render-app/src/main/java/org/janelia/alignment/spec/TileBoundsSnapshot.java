@@ -0,0 +1,469 @@
+package org.janelia.alignment.spec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, column oriented collection of tile bounds for a range of layers.
+ *
+ * Snapshots are intended for clients that need bounds for large numbers of tiles
+ * (e.g. to build {@link TileBoundsRTree} instances for neighbor pair derivation) but don't
+ * want to pay for the JSON serialization and object overhead of individual {@link TileBounds} instances.
+ * Tiles are ordered by z so that the bounds for each layer can be located with a binary search.
+ *
+ * The binary (big-endian) form written by {@link #writeTo} is:
+ * <pre>
+ *   int       magic number ({@link #MAGIC})
+ *   int       tile count (n)
+ *   utf[n]    tile ids
+ *   double[n] z values
+ *   double[n] minX values
+ *   double[n] minY values
+ *   double[n] maxX values
+ *   double[n] maxY values
+ *   int       distinct section id count (s)
+ *   utf[s]    distinct section ids
+ *   int[n]    section id index for each tile (-1 if the tile has no section id)
+ *   int       distinct group id count (g)
+ *   utf[g]    distinct group ids
+ *   int[n]    group id index for each tile (-1 if the tile has no group id)
+ * </pre>
+ * Missing bound values are stored as {@link Double#NaN}.
+ *
+ * @author Eric Trautman
+ */
+public class TileBoundsSnapshot {
+
+    /** Identifies (version 1) binary snapshot data. */
+    public static final int MAGIC = 0x54425331; // "TBS1"
+
+    public static final String MEDIA_TYPE = "application/octet-stream";
+
+    private final String[] tileIds;
+    private final double[] z;
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+    private final String[] sectionIds;
+    private final int[] sectionIndexes;
+    private final String[] groupIds;
+    private final int[] groupIndexes;
+
+    private TileBoundsSnapshot(final String[] tileIds,
+                               final double[] z,
+                               final double[] minX,
+                               final double[] minY,
+                               final double[] maxX,
+                               final double[] maxY,
+                               final String[] sectionIds,
+                               final int[] sectionIndexes,
+                               final String[] groupIds,
+                               final int[] groupIndexes) {
+        this.tileIds = tileIds;
+        this.z = z;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.sectionIds = sectionIds;
+        this.sectionIndexes = sectionIndexes;
+        this.groupIds = groupIds;
+        this.groupIndexes = groupIndexes;
+    }
+
+    /**
+     * @return number of tiles in this snapshot.
+     */
+    public int size() {
+        return tileIds.length;
+    }
+
+    public String getTileId(final int index) {
+        return tileIds[index];
+    }
+
+    public double getZ(final int index) {
+        return z[index];
+    }
+
+    public double getMinX(final int index) {
+        return minX[index];
+    }
+
+    public double getMinY(final int index) {
+        return minY[index];
+    }
+
+    public double getMaxX(final int index) {
+        return maxX[index];
+    }
+
+    public double getMaxY(final int index) {
+        return maxY[index];
+    }
+
+    public String getSectionId(final int index) {
+        final int sectionIndex = sectionIndexes[index];
+        return sectionIndex < 0 ? null : sectionIds[sectionIndex];
+    }
+
+    public String getGroupId(final int index) {
+        final int groupIndex = groupIndexes[index];
+        return groupIndex < 0 ? null : groupIds[groupIndex];
+    }
+
+    /**
+     * @return bounds object for the tile with the specified index.
+     */
+    public TileBounds getTileBounds(final int index) {
+        return new TileBounds(tileIds[index],
+                              getSectionId(index),
+                              z[index],
+                              toDouble(minX[index]),
+                              toDouble(minY[index]),
+                              toDouble(maxX[index]),
+                              toDouble(maxY[index]));
+    }
+
+    /**
+     * @return sorted list of distinct z values in this snapshot.
+     */
+    public List<Double> getZValues() {
+        final List<Double> zValues = new ArrayList<>();
+        for (int i = 0; i < z.length; i++) {
+            if ((i == 0) || (z[i] != z[i - 1])) {
+                zValues.add(z[i]);
+            }
+        }
+        return zValues;
+    }
+
+    /**
+     * @return bounds for all tiles in the specified layer (or an empty list if the layer is not in this snapshot).
+     */
+    public List<TileBounds> getTileBoundsForZ(final double layerZ) {
+
+        int index = findFirstIndexForZ(layerZ);
+
+        final List<TileBounds> list = new ArrayList<>();
+        for (; (index < z.length) && (z[index] == layerZ); index++) {
+            list.add(getTileBounds(index));
+        }
+
+        return list;
+    }
+
+    /**
+     * @return tree containing all tiles in the specified layer.
+     */
+    public TileBoundsRTree buildRTree(final double layerZ) {
+        return new TileBoundsRTree(layerZ, getTileBoundsForZ(layerZ));
+    }
+
+    /**
+     * Writes this snapshot's binary form to the specified stream.
+     * The stream is flushed but not closed.
+     *
+     * @throws IOException
+     *   if the write fails.
+     */
+    public void writeTo(final OutputStream outputStream)
+            throws IOException {
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+
+        out.writeInt(MAGIC);
+
+        final int count = tileIds.length;
+        out.writeInt(count);
+
+        for (final String tileId : tileIds) {
+            out.writeUTF(tileId);
+        }
+
+        writeDoubles(z, out);
+        writeDoubles(minX, out);
+        writeDoubles(minY, out);
+        writeDoubles(maxX, out);
+        writeDoubles(maxY, out);
+
+        writeIndexedStrings(sectionIds, sectionIndexes, out);
+        writeIndexedStrings(groupIds, groupIndexes, out);
+
+        out.flush();
+    }
+
+    /**
+     * @return snapshot read from the specified stream's binary data.
+     *
+     * @throws IOException
+     *   if the data cannot be read or is not a valid snapshot.
+     */
+    public static TileBoundsSnapshot readFrom(final InputStream inputStream)
+            throws IOException {
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+
+        final int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("invalid tile bounds snapshot, magic number is " + Integer.toHexString(magic) +
+                                  " but should be " + Integer.toHexString(MAGIC));
+        }
+
+        final int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("invalid tile bounds snapshot, tile count is " + count);
+        }
+
+        final String[] tileIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            tileIds[i] = in.readUTF();
+        }
+
+        final double[] z = readDoubles(count, in);
+        final double[] minX = readDoubles(count, in);
+        final double[] minY = readDoubles(count, in);
+        final double[] maxX = readDoubles(count, in);
+        final double[] maxY = readDoubles(count, in);
+
+        final String[] sectionIds = readStrings(in);
+        final int[] sectionIndexes = readIndexes(count, sectionIds.length, in);
+        final String[] groupIds = readStrings(in);
+        final int[] groupIndexes = readIndexes(count, groupIds.length, in);
+
+        return new TileBoundsSnapshot(tileIds, z, minX, minY, maxX, maxY,
+                                      sectionIds, sectionIndexes, groupIds, groupIndexes);
+    }
+
+    private int findFirstIndexForZ(final double layerZ) {
+        int low = 0;
+        int high = z.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (z[middle] < layerZ) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static Double toDouble(final double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static void writeDoubles(final double[] values,
+                                     final DataOutputStream out)
+            throws IOException {
+        for (final double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static void writeIndexedStrings(final String[] strings,
+                                            final int[] indexes,
+                                            final DataOutputStream out)
+            throws IOException {
+        out.writeInt(strings.length);
+        for (final String string : strings) {
+            out.writeUTF(string);
+        }
+        for (final int index : indexes) {
+            out.writeInt(index);
+        }
+    }
+
+    private static double[] readDoubles(final int count,
+                                        final DataInputStream in)
+            throws IOException {
+        final double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    private static String[] readStrings(final DataInputStream in)
+            throws IOException {
+        final int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("invalid tile bounds snapshot, string table size is " + count);
+        }
+        final String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    private static int[] readIndexes(final int count,
+                                     final int numberOfStrings,
+                                     final DataInputStream in)
+            throws IOException {
+        final int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = in.readInt();
+            if ((indexes[i] < -1) || (indexes[i] >= numberOfStrings)) {
+                throw new IOException("invalid tile bounds snapshot, string index " + indexes[i] +
+                                      " is out of range for table with " + numberOfStrings + " values");
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Accumulates tile bounds in primitive arrays and then builds a z ordered snapshot.
+     */
+    public static class Builder {
+
+        private String[] tileIds;
+        private double[] values;
+        private int[] sectionIndexes;
+        private int[] groupIndexes;
+        private int count;
+
+        private final Map<String, Integer> sectionIdToIndexMap;
+        private final Map<String, Integer> groupIdToIndexMap;
+
+        public Builder() {
+            this.tileIds = new String[1024];
+            this.values = new double[tileIds.length * VALUES_PER_TILE];
+            this.sectionIndexes = new int[tileIds.length];
+            this.groupIndexes = new int[tileIds.length];
+            this.count = 0;
+            this.sectionIdToIndexMap = new HashMap<>();
+            this.groupIdToIndexMap = new HashMap<>();
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Adds a tile to the snapshot.  Null bound values are stored as {@link Double#NaN}.
+         *
+         * @throws IllegalArgumentException
+         *   if the tileId or z value is missing.
+         */
+        public Builder add(final String tileId,
+                           final String sectionId,
+                           final String groupId,
+                           final Double z,
+                           final Double minX,
+                           final Double minY,
+                           final Double maxX,
+                           final Double maxY)
+                throws IllegalArgumentException {
+
+            if ((tileId == null) || (z == null)) {
+                throw new IllegalArgumentException("tileId and z must be specified for all snapshot tiles");
+            }
+
+            if (count == tileIds.length) {
+                final int newLength = count * 2;
+                tileIds = Arrays.copyOf(tileIds, newLength);
+                values = Arrays.copyOf(values, newLength * VALUES_PER_TILE);
+                sectionIndexes = Arrays.copyOf(sectionIndexes, newLength);
+                groupIndexes = Arrays.copyOf(groupIndexes, newLength);
+            }
+
+            tileIds[count] = tileId;
+
+            final int valueOffset = count * VALUES_PER_TILE;
+            values[valueOffset] = z;
+            values[valueOffset + 1] = toPrimitive(minX);
+            values[valueOffset + 2] = toPrimitive(minY);
+            values[valueOffset + 3] = toPrimitive(maxX);
+            values[valueOffset + 4] = toPrimitive(maxY);
+
+            sectionIndexes[count] = getIndex(sectionId, sectionIdToIndexMap);
+            groupIndexes[count] = getIndex(groupId, groupIdToIndexMap);
+
+            count++;
+
+            return this;
+        }
+
+        public Builder add(final TileBounds tileBounds,
+                           final String groupId) {
+            return add(tileBounds.getTileId(), tileBounds.getSectionId(), groupId, tileBounds.getZ(),
+                       tileBounds.getMinX(), tileBounds.getMinY(), tileBounds.getMaxX(), tileBounds.getMaxY());
+        }
+
+        /**
+         * @return snapshot of all added tiles ordered by z (tiles with the same z retain the order they were added).
+         */
+        public TileBoundsSnapshot build() {
+
+            final Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingDouble(i -> values[i * VALUES_PER_TILE]));
+
+            final String[] sortedTileIds = new String[count];
+            final double[] z = new double[count];
+            final double[] minX = new double[count];
+            final double[] minY = new double[count];
+            final double[] maxX = new double[count];
+            final double[] maxY = new double[count];
+            final int[] sortedSectionIndexes = new int[count];
+            final int[] sortedGroupIndexes = new int[count];
+
+            int from;
+            int valueOffset;
+            for (int to = 0; to < count; to++) {
+                from = order[to];
+                valueOffset = from * VALUES_PER_TILE;
+                sortedTileIds[to] = tileIds[from];
+                z[to] = values[valueOffset];
+                minX[to] = values[valueOffset + 1];
+                minY[to] = values[valueOffset + 2];
+                maxX[to] = values[valueOffset + 3];
+                maxY[to] = values[valueOffset + 4];
+                sortedSectionIndexes[to] = sectionIndexes[from];
+                sortedGroupIndexes[to] = groupIndexes[from];
+            }
+
+            return new TileBoundsSnapshot(sortedTileIds, z, minX, minY, maxX, maxY,
+                                          toTable(sectionIdToIndexMap), sortedSectionIndexes,
+                                          toTable(groupIdToIndexMap), sortedGroupIndexes);
+        }
+
+        private static double toPrimitive(final Double value) {
+            return value == null ? Double.NaN : value;
+        }
+
+        private static int getIndex(final String value,
+                                    final Map<String, Integer> valueToIndexMap) {
+            int index = -1;
+            if (value != null) {
+                index = valueToIndexMap.computeIfAbsent(value, v -> valueToIndexMap.size());
+            }
+            return index;
+        }
+
+        private static String[] toTable(final Map<String, Integer> valueToIndexMap) {
+            final String[] table = new String[valueToIndexMap.size()];
+            valueToIndexMap.forEach((value, index) -> table[index] = value);
+            return table;
+        }
+
+        private static final int VALUES_PER_TILE = 5;
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+}
@@ -75,6 +75,46 @@ public class TileSpec implements Serializable {
         this.transforms = new ListTransformSpec();
     }
 
+    /**
+     * @return a copy of this tile spec that can be modified (e.g. flattened or have intensity
+     *         and mipmap settings applied) without changing this spec.
+     *         The copy's transform list references the same transform specs as this spec,
+     *         so the specs themselves should be treated as read-only.
+     */
+    public TileSpec getCopyWithSharedTransformSpecs() {
+        final TileSpec copy = new TileSpec();
+        copy.tileId = tileId;
+        copy.layout = layout;
+        copy.groupId = groupId;
+        copy.z = z;
+        copy.minX = minX;
+        copy.minY = minY;
+        copy.maxX = maxX;
+        copy.maxY = maxY;
+        copy.width = width;
+        copy.height = height;
+        copy.minIntensity = minIntensity;
+        copy.maxIntensity = maxIntensity;
+        copy.mipmapLevels = mipmapLevels == null ? null : new TreeMap<>(mipmapLevels);
+        if (channels != null) {
+            copy.channels = new ArrayList<>(channels.size());
+            for (final ChannelSpec channelSpec : channels) {
+                copy.channels.add(channelSpec.getCopy());
+            }
+        }
+        copy.mipmapPathBuilder = mipmapPathBuilder;
+        if (transforms == null) {
+            copy.transforms = null;
+        } else {
+            copy.transforms = new ListTransformSpec(transforms.getId(), transforms.getMetaData());
+            for (int i = 0; i < transforms.size(); i++) {
+                copy.transforms.addSpec(transforms.getSpec(i));
+            }
+        }
+        copy.meshCellSize = meshCellSize;
+        return copy;
+    }
+
     public String getTileId() {
         return tileId;
     }
@@ -0,0 +1,174 @@
+package org.janelia.alignment.spec;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import mpicbg.trakem2.transform.CoordinateTransform;
+
+import org.janelia.alignment.transform.AffineWarpFieldTransform;
+
+/**
+ * Process-wide cache of parsed {@link CoordinateTransform} prototypes keyed by class name and data string.
+ *
+ * Initializing transforms with large data strings (e.g. thin plate spline and warp field transforms)
+ * requires decoding large coefficient arrays.  Since the same transforms are typically instantiated
+ * many times (once for each render or coordinate mapping request), each distinct transform is only parsed
+ * once and callers receive {@link CoordinateTransform#copy() copies} of the cached prototype.
+ * Prototypes are never exposed, so they remain unchanged for the life of the cache.
+ *
+ * Only classes with a verified deep {@link CoordinateTransform#copy()} implementation are cached
+ * (see {@link #COPYABLE_CLASS_NAMES}) since a shallow copy would let callers change the shared prototype.
+ * Transforms with short data strings (e.g. affines) are cheaper to parse than to look up,
+ * so they are not cached either.
+ *
+ * @author Eric Trautman
+ */
+public class TransformPrototypeCache {
+
+    /** Data strings shorter than this are simply parsed for each instance. */
+    public static final int MIN_CACHED_DATA_STRING_LENGTH = 256;
+
+    /** Default max number of bytes for cached keys and decoded prototypes. */
+    public static final long DEFAULT_MAX_CACHED_BYTES = 256 * 1024 * 1024;
+
+    /**
+     * Names of transform classes whose copy method is known to deep copy all mutable state.
+     * Each class added here needs a test that verifies changes to a copy do not affect the prototype.
+     */
+    static final Set<String> COPYABLE_CLASS_NAMES =
+            Collections.singleton(AffineWarpFieldTransform.class.getName());
+
+    private static final Cache<PrototypeKey, CoordinateTransform> CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(DEFAULT_MAX_CACHED_BYTES)
+            .weigher((Weigher<PrototypeKey, CoordinateTransform>) TransformPrototypeCache::getWeight)
+            .recordStats()
+            .build();
+
+    /**
+     * @param  className   name of transformation implementation (java) class.
+     * @param  dataString  data with which transformation implementation should be initialized.
+     * @param  loader      parses a new instance if the prototype is not already cached.
+     *
+     * @return a new instance of the specified transform that is safe for the caller to modify.
+     *
+     * @throws IllegalArgumentException
+     *   if a new instance cannot be loaded.
+     */
+    static CoordinateTransform getInstance(final String className,
+                                           final String dataString,
+                                           final Callable<CoordinateTransform> loader)
+            throws IllegalArgumentException {
+
+        final CoordinateTransform instance;
+
+        if ((dataString.length() < MIN_CACHED_DATA_STRING_LENGTH) || (! COPYABLE_CLASS_NAMES.contains(className))) {
+
+            instance = load(loader);
+
+        } else {
+
+            final CoordinateTransform prototype;
+            try {
+                prototype = CACHE.get(new PrototypeKey(className, dataString), loader);
+            } catch (final ExecutionException | UncheckedExecutionException | ExecutionError e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IllegalArgumentException) {
+                    throw (IllegalArgumentException) cause;
+                }
+                throw new IllegalArgumentException("failed to create instance of transform class '" +
+                                                   className + "'", cause);
+            }
+
+            instance = prototype.copy();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Removes all cached prototypes.
+     */
+    public static void invalidateAll() {
+        CACHE.invalidateAll();
+    }
+
+    /**
+     * @return string with current cache size and usage statistics.
+     */
+    public static String getStats() {
+        return "{numberOfPrototypes: " + CACHE.size() + ", stats: " + CACHE.stats() + '}';
+    }
+
+    /**
+     * @return approximate number of bytes retained for the specified cache entry
+     *         (decoded prototypes are typically much larger than their data strings).
+     */
+    static int getWeight(final PrototypeKey key,
+                         final CoordinateTransform prototype) {
+
+        final long keyBytes = 2L * (key.className.length() + key.dataString.length());
+
+        final long prototypeBytes;
+        if (prototype instanceof AffineWarpFieldTransform) {
+            prototypeBytes = 8L * ((AffineWarpFieldTransform) prototype).getAffineWarpField().getValues().length;
+        } else {
+            // assume each data string character decodes to at most one double
+            prototypeBytes = 8L * key.dataString.length();
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, keyBytes + prototypeBytes);
+    }
+
+    private static CoordinateTransform load(final Callable<CoordinateTransform> loader)
+            throws IllegalArgumentException {
+        try {
+            return loader.call();
+        } catch (final IllegalArgumentException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IllegalArgumentException("failed to create transform instance", e);
+        }
+    }
+
+    /**
+     * Identifies a distinct transform.
+     * Data strings are compared in full so that hash collisions can never return the wrong prototype.
+     */
+    static class PrototypeKey {
+
+        private final String className;
+        private final String dataString;
+
+        PrototypeKey(final String className,
+                     final String dataString) {
+            this.className = className;
+            this.dataString = dataString;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final PrototypeKey that = (PrototypeKey) o;
+            return className.equals(that.className) && dataString.equals(that.dataString);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * className.hashCode()) + dataString.hashCode();
+        }
+    }
+
+}
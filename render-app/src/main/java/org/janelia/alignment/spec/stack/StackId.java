@@ -15,6 +15,8 @@ import org.janelia.alignment.util.CollectionNameUtil;
  */
 public class StackId implements Comparable<StackId>, Serializable {
 
+    public static final String DIRTY_Z_COLLECTION_SUFFIX = "dirty_z";
+    public static final String OWNED_Z_COLLECTION_SUFFIX = "owned_z";
     public static final String SECTION_COLLECTION_SUFFIX = "section";
     public static final String TILE_COLLECTION_SUFFIX = "tile";
     public static final String TRANSFORM_COLLECTION_SUFFIX = "transform";
@@ -101,6 +103,16 @@ public class StackId implements Comparable<StackId>, Serializable {
         return v;
     }
 
+    @JsonIgnore
+    public String getDirtyZCollectionName() {
+        return getCollectionName(DIRTY_Z_COLLECTION_SUFFIX);
+    }
+
+    @JsonIgnore
+    public String getOwnedZCollectionName() {
+        return getCollectionName(OWNED_Z_COLLECTION_SUFFIX);
+    }
+
     @JsonIgnore
     public String getSectionCollectionName() {
         return getCollectionName(SECTION_COLLECTION_SUFFIX);
@@ -26,6 +26,7 @@ public class StackMetaData implements Comparable<StackMetaData>, Serializable {
     private final StackVersion currentVersion;
     private StackStats stats;
     private HierarchicalStack hierarchicalData;
+    private StackId parentStackId;
 
     // no-arg constructor needed for JSON deserialization
     @SuppressWarnings("unused")
@@ -37,6 +38,7 @@ public class StackMetaData implements Comparable<StackMetaData>, Serializable {
         this.currentVersion = null;
         this.stats = null;
         this.hierarchicalData = null;
+        this.parentStackId = null;
     }
 
     public StackMetaData(final StackId stackId,
@@ -48,6 +50,7 @@ public class StackMetaData implements Comparable<StackMetaData>, Serializable {
         this.currentVersion = currentVersion;
         this.stats = null;
         this.hierarchicalData = null;
+        this.parentStackId = null;
     }
 
     public StackId getStackId() {
@@ -105,6 +108,7 @@ public class StackMetaData implements Comparable<StackMetaData>, Serializable {
     public StackMetaData getNextVersion(final StackVersion newVersion) {
         final StackMetaData metaData = new StackMetaData(stackId, newVersion);
         metaData.currentVersionNumber = currentVersionNumber + 1;
+        metaData.parentStackId = parentStackId;
         return metaData;
     }
 
@@ -291,6 +295,24 @@ public class StackMetaData implements Comparable<StackMetaData>, Serializable {
         this.hierarchicalData = hierarchicalData;
     }
 
+    /**
+     * @return identifier of the (read only) stack from which this stack was derived
+     *         or null if this stack stores all of its own data.
+     *         Derived stacks only store tiles for layers that have been changed,
+     *         all other layers are read from the parent stack.
+     */
+    public StackId getParentStackId() {
+        return parentStackId;
+    }
+
+    public boolean isDerived() {
+        return parentStackId != null;
+    }
+
+    public void setParentStackId(final StackId parentStackId) {
+        this.parentStackId = parentStackId;
+    }
+
     @SuppressWarnings({"ConstantConditions", "NullableProblems"})
     @Override
     public int compareTo(final StackMetaData that) {
@@ -316,6 +338,7 @@ public class StackMetaData implements Comparable<StackMetaData>, Serializable {
         derivedMetaData.state = fromStackMetaData.state;
         derivedMetaData.currentVersionNumber = fromStackMetaData.currentVersionNumber;
         derivedMetaData.stats = fromStackMetaData.stats;
+        derivedMetaData.parentStackId = fromStackMetaData.parentStackId;
         return derivedMetaData;
     }
 
@@ -12,6 +12,7 @@ import ij.process.ImageProcessor;
 
 import mpicbg.trakem2.util.Downsampler;
 
+import org.janelia.alignment.mipmap.MipmapContainer;
 import org.janelia.alignment.protocol.s3.S3Opener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -236,11 +237,16 @@ public class ImageProcessorCache {
 
             // TODO: use Bio Formats to load strange formats
 
-            // openers keep state about the file being opened, so we need to create a new opener for each load
-            final Opener opener = new S3Opener();
-            opener.setSilentMode(true);
+            final ImagePlus imagePlus;
+            if (MipmapContainer.isLevelUrl(url)) {
+                imagePlus = MipmapContainer.openLevel(url);
+            } else {
+                // openers keep state about the file being opened, so we need to create a new opener for each load
+                final Opener opener = new S3Opener();
+                opener.setSilentMode(true);
+                imagePlus = opener.openURL(url);
+            }
 
-            final ImagePlus imagePlus = opener.openURL(url);
             if (imagePlus == null) {
                 throw new IllegalArgumentException("failed to create imagePlus instance for '" + url + "'");
             }
@@ -115,6 +115,19 @@ public class LabelImageProcessorCache extends ImageProcessorCache {
         return labelColor;
     }
 
+    /**
+     * @param  url  level zero image url for a tile.
+     *
+     * @return the 16-bit label assigned to the tile with the specified url.
+     *
+     * @throws IllegalArgumentException
+     *   if no label has been assigned to the url.
+     */
+    public short getLabelForUrl(final String url)
+            throws IllegalArgumentException {
+        return (short) getColorForUrl(url).getRGB();
+    }
+
     /**
      * Loads a label image processor when cache misses occur for source images.
      * Masks are loaded in the standard manner.
@@ -142,10 +155,10 @@ public class LabelImageProcessorCache extends ImageProcessorCache {
             imageProcessor = super.loadImageProcessor(url, downSampleLevels, true, convertTo16Bit);
         } else {
 
-            final Color labelColor = getColorForUrl(url);
+            final short label = getLabelForUrl(url);
             final TileSpec tileSpec = urlToTileSpec.get(url);
             final short[] pixels = new short[tileSpec.getWidth() * tileSpec.getHeight()];
-            Arrays.fill(pixels, (short) labelColor.getRGB());
+            Arrays.fill(pixels, label);
 
             imageProcessor = new ShortProcessor(tileSpec.getWidth(), tileSpec.getHeight(), pixels, null);
 
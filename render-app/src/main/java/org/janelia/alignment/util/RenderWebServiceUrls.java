@@ -63,6 +63,14 @@ public class RenderWebServiceUrls implements Serializable {
         return getMatchCollectionUrlString() + "/matches";
     }
 
+    public String getMatchStreamUrlString() {
+        return getMatchCollectionUrlString() + "/matchStream";
+    }
+
+    public String getMatchGraphUrlString() {
+        return getMatchCollectionUrlString() + "/matchGraph";
+    }
+
     public String getMatchMultiConsensusGroupIdsUrlString() {
         return getMatchCollectionUrlString() + "/multiConsensusGroupIds";
     }
@@ -97,6 +105,10 @@ public class RenderWebServiceUrls implements Serializable {
         return getStackUrlString(fromStack) + "/cloneTo/" + toStack;
     }
 
+    public String getMaterializeUrlString(final String stack) {
+        return getStackUrlString(stack) + "/materialize";
+    }
+
     public String getStackStateUrlString(final String stack,
                                          final StackState stackState) {
         return getStackUrlString(stack) + "/state/" + stackState;
@@ -127,6 +139,18 @@ public class RenderWebServiceUrls implements Serializable {
         return getZUrlString(stack, z) + "/tileBounds";
     }
 
+    public String getTileBoundsSnapshotUrlString(final String stack) {
+        return getStackUrlString(stack) + "/tileBoundsSnapshot";
+    }
+
+    public String getTilePairsUrlString(final String stack) {
+        return getStackUrlString(stack) + "/tilePairs";
+    }
+
+    public String getTilePairStreamUrlString(final String stack) {
+        return getStackUrlString(stack) + "/tilePairStream";
+    }
+
     public String getTileIdsUrlString(final String stack,
                                       final double z) {
         return getZUrlString(stack, z) + "/tileIds";
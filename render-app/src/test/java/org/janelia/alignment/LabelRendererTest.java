@@ -0,0 +1,104 @@
+package org.janelia.alignment;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferUShort;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.util.LabelImageProcessorCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LabelRenderer} class.
+ *
+ * @author Eric Trautman
+ */
+public class LabelRendererTest {
+
+    @Test
+    public void testRenderDirectPreservesLabels() throws Exception {
+
+        final RenderParameters params = loadStitchTestParameters();
+        final LabelImageProcessorCache cache =
+                new LabelImageProcessorCache(1000000, false, false, params.getTileSpecs());
+
+        final Set<Integer> tileLabels = new HashSet<>();
+        for (final TileSpec tileSpec : params.getTileSpecs()) {
+            final String imageUrl = tileSpec.getFirstMipmapEntry().getValue().getImageUrl();
+            tileLabels.add(cache.getLabelForUrl(imageUrl) & 0xffff);
+        }
+
+        final BufferedImage directImage = params.openTargetImage(BufferedImage.TYPE_USHORT_GRAY);
+        LabelRenderer.renderDirect(params, directImage, cache);
+
+        final Set<Integer> renderedLabels = new HashSet<>();
+        for (final short pixel : getPixels(directImage)) {
+            final int value = pixel & 0xffff;
+            if (value != LabelImageProcessorCache.MAX_LABEL_INTENSITY) {
+                Assert.assertTrue("rendered value " + value + " is not a tile label", tileLabels.contains(value));
+                renderedLabels.add(value);
+            }
+        }
+
+        Assert.assertEquals("every tile label should be rendered", tileLabels, renderedLabels);
+    }
+
+    @Test
+    public void testRenderDirectMatchesStandardRender() throws Exception {
+
+        final RenderParameters params = loadStitchTestParameters();
+        final LabelImageProcessorCache cache =
+                new LabelImageProcessorCache(1000000, false, false, params.getTileSpecs());
+
+        final BufferedImage directImage = params.openTargetImage(BufferedImage.TYPE_USHORT_GRAY);
+        LabelRenderer.renderDirect(params, directImage, cache);
+
+        final BufferedImage standardImage = params.openTargetImage(BufferedImage.TYPE_USHORT_GRAY);
+        LabelRenderer.render(params, standardImage, cache);
+
+        final short[] directPixels = getPixels(directImage);
+        final short[] standardPixels = getPixels(standardImage);
+
+        // the paths only differ along mask edges where the standard path samples masks with interpolation
+        int differentPixelCount = 0;
+        for (int i = 0; i < directPixels.length; i++) {
+            if (directPixels[i] != standardPixels[i]) {
+                differentPixelCount++;
+            }
+        }
+
+        final double differentFraction = differentPixelCount / (double) directPixels.length;
+        Assert.assertTrue(differentPixelCount + " of " + directPixels.length + " pixels differ",
+                          differentFraction < 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRenderDirectRequiresShortTarget() throws Exception {
+
+        final RenderParameters params = loadStitchTestParameters();
+        final LabelImageProcessorCache cache =
+                new LabelImageProcessorCache(1000000, false, false, params.getTileSpecs());
+
+        LabelRenderer.renderDirect(params, params.openTargetImage(BufferedImage.TYPE_INT_ARGB), cache);
+    }
+
+    private static RenderParameters loadStitchTestParameters() {
+
+        final String[] args = {
+                "--tile_spec_url", "src/test/resources/stitch-test/test_4_tiles_level_1.json",
+                "--out", "test-label.png", // not used but required
+                "--width", "4576",
+                "--height", "4173",
+                "--scale", "0.05"
+        };
+
+        return RenderParameters.parseCommandLineArgs(args);
+    }
+
+    private static short[] getPixels(final BufferedImage image) {
+        return ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+    }
+
+}
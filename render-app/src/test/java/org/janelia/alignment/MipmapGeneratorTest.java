@@ -1,5 +1,7 @@
 package org.janelia.alignment;
 
+import ij.ImagePlus;
+
 import junit.framework.Assert;
 
 import org.janelia.alignment.spec.ChannelSpec;
@@ -60,6 +62,15 @@ public class MipmapGeneratorTest {
 
     @Test
     public void testGenerateMissingMipmapFiles() throws Exception {
+        testGenerateMissingMipmapFiles(false);
+    }
+
+    @Test
+    public void testGenerateCascadedMipmapFiles() throws Exception {
+        testGenerateMissingMipmapFiles(true);
+    }
+
+    private void testGenerateMissingMipmapFiles(final boolean cascade) throws Exception {
         final File parametersFile = new File("src/test/resources/mipmap-test/generator_parameters.json");
         final MipmapGeneratorParameters parameters = MipmapGeneratorParameters.parseJson(parametersFile);
         parameters.initializeDerivedValues();
@@ -71,7 +82,9 @@ public class MipmapGeneratorTest {
         final MipmapGenerator mipmapGenerator = new MipmapGenerator(baseMipmapDirectory,
                                                                     parameters.getFormat(),
                                                                     parameters.getQuality(),
-                                                                    true);
+                                                                    true,
+                                                                    cascade,
+                                                                    false);
         ImageAndMask consolidatedLevel1imageAndMask = null;
         ImageAndMask consolidatedLevel2imageAndMask = null;
         TileSpec tileSpec;
@@ -91,6 +104,8 @@ public class MipmapGeneratorTest {
             Assert.assertTrue("updated tile spec is missing level 1 mipmap", channelSpec.hasMipmap(1));
             Assert.assertTrue("updated tile spec is missing level 2 mipmap", channelSpec.hasMipmap(2));
             Assert.assertFalse("updated tile spec should not have level 3 mipmap", channelSpec.hasMipmap(3));
+            Assert.assertTrue("level 2 mipmap file was not written",
+                              new File(channelSpec.getMipmap(2).getImageFilePath()).exists());
 
             // Consolidation Test:
             // -  Tiles 0 and 1 (with zipped masks) should have the same (consolidated) level 1 and level 2 masks.
@@ -111,6 +126,85 @@ public class MipmapGeneratorTest {
 
     }
 
+    @Test
+    public void testGenerateMipmapContainers() throws Exception {
+        final File parametersFile = new File("src/test/resources/mipmap-test/generator_parameters.json");
+        final MipmapGeneratorParameters parameters = MipmapGeneratorParameters.parseJson(parametersFile);
+        parameters.initializeDerivedValues();
+
+        final MipmapGenerator mipmapGenerator = new MipmapGenerator(baseMipmapDirectory,
+                                                                    parameters.getFormat(),
+                                                                    parameters.getQuality(),
+                                                                    false,
+                                                                    false,
+                                                                    true);
+
+        for (final TileSpec tileSpec : parameters.getTileSpecs()) {
+
+            final ChannelSpec channelSpec = tileSpec.getAllChannels().get(0);
+
+            mipmapGenerator.generateMissingMipmapFiles(tileSpec, 2);
+
+            Assert.assertTrue("updated tile spec is missing level 1 mipmap", channelSpec.hasMipmap(1));
+            Assert.assertTrue("updated tile spec is missing level 2 mipmap", channelSpec.hasMipmap(2));
+
+            final ImageAndMask level2ImageAndMask = channelSpec.getMipmap(2);
+            level2ImageAndMask.validate();
+
+            final ImagePlus level0Image = Utils.openImagePlusUrl(channelSpec.getMipmap(0).getImageUrl());
+            final ImagePlus level2Image = Utils.openImagePlusUrl(level2ImageAndMask.getImageUrl());
+            Assert.assertEquals("invalid level 2 width", level0Image.getWidth() / 4, level2Image.getWidth());
+
+            if (level2ImageAndMask.hasMask()) {
+                Assert.assertTrue("mask should be stored in same container as image",
+                                  level2ImageAndMask.getMaskUrl().startsWith(
+                                          level2ImageAndMask.getImageUrl().substring(
+                                                  0, level2ImageAndMask.getImageUrl().indexOf('#'))));
+            }
+        }
+    }
+
+    @Test
+    public void testRaiseGreatestMipmapLevelForExistingContainer() throws Exception {
+        final File parametersFile = new File("src/test/resources/mipmap-test/generator_parameters.json");
+        final MipmapGeneratorParameters parameters = MipmapGeneratorParameters.parseJson(parametersFile);
+        parameters.initializeDerivedValues();
+
+        final MipmapGenerator mipmapGenerator = new MipmapGenerator(baseMipmapDirectory,
+                                                                    parameters.getFormat(),
+                                                                    parameters.getQuality(),
+                                                                    false,
+                                                                    false,
+                                                                    true);
+
+        final TileSpec tileSpec = parameters.getTileSpecs().get(0);
+        final ChannelSpec channelSpec = tileSpec.getAllChannels().get(0);
+
+        mipmapGenerator.generateMissingMipmapFiles(tileSpec, 2);
+
+        final String level1ImageUrl = channelSpec.getMipmap(1).getImageUrl();
+        final String level2ImageUrl = channelSpec.getMipmap(2).getImageUrl();
+
+        // simulate a later run with a greater max level against a tile spec that already references the container
+        mipmapGenerator.generateMissingMipmapFiles(tileSpec, 4);
+
+        Assert.assertEquals("level 1 url should not change", level1ImageUrl, channelSpec.getMipmap(1).getImageUrl());
+        Assert.assertEquals("level 2 url should not change", level2ImageUrl, channelSpec.getMipmap(2).getImageUrl());
+
+        final ImagePlus level0Image = Utils.openImagePlusUrl(channelSpec.getMipmap(0).getImageUrl());
+        for (int level = 1; level <= 4; level++) {
+            final ImageAndMask imageAndMask = channelSpec.getMipmap(level);
+            Assert.assertNotNull("updated tile spec is missing level " + level + " mipmap", imageAndMask);
+            final ImagePlus levelImage = Utils.openImagePlusUrl(imageAndMask.getImageUrl());
+            Assert.assertEquals("invalid level " + level + " width",
+                                level0Image.getWidth() >> level, levelImage.getWidth());
+            if (imageAndMask.hasMask()) {
+                Assert.assertNotNull("level " + level + " mask should be readable",
+                                     Utils.openImagePlusUrl(imageAndMask.getMaskUrl()));
+            }
+        }
+    }
+
     private void validateMask(final ChannelSpec channelSpec,
                               final int specIndex,
                               final ImageAndMask consolidatedImageAndMask,
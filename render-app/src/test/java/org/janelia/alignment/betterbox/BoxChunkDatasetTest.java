@@ -0,0 +1,165 @@
+package org.janelia.alignment.betterbox;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.util.FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BoxChunkDataset} class.
+ *
+ * @author Eric Trautman
+ */
+public class BoxChunkDatasetTest {
+
+    private File testDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("box_chunk_dataset_test_").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursive(testDirectory);
+    }
+
+    @Test
+    public void testWriteAndReadChunks() throws Exception {
+        testWriteAndReadChunks(BoxChunkDataset.GZIP_COMPRESSION, false);
+        testWriteAndReadChunks(BoxChunkDataset.RAW_COMPRESSION, false);
+        testWriteAndReadChunks(BoxChunkDataset.GZIP_COMPRESSION, true);
+    }
+
+    @Test
+    public void testManifest() throws Exception {
+
+        final BoxChunkDataset dataset = buildDataset(BoxChunkDataset.GZIP_COMPRESSION, false);
+
+        Assert.assertEquals("manifest should be empty before any chunks are completed",
+                            0, dataset.readManifest(0, 3.0).size());
+
+        dataset.appendManifest(0, 3.0, Arrays.asList(new BoxData(3.0, 0, 0, 0), new BoxData(3.0, 0, 1, 2)));
+        dataset.appendManifest(0, 3.0, Arrays.asList(new BoxData(3.0, 0, 2, 1)));
+        dataset.appendManifest(1, 3.0, Arrays.asList(new BoxData(3.0, 1, 0, 0)));
+
+        final Set<String> completedKeys = dataset.readManifest(0, 3.0);
+        Assert.assertEquals("invalid number of completed level 0 chunks", 3, completedKeys.size());
+        Assert.assertTrue("missing completed chunk",
+                          completedKeys.contains(BoxChunkDataset.getManifestKey(new BoxData(3.0, 0, 2, 1))));
+
+        Assert.assertEquals("invalid number of completed level 1 chunks", 1, dataset.readManifest(1, 3.0).size());
+        Assert.assertEquals("invalid number of completed chunks for other layer", 0, dataset.readManifest(0, 4.0).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCompression() throws Exception {
+        buildDataset("blosc", false);
+    }
+
+    private void testWriteAndReadChunks(final String compression,
+                                        final boolean isLabel) throws Exception {
+
+        FileUtil.deleteRecursive(new File(testDirectory, "boxes.n5"));
+
+        final BoxChunkDataset dataset = buildDataset(compression, isLabel);
+        dataset.writeAttributes(1);
+
+        final String context = compression + (isLabel ? " label" : "") + " dataset";
+
+        Assert.assertArrayEquals("invalid level 1 dimensions for " + context,
+                                 new long[] { 126, 75, 6 }, dataset.getDimensions(1));
+        Assert.assertTrue("missing level 1 attributes for " + context,
+                          new File(dataset.getRootPath(), "s1/attributes.json").exists());
+
+        final int maxValue = isLabel ? 65535 : 255;
+
+        // interior box is full size and edge box is cropped to the level dimensions
+        final BoxData interiorBox = new BoxData(5.0, 0, 0, 1);
+        final BoxData edgeBox = new BoxData(5.0, 0, 1, 2);
+
+        dataset.writeChunk(interiorBox, buildImage(isLabel, 7));
+        dataset.writeChunk(edgeBox, buildImage(isLabel, maxValue));
+
+        Assert.assertTrue("missing chunk file for " + context,
+                          new File(dataset.getRootPath(), "s0/2/1/5").exists());
+
+        final BufferedImage interiorImage = dataset.readChunk(interiorBox);
+        Assert.assertEquals("invalid interior width for " + context, BOX_SIZE, interiorImage.getWidth());
+        Assert.assertEquals("invalid interior value for " + context,
+                            7, interiorImage.getRaster().getSample(BOX_SIZE - 1, BOX_SIZE - 1, 0));
+
+        // level 0 dimensions are 251x150, so the edge box only contains 51x50 pixels
+        final BufferedImage edgeImage = dataset.readChunk(edgeBox);
+        Assert.assertEquals("invalid edge value for " + context,
+                            maxValue, edgeImage.getRaster().getSample(50, 49, 0));
+        Assert.assertEquals("edge value outside of level should be empty for " + context,
+                            0, edgeImage.getRaster().getSample(51, 49, 0));
+        Assert.assertEquals("edge value outside of level should be empty for " + context,
+                            0, edgeImage.getRaster().getSample(50, 50, 0));
+    }
+
+    @Test
+    public void testInvalidChunkPositions() throws Exception {
+
+        final BoxChunkDataset dataset = buildDataset(BoxChunkDataset.GZIP_COMPRESSION, false);
+
+        Assert.assertEquals("invalid z index", 3, BoxChunkDataset.getZIndex(3.0));
+
+        for (final double z : new double[] { 3.5, -1.0 }) {
+            try {
+                dataset.getChunkFile(new BoxData(z, 0, 0, 0));
+                Assert.fail("chunk file should not be returned for z " + z);
+            } catch (final IllegalArgumentException e) {
+                Assert.assertTrue("exception should identify invalid z " + z, e.getMessage().contains(String.valueOf(z)));
+            }
+        }
+
+        try {
+            dataset.readManifest(0, 3.5);
+            Assert.fail("manifest should not be read for non-integral z");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue("exception should identify invalid z", e.getMessage().contains("3.5"));
+        }
+
+        try {
+            new BoxChunkDataset(new File(testDirectory, "negative.n5").getAbsolutePath(),
+                                BOX_SIZE, BOX_SIZE, false, BoxChunkDataset.GZIP_COMPRESSION,
+                                new Bounds(-10.0, 0.0, 1.0, 250.4, 150.0, 5.0));
+            Assert.fail("dataset should not be created for stack with negative bounds");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue("exception should mention negative coordinates",
+                              e.getMessage().contains("negative"));
+        }
+    }
+
+    private BoxChunkDataset buildDataset(final String compression,
+                                         final boolean isLabel) {
+        final Bounds stackBounds = new Bounds(0.0, 0.0, 1.0, 250.4, 150.0, 5.0);
+        return new BoxChunkDataset(new File(testDirectory, "boxes.n5").getAbsolutePath(),
+                                   BOX_SIZE, BOX_SIZE, isLabel, compression, stackBounds);
+    }
+
+    private BufferedImage buildImage(final boolean isLabel,
+                                     final int value) {
+        final BufferedImage image = new BufferedImage(BOX_SIZE, BOX_SIZE,
+                                                      isLabel ? BufferedImage.TYPE_USHORT_GRAY :
+                                                                BufferedImage.TYPE_BYTE_GRAY);
+        for (int x = 0; x < BOX_SIZE; x++) {
+            for (int y = 0; y < BOX_SIZE; y++) {
+                image.getRaster().setSample(x, y, 0, value);
+            }
+        }
+        return image;
+    }
+
+    private static final int BOX_SIZE = 100;
+}
@@ -1,6 +1,9 @@
 package org.janelia.alignment.betterbox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 
 import org.janelia.alignment.spec.Bounds;
@@ -100,6 +103,84 @@ public class BoxDataPyramidForLayerTest {
         }
     }
 
+    @Test
+    public void testBuildWithHilbertOrder() throws Exception {
+
+        final double z = 5.0;
+        final List<TileBounds> tileBoundsList = new ArrayList<>();
+        for (int y = 0; y < 60; y += 20) {
+            for (int x = 0; x < 100; x += 20) {
+                tileBoundsList.add(new TileBounds("tile_" + tileBoundsList.size(), "5.0", z,
+                                                  (double) x, (double) y, x + 20.0, y + 20.0));
+            }
+        }
+        final Bounds layerBounds = new Bounds(0.0, 0.0, 100.0, 60.0);
+
+        final List<BoxData> parentOrderList =
+                new BoxDataPyramidForLayer(z, layerBounds, 10, 10, tileBoundsList, 3,
+                                           false, null, null).getPyramidList();
+        final List<BoxData> hilbertOrderList =
+                new BoxDataPyramidForLayer(z, layerBounds, 10, 10, tileBoundsList, 3,
+                                           false, null, null, BoxData.HILBERT_ORDER_COMPARATOR).getPyramidList();
+
+        Assert.assertEquals("hilbert order should include the same boxes",
+                            new HashSet<>(parentOrderList), new HashSet<>(hilbertOrderList));
+
+        BoxData previousBox = null;
+        int expectedIndex = 0;
+        for (final BoxData box : hilbertOrderList) {
+            if ((previousBox != null) && (previousBox.getLevel() == box.getLevel())) {
+                Assert.assertTrue("box " + box + " should be sorted after " + previousBox,
+                                  BoxData.HILBERT_ORDER_COMPARATOR.compare(previousBox, box) < 0);
+                expectedIndex++;
+            } else {
+                expectedIndex = 0;
+            }
+            Assert.assertEquals("invalid layer level index for box " + box,
+                                expectedIndex, box.getLayerLevelIndex());
+            previousBox = box;
+        }
+    }
+
+    @Test
+    public void testBuildWithDirtyBoxes() throws Exception {
+
+        final double z = 5.0;
+        final List<TileBounds> tileBoundsList = new ArrayList<>();
+        for (int y = 0; y < 60; y += 20) {
+            for (int x = 0; x < 100; x += 20) {
+                tileBoundsList.add(new TileBounds("tile_" + tileBoundsList.size(), "5.0", z,
+                                                  (double) x, (double) y, x + 20.0, y + 20.0));
+            }
+        }
+        final Bounds layerBounds = new Bounds(0.0, 0.0, 100.0, 60.0);
+
+        final DirtyBoxesForLayer dirtyBoxes = new DirtyBoxesForLayer(z, 10, 10, 3);
+        dirtyBoxes.addBounds(new Bounds(41.0, 41.0, 49.0, 49.0));
+        // region without any tiles (e.g. where a tile used to be)
+        dirtyBoxes.addBounds(new Bounds(501.0, 501.0, 509.0, 509.0));
+
+        final BoxDataPyramidForLayer boxPyramid =
+                new BoxDataPyramidForLayer(z, layerBounds, 10, 10, tileBoundsList, 3,
+                                           false, null, null, Comparator.naturalOrder(), dirtyBoxes);
+
+        final List<BoxData> expectedPyramidList = Arrays.asList(new BoxData(z, 0, 4, 4),
+                                                                new BoxData(z, 1, 2, 2),
+                                                                new BoxData(z, 2, 1, 1),
+                                                                new BoxData(z, 3, 0, 0));
+        Assert.assertEquals("invalid pyramid list", expectedPyramidList, boxPyramid.getPyramidList());
+        Assert.assertEquals("invalid level box counts", Arrays.asList(1, 1, 1, 1), boxPyramid.getLevelBoxCounts());
+
+        final BoxData levelOneBox = boxPyramid.getPyramidList().get(1);
+        Assert.assertEquals("clean siblings should still be included as children", 4, levelOneBox.getChildCount());
+
+        final List<BoxData> expectedObsoleteList = Arrays.asList(new BoxData(z, 0, 50, 50),
+                                                                 new BoxData(z, 1, 25, 25),
+                                                                 new BoxData(z, 2, 12, 12),
+                                                                 new BoxData(z, 3, 6, 6));
+        Assert.assertEquals("invalid obsolete list", expectedObsoleteList, boxPyramid.getObsoleteBoxes());
+    }
+
     private static final String[][] EXPECTED_LIST = {
             { "/0/99/2/5",  "/z/99.1/box/50,20,10,10,1.0" },    // box 0
             { "/0/99/3/5",  "/z/99.1/box/50,30,10,10,1.0" },
@@ -1,6 +1,9 @@
 package org.janelia.alignment.betterbox;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -53,4 +56,59 @@ public class BoxDataTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testGetFullScaleBox() throws Exception {
+
+        final BoxData boxData = new BoxData(3.0, 2, 4, 5);
+
+        final int[] fullScaleBox = boxData.getFullScaleBox(100, 200);
+
+        Assert.assertEquals("invalid scale", 0.25, boxData.getScale(), 0.0);
+        Assert.assertEquals("invalid x", 2000, fullScaleBox[0]);
+        Assert.assertEquals("invalid y", 3200, fullScaleBox[1]);
+        Assert.assertEquals("invalid width", 400, fullScaleBox[2]);
+        Assert.assertEquals("invalid height", 800, fullScaleBox[3]);
+        Assert.assertEquals("invalid service path",
+                            "/z/3.0/box/2000,3200,400,800,0.25", boxData.getServicePath(100, 200));
+    }
+
+    @Test
+    public void testHilbertOrder() throws Exception {
+
+        final int gridSize = 8;
+        final List<BoxData> boxes = new ArrayList<>();
+        for (int row = gridSize - 1; row >= 0; row--) {
+            for (int column = 0; column < gridSize; column++) {
+                boxes.add(new BoxData(1.0, 0, row, column));
+            }
+        }
+        boxes.add(new BoxData(0.0, 0, 5, 5));
+        boxes.add(new BoxData(1.0, 1, 0, 0));
+
+        boxes.sort(BoxData.HILBERT_ORDER_COMPARATOR);
+
+        Assert.assertEquals("lower layer box should be first", 0.0, boxes.get(0).getZ(), 0.0);
+        Assert.assertEquals("higher level box should be last", 1, boxes.get(boxes.size() - 1).getLevel());
+
+        final List<BoxData> levelZeroBoxes = boxes.subList(1, boxes.size() - 1);
+        final Set<BoxData> completedParents = new HashSet<>();
+        BoxData previousBox = null;
+        for (final BoxData box : levelZeroBoxes) {
+            if (previousBox != null) {
+                final int distance = Math.abs(box.getRow() - previousBox.getRow()) +
+                                     Math.abs(box.getColumn() - previousBox.getColumn());
+                Assert.assertEquals("consecutive boxes " + previousBox + " and " + box + " are not adjacent",
+                                    1, distance);
+                final BoxData parent = box.getParentBoxData();
+                if (! parent.equals(previousBox.getParentBoxData())) {
+                    Assert.assertTrue("siblings of " + box + " are not consecutive",
+                                      completedParents.add(previousBox.getParentBoxData()));
+                    Assert.assertFalse("siblings of " + box + " are not consecutive",
+                                       completedParents.contains(parent));
+                }
+            }
+            previousBox = box;
+        }
+    }
+
+}
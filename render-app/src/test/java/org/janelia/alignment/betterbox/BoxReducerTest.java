@@ -0,0 +1,129 @@
+package org.janelia.alignment.betterbox;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BoxReducer} class.
+ *
+ * @author Eric Trautman
+ */
+public class BoxReducerTest {
+
+    @Test
+    public void testReduceGray() throws Exception {
+
+        final BufferedImage upperLeft = buildImage(BufferedImage.TYPE_BYTE_GRAY, 100);
+        upperLeft.getRaster().setSample(1, 0, 0, 200);
+        final BufferedImage lowerRight = buildImage(BufferedImage.TYPE_BYTE_GRAY, 255);
+
+        final BufferedImage parent =
+                BoxReducer.reduce(new BufferedImage[] { upperLeft, null, null, lowerRight }, SIZE, SIZE, false);
+
+        Assert.assertEquals("invalid parent type", BufferedImage.TYPE_BYTE_GRAY, parent.getType());
+        Assert.assertEquals("invalid averaged value", 125, parent.getRaster().getSample(0, 0, 0));
+        Assert.assertEquals("invalid upper left value", 100, parent.getRaster().getSample(1, 1, 0));
+        Assert.assertEquals("missing child should be empty", 0, parent.getRaster().getSample(SIZE - 1, 0, 0));
+        Assert.assertEquals("invalid lower right value", 255, parent.getRaster().getSample(SIZE - 1, SIZE - 1, 0));
+    }
+
+    @Test
+    public void testReduceArgb() throws Exception {
+
+        final BufferedImage opaqueWhite = buildImage(BufferedImage.TYPE_INT_ARGB, 0xffffffff);
+        opaqueWhite.setRGB(0, 0, 0x00000000);
+        opaqueWhite.setRGB(0, 1, 0x00000000);
+        final BufferedImage gray = buildImage(BufferedImage.TYPE_BYTE_GRAY, 0x40);
+
+        final BufferedImage parent =
+                BoxReducer.reduce(new BufferedImage[] { opaqueWhite, gray, null, null }, SIZE, SIZE, false);
+
+        Assert.assertEquals("invalid parent type", BufferedImage.TYPE_INT_ARGB, parent.getType());
+
+        // transparent pixels should only reduce alpha, not darken colors
+        Assert.assertEquals("invalid partially transparent value",
+                            0x80ffffff, parent.getRGB(0, 0));
+        Assert.assertEquals("invalid opaque value",
+                            0xffffffff, parent.getRGB(1, 0));
+
+        // gray children are converted to ARGB the same way Java2D draws them
+        Assert.assertEquals("invalid gray child value",
+                            gray.getRGB(0, 0), parent.getRGB(SIZE / 2, 0));
+    }
+
+    @Test
+    public void testReduceLabels() throws Exception {
+
+        final BufferedImage labels = buildImage(BufferedImage.TYPE_USHORT_GRAY, 0);
+
+        // block 0: one zero, two 7s, one 9 => 7
+        setBlock(labels, 0, 0, 0, 9, 7, 7);
+        // block 1: all different => first non-zero label
+        setBlock(labels, 2, 0, 0, 4000, 3, 5);
+        // block 2: tie => first label
+        setBlock(labels, 4, 0, 60000, 2, 2, 60000);
+
+        final BufferedImage parent =
+                BoxReducer.reduce(new BufferedImage[] { labels, null, null, null }, SIZE, SIZE, true);
+
+        Assert.assertEquals("invalid parent type", BufferedImage.TYPE_USHORT_GRAY, parent.getType());
+        Assert.assertEquals("invalid mode label", 7, parent.getRaster().getSample(0, 0, 0));
+        Assert.assertEquals("invalid first label", 4000, parent.getRaster().getSample(1, 0, 0));
+        Assert.assertEquals("invalid tied label", 60000, parent.getRaster().getSample(2, 0, 0));
+        Assert.assertEquals("empty block should remain empty", 0, parent.getRaster().getSample(3, 0, 0));
+    }
+
+    @Test
+    public void testReduceOddSize() throws Exception {
+
+        final int oddSize = 5;
+        final BufferedImage[] children = new BufferedImage[4];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = new BufferedImage(oddSize, oddSize, BufferedImage.TYPE_BYTE_GRAY);
+            for (int x = 0; x < oddSize; x++) {
+                for (int y = 0; y < oddSize; y++) {
+                    children[i].getRaster().setSample(x, y, 0, (i + 1) * 10);
+                }
+            }
+        }
+
+        final BufferedImage parent = BoxReducer.reduce(children, oddSize, oddSize, false);
+
+        Assert.assertEquals("invalid upper left value", 10, parent.getRaster().getSample(0, 0, 0));
+        // center parent pixel covers one pixel from each child
+        Assert.assertEquals("invalid center value", 25, parent.getRaster().getSample(2, 2, 0));
+        Assert.assertEquals("invalid lower right value", 40, parent.getRaster().getSample(4, 4, 0));
+    }
+
+    private static BufferedImage buildImage(final int type,
+                                            final int value) {
+        final BufferedImage image = new BufferedImage(SIZE, SIZE, type);
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (type == BufferedImage.TYPE_INT_ARGB) {
+                    image.setRGB(x, y, value);
+                } else {
+                    image.getRaster().setSample(x, y, 0, value);
+                }
+            }
+        }
+        return image;
+    }
+
+    private static void setBlock(final BufferedImage image,
+                                 final int x,
+                                 final int y,
+                                 final int upperLeft,
+                                 final int upperRight,
+                                 final int lowerLeft,
+                                 final int lowerRight) {
+        image.getRaster().setSample(x, y, 0, upperLeft);
+        image.getRaster().setSample(x + 1, y, 0, upperRight);
+        image.getRaster().setSample(x, y + 1, 0, lowerLeft);
+        image.getRaster().setSample(x + 1, y + 1, 0, lowerRight);
+    }
+
+    private static final int SIZE = 8;
+}
@@ -0,0 +1,109 @@
+package org.janelia.alignment.betterbox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.janelia.alignment.spec.TileBounds;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DirtyBoxesForLayer} class.
+ *
+ * @author Eric Trautman
+ */
+public class DirtyBoxesForLayerTest {
+
+    @Test
+    public void testAddBounds() throws Exception {
+
+        final DirtyBoxesForLayer dirtyBoxes = new DirtyBoxesForLayer(Z, BOX_SIZE, BOX_SIZE, 2);
+
+        // tile spans level 0 rows 1-2 and columns 3-4
+        dirtyBoxes.addBounds(buildTile("a", 35.0, 15.0));
+
+        final List<BoxData> expectedBoxes = Arrays.asList(
+                new BoxData(Z, 0, 1, 3), new BoxData(Z, 0, 1, 4), new BoxData(Z, 0, 2, 3), new BoxData(Z, 0, 2, 4),
+                new BoxData(Z, 1, 0, 1), new BoxData(Z, 1, 0, 2), new BoxData(Z, 1, 1, 1), new BoxData(Z, 1, 1, 2),
+                new BoxData(Z, 2, 0, 0), new BoxData(Z, 2, 0, 1));
+
+        Assert.assertEquals("invalid dirty boxes", new HashSet<>(expectedBoxes), dirtyBoxes.getBoxes());
+
+        // boxes with negative rows or columns are never rendered, so only the first box (and its parent) is added
+        dirtyBoxes.addBounds(buildTile("b", -5.0, -5.0));
+        Assert.assertEquals("invalid number of dirty boxes after adding negative bounds",
+                            expectedBoxes.size() + 2, dirtyBoxes.size());
+        Assert.assertTrue("missing dirty box for negative bounds", dirtyBoxes.contains(new BoxData(Z, 0, 0, 0)));
+    }
+
+    @Test
+    public void testAddChangedTiles() throws Exception {
+
+        final List<TileBounds> priorList = new ArrayList<>();
+        priorList.add(buildTile("unchanged", 5.0, 5.0));
+        priorList.add(buildTile("moved", 105.0, 5.0));
+        priorList.add(buildTile("removed", 5.0, 105.0));
+        priorList.add(buildTile("masked", 205.0, 205.0));
+
+        final List<TileBounds> currentList = new ArrayList<>();
+        currentList.add(buildTile("unchanged", 5.0, 5.0));
+        currentList.add(buildTile("moved", 125.0, 5.0));
+        currentList.add(buildTile("masked", 205.0, 205.0));
+        currentList.add(buildTile("added", 305.0, 305.0));
+
+        DirtyBoxesForLayer dirtyBoxes = new DirtyBoxesForLayer(Z, BOX_SIZE, BOX_SIZE, 0);
+        int changedTileCount = dirtyBoxes.addChangedTiles(priorList, currentList, null);
+
+        Assert.assertEquals("invalid changed tile count for stack diff", 3, changedTileCount);
+        Assert.assertFalse("unchanged tile box should not be dirty", dirtyBoxes.contains(new BoxData(Z, 0, 0, 0)));
+        Assert.assertTrue("prior moved tile box should be dirty", dirtyBoxes.contains(new BoxData(Z, 0, 0, 10)));
+        Assert.assertTrue("current moved tile box should be dirty", dirtyBoxes.contains(new BoxData(Z, 0, 0, 13)));
+        Assert.assertTrue("removed tile box should be dirty", dirtyBoxes.contains(new BoxData(Z, 0, 10, 0)));
+        Assert.assertFalse("masked tile box should not be dirty", dirtyBoxes.contains(new BoxData(Z, 0, 20, 20)));
+        Assert.assertTrue("added tile box should be dirty", dirtyBoxes.contains(new BoxData(Z, 0, 30, 30)));
+
+        dirtyBoxes = new DirtyBoxesForLayer(Z, BOX_SIZE, BOX_SIZE, 0);
+        changedTileCount = dirtyBoxes.addChangedTiles(null, currentList, Collections.singleton("masked"));
+
+        Assert.assertEquals("invalid changed tile count for explicit ids", 1, changedTileCount);
+        Assert.assertEquals("invalid number of dirty boxes for explicit ids", 4, dirtyBoxes.size());
+        Assert.assertTrue("masked tile box should be dirty", dirtyBoxes.contains(new BoxData(Z, 0, 20, 20)));
+    }
+
+    @Test
+    public void testMovedTileWithoutPriorTiles() throws Exception {
+
+        final List<TileBounds> priorList = Collections.singletonList(buildTile("moved", 105.0, 5.0));
+        final List<TileBounds> currentList = Collections.singletonList(buildTile("moved", 125.0, 5.0));
+        final BoxData priorBox = new BoxData(Z, 0, 0, 10);
+        final BoxData currentBox = new BoxData(Z, 0, 0, 13);
+
+        DirtyBoxesForLayer dirtyBoxes = new DirtyBoxesForLayer(Z, BOX_SIZE, BOX_SIZE, 0);
+        int changedTileCount = dirtyBoxes.addChangedTiles(null, currentList, Collections.singleton("moved"));
+
+        Assert.assertEquals("invalid changed tile count without prior tiles", 1, changedTileCount);
+        Assert.assertTrue("current moved tile box should be dirty", dirtyBoxes.contains(currentBox));
+        Assert.assertFalse("prior moved tile box cannot be identified without prior tiles",
+                           dirtyBoxes.contains(priorBox));
+
+        dirtyBoxes = new DirtyBoxesForLayer(Z, BOX_SIZE, BOX_SIZE, 0);
+        changedTileCount = dirtyBoxes.addChangedTiles(priorList, currentList, Collections.singleton("moved"));
+
+        Assert.assertEquals("invalid changed tile count with prior tiles", 1, changedTileCount);
+        Assert.assertTrue("current moved tile box should be dirty", dirtyBoxes.contains(currentBox));
+        Assert.assertTrue("prior moved tile box should be dirty", dirtyBoxes.contains(priorBox));
+    }
+
+    private static TileBounds buildTile(final String tileId,
+                                        final double minX,
+                                        final double minY) {
+        return new TileBounds(tileId, "1.0", Z, minX, minY, minX + TILE_SIZE, minY + TILE_SIZE);
+    }
+
+    private static final double Z = 1.0;
+    private static final int BOX_SIZE = 10;
+    private static final double TILE_SIZE = 14.0;
+}
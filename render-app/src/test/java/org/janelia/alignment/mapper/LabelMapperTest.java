@@ -0,0 +1,121 @@
+package org.janelia.alignment.mapper;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LabelMapper} class.
+ *
+ * @author Eric Trautman
+ */
+public class LabelMapperTest {
+
+    @Test
+    public void testFillTriangleMatchesPixelTest() throws Exception {
+
+        final Random random = new Random(11);
+
+        for (int test = 0; test < 200; test++) {
+
+            final double[][] pq = buildTriangle(random.nextDouble() * 60 - 10, random.nextDouble() * 60 - 10,
+                                                random.nextDouble() * 60 - 10, random.nextDouble() * 60 - 10,
+                                                random.nextDouble() * 60 - 10, random.nextDouble() * 60 - 10);
+
+            final short[] targetPixels = new short[SIZE * SIZE];
+            new LabelMapper(targetPixels, SIZE, SIZE).fillTriangle(pq, LABEL);
+
+            final int minX = Math.max(0, (int) (Math.min(pq[2][0], Math.min(pq[2][1], pq[2][2])) + 0.5));
+            final int minY = Math.max(0, (int) (Math.min(pq[3][0], Math.min(pq[3][1], pq[3][2])) + 0.5));
+            final int maxX = (int) (Math.max(pq[2][0], Math.max(pq[2][1], pq[2][2])) + 0.5);
+            final int maxY = (int) (Math.max(pq[3][0], Math.max(pq[3][1], pq[3][2])) + 0.5);
+
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    final boolean isInBox = (x >= minX) && (x <= maxX) && (y >= minY) && (y <= maxY);
+                    final boolean isInTriangle = isInBox && LabelMapper.isInTriangle(pq[2][0], pq[3][0],
+                                                                                     pq[2][1], pq[3][1],
+                                                                                     pq[2][2], pq[3][2],
+                                                                                     x, y);
+                    final short expectedValue = isInTriangle ? LABEL : 0;
+                    Assert.assertEquals("invalid value for pixel (" + x + "," + y + ") in test " + test,
+                                        expectedValue, targetPixels[(y * SIZE) + x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFillAdjacentTriangles() throws Exception {
+
+        final short[] targetPixels = new short[SIZE * SIZE];
+        final LabelMapper labelMapper = new LabelMapper(targetPixels, SIZE, SIZE);
+
+        // two triangles (with opposite orientations) that share a diagonal edge cover the whole rectangle,
+        // corners are placed between pixels so that no pixel center lies on an edge
+        labelMapper.fillTriangle(buildTriangle(1.5, 2.5, 30.5, 2.5, 30.5, 20.5), LABEL);
+        labelMapper.fillTriangle(buildTriangle(1.5, 2.5, 1.5, 20.5, 30.5, 20.5), LABEL);
+
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                final boolean isInRectangle = (x >= 2) && (x <= 30) && (y >= 3) && (y <= 20);
+                Assert.assertEquals("invalid value for pixel (" + x + "," + y + ")",
+                                    isInRectangle ? LABEL : 0, targetPixels[(y * SIZE) + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testFillMaskedTriangle() throws Exception {
+
+        final int maskWidth = 20;
+        final int maskHeight = 20;
+        final byte[] maskPixels = new byte[maskWidth * maskHeight];
+        for (int y = 0; y < maskHeight; y++) {
+            for (int x = maskWidth / 2; x < maskWidth; x++) {
+                maskPixels[(y * maskWidth) + x] = (byte) 255;
+            }
+        }
+
+        // source is scaled by 2 and offset by (1, 1) in the target, so inverse is x' = (x - 1) / 2
+        final double[] inverse = { 0.5, 0.0, 0.0, 0.5, -0.5, -0.5 };
+
+        final short[] targetPixels = new short[SIZE * SIZE];
+        final LabelMapper labelMapper = new LabelMapper(targetPixels, SIZE, SIZE);
+        labelMapper.fillMaskedTriangle(buildTriangle(0.5, 0.5, 39.5, 0.5, 39.5, 38.5),
+                                       inverse, LABEL, maskPixels, maskWidth, maskHeight);
+        labelMapper.fillMaskedTriangle(buildTriangle(0.5, 0.5, 0.5, 38.5, 39.5, 38.5),
+                                       inverse, LABEL, maskPixels, maskWidth, maskHeight);
+
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                // nearest neighbor source x is round((x - 1) / 2), so source column 10 starts at target x 20
+                final boolean isInRectangle = (x >= 1) && (x <= 39) && (y >= 1) && (y <= 38);
+                final short expectedValue = (isInRectangle && (x >= 20)) ? LABEL : 0;
+                Assert.assertEquals("invalid value for pixel (" + x + "," + y + ")",
+                                    expectedValue, targetPixels[(y * SIZE) + x]);
+            }
+        }
+    }
+
+    private static double[][] buildTriangle(final double ax,
+                                            final double ay,
+                                            final double bx,
+                                            final double by,
+                                            final double cx,
+                                            final double cy) {
+        // source coordinates are not used for fills, so simply reuse target coordinates
+        return new double[][] {
+                { ax, bx, cx },
+                { ay, by, cy },
+                { ax, bx, cx },
+                { ay, by, cy }
+        };
+    }
+
+    private static final int SIZE = 48;
+
+    // largest label assigned by LabelImageProcessorCache (green and blue components of 253)
+    private static final short LABEL = (short) 0xFDFD;
+}
@@ -0,0 +1,60 @@
+package org.janelia.alignment.match;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CanvasIdPairStream} class.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairStreamTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+
+        final String template = "{baseDataUrl}/owner/o/project/p/stack/s/tile/{id}/render-parameters";
+
+        final List<OrderedCanvasIdPair> pairs = new ArrayList<>();
+        pairs.add(new OrderedCanvasIdPair(new CanvasId("1.0", "1.a", MontageRelativePosition.LEFT),
+                                          new CanvasId("1.0", "1.b", MontageRelativePosition.RIGHT)));
+        pairs.add(new OrderedCanvasIdPair(new CanvasId("1.0", "1.a"),
+                                          new CanvasId("2.0", "2.a")));
+
+        // write enough distinct tiles to force at least one dictionary reset
+        final int tileCount = CanvasIdPairStream.MAX_DICTIONARY_SIZE;
+        for (int i = 0; i < tileCount; i++) {
+            pairs.add(new OrderedCanvasIdPair(new CanvasId("3.0", "3." + i),
+                                              new CanvasId("4.0", "4." + i)));
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CanvasIdPairStream.Writer writer = new CanvasIdPairStream.Writer(out, template);
+        for (final OrderedCanvasIdPair pair : pairs) {
+            writer.write(pair);
+        }
+        writer.finish();
+
+        Assert.assertEquals("invalid pair count", pairs.size(), writer.getPairCount());
+
+        final RenderableCanvasIdPairs loadedPairs =
+                CanvasIdPairStream.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        Assert.assertEquals("invalid template", template, loadedPairs.getRenderParametersUrlTemplate());
+        Assert.assertEquals("invalid pairs loaded", pairs, loadedPairs.getNeighborPairs());
+        Assert.assertEquals("invalid relative position loaded",
+                            MontageRelativePosition.LEFT, loadedPairs.getNeighborPairs().get(0).getP().getRelativePosition());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidData() throws Exception {
+        CanvasIdPairStream.readFrom(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 0, 0, 0, 0 }));
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.janelia.alignment.match;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MatchGraph} class.
+ *
+ * @author Eric Trautman
+ */
+public class MatchGraphTest {
+
+    @Test
+    public void testComponentsAndStatistics() {
+
+        final List<MatchGraphEdge> edges = new ArrayList<>();
+        edges.add(new MatchGraphEdge("1.0", "a", "1.0", "b", 10));
+        edges.add(new MatchGraphEdge("1.0", "b", "1.0", "c", 20));
+        edges.add(new MatchGraphEdge("1.0", "a", "2.0", "a", 30));
+        edges.add(new MatchGraphEdge("3.0", "x", "3.0", "y", 5));
+
+        final MatchGraph matchGraph = new MatchGraph(edges);
+
+        Assert.assertEquals("invalid canvas count", 6, matchGraph.getCanvasCount());
+        Assert.assertEquals("invalid edge count", 4, matchGraph.getEdgeCount());
+
+        final List<List<CanvasId>> components = matchGraph.getSortedConnectedComponents();
+
+        Assert.assertEquals("invalid number of components", 2, components.size());
+        Assert.assertEquals("invalid size for largest component", 4, components.get(0).size());
+        Assert.assertEquals("invalid first canvas for largest component",
+                            new CanvasId("1.0", "a"), components.get(0).get(0));
+        Assert.assertEquals("invalid size for smallest component", 2, components.get(1).size());
+
+        final MatchGraphStatistics statistics = matchGraph.getStatistics();
+
+        Assert.assertEquals("invalid component count", 2, statistics.getComponentCount().intValue());
+        Assert.assertEquals("invalid min degree", 1, statistics.getMinDegree().intValue());
+        Assert.assertEquals("invalid max degree", 2, statistics.getMaxDegree().intValue());
+        Assert.assertEquals("invalid average degree", 8.0 / 6.0, statistics.getAverageDegree(), 0.0001);
+        Assert.assertEquals("invalid min match count", 5, statistics.getMinMatchCount().intValue());
+        Assert.assertEquals("invalid max match count", 30, statistics.getMaxMatchCount().intValue());
+        Assert.assertEquals("invalid total match count", 65, statistics.getTotalMatchCount().longValue());
+
+        final Map<Integer, Integer> degreeHistogram = statistics.getDegreeHistogram();
+        Assert.assertEquals("invalid number of canvases with degree 1", 4, degreeHistogram.get(1).intValue());
+        Assert.assertEquals("invalid number of canvases with degree 2", 2, degreeHistogram.get(2).intValue());
+
+        final MatchGraphStatistics parsedStatistics = MatchGraphStatistics.fromJson(statistics.toJson());
+        Assert.assertEquals("invalid component sizes after JSON round trip",
+                            statistics.getComponentSizes(), parsedStatistics.getComponentSizes());
+    }
+
+    @Test
+    public void testLongChain() {
+
+        // a chain this long would overflow the stack if components were found recursively
+        final int canvasCount = 200000;
+        final List<MatchGraphEdge> edges = new ArrayList<>(canvasCount);
+        for (int i = 1; i < canvasCount; i++) {
+            edges.add(new MatchGraphEdge(String.valueOf(i - 1), "tile", String.valueOf(i), "tile", 1));
+        }
+
+        final MatchGraphStatistics statistics = new MatchGraph(edges).getStatistics();
+
+        Assert.assertEquals("invalid component count", 1, statistics.getComponentCount().intValue());
+        Assert.assertEquals("invalid component size",
+                            canvasCount, statistics.getComponentSizes().get(0).intValue());
+    }
+
+}
@@ -1,5 +1,7 @@
 package org.janelia.alignment.match;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import org.junit.Assert;
@@ -46,5 +48,24 @@ public class SortedConnectedCanvasIdClustersTest {
         Assert.assertEquals("incorrect number of connected clusters found",
                             2, canvasIdClusters.size());
     }
+
+    @Test
+    public void testClustersFromEdges() {
+
+        final List<MatchGraphEdge> edges = Arrays.asList(
+                new MatchGraphEdge("1.0", "tileA", "1.0", "tileB", 5),
+                new MatchGraphEdge("1.0", "tileB", "1.0", "tileC", 3),
+                new MatchGraphEdge("1.0", "tileD", "1.0", "tileE", 7));
+
+        final SortedConnectedCanvasIdClusters canvasIdClusters = SortedConnectedCanvasIdClusters.fromEdges(edges);
+
+        Assert.assertEquals("incorrect number of connected clusters found",
+                            2, canvasIdClusters.size());
+        Assert.assertEquals("incorrect cluster sizes",
+                            Arrays.asList(3, 2), canvasIdClusters.getClusterSizes());
+        Assert.assertEquals("incorrect largest cluster",
+                            new HashSet<>(Arrays.asList("tileA", "tileB", "tileC")),
+                            canvasIdClusters.getSortedConnectedTileIdSets().get(0));
+    }
     
 }
\ No newline at end of file
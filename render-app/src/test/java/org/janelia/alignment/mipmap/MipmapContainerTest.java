@@ -0,0 +1,140 @@
+package org.janelia.alignment.mipmap;
+
+import ij.ImagePlus;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+
+import org.janelia.alignment.ImageAndMask;
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.util.FileUtil;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MipmapContainer} class.
+ *
+ * @author Eric Trautman
+ */
+public class MipmapContainerTest {
+
+    private File testDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("mipmap_container_test_").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursive(testDirectory);
+    }
+
+    @Test
+    public void testWriteAndOpenLevels() throws Exception {
+        testWriteAndOpenLevels(Utils.PNG_FORMAT);
+        testWriteAndOpenLevels(Utils.TIF_FORMAT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpenMissingLevel() throws Exception {
+        final File containerFile = writeContainer(Utils.PNG_FORMAT);
+        MipmapContainer.openLevel(MipmapContainer.getLevelUrl(containerFile, 3, false));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidContainer() throws Exception {
+        final File invalidFile = new File(testDirectory, "invalid" + MipmapContainer.FILE_EXTENSION);
+        Files.write(invalidFile.toPath(), new byte[] { 1, 2, 3, 4, 0, 0, 0, 0 });
+        MipmapContainer.readLevelNames(invalidFile);
+    }
+
+    @Test
+    public void testAddLevelsFromExistingContainer() throws Exception {
+        testAddLevelsFromExistingContainer(Utils.PNG_FORMAT);
+        testAddLevelsFromExistingContainer(Utils.TIF_FORMAT);
+    }
+
+    private void testAddLevelsFromExistingContainer(final String format) throws Exception {
+
+        final File existingContainerFile = writeContainer(Utils.PNG_FORMAT);
+
+        final MipmapContainer.Writer writer = new MipmapContainer.Writer(format, 0.85f);
+        writer.addLevel(3, false, buildImage(12, 33));
+        writer.addLevel(2, true, buildImage(25, 0));
+        writer.addLevels(existingContainerFile);
+
+        final File containerFile = MipmapContainer.getContainerFile(new File(testDirectory, "extended." + format));
+        writer.write(containerFile);
+
+        final Set<String> levelNames = MipmapContainer.readLevelNames(containerFile);
+        Assert.assertEquals("invalid number of levels stored in extended " + format + " container",
+                            5, levelNames.size());
+
+        final ImagePlus level2 = MipmapContainer.openLevel(MipmapContainer.getLevelUrl(containerFile, 2, false));
+        Assert.assertEquals("existing level 2 should be kept in " + format + " container",
+                            LEVEL_2_IMAGE_VALUE, level2.getProcessor().get(10, 10));
+
+        final ImagePlus level2Mask = MipmapContainer.openLevel(MipmapContainer.getLevelUrl(containerFile, 2, true));
+        Assert.assertEquals("added level 2 mask should not be replaced in " + format + " container",
+                            0, level2Mask.getProcessor().get(10, 10));
+    }
+
+    private void testWriteAndOpenLevels(final String format) throws Exception {
+
+        final File containerFile = writeContainer(format);
+
+        final Set<String> levelNames = MipmapContainer.readLevelNames(containerFile);
+        Assert.assertEquals("invalid number of levels stored in " + format + " container", 4, levelNames.size());
+        Assert.assertTrue("missing level 2 mask", levelNames.contains(MipmapContainer.getLevelName(2, true)));
+
+        final ImageAndMask level2 = new ImageAndMask(MipmapContainer.getLevelUrl(containerFile, 2, false),
+                                                     MipmapContainer.getLevelUrl(containerFile, 2, true));
+        level2.validate();
+
+        Assert.assertTrue("level url not recognized", MipmapContainer.isLevelUrl(level2.getImageUrl()));
+
+        final ImagePlus imagePlus = MipmapContainer.openLevel(level2.getImageUrl());
+        Assert.assertEquals("invalid " + format + " level 2 width", 25, imagePlus.getWidth());
+        Assert.assertEquals("invalid " + format + " level 2 pixel value",
+                            LEVEL_2_IMAGE_VALUE, imagePlus.getProcessor().get(10, 10));
+
+        final int maskValue = ImageProcessorCache.getNonCachedImage(level2.getMaskUrl(), 0, true, false).get(10, 10);
+        Assert.assertEquals("invalid " + format + " level 2 mask value", MASK_VALUE, maskValue);
+    }
+
+    private File writeContainer(final String format)
+            throws IOException {
+
+        final MipmapContainer.Writer writer = new MipmapContainer.Writer(format, 0.85f);
+        writer.addLevel(2, false, buildImage(25, LEVEL_2_IMAGE_VALUE));
+        writer.addLevel(1, false, buildImage(50, 100));
+        writer.addLevel(1, true, buildImage(50, MASK_VALUE));
+        writer.addLevel(2, true, buildImage(25, MASK_VALUE));
+
+        final File containerFile = MipmapContainer.getContainerFile(new File(testDirectory, "tile." + format));
+        writer.write(containerFile);
+
+        return containerFile;
+    }
+
+    private BufferedImage buildImage(final int size,
+                                     final int value) {
+        final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                image.getRaster().setSample(x, y, 0, value);
+            }
+        }
+        return image;
+    }
+
+    private static final int LEVEL_2_IMAGE_VALUE = 77;
+    private static final int MASK_VALUE = 255;
+}
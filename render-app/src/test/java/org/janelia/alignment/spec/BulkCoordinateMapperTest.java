@@ -0,0 +1,159 @@
+package org.janelia.alignment.spec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import mpicbg.trakem2.transform.AffineModel2D;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BulkCoordinateMapper} class.
+ *
+ * @author Eric Trautman
+ */
+public class BulkCoordinateMapperTest {
+
+    private ResolvedTileSpecCollection tiles;
+
+    @Before
+    public void setup() throws Exception {
+        final List<TileSpec> tileSpecs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tileSpecs.add(buildTileSpec("tile-" + i, i * 90.0));
+        }
+        tiles = new ResolvedTileSpecCollection(new ArrayList<>(), tileSpecs);
+    }
+
+    @Test
+    public void testLocalToWorld() throws Exception {
+
+        final List<TileCoordinates> localList = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            localList.add(TileCoordinates.buildLocalInstance("tile-" + (i % 4), new double[] {i % 100, i / 2.0}));
+        }
+        localList.add(TileCoordinates.buildLocalInstance("missing-tile", new double[] {1, 1}));
+        localList.add(TileCoordinates.buildLocalInstance("tile-0", new double[] {1}));
+
+        for (final int numberOfThreads : new int[] {1, 3}) {
+
+            final BulkCoordinateMapper mapper = new BulkCoordinateMapper(tiles, numberOfThreads);
+            final List<TileCoordinates> worldList = mapper.localToWorld(localList);
+
+            Assert.assertEquals("invalid number of world coordinates returned",
+                                localList.size(), worldList.size());
+
+            for (int i = 0; i < 200; i++) {
+                final TileCoordinates local = localList.get(i);
+                final TileSpec tileSpec = tiles.getTileSpec(local.getTileId());
+                final double[] expected = tileSpec.getWorldCoordinates(local.getLocal()[0], local.getLocal()[1]);
+                final TileCoordinates world = worldList.get(i);
+                Assert.assertEquals("invalid tileId for point " + i, local.getTileId(), world.getTileId());
+                Assert.assertArrayEquals("invalid world values for point " + i,
+                                         expected, world.getWorld(), 0.0001);
+            }
+
+            Assert.assertTrue("missing tile should have error", worldList.get(200).hasError());
+            Assert.assertTrue("incomplete local values should have error", worldList.get(201).hasError());
+        }
+    }
+
+    @Test
+    public void testWorldToLocal() throws Exception {
+
+        final List<List<TileCoordinates>> worldListOfLists = new ArrayList<>();
+
+        // point in overlap of tile-0 and tile-1
+        final double[] overlapWorld = {95.0, 20.0, Z};
+        worldListOfLists.add(Arrays.asList(TileCoordinates.buildWorldInstance("tile-0", overlapWorld),
+                                           TileCoordinates.buildWorldInstance("tile-1", overlapWorld)));
+
+        // point only in tile-2
+        final double[] singleWorld = {200.0, 50.0, Z};
+        worldListOfLists.add(Collections.singletonList(TileCoordinates.buildWorldInstance("tile-2", singleWorld)));
+
+        // point without any tiles
+        worldListOfLists.add(Collections.singletonList(TileCoordinates.buildWorldInstance(null,
+                                                                                          new double[] {-5.0, -5.0})));
+
+        for (final int numberOfThreads : new int[] {1, 3}) {
+
+            final BulkCoordinateMapper mapper = new BulkCoordinateMapper(tiles, numberOfThreads);
+            final List<List<TileCoordinates>> localListOfLists = mapper.worldToLocal(worldListOfLists);
+
+            Assert.assertEquals("invalid number of local lists returned",
+                                worldListOfLists.size(), localListOfLists.size());
+
+            final List<TileCoordinates> overlapLocalList = localListOfLists.get(0);
+            Assert.assertEquals("invalid number of local coordinates for overlap point",
+                                2, overlapLocalList.size());
+            Assert.assertFalse("first overlap tile should not be visible", overlapLocalList.get(0).isVisible());
+            Assert.assertTrue("last overlap tile should be visible", overlapLocalList.get(1).isVisible());
+            Assert.assertArrayEquals("invalid local values for tile-0",
+                                     new double[] {95.0, 20.0, Z}, overlapLocalList.get(0).getLocal(), 0.01);
+            Assert.assertArrayEquals("invalid local values for tile-1",
+                                     new double[] {5.0, 20.0, Z}, overlapLocalList.get(1).getLocal(), 0.01);
+
+            final List<TileCoordinates> singleLocalList = localListOfLists.get(1);
+            Assert.assertEquals("invalid number of local coordinates for single point",
+                                1, singleLocalList.size());
+            Assert.assertEquals("invalid tileId for single point", "tile-2", singleLocalList.get(0).getTileId());
+            Assert.assertArrayEquals("invalid local values for tile-2",
+                                     new double[] {20.0, 50.0, Z}, singleLocalList.get(0).getLocal(), 0.01);
+
+            final TileCoordinates errorCoordinates = localListOfLists.get(2).get(0);
+            Assert.assertTrue("point without tiles should have error", errorCoordinates.hasError());
+        }
+    }
+
+    @Test
+    public void testSharedPool() throws Exception {
+
+        final List<TileCoordinates> localList = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            localList.add(TileCoordinates.buildLocalInstance("tile-" + (i % 4), new double[] {i, i / 2.0}));
+        }
+
+        final List<TileCoordinates> expectedList = new BulkCoordinateMapper(tiles, 1).localToWorld(localList);
+
+        final ForkJoinPool sharedPool = new ForkJoinPool(3);
+        try {
+
+            // each request gets its own mapper, but all mappers use the same pool
+            for (int request = 0; request < 2; request++) {
+
+                final BulkCoordinateMapper mapper = new BulkCoordinateMapper(tiles, sharedPool);
+                final List<TileCoordinates> worldList = mapper.localToWorld(localList);
+
+                Assert.assertFalse("shared pool should not be shut down by mapper", sharedPool.isShutdown());
+
+                for (int i = 0; i < localList.size(); i++) {
+                    Assert.assertArrayEquals("invalid world values for point " + i + " in request " + request,
+                                             expectedList.get(i).getWorld(), worldList.get(i).getWorld(), 0.0001);
+                }
+            }
+
+        } finally {
+            sharedPool.shutdown();
+        }
+    }
+
+    private TileSpec buildTileSpec(final String tileId,
+                                   final double offsetX) {
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId(tileId);
+        tileSpec.setZ(Z);
+        tileSpec.setWidth(100.0);
+        tileSpec.setHeight(100.0);
+        tileSpec.addTransformSpecs(Collections.singletonList(
+                new LeafTransformSpec(AffineModel2D.class.getName(), "1 0 0 1 " + offsetX + " 0")));
+        return tileSpec;
+    }
+
+    private static final double Z = 7.0;
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -170,6 +171,80 @@ public class TileBoundsRTreeTest {
                             (tileBoundsList.size() - 1), visibleTiles.size());
     }
 
+    @Test
+    public void testLargeTreeSearchesMatchBruteForce() {
+
+        final Random random = new Random(42);
+        final List<TileBounds> largeList = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final double minX = random.nextDouble() * 10000;
+            final double minY = random.nextDouble() * 10000;
+            largeList.add(new TileBounds("tile-" + i, "1.0", z, minX, minY,
+                                         minX + 50 + (random.nextDouble() * 200),
+                                         minY + 50 + (random.nextDouble() * 200)));
+        }
+
+        final TileBoundsRTree largeTree = new TileBoundsRTree(z, largeList.subList(0, 1900));
+        for (final TileBounds tileBounds : largeList.subList(1900, largeList.size())) {
+            largeTree.addTile(tileBounds);
+        }
+
+        Assert.assertEquals("invalid tree size", largeList.size(), largeTree.size());
+
+        for (int i = 0; i < 50; i++) {
+
+            final double minX = random.nextDouble() * 10000;
+            final double minY = random.nextDouble() * 10000;
+            final double maxX = minX + (random.nextDouble() * 1000);
+            final double maxY = minY + (random.nextDouble() * 1000);
+
+            final Set<String> expectedTileIds = new HashSet<>();
+            for (final TileBounds tileBounds : largeList) {
+                if ((tileBounds.getMinX() <= maxX) && (minX <= tileBounds.getMaxX()) &&
+                    (tileBounds.getMinY() <= maxY) && (minY <= tileBounds.getMaxY())) {
+                    expectedTileIds.add(tileBounds.getTileId());
+                }
+            }
+
+            validateSearchResults("box search " + i, largeTree.findTilesInBox(minX, minY, maxX, maxY),
+                                  expectedTileIds);
+
+            final List<TileBounds> nearestTiles = largeTree.findTilesNearestToBox(minX, minY, maxX, maxY, 500, 5);
+            Assert.assertTrue("too many nearest tiles returned for search " + i, nearestTiles.size() <= 5);
+            for (final TileBounds nearestTile : nearestTiles) {
+                final double dx = Math.max(Math.max(nearestTile.getMinX() - maxX, minX - nearestTile.getMaxX()), 0);
+                final double dy = Math.max(Math.max(nearestTile.getMinY() - maxY, minY - nearestTile.getMaxY()), 0);
+                Assert.assertTrue("nearest tile " + nearestTile.getTileId() + " is too far away for search " + i,
+                                  Math.sqrt((dx * dx) + (dy * dy)) < 500);
+            }
+            if (expectedTileIds.size() >= 5) {
+                for (final TileBounds nearestTile : nearestTiles) {
+                    Assert.assertTrue("nearest tile " + nearestTile.getTileId() + " should intersect box " + i,
+                                      expectedTileIds.contains(nearestTile.getTileId()));
+                }
+            }
+        }
+
+        // joined circle searches should find the same tiles as individual circle searches
+        final List<TileBounds> sourceList = largeList.subList(0, 300);
+        final TileBoundsRTree.Circles circles = new TileBoundsRTree.Circles(sourceList, 0.9, null);
+        final List<List<TileBounds>> joinedResults = largeTree.findTilesInCircles(circles);
+
+        Assert.assertEquals("invalid number of circle results", sourceList.size(), joinedResults.size());
+
+        for (int i = 0; i < sourceList.size(); i++) {
+            final TileBounds source = sourceList.get(i);
+            final double radius = Math.max(source.getDeltaX(), source.getDeltaY()) * 0.9;
+            final List<TileBounds> individualResults =
+                    largeTree.findTilesInCircle(source.getMinX() + (source.getDeltaX() / 2),
+                                                source.getMinY() + (source.getDeltaY() / 2),
+                                                radius);
+            final Set<String> expectedTileIds = new HashSet<>();
+            individualResults.forEach(tb -> expectedTileIds.add(tb.getTileId()));
+            validateSearchResults("circle search " + i, joinedResults.get(i), expectedTileIds);
+        }
+    }
+
     private void validateSearchResults(final String context,
                                        final List<TileBounds> searchResults,
                                        final Set<String> expectedTileIds) {
@@ -0,0 +1,74 @@
+package org.janelia.alignment.spec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TileBoundsSnapshot} class.
+ *
+ * @author Eric Trautman
+ */
+public class TileBoundsSnapshotTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+
+        final TileBoundsSnapshot.Builder builder = new TileBoundsSnapshot.Builder();
+
+        // add tiles out of z order to verify snapshot sorting
+        builder.add("2.a", "2.0", "g2", 2.0, 0.0, 0.0, 10.0, 10.0);
+        builder.add("1.a", "1.0", "g1", 1.0, 0.0, 0.0, 10.0, 10.0);
+        builder.add("2.b", "2.0", null, 2.0, 9.0, 0.0, 19.0, 10.0);
+        builder.add("1.b", null, "g1", 1.0, 9.0, 0.0, 19.0, null);
+
+        // grow arrays past the initial capacity
+        for (int i = 0; i < 2000; i++) {
+            builder.add("3." + i, "3.0", "g3", 3.0, i * 9.0, 0.0, (i * 9.0) + 10.0, 10.0);
+        }
+
+        final TileBoundsSnapshot snapshot = builder.build();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.writeTo(out);
+
+        final TileBoundsSnapshot loadedSnapshot = TileBoundsSnapshot.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        Assert.assertEquals("invalid number of tiles loaded", 2004, loadedSnapshot.size());
+        Assert.assertEquals("invalid z values", Arrays.asList(1.0, 2.0, 3.0), loadedSnapshot.getZValues());
+
+        final List<TileBounds> z1List = loadedSnapshot.getTileBoundsForZ(1.0);
+        Assert.assertEquals("invalid number of z 1 tiles", 2, z1List.size());
+        Assert.assertEquals("invalid first z 1 tileId", "1.a", z1List.get(0).getTileId());
+        Assert.assertEquals("invalid first z 1 sectionId", "1.0", z1List.get(0).getSectionId());
+        Assert.assertNull("missing sectionId should be null", z1List.get(1).getSectionId());
+        Assert.assertNull("missing maxY should be null", z1List.get(1).getMaxY());
+        Assert.assertEquals("invalid minX", 9.0, z1List.get(1).getMinX(), 0.0);
+
+        final List<TileBounds> z2List = loadedSnapshot.getTileBoundsForZ(2.0);
+        Assert.assertEquals("invalid number of z 2 tiles", 2, z2List.size());
+        Assert.assertEquals("invalid first z 2 tileId", "2.a", z2List.get(0).getTileId());
+        Assert.assertEquals("invalid second z 2 z value", 2.0, z2List.get(1).getZ(), 0.0);
+
+        Assert.assertEquals("invalid number of z 3 tiles", 2000, loadedSnapshot.getTileBoundsForZ(3.0).size());
+        Assert.assertEquals("invalid number of z 4 tiles", 0, loadedSnapshot.getTileBoundsForZ(4.0).size());
+
+        Assert.assertEquals("invalid groupId", "g1", loadedSnapshot.getGroupId(0));
+        Assert.assertNull("missing groupId should be null", loadedSnapshot.getGroupId(3));
+
+        final TileBoundsRTree tree = loadedSnapshot.buildRTree(2.0);
+        Assert.assertEquals("invalid number of tiles in tree", 2, tree.size());
+        Assert.assertEquals("invalid number of tiles found in box", 2, tree.findTilesInBox(9.5, 1.0, 9.6, 2.0).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidData() throws Exception {
+        TileBoundsSnapshot.readFrom(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 0, 0, 0, 0 }));
+    }
+
+}
@@ -18,6 +18,7 @@ package org.janelia.alignment.spec;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -143,6 +144,29 @@ public class TileSpecTest {
         Assert.assertEquals("incorrect first channel name with 3 channels", firstName, tileSpec.getFirstChannelName());
     }
 
+    @Test
+    public void testGetCopyWithSharedTransformSpecs() throws Exception {
+
+        final TileSpec tileSpec = TileSpec.fromJson(JSON_WITH_UNSORTED_MIPMAP_LEVELS);
+        final TransformSpec originalLastSpec = tileSpec.getLastTransform();
+
+        final TileSpec copy = tileSpec.getCopyWithSharedTransformSpecs();
+
+        Assert.assertEquals("invalid tileId for copy", tileSpec.getTileId(), copy.getTileId());
+        Assert.assertSame("transform specs should be shared", originalLastSpec, copy.getLastTransform());
+
+        copy.addTransformSpecs(Collections.singletonList(new LeafTransformSpec("mpicbg.trakem2.transform.AffineModel2D",
+                                                                               "1 0 0 1 10 10")));
+        copy.convertLegacyToChannel("DAPI");
+
+        Assert.assertEquals("original transform count changed after copy was modified",
+                            1, tileSpec.getTransforms().size());
+        Assert.assertNull("original channels changed after copy was modified",
+                          tileSpec.getFirstChannelName());
+        Assert.assertNotNull("original mipmap levels changed after copy was modified",
+                             tileSpec.getFirstMipmapEntry());
+    }
+
     @Test
     public void testDeriveBoundingBox() throws Exception {
         final byte[] jsonBytes = Files.readAllBytes(Paths.get("src/test/resources/tile-test/tile_with_only_affine_transforms.json"));
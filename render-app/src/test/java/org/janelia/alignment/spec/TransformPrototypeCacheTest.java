@@ -0,0 +1,111 @@
+package org.janelia.alignment.spec;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.trakem2.transform.CoordinateTransform;
+
+import org.janelia.alignment.transform.AffineWarpField;
+import org.janelia.alignment.transform.AffineWarpFieldTransform;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TransformPrototypeCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class TransformPrototypeCacheTest {
+
+    private AtomicInteger loadCount;
+
+    @Before
+    public void setUp() throws Exception {
+        TransformPrototypeCache.invalidateAll();
+        loadCount = new AtomicInteger(0);
+    }
+
+    @Test
+    public void testAffineWarpFieldTransformCopy() throws Exception {
+
+        final String className = AffineWarpFieldTransform.class.getName();
+        final String dataString = buildWarpFieldDataString();
+
+        Assert.assertTrue(className + " should be cached",
+                          TransformPrototypeCache.COPYABLE_CLASS_NAMES.contains(className));
+
+        final AffineWarpFieldTransform copyA = (AffineWarpFieldTransform)
+                TransformPrototypeCache.getInstance(className, dataString, buildLoader(dataString));
+
+        copyA.getAffineWarpField().set(0, 0, new double[] {2, 0, 0, 2, 100, 100});
+
+        final AffineWarpFieldTransform copyB = (AffineWarpFieldTransform)
+                TransformPrototypeCache.getInstance(className, dataString, buildLoader(dataString));
+
+        Assert.assertEquals("prototype should only be loaded once", 1, loadCount.get());
+        Assert.assertEquals("changes to first copy should not change prototype",
+                            dataString, copyB.toDataString());
+    }
+
+    @Test
+    public void testClassWithoutVerifiedCopyIsNotCached() throws Exception {
+
+        final String className = "org.janelia.test.UnverifiedTransform";
+        final String dataString = buildWarpFieldDataString();
+
+        final CoordinateTransform instanceA =
+                TransformPrototypeCache.getInstance(className, dataString, buildLoader(dataString));
+        final CoordinateTransform instanceB =
+                TransformPrototypeCache.getInstance(className, dataString, buildLoader(dataString));
+
+        Assert.assertEquals("instances should be loaded each time", 2, loadCount.get());
+        //noinspection ConstantConditions
+        Assert.assertFalse("instances should be different", instanceA == instanceB);
+    }
+
+    @Test
+    public void testWeightIncludesDecodedPrototype() throws Exception {
+
+        final String className = AffineWarpFieldTransform.class.getName();
+        final String dataString = buildWarpFieldDataString();
+        final AffineWarpFieldTransform prototype = (AffineWarpFieldTransform) buildLoader(dataString).call();
+
+        final int weight = TransformPrototypeCache.getWeight(
+                new TransformPrototypeCache.PrototypeKey(className, dataString), prototype);
+
+        final int valueBytes = 8 * prototype.getAffineWarpField().getValues().length;
+
+        Assert.assertTrue("weight " + weight + " should include " + valueBytes + " decoded value bytes",
+                          weight >= (2 * dataString.length()) + valueBytes);
+    }
+
+    private Callable<CoordinateTransform> buildLoader(final String dataString) {
+        return () -> {
+            loadCount.incrementAndGet();
+            final AffineWarpFieldTransform transform = new AffineWarpFieldTransform();
+            transform.init(dataString);
+            return transform;
+        };
+    }
+
+    private static String buildWarpFieldDataString() {
+
+        final AffineWarpField affineWarpField =
+                new AffineWarpField(1000, 1000, 4, 4, AffineWarpField.getDefaultInterpolatorFactory());
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                affineWarpField.set(row, column, new double[] {1.01, 0.02, -0.03, 0.99, row * 11.5, column * 7.25});
+            }
+        }
+
+        final String dataString =
+                new AffineWarpFieldTransform(AffineWarpFieldTransform.EMPTY_OFFSETS, affineWarpField).toDataString();
+
+        Assert.assertTrue("data string is too short to be cached",
+                          dataString.length() >= TransformPrototypeCache.MIN_CACHED_DATA_STRING_LENGTH);
+
+        return dataString;
+    }
+
+}
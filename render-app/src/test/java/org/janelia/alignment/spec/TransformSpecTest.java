@@ -7,6 +7,7 @@ import java.util.Set;
 
 import mpicbg.trakem2.transform.AffineModel2D;
 
+import org.janelia.alignment.transform.AffineWarpFieldTransform;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -185,6 +186,45 @@ public class TransformSpecTest {
                            (coordinateTransform1 == coordinateTransform2));
     }
 
+    @Test
+    public void testGetNewInstanceFromCachedPrototype() throws Exception {
+
+        final String dataString =
+                "36801.0 38528.0 11193.0 10962.0 3 3 net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory none " +
+                "0.9955773305800001 0.991077036436 0.993045280237 0.995354187201 1.000440714444 0.993790147206 " +
+                "0.996826382514 0.995984897583 0.993719307666 0.01409965501 0.016043896631 0.014746860293 " +
+                "-0.002873982878 -0.00116022483 0.013510382867 -0.001192439754 5.859217E-6 0.003145943468 " +
+                "-0.011013582015 -0.012338129925 -0.011908982997 9.48924979E-4 0.001618271534 -0.010230964811 " +
+                "-0.003459918858 -0.001934553341 -0.003394926989 1.005886392262 0.997166313186 0.999118607908 " +
+                "0.997128656592 0.99959916781 0.9938648030169999 0.995198137272 0.99522146313 0.996689024213 " +
+                "595.9319718807892 840.5108973976676 756.6997755585908 134.61896849736513 -90.68584564211778 " +
+                "653.6872400376087 276.2241293772531 252.27854943129933 442.0244489518518 -712.0535594469839 " +
+                "-444.47068907479843 -472.35482359516755 232.63408066138072 54.873101921861235 -171.56798092255485 " +
+                "266.64185113671556 213.42933412336424 9.520116822772252";
+
+        Assert.assertTrue("data string is too short to be cached",
+                          dataString.length() >= TransformPrototypeCache.MIN_CACHED_DATA_STRING_LENGTH);
+
+        final LeafTransformSpec warpSpecA = new LeafTransformSpec(AffineWarpFieldTransform.class.getName(),
+                                                                  dataString);
+        final LeafTransformSpec warpSpecB = new LeafTransformSpec(AffineWarpFieldTransform.class.getName(),
+                                                                  new String(dataString.toCharArray()));
+
+        final mpicbg.models.CoordinateTransform coordinateTransformA = warpSpecA.getNewInstance();
+        final mpicbg.models.CoordinateTransform coordinateTransformB = warpSpecB.getNewInstance();
+
+        //noinspection ConstantConditions
+        Assert.assertFalse("transform instances should be different",
+                           (coordinateTransformA == coordinateTransformB));
+
+        final double[] world = { 46214.0, 39961.0 };
+        final double[] resultA = coordinateTransformA.apply(world);
+        final double[] resultB = coordinateTransformB.apply(world);
+
+        Assert.assertEquals("invalid x result for copied instance", resultA[0], resultB[0], 0.0);
+        Assert.assertEquals("invalid y result for copied instance", resultA[1], resultB[1], 0.0);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testValidateWithUnknownClass() throws Exception {
         final LeafTransformSpec spec = new LeafTransformSpec("bad-class", "1 0 0 1 0 0");
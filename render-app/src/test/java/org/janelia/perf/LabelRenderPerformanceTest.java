@@ -0,0 +1,202 @@
+package org.janelia.perf;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.janelia.alignment.LabelRenderer;
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.util.LabelImageProcessorCache;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests label render times for the standard (float canvas) rendering path and
+ * the direct (16-bit target array) {@link LabelRenderer#renderDirect} path.
+ * Sorted average times are printed to standard out.
+ *
+ * <p>
+ * Each test renders the 4 tile stitch test layer at a different scale.
+ * All tests share one label cache that is populated before the tests start,
+ * so results only reflect rendering (not mask loading) times.
+ * </p>
+ *
+ * @author Eric Trautman
+ */
+public class LabelRenderPerformanceTest {
+
+    private boolean enableTests;
+    private int numberOfTimesToRepeatEachTest;
+
+    private final String[] modes = { "standard", "direct" };
+    private final double[] scales = { 0.05, 0.25, 1.0 };
+
+    private PerformanceTestData.TestResults<TestData> testResults;
+    private List<TestData> testDataList;
+
+    public static void main(final String[] args) {
+        final LabelRenderPerformanceTest test = new LabelRenderPerformanceTest();
+        try {
+            test.setup();
+            test.enableTests = true;
+            test.runTests();
+        } catch (final Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        enableTests = false; // set this to true to enable tests - normally, there is no need to run them
+        numberOfTimesToRepeatEachTest = 3;
+        createAndOrderTests();
+    }
+
+    @Test
+    public void runTests() throws Exception {
+        if (enableTests) {
+
+            final RenderParameters warmUpParams = buildRenderParameters(1.0);
+            final LabelImageProcessorCache cache =
+                    new LabelImageProcessorCache(Long.MAX_VALUE, false, false, warmUpParams.getTileSpecs());
+
+            // load masks into the cache before starting the clock
+            for (final String mode : modes) {
+                render(mode, warmUpParams, cache);
+            }
+
+            for (final TestData testData : testDataList) {
+                runTest(testData, cache);
+            }
+            testResults.collateAndPrintTimes(testDataList);
+        }
+    }
+
+    private void runTest(final TestData testData,
+                         final LabelImageProcessorCache cache) {
+
+        final RenderParameters params = buildRenderParameters(testData.scale);
+
+        // *** Start Clock ***
+        testData.setStartTime();
+
+        render(testData.mode, params, cache);
+
+        // *** Stop Clock ***
+        testData.calculateElapsedTime();
+    }
+
+    private static RenderParameters buildRenderParameters(final double scale) {
+        final String[] args = {
+                "--tile_spec_url", "src/test/resources/stitch-test/test_4_tiles_level_1.json",
+                "--out", "test-label.png", // not used but required
+                "--width", "4576",
+                "--height", "4173",
+                "--scale", String.valueOf(scale)
+        };
+        return RenderParameters.parseCommandLineArgs(args);
+    }
+
+    private static void render(final String mode,
+                               final RenderParameters params,
+                               final LabelImageProcessorCache cache) {
+
+        final BufferedImage targetImage = params.openTargetImage(BufferedImage.TYPE_USHORT_GRAY);
+        if ("direct".equals(mode)) {
+            LabelRenderer.renderDirect(params, targetImage, cache);
+        } else {
+            LabelRenderer.render(params, targetImage, cache);
+        }
+    }
+
+    private void createAndOrderTests() {
+
+        testDataList = new ArrayList<>();
+
+        for (int testNumber = 0; testNumber < numberOfTimesToRepeatEachTest; testNumber++) {
+            for (final double scale : scales) {
+                for (final String mode : modes) {
+                    testDataList.add(new TestData(mode, scale, String.valueOf(testNumber)));
+                }
+            }
+        }
+
+        testResults = new PerformanceTestData.TestResults<TestData>() {
+
+            @Override
+            public TestData getAverageInstance(final TestData groupInstance,
+                                               final long averageElapsedTime,
+                                               final int numberOfTests) {
+
+                final TestData averageInstance = new TestData(groupInstance.mode,
+                                                              groupInstance.scale,
+                                                              "avg(" + numberOfTests + ")");
+                averageInstance.setElapsedTime(averageElapsedTime);
+                return averageInstance;
+            }
+
+            @Override
+            public String getReportHeader(final String reportName) {
+                final String headerFormat = "%5s  %8s  %-7s  %11s";
+                return String.format(headerFormat, "scale", "mode", "test   ", "elapsedTime") + "\n" +
+                       String.format(headerFormat, "-----", "--------", "-------", "-----------");
+            }
+
+            @Override
+            public String formatTestResult(final TestData result) {
+                return String.format("%5.2f  %8s  %-7s  %11d",
+                                     result.scale, result.mode, result.test, result.getElapsedTime());
+            }
+
+            @Override
+            public Map<String, Comparator<TestData>> getReportNameToComparatorMap() {
+                final Map<String, Comparator<TestData>> map = new LinkedHashMap<>();
+                map.put("Scale Results", scaleComparator);
+                return map;
+            }
+
+            private final Comparator<TestData> scaleComparator =
+                    (o1, o2) -> {
+                        int result = Double.compare(o1.scale, o2.scale);
+                        if (result == 0) {
+                            result = (int) (o1.getElapsedTime() - o2.getElapsedTime());
+                            if (result == 0) {
+                                result = o1.mode.compareTo(o2.mode);
+                                if (result == 0) {
+                                    result = o1.test.compareTo(o2.test);
+                                }
+                            }
+                        }
+                        return result;
+                    };
+        };
+    }
+
+    public class TestData extends PerformanceTestData {
+
+        private final String mode;
+        private final double scale;
+        private final String test;
+
+        public TestData(final String mode,
+                        final double scale,
+                        final String test) {
+            this.mode = mode;
+            this.scale = scale;
+            this.test = test;
+        }
+
+        @Override
+        public String getAverageGroup() {
+            return scale + "::" + mode;
+        }
+
+        @Override
+        public String getReportGroup() {
+            return String.valueOf(scale);
+        }
+    }
+}
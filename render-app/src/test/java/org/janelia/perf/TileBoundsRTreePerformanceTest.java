@@ -0,0 +1,280 @@
+package org.janelia.perf;
+
+import com.github.davidmoten.rtree.Entry;
+import com.github.davidmoten.rtree.RTree;
+import com.github.davidmoten.rtree.geometry.Circle;
+import com.github.davidmoten.rtree.geometry.Geometries;
+import com.github.davidmoten.rtree.geometry.Geometry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.janelia.alignment.match.OrderedCanvasIdPair;
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares neighbor pair derivation times for a simulated multi-layer stack using
+ * an incrementally built (one tile at a time) tree with individual circle searches
+ * against the bulk loaded (packed) {@link TileBoundsRTree} with joined circle searches.
+ * Sorted average times are printed to standard out.
+ *
+ * <p>
+ * Each test builds trees for every layer and then derives pairs between each layer and its
+ * next {@link #Z_NEIGHBOR_DISTANCE} layers (as {@code TilePairClient} does).
+ * </p>
+ *
+ * @author Eric Trautman
+ */
+public class TileBoundsRTreePerformanceTest {
+
+    private static final int NUMBER_OF_LAYERS = 6;
+    private static final int Z_NEIGHBOR_DISTANCE = 2;
+    private static final double NEIGHBOR_RADIUS_FACTOR = 0.9;
+
+    private boolean enableTests;
+    private int numberOfTimesToRepeatEachTest;
+
+    private final String[] modes = { "dynamic", "packed" };
+    private final int[] tilesPerLayerValues = { 1000, 5000, 20000 };
+
+    private PerformanceTestData.TestResults<TestData> testResults;
+    private List<TestData> testDataList;
+
+    public static void main(final String[] args) {
+        final TileBoundsRTreePerformanceTest test = new TileBoundsRTreePerformanceTest();
+        try {
+            test.setup();
+            test.enableTests = true;
+            test.runTests();
+        } catch (final Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        enableTests = false; // set this to true to enable tests - normally, there is no need to run them
+        numberOfTimesToRepeatEachTest = 3;
+        createAndOrderTests();
+    }
+
+    @Test
+    public void runTests() throws Exception {
+        if (enableTests) {
+            final Map<Integer, List<List<TileBounds>>> tileCountToLayersMap = new LinkedHashMap<>();
+            for (final int tilesPerLayer : tilesPerLayerValues) {
+                tileCountToLayersMap.put(tilesPerLayer, buildLayers(tilesPerLayer));
+            }
+            final Map<Integer, Integer> tileCountToPairCountMap = new LinkedHashMap<>();
+            for (final TestData testData : testDataList) {
+                final int pairCount = runTest(testData, tileCountToLayersMap.get(testData.tilesPerLayer));
+                final Integer previousPairCount = tileCountToPairCountMap.put(testData.tilesPerLayer, pairCount);
+                if (previousPairCount != null) {
+                    Assert.assertEquals("pair count differs for " + testData.mode + " with " +
+                                        testData.tilesPerLayer + " tiles per layer",
+                                        previousPairCount.intValue(), pairCount);
+                }
+            }
+            testResults.collateAndPrintTimes(testDataList);
+        }
+    }
+
+    private int runTest(final TestData testData,
+                        final List<List<TileBounds>> layers) {
+
+        final boolean isPacked = "packed".equals(testData.mode);
+
+        // *** Start Clock ***
+        testData.setStartTime();
+
+        final Set<OrderedCanvasIdPair> pairs = isPacked ? getPackedPairs(layers) : getDynamicPairs(layers);
+
+        // *** Stop Clock ***
+        testData.calculateElapsedTime();
+
+        Assert.assertTrue("no pairs found", pairs.size() > 0);
+
+        return pairs.size();
+    }
+
+    private Set<OrderedCanvasIdPair> getPackedPairs(final List<List<TileBounds>> layers) {
+
+        final List<TileBoundsRTree> trees = new ArrayList<>(layers.size());
+        for (int z = 0; z < layers.size(); z++) {
+            trees.add(new TileBoundsRTree((double) z, layers.get(z)));
+        }
+
+        final Set<OrderedCanvasIdPair> pairs = new HashSet<>();
+        for (int z = 0; z < trees.size(); z++) {
+            final TileBoundsRTree tree = trees.get(z);
+            final List<TileBoundsRTree> neighborTrees =
+                    trees.subList(z + 1, Math.min(z + 1 + Z_NEIGHBOR_DISTANCE, trees.size()));
+            pairs.addAll(tree.getCircleNeighbors(tree.getTileBoundsList(), neighborTrees,
+                                                 NEIGHBOR_RADIUS_FACTOR, null, false, false, false));
+        }
+
+        return pairs;
+    }
+
+    /**
+     * Derives pairs the way {@link TileBoundsRTree} did before bulk loading was supported:
+     * tiles are added to the tree one at a time and each source tile is searched for separately.
+     */
+    private Set<OrderedCanvasIdPair> getDynamicPairs(final List<List<TileBounds>> layers) {
+
+        final List<RTree<TileBounds, Geometry>> trees = new ArrayList<>(layers.size());
+        for (final List<TileBounds> layer : layers) {
+            RTree<TileBounds, Geometry> tree = RTree.create();
+            for (final TileBounds tileBounds : layer) {
+                tree = tree.add(tileBounds, Geometries.rectangle(tileBounds.getMinX(), tileBounds.getMinY(),
+                                                                 tileBounds.getMaxX(), tileBounds.getMaxY()));
+            }
+            trees.add(tree);
+        }
+
+        final Set<OrderedCanvasIdPair> pairs = new HashSet<>();
+        for (int z = 0; z < trees.size(); z++) {
+            final int maxNeighborZ = Math.min(z + Z_NEIGHBOR_DISTANCE, trees.size() - 1);
+            for (final TileBounds tileBounds : layers.get(z)) {
+                final double tileWidth = tileBounds.getDeltaX();
+                final double tileHeight = tileBounds.getDeltaY();
+                final double radius = Math.max(tileWidth, tileHeight) * NEIGHBOR_RADIUS_FACTOR;
+                final Circle circle = Geometries.circle(tileBounds.getMinX() + (tileWidth / 2),
+                                                          tileBounds.getMinY() + (tileHeight / 2),
+                                                          radius);
+                for (int neighborZ = z; neighborZ <= maxNeighborZ; neighborZ++) {
+                    final List<TileBounds> searchResults = new ArrayList<>();
+                    for (final Entry<TileBounds, Geometry> entry :
+                            trees.get(neighborZ).search(circle).toList().toBlocking().single()) {
+                        searchResults.add(entry.value());
+                    }
+                    pairs.addAll(TileBoundsRTree.getDistinctPairs(tileBounds, searchResults,
+                                                                  false, false, (neighborZ == z)));
+                }
+            }
+        }
+
+        return pairs;
+    }
+
+    private List<List<TileBounds>> buildLayers(final int tilesPerLayer) {
+
+        final Random random = new Random(tilesPerLayer);
+        final int tilesPerRow = (int) Math.ceil(Math.sqrt(tilesPerLayer));
+        final double tileSize = 2000;
+        final double tileStep = tileSize * 0.9;
+
+        final List<List<TileBounds>> layers = new ArrayList<>(NUMBER_OF_LAYERS);
+        for (int z = 0; z < NUMBER_OF_LAYERS; z++) {
+            final String sectionId = z + ".0";
+            final List<TileBounds> layer = new ArrayList<>(tilesPerLayer);
+            for (int i = 0; i < tilesPerLayer; i++) {
+                final double minX = ((i % tilesPerRow) * tileStep) + (random.nextDouble() * 50);
+                final double minY = ((i / tilesPerRow) * tileStep) + (random.nextDouble() * 50);
+                layer.add(new TileBounds(z + "." + i, sectionId, (double) z,
+                                         minX, minY, minX + tileSize, minY + tileSize));
+            }
+            layers.add(layer);
+        }
+
+        return layers;
+    }
+
+    private void createAndOrderTests() {
+
+        testDataList = new ArrayList<>();
+
+        for (int testNumber = 0; testNumber < numberOfTimesToRepeatEachTest; testNumber++) {
+            for (final int tilesPerLayer : tilesPerLayerValues) {
+                for (final String mode : modes) {
+                    testDataList.add(new TestData(mode, tilesPerLayer, String.valueOf(testNumber)));
+                }
+            }
+        }
+
+        testResults = new PerformanceTestData.TestResults<TestData>() {
+
+            @Override
+            public TestData getAverageInstance(final TestData groupInstance,
+                                               final long averageElapsedTime,
+                                               final int numberOfTests) {
+
+                final TestData averageInstance = new TestData(groupInstance.mode,
+                                                              groupInstance.tilesPerLayer,
+                                                              "avg(" + numberOfTests + ")");
+                averageInstance.setElapsedTime(averageElapsedTime);
+                return averageInstance;
+            }
+
+            @Override
+            public String getReportHeader(final String reportName) {
+                final String headerFormat = "%13s  %7s  %-7s  %11s";
+                return String.format(headerFormat, "tilesPerLayer", "mode", "test   ", "elapsedTime") + "\n" +
+                       String.format(headerFormat, "-------------", "-------", "-------", "-----------");
+            }
+
+            @Override
+            public String formatTestResult(final TestData result) {
+                return String.format("%13d  %7s  %-7s  %11d",
+                                     result.tilesPerLayer, result.mode, result.test, result.getElapsedTime());
+            }
+
+            @Override
+            public Map<String, Comparator<TestData>> getReportNameToComparatorMap() {
+                final Map<String, Comparator<TestData>> map = new LinkedHashMap<>();
+                map.put("Tile Count Results", tileCountComparator);
+                return map;
+            }
+
+            private final Comparator<TestData> tileCountComparator =
+                    (o1, o2) -> {
+                        int result = o1.tilesPerLayer - o2.tilesPerLayer;
+                        if (result == 0) {
+                            result = (int) (o1.getElapsedTime() - o2.getElapsedTime());
+                            if (result == 0) {
+                                result = o1.mode.compareTo(o2.mode);
+                                if (result == 0) {
+                                    result = o1.test.compareTo(o2.test);
+                                }
+                            }
+                        }
+                        return result;
+                    };
+        };
+    }
+
+    public class TestData extends PerformanceTestData {
+
+        private final String mode;
+        private final int tilesPerLayer;
+        private final String test;
+
+        public TestData(final String mode,
+                        final int tilesPerLayer,
+                        final String test) {
+            this.mode = mode;
+            this.tilesPerLayer = tilesPerLayer;
+            this.test = test;
+        }
+
+        @Override
+        public String getAverageGroup() {
+            return tilesPerLayer + "::" + mode;
+        }
+
+        @Override
+        public String getReportGroup() {
+            return String.valueOf(tilesPerLayer);
+        }
+    }
+}
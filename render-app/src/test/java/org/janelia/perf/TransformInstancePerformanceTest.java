@@ -0,0 +1,238 @@
+package org.janelia.perf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import jitk.spline.ThinPlateR2LogRSplineKernelTransform;
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.trakem2.transform.AffineModel2D;
+import mpicbg.trakem2.transform.ThinPlateSplineTransform;
+
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformPrototypeCache;
+import org.janelia.alignment.spec.TransformSpec;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TileSpec#getTransformList()} times for thin plate spline heavy tiles
+ * with and without the {@link TransformPrototypeCache}.
+ * Sorted average times are printed to standard out.
+ *
+ * <p>
+ * Each test builds the transform list for every tile in a simulated layer several times
+ * (as happens when rendering and mapping coordinates for a layer).
+ * In "parse" mode, the prototype cache is cleared before each list is built so that every
+ * thin plate spline data string is decoded.  In "cached" mode, data strings are only decoded once.
+ * </p>
+ *
+ * @author Eric Trautman
+ */
+public class TransformInstancePerformanceTest {
+
+    private static final int NUMBER_OF_TILES = 50;
+    private static final int NUMBER_OF_BUILDS_PER_TILE = 20;
+
+    private boolean enableTests;
+    private int numberOfTimesToRepeatEachTest;
+
+    private final String[] modes = { "parse", "cached" };
+    private final int[] landmarkCounts = { 50, 200, 800 };
+
+    private PerformanceTestData.TestResults<TestData> testResults;
+    private List<TestData> testDataList;
+
+    public static void main(final String[] args) {
+        final TransformInstancePerformanceTest test = new TransformInstancePerformanceTest();
+        try {
+            test.setup();
+            test.enableTests = true;
+            test.runTests();
+        } catch (final Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        enableTests = false; // set this to true to enable tests - normally, there is no need to run them
+        numberOfTimesToRepeatEachTest = 3;
+        createAndOrderTests();
+    }
+
+    @Test
+    public void runTests() throws Exception {
+        if (enableTests) {
+            final Map<Integer, List<TileSpec>> landmarkCountToTilesMap = new LinkedHashMap<>();
+            for (final int landmarkCount : landmarkCounts) {
+                landmarkCountToTilesMap.put(landmarkCount, buildTiles(landmarkCount));
+            }
+            for (final TestData testData : testDataList) {
+                runTest(testData, landmarkCountToTilesMap.get(testData.landmarkCount));
+            }
+            testResults.collateAndPrintTimes(testDataList);
+            System.out.println("\nprototype cache: " + TransformPrototypeCache.getStats());
+        }
+    }
+
+    private void runTest(final TestData testData,
+                         final List<TileSpec> tileSpecs) {
+
+        final boolean parseEveryTime = "parse".equals(testData.mode);
+
+        TransformPrototypeCache.invalidateAll();
+
+        // *** Start Clock ***
+        testData.setStartTime();
+
+        CoordinateTransformList<CoordinateTransform> ctl = null;
+        for (int i = 0; i < NUMBER_OF_BUILDS_PER_TILE; i++) {
+            for (final TileSpec tileSpec : tileSpecs) {
+                if (parseEveryTime) {
+                    TransformPrototypeCache.invalidateAll();
+                }
+                ctl = tileSpec.getTransformList();
+            }
+        }
+
+        // *** Stop Clock ***
+        testData.calculateElapsedTime();
+
+        Assert.assertNotNull("transform list not built", ctl);
+        Assert.assertEquals("invalid number of transforms", 2, ctl.getList(null).size());
+    }
+
+    private List<TileSpec> buildTiles(final int landmarkCount) {
+
+        final Random random = new Random(landmarkCount);
+        final List<TileSpec> tileSpecs = new ArrayList<>(NUMBER_OF_TILES);
+
+        for (int tile = 0; tile < NUMBER_OF_TILES; tile++) {
+
+            final double[][] p = new double[2][landmarkCount];
+            final double[][] q = new double[2][landmarkCount];
+            for (int i = 0; i < landmarkCount; i++) {
+                p[0][i] = random.nextDouble() * 2560;
+                p[1][i] = random.nextDouble() * 2160;
+                q[0][i] = p[0][i] + (random.nextDouble() * 10) - 5;
+                q[1][i] = p[1][i] + (random.nextDouble() * 10) - 5;
+            }
+
+            final ThinPlateR2LogRSplineKernelTransform kernelTransform =
+                    new ThinPlateR2LogRSplineKernelTransform(2, p, q);
+            kernelTransform.solve();
+
+            final ThinPlateSplineTransform tps = new ThinPlateSplineTransform(kernelTransform);
+
+            final List<TransformSpec> transformSpecs = Arrays.asList(
+                    new LeafTransformSpec(ThinPlateSplineTransform.class.getName(), tps.toDataString()),
+                    new LeafTransformSpec(AffineModel2D.class.getName(), "1 0 0 1 " + (tile * 2400) + " 0"));
+
+            final TileSpec tileSpec = new TileSpec();
+            tileSpec.setTileId("tile-" + tile);
+            tileSpec.setWidth(2560.0);
+            tileSpec.setHeight(2160.0);
+            tileSpec.addTransformSpecs(transformSpecs);
+
+            tileSpecs.add(tileSpec);
+        }
+
+        return tileSpecs;
+    }
+
+    private void createAndOrderTests() {
+
+        testDataList = new ArrayList<>();
+
+        for (int testNumber = 0; testNumber < numberOfTimesToRepeatEachTest; testNumber++) {
+            for (final int landmarkCount : landmarkCounts) {
+                for (final String mode : modes) {
+                    testDataList.add(new TestData(mode, landmarkCount, String.valueOf(testNumber)));
+                }
+            }
+        }
+
+        testResults = new PerformanceTestData.TestResults<TestData>() {
+
+            @Override
+            public TestData getAverageInstance(final TestData groupInstance,
+                                               final long averageElapsedTime,
+                                               final int numberOfTests) {
+
+                final TestData averageInstance = new TestData(groupInstance.mode,
+                                                              groupInstance.landmarkCount,
+                                                              "avg(" + numberOfTests + ")");
+                averageInstance.setElapsedTime(averageElapsedTime);
+                return averageInstance;
+            }
+
+            @Override
+            public String getReportHeader(final String reportName) {
+                final String headerFormat = "%9s  %6s  %-7s  %11s";
+                return String.format(headerFormat, "landmarks", "mode", "test   ", "elapsedTime") + "\n" +
+                       String.format(headerFormat, "---------", "------", "-------", "-----------");
+            }
+
+            @Override
+            public String formatTestResult(final TestData result) {
+                return String.format("%9d  %6s  %-7s  %11d",
+                                     result.landmarkCount, result.mode, result.test, result.getElapsedTime());
+            }
+
+            @Override
+            public Map<String, Comparator<TestData>> getReportNameToComparatorMap() {
+                final Map<String, Comparator<TestData>> map = new LinkedHashMap<>();
+                map.put("Landmark Results", landmarkComparator);
+                return map;
+            }
+
+            private final Comparator<TestData> landmarkComparator =
+                    (o1, o2) -> {
+                        int result = o1.landmarkCount - o2.landmarkCount;
+                        if (result == 0) {
+                            result = (int) (o1.getElapsedTime() - o2.getElapsedTime());
+                            if (result == 0) {
+                                result = o1.mode.compareTo(o2.mode);
+                                if (result == 0) {
+                                    result = o1.test.compareTo(o2.test);
+                                }
+                            }
+                        }
+                        return result;
+                    };
+        };
+    }
+
+    public class TestData extends PerformanceTestData {
+
+        private final String mode;
+        private final int landmarkCount;
+        private final String test;
+
+        public TestData(final String mode,
+                        final int landmarkCount,
+                        final String test) {
+            this.mode = mode;
+            this.landmarkCount = landmarkCount;
+            this.test = test;
+        }
+
+        @Override
+        public String getAverageGroup() {
+            return landmarkCount + "::" + mode;
+        }
+
+        @Override
+        public String getReportGroup() {
+            return String.valueOf(landmarkCount);
+        }
+    }
+}
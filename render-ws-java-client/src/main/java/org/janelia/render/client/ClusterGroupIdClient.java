@@ -3,13 +3,16 @@ package org.janelia.render.client;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.janelia.alignment.match.MatchGraphEdge;
 import org.janelia.alignment.match.SortedConnectedCanvasIdClusters;
-import org.janelia.alignment.match.TileIdsWithMatches;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.render.client.parameter.CommandLineParameters;
@@ -97,23 +100,28 @@ public class ClusterGroupIdClient {
             final ResolvedTileSpecCollection resolvedTiles = renderDataClient.getResolvedTiles(parameters.stack, z);
             final Set<String> stackTileIds = new HashSet<>(resolvedTiles.getTileIds());
 
-            final TileIdsWithMatches tileIdsWithMatches =
-                    UnconnectedTileRemovalClient.getTileIdsWithMatches(renderDataClient,
-                                                                       parameters.stack,
-                                                                       z,
-                                                                       matchDataClient,
-                                                                       stackTileIds,
-                                                                       parameters.tileCluster.includeMatchesOutsideGroup);
+            final List<MatchGraphEdge> layerEdges =
+                    getLayerEdges(renderDataClient,
+                                  parameters.stack,
+                                  z,
+                                  matchDataClient,
+                                  stackTileIds,
+                                  parameters.tileCluster.includeMatchesOutsideGroup);
+
+            final Set<String> connectedTileIds = new HashSet<>();
+            layerEdges.forEach(edge -> {
+                connectedTileIds.add(edge.getpId());
+                connectedTileIds.add(edge.getqId());
+            });
 
             final Set<String> unconnectedTileIds = new HashSet<>();
             stackTileIds.forEach(tileId -> {
-                if (! tileIdsWithMatches.contains(tileId)) {
+                if (! connectedTileIds.contains(tileId)) {
                     unconnectedTileIds.add(tileId);
                 }
             });
 
-            final SortedConnectedCanvasIdClusters clusters =
-                    new SortedConnectedCanvasIdClusters(tileIdsWithMatches.getCanvasMatchesList());
+            final SortedConnectedCanvasIdClusters clusters = SortedConnectedCanvasIdClusters.fromEdges(layerEdges);
             final List<Set<String>> sortedConnectedTileIdSets = clusters.getSortedConnectedTileIdSets();
 
             LOG.info("setGroupIds: for z {}, found {} connected tile sets with sizes {}",
@@ -152,6 +160,35 @@ public class ClusterGroupIdClient {
 
     }
 
+    /**
+     * @return match graph edges for all sections in the specified layer where both tiles are in the stack.
+     *         Edges come from the match collection's edge index so that match points are never loaded.
+     */
+    static List<MatchGraphEdge> getLayerEdges(final RenderDataClient stackClient,
+                                              final String stackName,
+                                              final Double z,
+                                              final RenderDataClient matchClient,
+                                              final Set<String> stackTileIds,
+                                              final boolean includeMatchesOutsideGroup)
+            throws IOException {
+
+        final List<SectionData> sectionDataList = stackClient.getStackSectionData(stackName, z, z);
+        final List<MatchGraphEdge> layerEdges = new ArrayList<>();
+        for (final SectionData sectionData : sectionDataList) {
+            final String sectionId = sectionData.getSectionId();
+            for (final MatchGraphEdge edge : matchClient.getMatchGraphEdges(sectionId, null, null, null)) {
+                final boolean isWithinGroup =
+                        sectionId.equals(edge.getpGroupId()) && sectionId.equals(edge.getqGroupId());
+                if ((includeMatchesOutsideGroup || isWithinGroup) &&
+                    stackTileIds.contains(edge.getpId()) && stackTileIds.contains(edge.getqId())) {
+                    layerEdges.add(edge);
+                }
+            }
+        }
+
+        return layerEdges;
+    }
+
     private int setGroupIdForCluster(final ResolvedTileSpecCollection allTiles,
                                      final Set<String> cluster,
                                      final String clusterGroupId) {
@@ -15,8 +15,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -25,13 +23,13 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.janelia.alignment.spec.BulkCoordinateMapper;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackVersion;
 import org.janelia.alignment.util.FileUtil;
-import org.janelia.alignment.util.ProcessTimer;
 import org.janelia.render.client.parameter.CommandLineParameters;
 import org.janelia.render.client.parameter.RenderWebServiceParameters;
 import org.slf4j.Logger;
@@ -119,6 +117,13 @@ public class CoordinateClient {
                 required = false)
         public int numberOfThreads = 1;
 
+        @Parameter(
+                names = "--mapOnServer",
+                description = "Map coordinates with the web service bulk mapping APIs instead of locally",
+                required = false,
+                arity = 0)
+        public boolean mapOnServer = false;
+
         public String getToOwner() {
             if (toOwner == null) {
                 toOwner = renderWeb.owner;
@@ -210,6 +215,7 @@ public class CoordinateClient {
                                                                      parameters.z,
                                                                      renderDataClient,
                                                                      parameters.numberOfThreads);
+                client.setMapOnServer(parameters.mapOnServer);
                 SWCHelper swcHelper = null;
                 Object coordinatesToSave = null;
 
@@ -236,6 +242,7 @@ public class CoordinateClient {
                                                                                null,
                                                                                targetRenderDataClient,
                                                                                parameters.numberOfThreads);
+                    targetClient.setMapOnServer(parameters.mapOnServer);
 
                     final List<TileCoordinates> worldCoordinates;
 
@@ -280,6 +287,7 @@ public class CoordinateClient {
     private final Double z;
     private final RenderDataClient renderDataClient;
     private final int numberOfThreads;
+    private boolean mapOnServer;
 
     public CoordinateClient(final String stack,
                             final Double z,
@@ -289,6 +297,15 @@ public class CoordinateClient {
         this.z = z;
         this.renderDataClient = renderDataClient;
         this.numberOfThreads = numberOfThreads;
+        this.mapOnServer = false;
+    }
+
+    /**
+     * @param  mapOnServer  if true, coordinates are mapped by the web service bulk mapping APIs;
+     *                      otherwise tile specs are retrieved and coordinates are mapped locally.
+     */
+    public void setMapOnServer(final boolean mapOnServer) {
+        this.mapOnServer = mapOnServer;
     }
 
     @Override
@@ -339,8 +356,13 @@ public class CoordinateClient {
             final List<List<TileCoordinates>> batchWorldCoordinatesWithTileIds =
                     getWorldCoordinatesWithTileIds(loadedWorldCoordinates.subList(fromIndex,
                                                                                   toIndex));
-            final ResolvedTileSpecCollection tiles = getTiles(batchWorldCoordinatesWithTileIds);
-            localListOfLists.addAll(worldToLocal(batchWorldCoordinatesWithTileIds, tiles));
+            if (mapOnServer) {
+                localListOfLists.addAll(renderDataClient.getLocalCoordinatesInBulk(batchWorldCoordinatesWithTileIds,
+                                                                                   stack));
+            } else {
+                final ResolvedTileSpecCollection tiles = getTiles(batchWorldCoordinatesWithTileIds);
+                localListOfLists.addAll(worldToLocal(batchWorldCoordinatesWithTileIds, tiles));
+            }
 
             batchHelper.logCompletion(fromIndex, toIndex);
         }
@@ -352,48 +374,11 @@ public class CoordinateClient {
                                                     final ResolvedTileSpecCollection tiles)
             throws IOException, InterruptedException {
 
-        final List<List<TileCoordinates>> localListOfLists;
-
-        if (numberOfThreads > 1) {
-
-            localListOfLists = new ArrayList<>(worldListOfLists.size());
-            final List<Integer> batchIndexes = getBatchIndexes(numberOfThreads, worldListOfLists.size());
-            final List<WorldToLocalMapper> mapperList = new ArrayList<>(numberOfThreads);
-
-            LOG.info("worldToLocal: mapping {} coordinate lists using {} threads",
-                     worldListOfLists.size(), batchIndexes.size() - 1);
-
-            for (int i = 1; i < batchIndexes.size(); i++) {
-                final WorldToLocalMapper mapper = new WorldToLocalMapper(stack,
-                                                                         z,
-                                                                         tiles,
-                                                                         worldListOfLists,
-                                                                         batchIndexes.get(i-1),
-                                                                         batchIndexes.get(i));
-                mapperList.add(mapper);
-                mapper.start();
-            }
-
-            for (final WorldToLocalMapper mapper : mapperList) {
-                LOG.info("worldToLocal: waiting for {} to finish ...", mapper);
-                mapper.join();
-                localListOfLists.addAll(mapper.getLocalListOfLists());
-            }
-
-        } else {
-
-            LOG.info("worldToLocal: entry, mapping {} coordinate lists on main thread",
-                     worldListOfLists.size());
+        LOG.info("worldToLocal: entry, mapping {} coordinate lists using {} threads",
+                 worldListOfLists.size(), numberOfThreads);
 
-            final WorldToLocalMapper mapper = new WorldToLocalMapper(stack,
-                                                                     z,
-                                                                     tiles,
-                                                                     worldListOfLists,
-                                                                     0,
-                                                                     worldListOfLists.size());
-            mapper.run();
-            localListOfLists = mapper.getLocalListOfLists();
-        }
+        final BulkCoordinateMapper mapper = new BulkCoordinateMapper(tiles, numberOfThreads);
+        final List<List<TileCoordinates>> localListOfLists = mapper.worldToLocal(worldListOfLists);
 
         LOG.info("worldToLocal: exit, returning {} lists of local coordinates", localListOfLists.size());
 
@@ -414,8 +399,16 @@ public class CoordinateClient {
             final List<List<TileCoordinates>> batchLocalCoordinates =
                     loadedLocalCoordinates.subList(fromIndex, toIndex);
 
-            final ResolvedTileSpecCollection tiles = getTiles(batchLocalCoordinates);
-            worldList.addAll(localToWorld(batchLocalCoordinates, tiles));
+            if (mapOnServer) {
+                final List<TileCoordinates> visibleLocalCoordinates = new ArrayList<>(batchLocalCoordinates.size());
+                for (final List<TileCoordinates> mappedCoordinatesList : batchLocalCoordinates) {
+                    visibleLocalCoordinates.add(getVisibleCoordinates(mappedCoordinatesList));
+                }
+                worldList.addAll(renderDataClient.getWorldCoordinatesInBulk(visibleLocalCoordinates, stack));
+            } else {
+                final ResolvedTileSpecCollection tiles = getTiles(batchLocalCoordinates);
+                worldList.addAll(localToWorld(batchLocalCoordinates, tiles));
+            }
 
             batchHelper.logCompletion(fromIndex, toIndex);
         }
@@ -427,49 +420,17 @@ public class CoordinateClient {
                                               final ResolvedTileSpecCollection tiles)
             throws IOException, InterruptedException {
 
-        final List<TileCoordinates> worldList;
-
-        if (numberOfThreads > 1) {
-
-            worldList = new ArrayList<>(localListOfLists.size());
-            final List<Integer> batchIndexes = getBatchIndexes(numberOfThreads, localListOfLists.size());
-            final List<LocalToWorldMapper> mapperList = new ArrayList<>(numberOfThreads);
-
-            LOG.info("localToWorld: mapping {} coordinate lists using {} threads",
-                     localListOfLists.size(), batchIndexes.size() - 1);
-
-            for (int i = 1; i < batchIndexes.size(); i++) {
-                final LocalToWorldMapper mapper = new LocalToWorldMapper(stack,
-                                                                         z,
-                                                                         tiles,
-                                                                         localListOfLists,
-                                                                         batchIndexes.get(i-1),
-                                                                         batchIndexes.get(i));
-                mapperList.add(mapper);
-                mapper.start();
-            }
-
-            for (final LocalToWorldMapper mapper : mapperList) {
-                LOG.info("localToWorld: waiting for {} to finish ...", mapper);
-                mapper.join();
-                worldList.addAll(mapper.getWorldList());
-            }
-
-        } else {
-
-            LOG.info("localToWorld: entry, mapping {} coordinate lists on main thread",
-                     localListOfLists.size());
+        LOG.info("localToWorld: entry, mapping {} coordinate lists using {} threads",
+                 localListOfLists.size(), numberOfThreads);
 
-            final LocalToWorldMapper mapper = new LocalToWorldMapper(stack,
-                                                                     z,
-                                                                     tiles,
-                                                                     localListOfLists,
-                                                                     0,
-                                                                     localListOfLists.size());
-            mapper.run();
-            worldList = mapper.getWorldList();
+        final List<TileCoordinates> localList = new ArrayList<>(localListOfLists.size());
+        for (final List<TileCoordinates> mappedCoordinatesList : localListOfLists) {
+            localList.add(getVisibleCoordinates(mappedCoordinatesList));
         }
 
+        final BulkCoordinateMapper mapper = new BulkCoordinateMapper(tiles, numberOfThreads);
+        final List<TileCoordinates> worldList = mapper.localToWorld(localList);
+
         LOG.info("localToWorld: exit, returning {} world coordinates", worldList.size());
 
         return worldList;
@@ -569,263 +530,21 @@ public class CoordinateClient {
     }
 
     /**
-     * Maps sub-list of world coordinates to local coordinates.
-     */
-    private static class WorldToLocalMapper extends Thread {
-
-        private final String stack;
-        private final Double z;
-        private final ResolvedTileSpecCollection tiles;
-        private final List<List<TileCoordinates>> worldListOfLists;
-        private final List<List<TileCoordinates>> localListOfLists;
-        private final int startIndex;
-        private final int stopIndex;
-        private int errorCount;
-
-        public WorldToLocalMapper(final String stack,
-                                  final Double z,
-                                  final ResolvedTileSpecCollection tiles,
-                                  final List<List<TileCoordinates>> worldListOfLists,
-                                  final int startIndex,
-                                  final int stopIndex) {
-            this.stack = stack;
-            this.z = z;
-            this.tiles = tiles;
-            this.worldListOfLists = worldListOfLists;
-            this.startIndex = startIndex;
-            this.stopIndex = stopIndex;
-
-            this.localListOfLists = new ArrayList<>(worldListOfLists.size());
-            this.errorCount = 0;
-        }
-
-        public int numberOfPoints() {
-            return stopIndex - startIndex;
-        }
-
-        public List<List<TileCoordinates>> getLocalListOfLists() {
-            return localListOfLists;
-        }
-
-        @Override
-        public String toString() {
-            return "WorldToLocalMapper[" + startIndex + "," + stopIndex + "]";
-        }
-
-        @Override
-        public void run() {
-
-            final ProcessTimer timer = new ProcessTimer();
-
-            List<TileCoordinates> coordinatesList;
-            TileCoordinates coordinates;
-
-            for (int i = startIndex; (i < stopIndex) && (i < worldListOfLists.size()); i++) {
-
-                coordinates = null;
-                coordinatesList = worldListOfLists.get(i);
-
-                try {
-
-                    final List<TileSpec> tileSpecList = getTileSpecsForCoordinates(coordinatesList, tiles);
-
-                    coordinates = coordinatesList.get(0);
-                    final double[] world = coordinates.getWorld();
-                    if (world == null) {
-                        throw new IllegalArgumentException("world values are missing");
-                    } else if (world.length < 2) {
-                        throw new IllegalArgumentException("world values must include both x and y");
-                    }
-
-                    localListOfLists.add(TileCoordinates.getLocalCoordinates(tileSpecList,
-                                                                             world[0],
-                                                                             world[1]));
-
-                } catch (final Throwable t) {
-
-                    LOG.warn("worldToLocal run: caught exception for list item {}, " +
-                             "adding original coordinates with error message to list", (i + startIndex), t);
-
-                    errorCount++;
-
-                    if (coordinates == null) {
-                        coordinates = TileCoordinates.buildWorldInstance(null, null);
-                    }
-                    coordinates.setError(t.getMessage());
-
-                    localListOfLists.add(Collections.singletonList(coordinates));
-                }
-
-                if (timer.hasIntervalPassed()) {
-                    LOG.info("{}: inversely transformed {} out of {} points",
-                             this, (i - startIndex + 1), numberOfPoints());
-                }
-
-            }
-
-            LOG.info("{}: exit, inversely transformed {} points with {} errors in {} seconds",
-                     this, numberOfPoints(), errorCount, timer.getElapsedSeconds());
-
-        }
-
-        private List<TileSpec> getTileSpecsForCoordinates(final List<TileCoordinates> coordinatesList,
-                                                          final ResolvedTileSpecCollection tiles) {
-
-            if ((coordinatesList == null) || (coordinatesList.size() == 0)) {
-                throw new IllegalArgumentException("coordinates are missing");
-            }
-
-            String tileId;
-            TileSpec tileSpec;
-            final List<TileSpec> tileSpecList = new ArrayList<>();
-            for (final TileCoordinates coordinates : coordinatesList) {
-                tileId = coordinates.getTileId();
-                if (tileId != null) {
-                    tileSpec = tiles.getTileSpec(tileId);
-                    if (tileSpec != null) {
-                        tileSpecList.add(tileSpec);
-                    }
-                }
-            }
-
-            if (tileSpecList.size() == 0) {
-                final String zMessage = z == null ? "" : "layer " + z + " of ";
-                throw new IllegalArgumentException("no tile specifications found in " + zMessage + "stack " + stack +
-                                                   " for " + Arrays.toString(coordinatesList.get(0).getWorld()));
-            }
-
-            return tileSpecList;
-        }
-    }
-
-    /**
-     * Maps sub-list of local coordinates to world coordinates.
+     * @return the first visible coordinates in the specified list or simply the first coordinates if none are
+     * marked as visible.
      */
-    private static class LocalToWorldMapper extends Thread {
-
-        private final String stack;
-        private final Double z;
-        private final ResolvedTileSpecCollection tiles;
-        private final List<List<TileCoordinates>> localListOfLists;
-        private final List<TileCoordinates> worldList;
-        private final int startIndex;
-        private final int stopIndex;
-        private int errorCount;
-
-        public LocalToWorldMapper(final String stack,
-                                  final Double z,
-                                  final ResolvedTileSpecCollection tiles,
-                                  final List<List<TileCoordinates>> localListOfLists,
-                                  final int startIndex,
-                                  final int stopIndex) {
-            this.stack = stack;
-            this.z = z;
-            this.tiles = tiles;
-            this.localListOfLists = localListOfLists;
-            this.startIndex = startIndex;
-            this.stopIndex = stopIndex;
-
-            this.worldList = new ArrayList<>(localListOfLists.size());
-            this.errorCount = 0;
-        }
-
-        public int numberOfPoints() {
-            return stopIndex - startIndex + 1;
-        }
-
-        public List<TileCoordinates> getWorldList() {
-            return worldList;
-        }
-
-        @Override
-        public String toString() {
-            return "LocalToWorldMapper[" + startIndex + "," + stopIndex + "]";
-        }
-
-        @Override
-        public void run() {
-
-            final ProcessTimer timer = new ProcessTimer();
-
-            TileSpec tileSpec;
-            TileCoordinates coordinates;
-            String tileId;
-            double[] local;
-            for (int i = startIndex; (i < stopIndex) && (i < localListOfLists.size()); i++) {
-
-                coordinates = getVisibleCoordinates(localListOfLists.get(i));
-
-                try {
-
-                    if (coordinates == null) {
-                        throw new IllegalArgumentException("coordinates are missing");
-                    }
-
-                    tileId = coordinates.getTileId();
-                    if (tileId == null) {
-                        throw new IllegalArgumentException("tileId is missing");
-                    }
-
-                    local = coordinates.getLocal();
-                    if (local == null) {
-                        throw new IllegalArgumentException("local values are missing");
-                    } else if (local.length < 2) {
-                        throw new IllegalArgumentException("local values must include both x and y");
-                    }
-
-                    tileSpec = tiles.getTileSpec(tileId);
-
-                    if (tileSpec == null) {
-                        throw new IllegalArgumentException("tileId " + tileId + " cannot be found in layer " + z +
-                                                           " of stack " + stack);
-                    }
-
-                    worldList.add(TileCoordinates.getWorldCoordinates(tileSpec, local[0], local[1]));
-
-                } catch (final Throwable t) {
-
-                    LOG.warn("{}: caught exception for list item {}, " +
-                             "adding original coordinates with error message to list", this, (i + startIndex), t);
-
-                    errorCount++;
-
-                    if (coordinates == null) {
-                        coordinates = TileCoordinates.buildLocalInstance(null, null);
-                    }
-                    coordinates.setError(t.getMessage());
-
-                    worldList.add(coordinates);
-                }
-
-                if (timer.hasIntervalPassed()) {
-                    LOG.info("{}: transformed {} out of {} points",
-                             this, (i - startIndex + 1), numberOfPoints());
+    private static TileCoordinates getVisibleCoordinates(final List<TileCoordinates> mappedCoordinatesList) {
+        TileCoordinates tileCoordinates = null;
+        if ((mappedCoordinatesList != null) && (mappedCoordinatesList.size() > 0)) {
+            tileCoordinates = mappedCoordinatesList.get(0);
+            for (final TileCoordinates mappedCoordinates : mappedCoordinatesList) {
+                if (mappedCoordinates.isVisible()) {
+                    tileCoordinates = mappedCoordinates;
+                    break;
                 }
-
             }
-
-            LOG.info("{}: exit, transformed {} points with {} errors in {} seconds",
-                     this, numberOfPoints(), errorCount, timer.getElapsedSeconds());
         }
-
-        /**
-         * @return the first visible coordinates in the specified list or simply the first coordinates if none are
-         * marked as visible.
-         */
-        private TileCoordinates getVisibleCoordinates(final List<TileCoordinates> mappedCoordinatesList) {
-            TileCoordinates tileCoordinates = null;
-            if (mappedCoordinatesList.size() > 0) {
-                tileCoordinates = mappedCoordinatesList.get(0);
-                for (final TileCoordinates mappedCoordinates : mappedCoordinatesList) {
-                    if (mappedCoordinates.isVisible()) {
-                        tileCoordinates = mappedCoordinates;
-                        break;
-                    }
-                }
-            }
-            return tileCoordinates;
-        }
-
+        return tileCoordinates;
     }
 
     private class BatchHelper {
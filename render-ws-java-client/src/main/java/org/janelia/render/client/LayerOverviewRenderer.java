@@ -0,0 +1,251 @@
+package org.janelia.render.client;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.janelia.alignment.ArgbRenderer;
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.mipmap.BoxMipmapGenerator;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.render.client.parameter.OverviewParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds small scale overview images of (a region of) a layer with bounded memory.
+ *
+ * Overviews are built in one of three ways:
+ * <ul>
+ *     <li>
+ *         by rendering the whole region in one pass (the original scape/section behavior),
+ *     </li>
+ *     <li>
+ *         by rendering the region as a series of horizontal strips that are copied into the overview
+ *         as soon as they are rendered, so that only the tiles (and canvas) for one strip are needed at a time, or
+ *     </li>
+ *     <li>
+ *         by down-sampling previously materialized boxes from the pyramid level closest to
+ *         (but not smaller than) the overview scale, one box at a time, so that source tiles are never loaded.
+ *     </li>
+ * </ul>
+ *
+ * Source tiles are always loaded from the lowest resolution stored mipmap that supports the overview scale
+ * (see {@link org.janelia.alignment.spec.ChannelSpec#getFloorMipmapEntry}), so strips that share tiles
+ * usually reuse small cached mipmaps.
+ *
+ * @author Eric Trautman
+ */
+public class LayerOverviewRenderer {
+
+    /**
+     * Loads render parameters for a world region of the layer being rendered.
+     * Implementations are expected to apply any client specific options (e.g. filtering or intensity ranges).
+     */
+    public interface RegionParametersLoader {
+        RenderParameters load(final double x,
+                              final double y,
+                              final int width,
+                              final int height)
+                throws IllegalArgumentException;
+    }
+
+    private final double scale;
+    private final Integer stripHeight;
+    private final File boxDirectory;
+    private final Integer boxWidth;
+    private final Integer boxHeight;
+    private final String boxFormat;
+    private final ImageProcessorCache imageProcessorCache;
+
+    /**
+     * @param  overviewParameters   overview options.
+     * @param  project              project for the layer (used to locate materialized boxes).
+     * @param  stack                stack for the layer (used to locate materialized boxes).
+     * @param  scale                scale for all rendered overviews.
+     * @param  imageProcessorCache  cache for source tiles and masks.
+     */
+    public LayerOverviewRenderer(final OverviewParameters overviewParameters,
+                                 final String project,
+                                 final String stack,
+                                 final double scale,
+                                 final ImageProcessorCache imageProcessorCache) {
+
+        overviewParameters.validate();
+
+        this.scale = scale;
+        this.stripHeight = overviewParameters.stripHeight;
+        if (overviewParameters.isBoxSource()) {
+            this.boxDirectory = overviewParameters.getBoxDirectory(project, stack);
+        } else {
+            this.boxDirectory = null;
+        }
+        this.boxWidth = overviewParameters.boxWidth;
+        this.boxHeight = overviewParameters.boxHeight;
+        this.boxFormat = overviewParameters.boxFormat;
+        this.imageProcessorCache = imageProcessorCache;
+    }
+
+    /**
+     * @param  z       layer to render.
+     * @param  x       left world coordinate of the overview region.
+     * @param  y       top world coordinate of the overview region.
+     * @param  width   world width of the overview region.
+     * @param  height  world height of the overview region.
+     * @param  loader  loads render parameters for the region (or parts of it).
+     *
+     * @return overview image for the specified region.
+     *
+     * @throws IllegalArgumentException
+     *   if the overview cannot be built for any reason.
+     */
+    public BufferedImage render(final double z,
+                                final double x,
+                                final double y,
+                                final int width,
+                                final int height,
+                                final RegionParametersLoader loader)
+            throws IllegalArgumentException {
+
+        final long startTime = System.currentTimeMillis();
+
+        final BufferedImage overviewImage;
+        if (boxDirectory != null) {
+            overviewImage = renderFromBoxes(z, x, y, width, height);
+        } else if (stripHeight != null) {
+            overviewImage = renderStrips(x, y, width, height, loader);
+        } else {
+            final RenderParameters renderParameters = loader.load(x, y, width, height);
+            overviewImage = renderParameters.openTargetImage();
+            ArgbRenderer.render(renderParameters, overviewImage, imageProcessorCache);
+        }
+
+        LOG.info("render: built {}x{} overview for z {} in {} milliseconds",
+                 overviewImage.getWidth(), overviewImage.getHeight(), z, System.currentTimeMillis() - startTime);
+
+        return overviewImage;
+    }
+
+    private BufferedImage renderStrips(final double x,
+                                       final double y,
+                                       final int width,
+                                       final int height,
+                                       final RegionParametersLoader loader) {
+
+        final BufferedImage overviewImage = openOverviewImage(width, height);
+        final int overviewHeight = overviewImage.getHeight();
+
+        for (int top = 0; top < overviewHeight; top += stripHeight) {
+
+            final int stripRows = Math.min(stripHeight, overviewHeight - top);
+            final double stripY = y + (top / scale);
+
+            // request an extra row so that truncation of the scaled strip height never leaves a gap,
+            // the extra row is simply overwritten by the next strip (or clipped for the last strip)
+            final int stripWorldHeight = (int) Math.ceil((stripRows + 1) / scale);
+
+            final RenderParameters stripParameters = loader.load(x, stripY, width, stripWorldHeight);
+            final BufferedImage stripImage = stripParameters.openTargetImage();
+
+            ArgbRenderer.render(stripParameters, stripImage, imageProcessorCache);
+
+            overviewImage.getRaster().setRect(0, top, stripImage.getRaster());
+
+            LOG.debug("renderStrips: copied {} tile strip to overview rows {} to {}",
+                      stripParameters.numberOfTileSpecs(), top, top + stripRows - 1);
+        }
+
+        return overviewImage;
+    }
+
+    private BufferedImage renderFromBoxes(final double z,
+                                          final double x,
+                                          final double y,
+                                          final int width,
+                                          final int height) {
+
+        final int level = getBoxLevel(z);
+        final int levelScale = 1 << level;
+        final double levelBoxWidth = boxWidth * levelScale;
+        final double levelBoxHeight = boxHeight * levelScale;
+        final double boxToOverviewScale = scale * levelScale;
+
+        final int firstRow = Math.max(0, (int) Math.floor(y / levelBoxHeight));
+        final int lastRow = (int) Math.floor((y + height) / levelBoxHeight);
+        final int firstColumn = Math.max(0, (int) Math.floor(x / levelBoxWidth));
+        final int lastColumn = (int) Math.floor((x + width) / levelBoxWidth);
+
+        final BufferedImage overviewImage = openOverviewImage(width, height);
+        final Graphics2D overviewGraphics = overviewImage.createGraphics();
+        overviewGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        int boxCount = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+
+                final File boxFile =
+                        BoxMipmapGenerator.getImageFile(boxFormat, boxDirectory, level, (int) z, row, column);
+
+                // missing boxes are empty
+                if (boxFile.exists()) {
+                    final BufferedImage boxImage = Utils.openImage(boxFile.getAbsolutePath());
+                    final AffineTransform boxToOverview =
+                            new AffineTransform(boxToOverviewScale, 0, 0, boxToOverviewScale,
+                                                ((column * levelBoxWidth) - x) * scale,
+                                                ((row * levelBoxHeight) - y) * scale);
+                    overviewGraphics.drawImage(boxImage, boxToOverview, null);
+                    boxCount++;
+                }
+            }
+        }
+
+        overviewGraphics.dispose();
+
+        LOG.debug("renderFromBoxes: drew {} level {} boxes for z {}", boxCount, level, z);
+
+        return overviewImage;
+    }
+
+    /**
+     * @return the materialized pyramid level closest to (but not smaller than) the overview scale.
+     *
+     * @throws IllegalArgumentException
+     *   if no boxes have been materialized for the specified layer.
+     */
+    private int getBoxLevel(final double z)
+            throws IllegalArgumentException {
+
+        final int bestLevel = Utils.bestMipmapLevel(scale);
+
+        int level = bestLevel;
+        while ((level >= 0) && (! getLevelLayerDirectory(level, z).isDirectory())) {
+            level--;
+        }
+
+        if (level < 0) {
+            throw new IllegalArgumentException("no materialized boxes found for z " + z + " in " + boxDirectory);
+        } else if (level < bestLevel) {
+            LOG.warn("getBoxLevel: level {} boxes are missing for z {}, using level {} boxes instead",
+                     bestLevel, z, level);
+        }
+
+        return level;
+    }
+
+    private File getLevelLayerDirectory(final int level,
+                                        final double z) {
+        return new File(new File(boxDirectory, String.valueOf(level)), String.valueOf((int) z));
+    }
+
+    private BufferedImage openOverviewImage(final int width,
+                                            final int height) {
+        // use same dimension derivation as RenderParameters.openTargetImage
+        return new BufferedImage((int) (scale * width), (int) (scale * height), BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(LayerOverviewRenderer.class);
+}
@@ -0,0 +1,308 @@
+package org.janelia.render.client;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janelia.alignment.ArgbRenderer;
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.util.FileUtil;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders many render parameter sets locally within one process.
+ *
+ * Items are read from a JSON lines manifest where each line looks like:
+ * <pre>
+ *     { "in": "[render parameters url or file path]", "out": "[output image file path]" }
+ * </pre>
+ *
+ * All items share one {@link ImageProcessorCache} and are rendered by a fixed size pool of worker threads.
+ * A failed item does not stop the batch.  Timing and error details for every item are written
+ * (in manifest order) to a JSON lines summary file.
+ *
+ * @author Eric Trautman
+ */
+public class RenderBatch {
+
+    /**
+     * One manifest line.
+     */
+    public static class Item {
+
+        private final String in;
+        private final String out;
+
+        // no-arg constructor needed for JSON deserialization
+        @SuppressWarnings("unused")
+        private Item() {
+            this(null, null);
+        }
+
+        /**
+         * @param  in   render parameters url or file path.
+         * @param  out  output image file path (or null to use the out value from the render parameters).
+         */
+        public Item(final String in,
+                    final String out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        public String getIn() {
+            return in;
+        }
+
+        public String getOut() {
+            return out;
+        }
+    }
+
+    /**
+     * One summary line.
+     */
+    public static class ItemResult {
+
+        private final int index;
+        private final String in;
+        private String out;
+        private int tileCount;
+        private long loadMilliseconds;
+        private long renderMilliseconds;
+        private long saveMilliseconds;
+        private String error;
+
+        // no-arg constructor needed for JSON deserialization
+        @SuppressWarnings("unused")
+        private ItemResult() {
+            this(-1, null);
+        }
+
+        ItemResult(final int index,
+                   final String in) {
+            this.index = index;
+            this.in = in;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getOut() {
+            return out;
+        }
+
+        public int getTileCount() {
+            return tileCount;
+        }
+
+        public long getElapsedMilliseconds() {
+            return loadMilliseconds + renderMilliseconds + saveMilliseconds;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+    }
+
+    private final List<Item> itemList;
+    private final int numberOfThreads;
+    private final ImageProcessorCache imageProcessorCache;
+
+    /**
+     * @param  itemList             items to render.
+     * @param  numberOfThreads      number of items to render concurrently.
+     * @param  imageProcessorCache  cache shared by all items.
+     */
+    public RenderBatch(final List<Item> itemList,
+                       final int numberOfThreads,
+                       final ImageProcessorCache imageProcessorCache) {
+
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be greater than zero");
+        }
+
+        this.itemList = itemList;
+        this.numberOfThreads = numberOfThreads;
+        this.imageProcessorCache = imageProcessorCache;
+    }
+
+    /**
+     * Renders all items in this batch.
+     *
+     * @return results for every item in manifest order.
+     *
+     * @throws IOException
+     *   if the batch is interrupted.
+     */
+    public List<ItemResult> render()
+            throws IOException {
+
+        LOG.info("render: entry, rendering {} items with {} threads", itemList.size(), numberOfThreads);
+
+        final long startTime = System.currentTimeMillis();
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        final List<ItemResult> resultList = new ArrayList<>(itemList.size());
+
+        try {
+
+            final List<Future<ItemResult>> futureList = new ArrayList<>(itemList.size());
+            for (int i = 0; i < itemList.size(); i++) {
+                final int index = i;
+                futureList.add(executorService.submit(() -> renderItem(index, itemList.get(index))));
+            }
+
+            for (final Future<ItemResult> future : futureList) {
+                resultList.add(future.get());
+            }
+
+        } catch (final InterruptedException e) {
+            throw new IOException("interrupted while waiting for batch items to render", e);
+        } catch (final ExecutionException e) {
+            // renderItem catches item failures, so this should only happen for unexpected errors
+            throw new IOException("batch item failed", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        final long failureCount = resultList.stream().filter(ItemResult::isFailed).count();
+
+        LOG.info("render: exit, rendered {} items ({} failed) in {} milliseconds, cache stats are {}",
+                 resultList.size(), failureCount, System.currentTimeMillis() - startTime,
+                 imageProcessorCache.getStats());
+
+        return resultList;
+    }
+
+    private ItemResult renderItem(final int index,
+                                  final Item item) {
+
+        final ItemResult result = new ItemResult(index, item.getIn());
+
+        try {
+
+            final long loadStart = System.currentTimeMillis();
+
+            final RenderParameters renderParameters = RenderParameters.loadFromUrl(item.getIn());
+            renderParameters.initializeDerivedValues();
+            renderParameters.validate();
+
+            result.out = item.getOut() == null ? renderParameters.getOut() : item.getOut();
+            if (result.out == null) {
+                throw new IllegalArgumentException("output path must be specified in manifest or render parameters");
+            }
+            result.tileCount = renderParameters.numberOfTileSpecs();
+
+            final long renderStart = System.currentTimeMillis();
+
+            final BufferedImage targetImage = renderParameters.openTargetImage();
+            ArgbRenderer.render(renderParameters, targetImage, imageProcessorCache);
+
+            final long saveStart = System.currentTimeMillis();
+
+            final File outputFile = new File(result.out).getAbsoluteFile();
+            FileUtil.ensureWritableDirectory(outputFile.getParentFile());
+
+            // same format derivation as Renderer
+            final String outputFormat = result.out.substring(result.out.lastIndexOf('.') + 1);
+            Utils.saveImage(targetImage,
+                            outputFile.getAbsolutePath(),
+                            outputFormat,
+                            renderParameters.isConvertToGray(),
+                            renderParameters.getQuality());
+
+            final long saveStop = System.currentTimeMillis();
+
+            result.loadMilliseconds = renderStart - loadStart;
+            result.renderMilliseconds = saveStart - renderStart;
+            result.saveMilliseconds = saveStop - saveStart;
+
+            LOG.info("renderItem: item {} ({} tiles) written to {} in {} milliseconds",
+                     index, result.tileCount, outputFile, result.getElapsedMilliseconds());
+
+        } catch (final Throwable t) {
+            result.error = t.getClass().getName() + ": " + t.getMessage();
+            LOG.error("renderItem: failed to render item " + index + " from " + item.getIn(), t);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param  manifestPath  path of JSON lines manifest file (blank lines are ignored).
+     *
+     * @return list of items parsed from the specified manifest.
+     *
+     * @throws IOException
+     *   if the manifest cannot be read or parsed.
+     */
+    public static List<Item> loadManifest(final Path manifestPath)
+            throws IOException {
+
+        final List<Item> itemList = new ArrayList<>();
+
+        try (final BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().length() > 0) {
+                    final Item item = JsonUtils.FAST_MAPPER.readValue(line, Item.class);
+                    if (item.getIn() == null) {
+                        throw new IOException("line " + lineNumber + " of " + manifestPath + " is missing 'in' value");
+                    }
+                    itemList.add(item);
+                }
+            }
+        }
+
+        LOG.info("loadManifest: loaded {} items from {}", itemList.size(), manifestPath);
+
+        return itemList;
+    }
+
+    /**
+     * Writes the specified results to a JSON lines summary file.
+     *
+     * @param  resultList   results to write.
+     * @param  summaryPath  path of summary file.
+     *
+     * @throws IOException
+     *   if the summary file cannot be written.
+     */
+    public static void writeSummary(final List<ItemResult> resultList,
+                                    final Path summaryPath)
+            throws IOException {
+
+        try (final BufferedWriter writer = Files.newBufferedWriter(summaryPath, StandardCharsets.UTF_8)) {
+            for (final ItemResult result : resultList) {
+                writer.write(JsonUtils.FAST_MAPPER.writeValueAsString(result));
+                writer.newLine();
+            }
+        }
+
+        LOG.info("writeSummary: wrote {} results to {}", resultList.size(), summaryPath);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(RenderBatch.class);
+}
@@ -8,7 +8,10 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.http.client.methods.HttpPut;
@@ -17,6 +20,7 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.util.ImageProcessorCache;
 import org.janelia.render.client.parameter.CommandLineParameters;
 import org.janelia.render.client.parameter.RenderWebServiceParameters;
 import org.janelia.render.client.response.BufferedImageResponseHandler;
@@ -26,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Simple client for rendering based upon a JSON parameters spec.
+ * A batch of specs can also be rendered locally (within this process) using a {@link RenderBatch} manifest.
  *
  * @author Eric Trautman
  */
@@ -40,8 +45,8 @@ public class RenderClient {
         public RenderWebServiceParameters renderWeb = new RenderWebServiceParameters();
 
         @Parameter(names = "--in",
-                description = "Path to render parameters json file",
-                required = true)
+                description = "Path to render parameters json file (required unless --batchManifest is specified)",
+                required = false)
         public String in;
 
         @Parameter(names = "--out",
@@ -54,10 +59,42 @@ public class RenderClient {
                 required = false)
         public String format;
 
+        @Parameter(names = "--batchManifest",
+                description = "Path to JSON lines manifest with one " +
+                              "{ \"in\": \"[render parameters url or file]\", \"out\": \"[image file]\" } " +
+                              "object per line, all items are rendered locally in this process",
+                required = false)
+        public String batchManifest;
+
+        @Parameter(names = "--batchSummary",
+                description = "Path for JSON lines file with timing and error details for each batch item " +
+                              "(default is [batchManifest].summary.json)",
+                required = false)
+        public String batchSummary;
+
+        @Parameter(names = "--numberOfThreads",
+                description = "Number of batch items to render concurrently",
+                required = false)
+        public int numberOfThreads = 1;
+
+        @Parameter(names = "--maxCachedPixels",
+                description = "Maximum number of source pixels to cache for all batch items",
+                required = false)
+        public long maxCachedPixels = ImageProcessorCache.DEFAULT_MAX_CACHED_PIXELS;
+
         public boolean renderInWindow() {
             return (out == null);
         }
 
+        public boolean isBatch() {
+            return (batchManifest != null);
+        }
+
+        public Path getBatchSummaryPath() {
+            final String summary = batchSummary == null ? batchManifest + ".summary.json" : batchSummary;
+            return Paths.get(summary).toAbsolutePath();
+        }
+
     }
 
     public static void main(final String[] args) {
@@ -70,22 +107,59 @@ public class RenderClient {
 
                 LOG.info("runClient: entry, parameters={}", parameters);
 
-                final RenderClient client = new RenderClient(parameters.renderWeb.baseDataUrl,
-                                                             parameters.renderWeb.project);
+                if (parameters.isBatch()) {
+
+                    renderBatch(parameters);
+
+                } else if (parameters.in == null) {
+
+                    throw new IllegalArgumentException("--in must be specified when --batchManifest is not");
 
-                if (parameters.renderInWindow()) {
-                    client.renderInWindow(parameters.in,
-                                          parameters.out);
                 } else {
-                    client.renderToFile(parameters.in,
-                                        parameters.out,
-                                        parameters.format);
+
+                    final RenderClient client = new RenderClient(parameters.renderWeb.baseDataUrl,
+                                                                 parameters.renderWeb.project);
+
+                    if (parameters.renderInWindow()) {
+                        client.renderInWindow(parameters.in,
+                                              parameters.out);
+                    } else {
+                        client.renderToFile(parameters.in,
+                                            parameters.out,
+                                            parameters.format);
+                    }
                 }
             }
         };
         clientRunner.run();
     }
 
+    /**
+     * Renders all items in the parameters' batch manifest locally and writes a summary of the results.
+     *
+     * @throws IOException
+     *   if the manifest cannot be read, the summary cannot be written, or any batch item fails.
+     */
+    public static void renderBatch(final Parameters parameters)
+            throws IOException {
+
+        final List<RenderBatch.Item> itemList = RenderBatch.loadManifest(Paths.get(parameters.batchManifest));
+        final ImageProcessorCache imageProcessorCache =
+                new ImageProcessorCache(parameters.maxCachedPixels, true, false);
+
+        final RenderBatch batch = new RenderBatch(itemList, parameters.numberOfThreads, imageProcessorCache);
+        final List<RenderBatch.ItemResult> resultList = batch.render();
+
+        final Path summaryPath = parameters.getBatchSummaryPath();
+        RenderBatch.writeSummary(resultList, summaryPath);
+
+        final long failureCount = resultList.stream().filter(RenderBatch.ItemResult::isFailed).count();
+        if (failureCount > 0) {
+            throw new IOException(failureCount + " out of " + resultList.size() +
+                                  " batch items failed, see " + summaryPath + " for details");
+        }
+    }
+
     private final Map<String, URI> formatToRenderUriMap;
     private final CloseableHttpClient httpClient;
 
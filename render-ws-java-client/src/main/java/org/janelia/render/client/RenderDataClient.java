@@ -8,9 +8,11 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -22,13 +24,20 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.match.CanvasId;
+import org.janelia.alignment.match.CanvasIdPairStream;
 import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.MatchBatchResult;
 import org.janelia.alignment.match.MatchCollectionMetaData;
+import org.janelia.alignment.match.MatchGraphEdge;
+import org.janelia.alignment.match.MatchGraphStatistics;
+import org.janelia.alignment.match.RenderableCanvasIdPairs;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.LeafTransformSpec;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsSnapshot;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.HierarchicalStack;
@@ -39,11 +48,14 @@ import org.janelia.alignment.spec.stack.StackVersion;
 import org.janelia.alignment.transform.ConsensusWarpFieldBuilder;
 import org.janelia.alignment.util.RenderWebServiceUrls;
 import org.janelia.alignment.util.ZFilter;
+import org.janelia.render.client.request.JsonLinesEntity;
 import org.janelia.render.client.request.WaitingRetryHandler;
+import org.janelia.render.client.response.CanvasIdPairStreamResponseHandler;
 import org.janelia.render.client.response.EmptyResponseHandler;
 import org.janelia.render.client.response.JsonResponseHandler;
 import org.janelia.render.client.response.ResourceCreatedResponseHandler;
 import org.janelia.render.client.response.TextResponseHandler;
+import org.janelia.render.client.response.TileBoundsSnapshotResponseHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -487,6 +499,30 @@ public class RenderDataClient {
                                   final Boolean skipTransforms,
                                   final List<Double> zValues)
             throws IOException {
+        cloneStackVersion(fromStack, toProject, toStack, toStackVersion, skipTransforms, zValues, null);
+    }
+
+    /**
+     * Clones the specified stack.
+     *
+     * @param  fromStack       source stack to clone.
+     * @param  toProject       project for new stack with cloned data (null if same as source project).
+     * @param  toStack         new stack to hold cloned data.
+     * @param  toStackVersion  version data for the new stack.
+     * @param  derived         if true, create a stack that references the (READ_ONLY) source stack
+     *                         instead of copying its data.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public void cloneStackVersion(final String fromStack,
+                                  final String toProject,
+                                  final String toStack,
+                                  final StackVersion toStackVersion,
+                                  final Boolean skipTransforms,
+                                  final List<Double> zValues,
+                                  final Boolean derived)
+            throws IOException {
 
         final String json = toStackVersion.toJson();
         final StringEntity stringEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
@@ -507,6 +543,10 @@ public class RenderDataClient {
             builder.addParameter("skipTransforms", skipTransforms.toString());
         }
 
+        if (derived != null) {
+            builder.addParameter("derived", derived.toString());
+        }
+
         final URI uri;
         try {
             uri = builder.build();
@@ -554,6 +594,28 @@ public class RenderDataClient {
         httpClient.execute(httpPut, responseHandler);
     }
 
+    /**
+     * Copies all parent data into the specified derived stack so that it no longer depends upon its parent.
+     *
+     * @param  stack  derived stack to materialize.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public void materializeStack(final String stack)
+            throws IOException {
+
+        final URI uri = getUri(urls.getMaterializeUrlString(stack));
+        final String requestContext = "PUT " + uri;
+        final ResourceCreatedResponseHandler responseHandler = new ResourceCreatedResponseHandler(requestContext);
+
+        final HttpPut httpPut = new HttpPut(uri);
+
+        LOG.info("materializeStack: submitting {}", requestContext);
+
+        httpClient.execute(httpPut, responseHandler);
+    }
+
     /**
      * Changes the state of the specified stack.
      *
@@ -852,6 +914,105 @@ public class RenderDataClient {
         return httpClient.execute(httpGet, responseHandler);
     }
 
+    /**
+     * @param  stack  name of stack.
+     * @param  minZ   (optional) only include tiles with z values greater than or equal to this minimum.
+     * @param  maxZ   (optional) only include tiles with z values less than or equal to this maximum.
+     *
+     * @return compact (binary) snapshot of tile bounds for the specified layer range.
+     *         The snapshot can be used to build {@link org.janelia.alignment.spec.TileBoundsRTree}
+     *         instances for each layer without parsing bounds JSON for every tile.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public TileBoundsSnapshot getTileBoundsSnapshot(final String stack,
+                                                    final Double minZ,
+                                                    final Double maxZ)
+            throws IOException {
+
+        final URIBuilder builder = new URIBuilder(getUri(urls.getTileBoundsSnapshotUrlString(stack)));
+
+        if (minZ != null) {
+            builder.addParameter("minZ", minZ.toString());
+        }
+        if (maxZ != null) {
+            builder.addParameter("maxZ", maxZ.toString());
+        }
+
+        final URI uri;
+        try {
+            uri = builder.build();
+        } catch (final URISyntaxException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        final HttpGet httpGet = new HttpGet(uri);
+        final String requestContext = "GET " + uri;
+        final TileBoundsSnapshotResponseHandler responseHandler = new TileBoundsSnapshotResponseHandler(requestContext);
+
+        LOG.info("getTileBoundsSnapshot: submitting {}", requestContext);
+
+        return httpClient.execute(httpGet, responseHandler);
+    }
+
+    /**
+     * Asks the server to derive neighbor tile pairs (using the same criteria as the {@link TilePairClient})
+     * so that tile bounds for the layer range do not need to be retrieved.
+     * Pairs are returned in compact binary form.
+     *
+     * @param  stack                           name of stack.
+     * @param  minZ                            (optional) only include tiles with z values greater than or equal to this minimum.
+     * @param  maxZ                            (optional) only include tiles with z values less than or equal to this maximum.
+     * @param  xyNeighborFactor                (optional) multiplied by max(width, height) of each tile to determine neighbor radius.
+     * @param  explicitRadius                  (optional) explicit neighbor radius (overrides xyNeighborFactor).
+     * @param  zNeighborDistance               (optional) include neighbors with z values less than or equal to this distance.
+     * @param  excludeCornerNeighbors          (optional) exclude neighbors whose center is outside the source tile's x and y range.
+     * @param  excludeCompletelyObscuredTiles  (optional) exclude tiles that are completely obscured by other tiles.
+     * @param  excludeSameLayerNeighbors       (optional) exclude neighbors in the same layer.
+     * @param  excludeSameSectionNeighbors     (optional) exclude neighbors with the same sectionId.
+     *
+     * @return neighbor pairs for all tiles in the specified layer range.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public RenderableCanvasIdPairs getTilePairs(final String stack,
+                                                final Double minZ,
+                                                final Double maxZ,
+                                                final Double xyNeighborFactor,
+                                                final Double explicitRadius,
+                                                final Integer zNeighborDistance,
+                                                final Boolean excludeCornerNeighbors,
+                                                final Boolean excludeCompletelyObscuredTiles,
+                                                final Boolean excludeSameLayerNeighbors,
+                                                final Boolean excludeSameSectionNeighbors)
+            throws IOException {
+
+        final URIBuilder uriBuilder = new URIBuilder(getUri(urls.getTilePairStreamUrlString(stack)));
+
+        addParameterIfDefined("minZ", minZ, uriBuilder);
+        addParameterIfDefined("maxZ", maxZ, uriBuilder);
+        addParameterIfDefined("xyNeighborFactor", xyNeighborFactor, uriBuilder);
+        addParameterIfDefined("explicitRadius", explicitRadius, uriBuilder);
+        addParameterIfDefined("zNeighborDistance", zNeighborDistance, uriBuilder);
+        addParameterIfDefined("excludeCornerNeighbors", excludeCornerNeighbors, uriBuilder);
+        addParameterIfDefined("excludeCompletelyObscuredTiles", excludeCompletelyObscuredTiles, uriBuilder);
+        addParameterIfDefined("excludeSameLayerNeighbors", excludeSameLayerNeighbors, uriBuilder);
+        addParameterIfDefined("excludeSameSectionNeighbors", excludeSameSectionNeighbors, uriBuilder);
+
+        final URI uri = getUri(uriBuilder);
+
+        final HttpGet httpGet = new HttpGet(uri);
+        httpGet.addHeader(HttpHeaders.ACCEPT, CanvasIdPairStream.MEDIA_TYPE);
+        final String requestContext = "GET " + uri;
+        final CanvasIdPairStreamResponseHandler responseHandler = new CanvasIdPairStreamResponseHandler(requestContext);
+
+        LOG.info("getTilePairs: submitting {}", requestContext);
+
+        return httpClient.execute(httpGet, responseHandler);
+    }
+
     /**
      * Updates the z value for the specified tiles.
      *
@@ -1325,6 +1486,183 @@ public class RenderDataClient {
         }
     }
 
+    /**
+     * Pulls the specified matches from the iterator in batches and sends each batch to the server
+     * as newline delimited JSON, so that neither side needs to hold all matches in memory.
+     *
+     * Each batch is sent in its own (repeatable) request, so a batch that fails because of a transient
+     * connection problem is re-sent by the client's retry handler.  Since matches are upserted,
+     * re-sending a batch that was partially saved is safe.
+     *
+     * @param  canvasMatchesIterator  iterator for matches to save (only non-empty matches should be included).
+     * @param  batchSize              number of pairs to send (and save) in each batch.
+     *
+     * @return counts for each batch saved by the server.
+     *
+     * @throws IOException
+     *   if any request fails after retries.
+     */
+    public List<MatchBatchResult> saveMatchStream(final Iterator<CanvasMatches> canvasMatchesIterator,
+                                                  final int batchSize)
+            throws IOException {
+
+        final URI uri = getUri(urls.getMatchStreamUrlString() + "?batchSize=" + batchSize);
+        final String requestContext = "PUT " + uri;
+
+        final TypeReference<List<MatchBatchResult>> typeReference =
+                new TypeReference<List<MatchBatchResult>>() {};
+        final JsonUtils.GenericHelper<List<MatchBatchResult>> helper =
+                new JsonUtils.GenericHelper<>(typeReference);
+        final JsonResponseHandler<List<MatchBatchResult>> responseHandler =
+                new JsonResponseHandler<>(requestContext, helper);
+
+        final List<MatchBatchResult> batchResultList = new ArrayList<>();
+        final List<CanvasMatches> batch = new ArrayList<>(batchSize);
+
+        while (canvasMatchesIterator.hasNext()) {
+
+            batch.clear();
+            while (canvasMatchesIterator.hasNext() && (batch.size() < batchSize)) {
+                batch.add(canvasMatchesIterator.next());
+            }
+
+            final HttpPut httpPut = new HttpPut(uri);
+            httpPut.setEntity(new JsonLinesEntity<>(batch));
+
+            LOG.info("saveMatchStream: submitting {} for batch {} with {} pair(s)",
+                     requestContext, batchResultList.size(), batch.size());
+
+            // server batch indexes restart with each request, so renumber them for the overall upload
+            for (final MatchBatchResult result : httpClient.execute(httpPut, responseHandler)) {
+                batchResultList.add(new MatchBatchResult(batchResultList.size(),
+                                                         result.getPairCount(),
+                                                         result.getInsertedCount(),
+                                                         result.getModifiedCount()));
+            }
+        }
+
+        LOG.info("saveMatchStream: saved {} batches", batchResultList.size());
+
+        return batchResultList;
+    }
+
+    /**
+     * @param  minZ           (optional) only include pairs with z values greater than or equal to this minimum.
+     * @param  maxZ           (optional) only include pairs with z values less than or equal to this maximum.
+     * @param  minMatchCount  (optional) only include pairs with at least this many matches.
+     *
+     * @return pair identifiers and match counts (without match points) from the collection's edge index.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public List<MatchGraphEdge> getMatchGraphEdges(final Double minZ,
+                                                   final Double maxZ,
+                                                   final Integer minMatchCount)
+            throws IOException {
+        return getMatchGraphEdges(null, minZ, maxZ, minMatchCount);
+    }
+
+    /**
+     * @param  groupId  (optional) only include pairs with this p or q group.
+     *
+     * @return pair identifiers and match counts (without match points) from the collection's edge index.
+     *         See {@link #getMatchGraphEdges(Double, Double, Integer)} for other parameter details.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public List<MatchGraphEdge> getMatchGraphEdges(final String groupId,
+                                                   final Double minZ,
+                                                   final Double maxZ,
+                                                   final Integer minMatchCount)
+            throws IOException {
+
+        final URI uri = getMatchGraphUri("/edges", groupId, minZ, maxZ, minMatchCount);
+        final HttpGet httpGet = new HttpGet(uri);
+        final String requestContext = "GET " + uri;
+        final TypeReference<List<MatchGraphEdge>> typeReference = new TypeReference<List<MatchGraphEdge>>() {};
+        final JsonUtils.GenericHelper<List<MatchGraphEdge>> helper = new JsonUtils.GenericHelper<>(typeReference);
+        final JsonResponseHandler<List<MatchGraphEdge>> responseHandler =
+                new JsonResponseHandler<>(requestContext, helper);
+
+        LOG.info("getMatchGraphEdges: submitting {}", requestContext);
+
+        return httpClient.execute(httpGet, responseHandler);
+    }
+
+    /**
+     * @return connected canvas components (largest to smallest) derived from the collection's edge index.
+     *         See {@link #getMatchGraphEdges} for parameter details.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public List<List<CanvasId>> getMatchGraphConnectedComponents(final Double minZ,
+                                                                 final Double maxZ,
+                                                                 final Integer minMatchCount)
+            throws IOException {
+
+        final URI uri = getMatchGraphUri("/connectedComponents", null, minZ, maxZ, minMatchCount);
+        final HttpGet httpGet = new HttpGet(uri);
+        final String requestContext = "GET " + uri;
+        final TypeReference<List<List<CanvasId>>> typeReference = new TypeReference<List<List<CanvasId>>>() {};
+        final JsonUtils.GenericHelper<List<List<CanvasId>>> helper = new JsonUtils.GenericHelper<>(typeReference);
+        final JsonResponseHandler<List<List<CanvasId>>> responseHandler =
+                new JsonResponseHandler<>(requestContext, helper);
+
+        LOG.info("getMatchGraphConnectedComponents: submitting {}", requestContext);
+
+        return httpClient.execute(httpGet, responseHandler);
+    }
+
+    /**
+     * @return connected component and degree statistics derived from the collection's edge index.
+     *         See {@link #getMatchGraphEdges} for parameter details.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public MatchGraphStatistics getMatchGraphStatistics(final Double minZ,
+                                                        final Double maxZ,
+                                                        final Integer minMatchCount)
+            throws IOException {
+
+        final URI uri = getMatchGraphUri("/statistics", null, minZ, maxZ, minMatchCount);
+        final HttpGet httpGet = new HttpGet(uri);
+        final String requestContext = "GET " + uri;
+        final JsonUtils.Helper<MatchGraphStatistics> helper = new JsonUtils.Helper<>(MatchGraphStatistics.class);
+        final JsonResponseHandler<MatchGraphStatistics> responseHandler =
+                new JsonResponseHandler<>(requestContext, helper);
+
+        LOG.info("getMatchGraphStatistics: submitting {}", requestContext);
+
+        return httpClient.execute(httpGet, responseHandler);
+    }
+
+    /**
+     * Rebuilds the collection's edge index.  This is needed before graph data can be requested
+     * for collections that were populated before the index existed.
+     *
+     * @return number of indexed edges.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public Long rebuildMatchGraphEdges()
+            throws IOException {
+
+        final URI uri = getMatchGraphUri("/edges", null, null, null, null);
+        final HttpPut httpPut = new HttpPut(uri);
+        final String requestContext = "PUT " + uri;
+        final JsonUtils.Helper<Long> helper = new JsonUtils.Helper<>(Long.class);
+        final JsonResponseHandler<Long> responseHandler = new JsonResponseHandler<>(requestContext, helper);
+
+        LOG.info("rebuildMatchGraphEdges: submitting {}", requestContext);
+
+        return httpClient.execute(httpPut, responseHandler);
+    }
+
     /**
      * @return list of tile specs with the specified ids.
      *
@@ -1403,6 +1741,77 @@ public class RenderDataClient {
         return httpClient.execute(httpPut, responseHandler);
     }
 
+    /**
+     * Sends the specified world coordinates (with tile ids from {@link #getTileIdsForCoordinates})
+     * to the server to be inversely mapped to local coordinates in bulk.
+     *
+     * @param  worldListOfLists  world coordinate lists (one list of tile coordinates per point).
+     * @param  stack             name of stack.
+     *
+     * @return list of local coordinate lists in the same order as the specified world lists.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public List<List<TileCoordinates>> getLocalCoordinatesInBulk(final List<List<TileCoordinates>> worldListOfLists,
+                                                                 final String stack)
+            throws IOException {
+
+        final String worldListOfListsJson = JsonUtils.MAPPER.writeValueAsString(worldListOfLists);
+        final StringEntity stringEntity = new StringEntity(worldListOfListsJson, ContentType.APPLICATION_JSON);
+        final URI uri = getUri(urls.getStackUrlString(stack) + "/bulk-world-to-local-coordinates");
+        final String requestContext = "PUT " + uri;
+
+        final HttpPut httpPut = new HttpPut(uri);
+        httpPut.setEntity(stringEntity);
+
+        final TypeReference<List<List<TileCoordinates>>> typeReference =
+                new TypeReference<List<List<TileCoordinates>>>() {};
+        final JsonUtils.GenericHelper<List<List<TileCoordinates>>> helper =
+                new JsonUtils.GenericHelper<>(typeReference);
+        final JsonResponseHandler<List<List<TileCoordinates>>> responseHandler =
+                new JsonResponseHandler<>(requestContext, helper);
+
+        LOG.info("getLocalCoordinatesInBulk: submitting {}", requestContext);
+
+        return httpClient.execute(httpPut, responseHandler);
+    }
+
+    /**
+     * Sends the specified local coordinates to the server to be mapped to world coordinates in bulk.
+     *
+     * @param  localCoordinates  local coordinates (each with a tile id) to be mapped.
+     * @param  stack             name of stack.
+     *
+     * @return list of world coordinates in the same order as the specified local coordinates.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public List<TileCoordinates> getWorldCoordinatesInBulk(final List<TileCoordinates> localCoordinates,
+                                                           final String stack)
+            throws IOException {
+
+        final String localCoordinatesJson = JsonUtils.MAPPER.writeValueAsString(localCoordinates);
+        final StringEntity stringEntity = new StringEntity(localCoordinatesJson, ContentType.APPLICATION_JSON);
+        final URI uri = getUri(urls.getStackUrlString(stack) + "/bulk-local-to-world-coordinates");
+        final String requestContext = "PUT " + uri;
+
+        final HttpPut httpPut = new HttpPut(uri);
+        httpPut.setEntity(stringEntity);
+
+        final TypeReference<List<TileCoordinates>> typeReference =
+                new TypeReference<List<TileCoordinates>>() {};
+        final JsonUtils.GenericHelper<List<TileCoordinates>> helper =
+                new JsonUtils.GenericHelper<>(typeReference);
+        final JsonResponseHandler<List<TileCoordinates>> responseHandler =
+                new JsonResponseHandler<>(requestContext, helper);
+
+        LOG.info("getWorldCoordinatesInBulk: submitting {}", requestContext);
+
+        return httpClient.execute(httpPut, responseHandler);
+    }
+
     /**
      * @param  z                     z value for layer.
      * @param  consensusBuildMethod  build method for consensus set alignments.
@@ -1459,6 +1868,35 @@ public class RenderDataClient {
         return getUri(baseUrlString + "/resolvedTiles");
     }
 
+    private URI getMatchGraphUri(final String context,
+                                 final String groupId,
+                                 final Double minZ,
+                                 final Double maxZ,
+                                 final Integer minMatchCount)
+            throws IOException {
+
+        final URIBuilder builder = new URIBuilder(getUri(urls.getMatchGraphUrlString() + context));
+
+        if (groupId != null) {
+            builder.addParameter("groupId", groupId);
+        }
+        if (minZ != null) {
+            builder.addParameter("minZ", minZ.toString());
+        }
+        if (maxZ != null) {
+            builder.addParameter("maxZ", maxZ.toString());
+        }
+        if (minMatchCount != null) {
+            builder.addParameter("minMatchCount", minMatchCount.toString());
+        }
+
+        try {
+            return builder.build();
+        } catch (final URISyntaxException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
     private URI getUri(final String forString)
             throws IOException {
         final URI uri;
@@ -9,13 +9,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
-import org.janelia.alignment.ArgbRenderer;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.util.FileUtil;
 import org.janelia.alignment.util.ImageProcessorCache;
 import org.janelia.render.client.parameter.CommandLineParameters;
+import org.janelia.render.client.parameter.OverviewParameters;
 import org.janelia.render.client.parameter.RenderWebServiceParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -121,6 +121,9 @@ public class RenderSectionClient {
                 description = "Min intensity to render image"
         )
         public Integer minIntensity;
+
+        @ParametersDelegate
+        public OverviewParameters overview = new OverviewParameters();
     }
 
     /**
@@ -149,8 +152,8 @@ public class RenderSectionClient {
     private final Parameters clientParameters;
 
     private final File sectionDirectory;
-    private final ImageProcessorCache imageProcessorCache;
     private final RenderDataClient renderDataClient;
+    private final LayerOverviewRenderer overviewRenderer;
 
     private RenderSectionClient(final Parameters clientParameters) {
 
@@ -180,9 +183,14 @@ public class RenderSectionClient {
 
         // set cache size to 50MB so that masks get cached but most of RAM is left for target image
         final int maxCachedPixels = 50 * 1000000;
-        this.imageProcessorCache = new ImageProcessorCache(maxCachedPixels, false, false);
+        final ImageProcessorCache imageProcessorCache = new ImageProcessorCache(maxCachedPixels, false, false);
 
         this.renderDataClient = clientParameters.renderWeb.getDataClient();
+        this.overviewRenderer = new LayerOverviewRenderer(clientParameters.overview,
+                                                          clientParameters.renderWeb.project,
+                                                          clientParameters.stack,
+                                                          clientParameters.scale,
+                                                          imageProcessorCache);
     }
 
     private void generateImageForZ(final Double z)
@@ -191,37 +199,55 @@ public class RenderSectionClient {
         LOG.info("generateImageForZ: {}, entry, sectionDirectory={}, dataClient={}",
                  z, sectionDirectory, renderDataClient);
 
-        final Bounds layerBounds = renderDataClient.getLayerBounds(clientParameters.stack, z);
-
-        String parametersUrl; 
+        final double x;
+        final double y;
+        final int width;
+        final int height;
         if(clientParameters.bounds != null && clientParameters.bounds.size() == 4) //Read bounds from supplied parameters
         {
             LOG.debug("Using user bounds");
-            parametersUrl = 
-                renderDataClient.getRenderParametersUrlString(clientParameters.stack,
-                                                              clientParameters.bounds.get(0), //Min X 
-                                                              clientParameters.bounds.get(2), //Min Y
-                                                              z,
-                                                              clientParameters.bounds.get(1) - clientParameters.bounds.get(0), //Width
-                                                              clientParameters.bounds.get(3) - clientParameters.bounds.get(2), //Height
-                                                              clientParameters.scale,
-                                                              clientParameters.filterListName);
-
+            x = clientParameters.bounds.get(0); //Min X
+            y = clientParameters.bounds.get(2); //Min Y
+            width = clientParameters.bounds.get(1) - clientParameters.bounds.get(0);
+            height = clientParameters.bounds.get(3) - clientParameters.bounds.get(2);
         }
         else //Get bounds from render
         {
             LOG.debug("Using render bounds");
-            parametersUrl =
-                renderDataClient.getRenderParametersUrlString(clientParameters.stack,
-                                                              layerBounds.getMinX(),
-                                                              layerBounds.getMinY(),
-                                                              z,
-                                                              (int) (layerBounds.getDeltaX() + 0.5),
-                                                              (int) (layerBounds.getDeltaY() + 0.5),
-                                                              clientParameters.scale,
-                                                              clientParameters.filterListName);
+            final Bounds layerBounds = renderDataClient.getLayerBounds(clientParameters.stack, z);
+            x = layerBounds.getMinX();
+            y = layerBounds.getMinY();
+            width = (int) (layerBounds.getDeltaX() + 0.5);
+            height = (int) (layerBounds.getDeltaY() + 0.5);
         }
 
+        final File sectionFile = getSectionFile(z);
+
+        final BufferedImage sectionImage =
+                overviewRenderer.render(z, x, y, width, height,
+                                        (regionX, regionY, regionWidth, regionHeight) ->
+                                                loadRenderParameters(z, regionX, regionY, regionWidth, regionHeight));
+
+        Utils.saveImage(sectionImage, sectionFile.getAbsolutePath(), clientParameters.format, true, 0.85f);
+
+        LOG.info("generateImageForZ: {}, exit", z);
+    }
+
+    private RenderParameters loadRenderParameters(final Double z,
+                                                  final double x,
+                                                  final double y,
+                                                  final int width,
+                                                  final int height) {
+
+        String parametersUrl = renderDataClient.getRenderParametersUrlString(clientParameters.stack,
+                                                                             x,
+                                                                             y,
+                                                                             z,
+                                                                             width,
+                                                                             height,
+                                                                             clientParameters.scale,
+                                                                             clientParameters.filterListName);
+
         if (clientParameters.minIntensity != null) {
 
             if (clientParameters.maxIntensity != null) {
@@ -235,22 +261,14 @@ public class RenderSectionClient {
             parametersUrl += "?maxIntensity=" + clientParameters.maxIntensity;
         }
 
-        LOG.debug("generateImageForZ: {}, loading {}", z, parametersUrl);
+        LOG.debug("loadRenderParameters: {}, loading {}", z, parametersUrl);
 
         final RenderParameters renderParameters = RenderParameters.loadFromUrl(parametersUrl);
         renderParameters.setFillWithNoise(clientParameters.fillWithNoise);
         renderParameters.setDoFilter(clientParameters.doFilter);
         renderParameters.setChannels(clientParameters.channels);
 
-        final File sectionFile = getSectionFile(z);
-
-        final BufferedImage sectionImage = renderParameters.openTargetImage();
-
-        ArgbRenderer.render(renderParameters, sectionImage, imageProcessorCache);
-
-        Utils.saveImage(sectionImage, sectionFile.getAbsolutePath(), clientParameters.format, true, 0.85f);
-
-        LOG.info("generateImageForZ: {}, exit", z);
+        return renderParameters;
     }
 
     private File getSectionFile(final Double z) {
@@ -25,7 +25,7 @@ import static org.janelia.alignment.spec.stack.StackMetaData.StackState;
  */
 public class StackClient {
 
-    public enum Action { CREATE, CLONE, RENAME, SET_STATE, DELETE }
+    public enum Action { CREATE, CLONE, RENAME, SET_STATE, DELETE, MATERIALIZE }
 
     public static class Parameters extends CommandLineParameters {
 
@@ -146,6 +146,12 @@ public class StackClient {
                 arity = 0)
         public Boolean skipSharedTransformClone;
 
+        @Parameter(
+                names = "--deriveClone",
+                description = "Create a derived stack that references the READ_ONLY source stack instead of copying all of its data (default is false)",
+                arity = 0)
+        public Boolean deriveClone;
+
         @Parameter(
                 names = "--zValues",
                 description = "Z values for filtering",
@@ -179,6 +185,8 @@ public class StackClient {
                     client.setStackState();
                 } else if (Action.DELETE.equals(parameters.action)) {
                     client.deleteStack();
+                } else if (Action.MATERIALIZE.equals(parameters.action)) {
+                    client.materializeStack();
                 } else {
                     throw new IllegalArgumentException("unknown action '" + parameters.action + "' specified");
                 }
@@ -251,7 +259,8 @@ public class StackClient {
                                            parameters.cloneResultStack,
                                            stackVersion,
                                            parameters.skipSharedTransformClone,
-                                           zValues);
+                                           zValues,
+                                           parameters.deriveClone);
 
         logMetaData("cloneStackVersion: after clone", renderDataClient, parameters.cloneResultStack);
     }
@@ -293,6 +302,16 @@ public class StackClient {
         logMetaData("setStackState: after update");
     }
 
+    private void materializeStack()
+            throws Exception {
+
+        logMetaData("materializeStack: before materialization");
+
+        renderDataClient.materializeStack(stack);
+
+        logMetaData("materializeStack: after materialization");
+    }
+
     private void deleteStack()
             throws Exception {
 
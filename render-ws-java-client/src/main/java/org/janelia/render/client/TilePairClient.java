@@ -18,6 +18,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -33,6 +37,7 @@ import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
 import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.TileBoundsSnapshot;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.alignment.util.FileUtil;
@@ -172,6 +177,26 @@ public class TilePairClient {
                 description = "Maximum number of pairs to include in each file.")
         public Integer maxPairsPerFile = 100000;
 
+        @Parameter(
+                names = "--boundsSnapshotLayers",
+                description = "Number of layers to include in each binary tile bounds snapshot request " +
+                              "(specify 0 to request JSON tile bounds for each layer individually)")
+        public Integer boundsSnapshotLayers = 100;
+
+        @Parameter(
+                names = "--numberOfThreads",
+                description = "Number of threads to use for building layer trees and deriving pairs " +
+                              "(layers are processed in batches of --boundsSnapshotLayers when more than one thread is used)")
+        public int numberOfThreads = 1;
+
+        @Parameter(
+                names = "--deriveOnServer",
+                description = "Derive pairs on the render web server instead of retrieving tile bounds for every layer " +
+                              "(not supported with explicit --z values, --useRowColPositions, bounding box, " +
+                              "include, or existing match exclusion options)",
+                arity = 0)
+        public boolean deriveOnServer = false;
+
         @ParametersDelegate
         public LayerBoundsParameters bounds = new LayerBoundsParameters();
 
@@ -228,7 +253,11 @@ public class TilePairClient {
 
                 final TilePairClient client = new TilePairClient(parameters);
 
-                client.deriveAndSaveSortedNeighborPairs();
+                if (parameters.deriveOnServer) {
+                    client.deriveOnServerAndSavePairs();
+                } else {
+                    client.deriveAndSaveSortedNeighborPairs();
+                }
             }
         };
         clientRunner.run();
@@ -244,6 +273,12 @@ public class TilePairClient {
     private String outputFileNamePrefix;
     private String outputFileNameSuffix;
     private int numberOfOutputFiles;
+    private List<Double> sortedZValues;
+    private TileBoundsSnapshot boundsSnapshot;
+    private double boundsSnapshotMinZ;
+    private double boundsSnapshotMaxZ;
+    private Double plannedSnapshotMinZ;
+    private Double plannedSnapshotMaxZ;
 
     TilePairClient(final Parameters parameters)
             throws IllegalArgumentException, IOException {
@@ -258,6 +293,18 @@ public class TilePairClient {
                     "Explicit --z values can only be specified when --zNeighborDistance is zero (for montages).");
         }
 
+        if (parameters.deriveOnServer &&
+            (((parameters.zValues != null) && (parameters.zValues.size() > 0)) ||
+             parameters.useRowColPositions ||
+             filterTilesWithBox ||
+             (parameters.onlyIncludeTilesFromStack != null) ||
+             (parameters.onlyIncludeTilesNearTileIdsJson != null) ||
+             (parameters.excludePairsInMatchCollection != null))) {
+            throw new IllegalArgumentException(
+                    "--deriveOnServer cannot be combined with explicit --z values, --useRowColPositions, " +
+                    "bounding box, include, or existing match exclusion options.");
+        }
+
         if (parameters.onlyIncludeTilesFromStack == null) {
             includeClient = null;
             includeStack = null;
@@ -331,6 +378,7 @@ public class TilePairClient {
         }
 
         Collections.sort(zValues);
+        sortedZValues = zValues;
         final double minZ = zValues.get(0);
         final double maxZ = zValues.get(zValues.size() - 1);
 
@@ -352,6 +400,69 @@ public class TilePairClient {
             }
         }
 
+        int totalSavedPairCount;
+        final Set<OrderedCanvasIdPair> neighborPairs = new TreeSet<>();
+        if (parameters.numberOfThreads > 1) {
+            totalSavedPairCount = deriveAndSavePairsInParallel(zValues,
+                                                               existingMatchHelper,
+                                                               neighborPairs,
+                                                               renderParametersUrlTemplate);
+        } else {
+            totalSavedPairCount = deriveAndSavePairs(zValues,
+                                                     existingMatchHelper,
+                                                     neighborPairs,
+                                                     renderParametersUrlTemplate);
+        }
+
+        totalSavedPairCount += saveRemainingPairs(neighborPairs, renderParametersUrlTemplate);
+
+        LOG.info("deriveAndSaveSortedNeighborPairs: exit, saved {} total pairs", totalSavedPairCount);
+    }
+
+    /**
+     * Retrieves pairs derived by the render web server (so that tile bounds do not need to be retrieved)
+     * and saves them in the same sorted form as {@link #deriveAndSaveSortedNeighborPairs}.
+     */
+    void deriveOnServerAndSavePairs()
+            throws IOException {
+
+        LOG.info("deriveOnServerAndSavePairs: entry");
+
+        final RenderableCanvasIdPairs serverPairs =
+                renderDataClient.getTilePairs(parameters.stack,
+                                              parameters.layerRange.minZ,
+                                              parameters.layerRange.maxZ,
+                                              parameters.xyNeighborFactor,
+                                              parameters.explicitRadius,
+                                              parameters.zNeighborDistance,
+                                              parameters.excludeCornerNeighbors,
+                                              parameters.excludeCompletelyObscuredTiles,
+                                              parameters.excludeSameLayerNeighbors,
+                                              parameters.excludeSameSectionNeighbors);
+
+        // server pairs are only sorted within each layer and use the stack's own template,
+        // so sort everything and save with the (possibly base stack) client template
+        final String renderParametersUrlTemplate = getRenderParametersUrlTemplate();
+        final Set<OrderedCanvasIdPair> neighborPairs = new TreeSet<>(serverPairs.getNeighborPairs());
+
+        int totalSavedPairCount = saveFullPairFiles(neighborPairs, renderParametersUrlTemplate);
+        totalSavedPairCount += saveRemainingPairs(neighborPairs, renderParametersUrlTemplate);
+
+        LOG.info("deriveOnServerAndSavePairs: exit, saved {} total pairs", totalSavedPairCount);
+    }
+
+    /**
+     * Derives pairs for one layer at a time, loading neighbor layer trees as they are needed.
+     *
+     * @return number of pairs saved to full files (pairs remaining in the neighborPairs set have not been saved).
+     */
+    private int deriveAndSavePairs(final List<Double> zValues,
+                                   final ExistingMatchHelper existingMatchHelper,
+                                   final Set<OrderedCanvasIdPair> neighborPairs,
+                                   final String renderParametersUrlTemplate)
+            throws IOException {
+
+        final double maxZ = zValues.get(zValues.size() - 1);
         final Map<Double, TileBoundsRTree> zToTreeMap = new LinkedHashMap<>(zValues.size());
 
         // load the first zNeighborDistance trees
@@ -369,11 +480,8 @@ public class TilePairClient {
             existingMatchHelper.addExistingPairs(zValues.get(0));
         }
 
-        final Set<OrderedCanvasIdPair> neighborPairs = new TreeSet<>();
-
         int totalSavedPairCount = 0;
         Double neighborZ;
-        TileBoundsRTree currentZTree;
         List<TileBoundsRTree> neighborTreeList;
         Set<OrderedCanvasIdPair> currentNeighborPairs;
         for (int zIndex = 0; zIndex < zValues.size(); zIndex++) {
@@ -409,24 +517,8 @@ public class TilePairClient {
                 neighborTreeList.add(zToTreeMap.get(neighborZ));
             }
 
-            currentZTree = zToTreeMap.get(z);
-
-            final List<TileBounds> sourceTileBoundsList;
-            if (sourceTileIds == null) {
-                sourceTileBoundsList = currentZTree.getTileBoundsList();
-            } else {
-                sourceTileBoundsList = currentZTree.getTileBoundsList().stream()
-                        .filter(tb -> sourceTileIds.contains(tb.getTileId()))
-                        .collect(Collectors.toList());
-            }
+            currentNeighborPairs = getNeighborPairs(zToTreeMap.get(z), neighborTreeList);
 
-            currentNeighborPairs = currentZTree.getCircleNeighbors(sourceTileBoundsList,
-                                                                   neighborTreeList,
-                                                                   parameters.xyNeighborFactor,
-                                                                   parameters.explicitRadius,
-                                                                   parameters.excludeCornerNeighbors,
-                                                                   parameters.excludeSameLayerNeighbors,
-                                                                   parameters.excludeSameSectionNeighbors);
             if (existingMatchHelper != null) {
                 existingMatchHelper.removeExistingPairs(z, currentNeighborPairs);
 
@@ -440,37 +532,223 @@ public class TilePairClient {
 
             neighborPairs.addAll(currentNeighborPairs);
 
-            if (neighborPairs.size() > parameters.maxPairsPerFile) {
-                final List<OrderedCanvasIdPair> neighborPairsList = new ArrayList<>(neighborPairs);
-                int fromIndex = 0;
-                for (; ; fromIndex += parameters.maxPairsPerFile) {
-                    final int toIndex = fromIndex + parameters.maxPairsPerFile;
-                    if (toIndex <= neighborPairs.size()) {
-                        savePairs(neighborPairsList.subList(fromIndex, toIndex),
-                                  renderParametersUrlTemplate,
-                                  getOutputFileName());
-                        numberOfOutputFiles++;
-                        totalSavedPairCount += parameters.maxPairsPerFile;
-                    } else {
-                        break;
+            totalSavedPairCount += saveFullPairFiles(neighborPairs, renderParametersUrlTemplate);
+        }
+
+        return totalSavedPairCount;
+    }
+
+    /**
+     * Derives pairs for batches of layers using a pool of {@link Parameters#numberOfThreads} threads.
+     * Trees for each batch (and its neighbor layers) are built concurrently and then pairs for each
+     * batch layer are derived concurrently.  Batch results are merged in z order into the
+     * neighborPairs set which is flushed to files as it fills up, so only trees and pairs for
+     * the current batch are held in memory.
+     *
+     * @return number of pairs saved to full files (pairs remaining in the neighborPairs set have not been saved).
+     */
+    private int deriveAndSavePairsInParallel(final List<Double> zValues,
+                                             final ExistingMatchHelper existingMatchHelper,
+                                             final Set<OrderedCanvasIdPair> neighborPairs,
+                                             final String renderParametersUrlTemplate)
+            throws IOException {
+
+        final int batchSize = parameters.boundsSnapshotLayers > 0 ?
+                              parameters.boundsSnapshotLayers : (parameters.numberOfThreads * 10);
+
+        LOG.info("deriveAndSavePairsInParallel: entry, processing {} layers in batches of {} with {} threads",
+                 zValues.size(), batchSize, parameters.numberOfThreads);
+
+        final Map<Double, TileBoundsRTree> zToTreeMap = new HashMap<>(batchSize * 2);
+        final ForkJoinPool pool = new ForkJoinPool(parameters.numberOfThreads);
+
+        int totalSavedPairCount = 0;
+        int lastTreeIndex = -1;
+        int lastExistingPairsIndex = -1;
+
+        try {
+
+            for (int fromIndex = 0; fromIndex < zValues.size(); fromIndex += batchSize) {
+
+                final int toIndex = Math.min(fromIndex + batchSize, zValues.size());
+                final int lastNeighborIndex = getLastNeighborIndex(zValues, toIndex - 1);
+
+                // release trees for layers that were completed in prior batches
+                final double batchMinZ = zValues.get(fromIndex);
+                zToTreeMap.keySet().removeIf(treeZ -> treeZ < batchMinZ);
+
+                if (lastNeighborIndex > lastTreeIndex) {
+
+                    final int firstNewTreeIndex = lastTreeIndex + 1;
+                    planBoundsSnapshot(zValues.get(firstNewTreeIndex), zValues.get(lastNeighborIndex));
+
+                    final List<Callable<TileBoundsRTree>> treeTasks = new ArrayList<>();
+                    for (int zIndex = firstNewTreeIndex; zIndex <= lastNeighborIndex; zIndex++) {
+                        final double z = zValues.get(zIndex);
+                        treeTasks.add(() -> buildRTree(z));
+                    }
+
+                    final List<TileBoundsRTree> newTreeList = invokeAll(pool, treeTasks);
+                    for (int i = 0; i < newTreeList.size(); i++) {
+                        zToTreeMap.put(zValues.get(firstNewTreeIndex + i), newTreeList.get(i));
+                    }
+
+                    lastTreeIndex = lastNeighborIndex;
+                }
+
+                final List<Callable<Set<OrderedCanvasIdPair>>> pairTasks = new ArrayList<>(toIndex - fromIndex);
+                for (int zIndex = fromIndex; zIndex < toIndex; zIndex++) {
+                    final TileBoundsRTree currentZTree = zToTreeMap.get(zValues.get(zIndex));
+                    final int lastZNeighborIndex = getLastNeighborIndex(zValues, zIndex);
+                    final List<TileBoundsRTree> neighborTreeList = new ArrayList<>();
+                    for (int neighborZIndex = zIndex + 1; neighborZIndex <= lastZNeighborIndex; neighborZIndex++) {
+                        neighborTreeList.add(zToTreeMap.get(zValues.get(neighborZIndex)));
                     }
+                    pairTasks.add(() -> getNeighborPairs(currentZTree, neighborTreeList));
                 }
 
-                neighborPairs.clear();
-                neighborPairs.addAll(neighborPairsList.subList(fromIndex, neighborPairsList.size()));
+                final List<Set<OrderedCanvasIdPair>> batchPairsList = invokeAll(pool, pairTasks);
+
+                for (int i = 0; i < batchPairsList.size(); i++) {
+
+                    final int zIndex = fromIndex + i;
+                    final Set<OrderedCanvasIdPair> currentNeighborPairs = batchPairsList.get(i);
+                    batchPairsList.set(i, null);
+
+                    if (existingMatchHelper != null) {
+                        // existing pairs need to be tracked for the current layer and all of its neighbors
+                        final int lastIndex = Math.max(zIndex, getLastNeighborIndex(zValues, zIndex));
+                        while (lastExistingPairsIndex < lastIndex) {
+                            lastExistingPairsIndex++;
+                            existingMatchHelper.addExistingPairs(zValues.get(lastExistingPairsIndex));
+                        }
+                        existingMatchHelper.removeExistingPairs(zValues.get(zIndex), currentNeighborPairs);
+                    }
+
+                    neighborPairs.addAll(currentNeighborPairs);
 
+                    totalSavedPairCount += saveFullPairFiles(neighborPairs, renderParametersUrlTemplate);
+                }
+
+                LOG.info("deriveAndSavePairsInParallel: derived pairs for layers with z {} to {}",
+                         batchMinZ, zValues.get(toIndex - 1));
+            }
+
+        } finally {
+            pool.shutdown();
+        }
+
+        return totalSavedPairCount;
+    }
+
+    /**
+     * @return index of the last layer that is within {@link Parameters#zNeighborDistance} of the specified layer.
+     */
+    private int getLastNeighborIndex(final List<Double> zValues,
+                                     final int zIndex) {
+        final double idealMaxNeighborZ = zValues.get(zIndex) + parameters.zNeighborDistance;
+        int lastNeighborIndex = zIndex;
+        while ((lastNeighborIndex + 1 < zValues.size()) && (zValues.get(lastNeighborIndex + 1) <= idealMaxNeighborZ)) {
+            lastNeighborIndex++;
+        }
+        return lastNeighborIndex;
+    }
+
+    private Set<OrderedCanvasIdPair> getNeighborPairs(final TileBoundsRTree currentZTree,
+                                                      final List<TileBoundsRTree> neighborTreeList) {
+
+        final List<TileBounds> sourceTileBoundsList;
+        if (sourceTileIds == null) {
+            sourceTileBoundsList = currentZTree.getTileBoundsList();
+        } else {
+            sourceTileBoundsList = currentZTree.getTileBoundsList().stream()
+                    .filter(tb -> sourceTileIds.contains(tb.getTileId()))
+                    .collect(Collectors.toList());
+        }
+
+        return currentZTree.getCircleNeighbors(sourceTileBoundsList,
+                                               neighborTreeList,
+                                               parameters.xyNeighborFactor,
+                                               parameters.explicitRadius,
+                                               parameters.excludeCornerNeighbors,
+                                               parameters.excludeSameLayerNeighbors,
+                                               parameters.excludeSameSectionNeighbors);
+    }
+
+    /**
+     * Saves pairs in files with {@link Parameters#maxPairsPerFile} pairs each,
+     * leaving any remaining pairs in the specified set.
+     *
+     * @return number of saved pairs.
+     */
+    private int saveFullPairFiles(final Set<OrderedCanvasIdPair> neighborPairs,
+                                  final String renderParametersUrlTemplate)
+            throws IOException {
+
+        int savedPairCount = 0;
+
+        if (neighborPairs.size() > parameters.maxPairsPerFile) {
+            final List<OrderedCanvasIdPair> neighborPairsList = new ArrayList<>(neighborPairs);
+            int fromIndex = 0;
+            for (; ; fromIndex += parameters.maxPairsPerFile) {
+                final int toIndex = fromIndex + parameters.maxPairsPerFile;
+                if (toIndex <= neighborPairs.size()) {
+                    savePairs(neighborPairsList.subList(fromIndex, toIndex),
+                              renderParametersUrlTemplate,
+                              getOutputFileName());
+                    numberOfOutputFiles++;
+                    savedPairCount += parameters.maxPairsPerFile;
+                } else {
+                    break;
+                }
             }
 
+            neighborPairs.clear();
+            neighborPairs.addAll(neighborPairsList.subList(fromIndex, neighborPairsList.size()));
         }
 
-        if (neighborPairs.size() > 0) {
+        return savedPairCount;
+    }
+
+    /**
+     * Saves all remaining pairs in one file (named with the original --toJson value if no other files were saved).
+     *
+     * @return number of saved pairs.
+     */
+    private int saveRemainingPairs(final Set<OrderedCanvasIdPair> neighborPairs,
+                                   final String renderParametersUrlTemplate)
+            throws IOException {
+
+        final int savedPairCount = neighborPairs.size();
+
+        if (savedPairCount > 0) {
             final List<OrderedCanvasIdPair> neighborPairsList = new ArrayList<>(neighborPairs);
             final String outputFileName = numberOfOutputFiles == 0 ? parameters.toJson : getOutputFileName();
             savePairs(neighborPairsList, renderParametersUrlTemplate, outputFileName);
-            totalSavedPairCount += neighborPairs.size();
         }
 
-        LOG.info("deriveAndSaveSortedNeighborPairs: exit, saved {} total pairs", totalSavedPairCount);
+        return savedPairCount;
+    }
+
+    private static <T> List<T> invokeAll(final ForkJoinPool pool,
+                                         final List<Callable<T>> tasks)
+            throws IOException {
+
+        final List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (final Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (final InterruptedException e) {
+            throw new IOException("interrupted while waiting for tasks to complete", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("task failed", cause);
+        }
+        return results;
     }
 
     public TileBoundsRTree buildRTree(final double z)
@@ -510,7 +788,7 @@ public class TilePairClient {
 
         } else {
 
-            tileBoundsList = renderDataClient.getTileBounds(parameters.stack, z);
+            tileBoundsList = getTileBounds(z);
             totalTileCount = tileBoundsList.size();
 
             if (includeClient != null) {
@@ -570,6 +848,79 @@ public class TilePairClient {
         return tree;
     }
 
+    /**
+     * @return bounds for all tiles in the specified layer, loading them from a
+     *         (multi-layer) bounds snapshot when snapshots are enabled.
+     */
+    private List<TileBounds> getTileBounds(final double z)
+            throws IOException {
+
+        final List<TileBounds> tileBoundsList;
+
+        if (parameters.boundsSnapshotLayers > 0) {
+
+            tileBoundsList = getBoundsSnapshot(z).getTileBoundsForZ(z);
+
+        } else {
+
+            tileBoundsList = renderDataClient.getTileBounds(parameters.stack, z);
+
+        }
+
+        return tileBoundsList;
+    }
+
+    /**
+     * Synchronized so that trees for different layers can be built concurrently from the same snapshot.
+     *
+     * @return snapshot that contains bounds for the specified layer.
+     */
+    private synchronized TileBoundsSnapshot getBoundsSnapshot(final double z)
+            throws IOException {
+        if ((boundsSnapshot == null) || (z < boundsSnapshotMinZ) || (z > boundsSnapshotMaxZ)) {
+            loadBoundsSnapshot(z);
+        }
+        return boundsSnapshot;
+    }
+
+    /**
+     * Identifies the range of layers that should be included in the next loaded snapshot
+     * so that concurrent tree builders for a batch of layers share one snapshot request
+     * regardless of the order in which they run.
+     */
+    private synchronized void planBoundsSnapshot(final double minZ,
+                                                 final double maxZ) {
+        plannedSnapshotMinZ = minZ;
+        plannedSnapshotMaxZ = maxZ;
+    }
+
+    private void loadBoundsSnapshot(final double z)
+            throws IOException {
+
+        boundsSnapshotMinZ = z;
+        boundsSnapshotMaxZ = z;
+
+        if ((plannedSnapshotMinZ != null) && (z >= plannedSnapshotMinZ) && (z <= plannedSnapshotMaxZ)) {
+            boundsSnapshotMinZ = plannedSnapshotMinZ;
+            boundsSnapshotMaxZ = plannedSnapshotMaxZ;
+        } else if (sortedZValues != null) {
+            final int fromIndex = Collections.binarySearch(sortedZValues, z);
+            if (fromIndex >= 0) {
+                final int toIndex = Math.min(fromIndex + parameters.boundsSnapshotLayers, sortedZValues.size()) - 1;
+                boundsSnapshotMaxZ = sortedZValues.get(toIndex);
+            }
+        }
+
+        // release previous snapshot before loading the next one
+        boundsSnapshot = null;
+        boundsSnapshot = renderDataClient.getTileBoundsSnapshot(parameters.stack,
+                                                                boundsSnapshotMinZ,
+                                                                boundsSnapshotMaxZ);
+
+        LOG.info("loadBoundsSnapshot: loaded bounds for {} tiles with z {} to {}",
+                 boundsSnapshot.size(), boundsSnapshotMinZ, boundsSnapshotMaxZ);
+    }
+
     private String getOutputFileName() {
         return String.format("%s_p%03d%s", outputFileNamePrefix, numberOfOutputFiles, outputFileNameSuffix);
     }
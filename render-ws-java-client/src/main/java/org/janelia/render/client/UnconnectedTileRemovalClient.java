@@ -274,7 +274,7 @@ public class UnconnectedTileRemovalClient {
                 tileIdsWithMatches.addMatches(matchClient.getMatchesWithPGroupId(sectionData.getSectionId(), true),
                                               stackTileIds);
             } else {
-                tileIdsWithMatches.addMatches(matchClient.getMatchesWithinGroup(sectionData.getSectionId()),
+                tileIdsWithMatches.addMatches(matchClient.getMatchesWithinGroup(sectionData.getSectionId(), true),
                                               stackTileIds);
             }
         }
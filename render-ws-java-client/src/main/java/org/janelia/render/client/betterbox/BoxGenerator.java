@@ -1,5 +1,9 @@
 package org.janelia.render.client.betterbox;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -11,6 +15,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import mpicbg.trakem2.transform.AffineModel2D;
 
@@ -18,6 +29,7 @@ import org.janelia.alignment.ArgbRenderer;
 import org.janelia.alignment.ImageAndMask;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
+import org.janelia.alignment.betterbox.BoxChunkDataset;
 import org.janelia.alignment.betterbox.BoxData;
 import org.janelia.alignment.betterbox.RenderedBox;
 import org.janelia.alignment.betterbox.RenderedBoxParent;
@@ -50,6 +62,9 @@ import org.slf4j.LoggerFactory;
  *     https://github.com/catmaid/CATMAID/blob/master/django/applications/catmaid/static/js/tile-source.js
  * </a>).
  *
+ * When chunked output is requested, boxes are instead stored as chunks of a multiscale N5 dataset
+ * (see {@link BoxChunkDataset}) in [root directory]/[tile width]x[tile height].n5.
+ *
  * @author Eric Trautman
  */
 public class BoxGenerator
@@ -66,6 +81,14 @@ public class BoxGenerator
     private final String baseBoxPath;
     private final String boxPathSuffix;
     private final File emptyImageFile;
+    private final BoxChunkDataset chunkDataset;
+
+    /**
+     * Partially rendered sibling families (keyed by parent box) retained in memory for the next level.
+     * Spark broadcasts one generator to each executor, so this cache is shared by all of the executor's tasks
+     * and is bounded by the number of retained child pixels (evicted families are simply reloaded from disk).
+     */
+    private transient Cache<BoxData, RenderedBoxParent> residentParentCache;
 
     /**
      * Constructs a generator with the specified parameters.
@@ -73,10 +96,14 @@ public class BoxGenerator
      * @param  renderWebParameters  web service parameters for retrieving render stack data.
      * @param  boxParameters        parameters specifying box properties.
      * @param  stackBounds          bounds for the stack being rendered.
+     *
+     * @throws IllegalArgumentException
+     *   if chunked output is requested along with options that require individual box files.
      */
     public BoxGenerator(final RenderWebServiceParameters renderWebParameters,
                         final MaterializedBoxParameters boxParameters,
-                        final Bounds stackBounds) {
+                        final Bounds stackBounds)
+            throws IllegalArgumentException {
 
         this.webServiceUrls = new RenderWebServiceUrls(renderWebParameters.baseDataUrl,
                                                        renderWebParameters.owner,
@@ -105,6 +132,23 @@ public class BoxGenerator
 
         this.emptyImageFile = new File(boxDirectory.getAbsolutePath(),
                                        "empty." + format.toLowerCase());
+
+        if (boxParameters.chunked) {
+
+            if (boxParameters.createIGrid || boxParameters.isOverviewNeeded()) {
+                throw new IllegalArgumentException(
+                        "IGrid and overview generation are not supported for chunked boxes");
+            }
+
+            this.chunkDataset = new BoxChunkDataset(this.baseBoxPath + ".n5",
+                                                    this.boxWidth,
+                                                    this.boxHeight,
+                                                    boxParameters.label,
+                                                    boxParameters.chunkCompression,
+                                                    stackBounds);
+        } else {
+            this.chunkDataset = null;
+        }
     }
 
     /**
@@ -131,6 +175,7 @@ public class BoxGenerator
 
     /**
      * Creates mipmap level subdirectories for all boxes along with an empty box file that can be shared.
+     * For chunked output, the dataset attributes for all levels are written instead.
      *
      * @throws IOException
      *   if any of the directories or files cannot be created.
@@ -140,9 +185,13 @@ public class BoxGenerator
 
         final File boxDirectory = new File(baseBoxPath);
 
-        for (int level = 0; level <= boxParameters.maxLevel; level++) {
-            final File levelDirectory = new File(boxDirectory, String.valueOf(level));
-            FileUtil.ensureWritableDirectory(levelDirectory);
+        if (chunkDataset == null) {
+            for (int level = 0; level <= boxParameters.maxLevel; level++) {
+                final File levelDirectory = new File(boxDirectory, String.valueOf(level));
+                FileUtil.ensureWritableDirectory(levelDirectory);
+            }
+        } else {
+            chunkDataset.writeAttributes(boxParameters.maxLevel);
         }
 
         if (boxParameters.isOverviewNeeded()) {
@@ -198,9 +247,24 @@ public class BoxGenerator
                                              final boolean skipRendering)
             throws IOException {
 
-        final Progress progress = new Progress(z, level, boxList.size(), 300);
+        final Progress progress = new Progress(z, level, boxList.size(), 300, imageProcessorCache);
         final List<BoxData> renderedBoxList = new ArrayList<>(boxList.size());
 
+        LayerRenderParameters layerParameters = null;
+        if ((level == 0) && boxParameters.useLayerParameters && (! skipRendering)) {
+            layerParameters = loadLayerParameters(z);
+        }
+
+        LevelChunks levelChunks = null;
+        if ((chunkDataset != null) && (! skipRendering)) {
+            levelChunks = new LevelChunks(z, level);
+        }
+
+        // families retained for prior levels will never be needed again
+        getResidentParentCache().asMap().keySet().removeIf(residentParentBox -> residentParentBox.getLevel() < level);
+
+        final List<Future<Void>> pendingWrites = new ArrayList<>();
+
         int renderedLevelBoxCount = 0;
         RenderedBoxParent cachedParent = null;
         BoxData siblingParentBox = null;
@@ -213,6 +277,7 @@ public class BoxGenerator
                 parentBox = boxData.getParentBoxData();
 
                 if (! parentBox.equals(siblingParentBox)) {
+                    retainResidentChildren(siblingParentBox, cachedParent);
                     // Create a 'cache' of rendered child image pixels if there is a chance
                     // we are about to render all siblings in a parent box.
                     cachedParent = new RenderedBoxParent(parentBox,
@@ -231,7 +296,7 @@ public class BoxGenerator
             }
 
             if (! skipRendering) {
-                renderBox(boxData, imageProcessorCache, cachedParent);
+                renderBox(boxData, imageProcessorCache, layerParameters, levelChunks, cachedParent, pendingWrites);
                 renderedLevelBoxCount++;
             }
             renderedBoxList.add(boxData);
@@ -239,19 +304,30 @@ public class BoxGenerator
             if (renderCachedParent) {
 
                 if (! skipRendering) {
-                    final BufferedImage parentImage = cachedParent.buildImage(boxWidth, boxHeight);
-                    BoxMipmapGenerator.saveImage(parentImage,
-                                                 cachedParent.getBoxFile(),
-                                                 boxParameters.label,
-                                                 format);
+                    final BufferedImage parentImage = cachedParent.buildImage(boxWidth,
+                                                                              boxHeight,
+                                                                              boxParameters.label);
+                    saveBox(siblingParentBox, cachedParent.getBoxFile(), parentImage, pendingWrites);
+                    if (levelChunks != null) {
+                        levelChunks.renderedParentList.add(siblingParentBox);
+                    }
                 }
 
                 renderedBoxList.add(siblingParentBox);
+                cachedParent = null;
             }
 
             progress.markProcessedBox(renderedLevelBoxCount, imageProcessorCache);
         }
 
+        retainResidentChildren(siblingParentBox, cachedParent);
+
+        waitForWrites(pendingWrites);
+
+        if (levelChunks != null) {
+            levelChunks.appendManifests();
+        }
+
         return renderedBoxList;
     }
 
@@ -366,29 +442,82 @@ public class BoxGenerator
         LOG.info("renderOverview: exit, z={}", z);
     }
 
+    /**
+     * @return parameters for all tiles in the specified layer or null if they cannot be loaded
+     *         (in which case parameters for each box will be requested separately).
+     */
+    private LayerRenderParameters loadLayerParameters(final double z) {
+
+        final String layerParametersUrl =
+                RenderWebServiceUrls.addParameter("filterListName",
+                                                  boxParameters.filterListName,
+                                                  webServiceUrls.getZUrlString(stack, z) + "/render-parameters");
+
+        LayerRenderParameters layerParameters = null;
+        try {
+            layerParameters = LayerRenderParameters.loadFromUrl(z, layerParametersUrl);
+            LOG.info("loadLayerParameters: loaded {} tiles for z {}", layerParameters.size(), z);
+        } catch (final Throwable t) {
+            LOG.warn("loadLayerParameters: failed to load " + layerParametersUrl +
+                     ", box parameters will be loaded individually", t);
+        }
+
+        return layerParameters;
+    }
+
     private void renderBox(final BoxData boxData,
                            final ImageProcessorCache imageProcessorCache,
-                           final RenderedBoxParent cachedParent)
+                           final LayerRenderParameters layerParameters,
+                           final LevelChunks levelChunks,
+                           final RenderedBoxParent cachedParent,
+                           final List<Future<Void>> pendingWrites)
             throws IOException {
 
-        final File boxFile = boxData.getAbsoluteLevelFile(baseBoxPath, boxPathSuffix);
+        RenderedBoxParent residentParent = null;
+        if (boxData.getLevel() > 0) {
+            residentParent = getResidentParentCache().asMap().remove(boxData);
+        }
+
+        final File boxFile;
+        final boolean boxExists;
+        if (levelChunks == null) {
+            boxFile = boxData.getAbsoluteLevelFile(baseBoxPath, boxPathSuffix);
+            boxExists = boxFile.exists();
+        } else {
+            boxFile = chunkDataset.getChunkFile(boxData);
+            boxExists = levelChunks.completedKeys.contains(BoxChunkDataset.getManifestKey(boxData));
+        }
 
-        if (boxParameters.forceGeneration || (! boxFile.exists())) {
+        if (boxParameters.forceGeneration || (! boxExists)) {
 
             BufferedImage boxImage = null;
 
             if (boxData.getLevel() == 0) {
 
-                String boxParametersUrl = webServiceUrls.getStackUrlString(stack) +
-                                          boxData.getServicePath(boxWidth, boxHeight) +
-                                          "/render-parameters";
-                boxParametersUrl = RenderWebServiceUrls.addParameter("filterListName",
-                                                                     boxParameters.filterListName,
-                                                                     boxParametersUrl);
+                final RenderParameters renderParameters;
+                if (layerParameters == null) {
 
-                LOG.info("renderBox: loading {}", boxParametersUrl);
+                    String boxParametersUrl = webServiceUrls.getStackUrlString(stack) +
+                                              boxData.getServicePath(boxWidth, boxHeight) +
+                                              "/render-parameters";
+                    boxParametersUrl = RenderWebServiceUrls.addParameter("filterListName",
+                                                                         boxParameters.filterListName,
+                                                                         boxParametersUrl);
+
+                    LOG.info("renderBox: loading {}", boxParametersUrl);
+
+                    renderParameters = RenderParameters.loadFromUrl(boxParametersUrl);
+
+                } else {
+
+                    final int[] fullScaleBox = boxData.getFullScaleBox(boxWidth, boxHeight);
+                    renderParameters = layerParameters.getBoxParameters(fullScaleBox[0],
+                                                                        fullScaleBox[1],
+                                                                        fullScaleBox[2],
+                                                                        fullScaleBox[3],
+                                                                        boxData.getScale());
+                }
 
-                final RenderParameters renderParameters = RenderParameters.loadFromUrl(boxParametersUrl);
                 renderParameters.setSkipInterpolation(boxParameters.skipInterpolation);
                 renderParameters.setBinaryMask(boxParameters.binaryMask);
 
@@ -418,9 +547,17 @@ public class BoxGenerator
                 final RenderedBoxParent renderedBoxParent = new RenderedBoxParent(boxData,
                                                                                   baseBoxPath,
                                                                                   boxPathSuffix);
-                renderedBoxParent.loadChildren();
+                if (residentParent != null) {
+                    // skip loading children that are still in memory from the prior level
+                    renderedBoxParent.addChildren(residentParent);
+                }
+                if (levelChunks == null) {
+                    renderedBoxParent.loadChildren();
+                } else {
+                    renderedBoxParent.loadChildren(chunkDataset, levelChunks.completedChildKeys);
+                }
                 if (renderedBoxParent.hasChildren()) {
-                    boxImage = renderedBoxParent.buildImage(boxWidth, boxHeight);
+                    boxImage = renderedBoxParent.buildImage(boxWidth, boxHeight, boxParameters.label);
                 } else {
                     LOG.warn("renderBox: box {} is empty (no rendered children)", boxData);
                 }
@@ -429,10 +566,10 @@ public class BoxGenerator
 
             if (boxImage != null) {
 
-                BoxMipmapGenerator.saveImage(boxImage,
-                                             boxFile,
-                                             boxParameters.label,
-                                             format);
+                saveBox(boxData, boxFile, boxImage, pendingWrites);
+                if (levelChunks != null) {
+                    levelChunks.renderedBoxList.add(boxData);
+                }
 
                 if (cachedParent != null) {
                     final RenderedBox renderedChild = new RenderedBox(boxFile, boxImage);
@@ -445,7 +582,12 @@ public class BoxGenerator
             LOG.info("renderBoxFile: {} already generated", boxFile.getAbsolutePath());
 
             if (cachedParent != null)  {
-                final RenderedBox renderedChild = new RenderedBox(boxFile);
+                final RenderedBox renderedChild;
+                if (levelChunks == null) {
+                    renderedChild = new RenderedBox(boxFile);
+                } else {
+                    renderedChild = new RenderedBox(boxFile, chunkDataset.readChunk(boxData));
+                }
                 cachedParent.setChild(renderedChild, boxData.getParentIndex());
             }
 
@@ -453,6 +595,139 @@ public class BoxGenerator
 
     }
 
+    /**
+     * Asynchronously saves the specified box image (as a file or chunk).
+     * The number of pending writes is limited so that unsaved images do not accumulate in memory.
+     */
+    private void saveBox(final BoxData boxData,
+                         final File boxFile,
+                         final BufferedImage boxImage,
+                         final List<Future<Void>> pendingWrites)
+            throws IOException {
+
+        if (pendingWrites.size() >= MAX_PENDING_WRITES) {
+            waitForWrites(Collections.singletonList(pendingWrites.remove(0)));
+        }
+
+        pendingWrites.add(BOX_WRITER_EXECUTOR.submit(() -> {
+            if (chunkDataset == null) {
+                BoxMipmapGenerator.saveImage(boxImage,
+                                             boxFile,
+                                             boxParameters.label,
+                                             format);
+            } else {
+                chunkDataset.writeChunk(boxData, boxImage);
+            }
+            return null;
+        }));
+    }
+
+    private static void waitForWrites(final List<Future<Void>> writeFutures)
+            throws IOException {
+
+        IOException failure = null;
+        for (final Future<Void> future : writeFutures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new IOException("interrupted while waiting for boxes to be written", e);
+                }
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = new IOException("failed to write box", e.getCause());
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized Cache<BoxData, RenderedBoxParent> getResidentParentCache() {
+        if (residentParentCache == null) {
+            final long pixelsPerChild = (long) boxWidth * boxHeight;
+            // concurrency level 1 ensures global LRU eviction (see CanvasDataCache)
+            residentParentCache = CacheBuilder.newBuilder()
+                    .concurrencyLevel(1)
+                    .maximumWeight(MAX_RESIDENT_CHILD_PIXELS)
+                    .<BoxData, RenderedBoxParent>weigher(
+                            (parentBox, residentParent) ->
+                                    (int) Math.min(residentParent.getChildCount() * pixelsPerChild,
+                                                   Integer.MAX_VALUE))
+                    .build();
+        }
+        return residentParentCache;
+    }
+
+    /**
+     * @return number of partially rendered sibling families currently retained in memory.
+     */
+    long getResidentParentCount() {
+        return getResidentParentCache().size();
+    }
+
+    /**
+     * Keeps the in-memory children of an incomplete sibling family so that they do not need
+     * to be reloaded when the parent is rendered for the next level.
+     * Families split across tasks in the same process are merged.
+     */
+    private void retainResidentChildren(final BoxData parentBox,
+                                        final RenderedBoxParent cachedParent) {
+        if ((cachedParent != null) && cachedParent.hasChildren()) {
+            final Cache<BoxData, RenderedBoxParent> cache = getResidentParentCache();
+            synchronized (cache) {
+                final RenderedBoxParent existingParent = cache.getIfPresent(parentBox);
+                if (existingParent == null) {
+                    cache.put(parentBox, cachedParent);
+                } else {
+                    existingParent.addChildren(cachedParent);
+                    // re-put merged family so that its weight is updated
+                    cache.put(parentBox, existingParent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Manifest state for the chunks of one layer level (and its adjacent levels) rendered by a single call.
+     * Newly rendered chunks are only added to the manifest after all of the level's boxes have been processed,
+     * so chunks that were partially written by a failed prior run are never considered complete.
+     */
+    private class LevelChunks {
+
+        private final double z;
+        private final int level;
+        private final Set<String> completedKeys;
+        private final Set<String> completedChildKeys;
+        private final List<BoxData> renderedBoxList;
+        private final List<BoxData> renderedParentList;
+
+        LevelChunks(final double z,
+                    final int level)
+                throws IOException {
+
+            this.z = z;
+            this.level = level;
+            this.completedKeys = chunkDataset.readManifest(level, z);
+            if (level > 0) {
+                this.completedChildKeys = chunkDataset.readManifest(level - 1, z);
+            } else {
+                this.completedChildKeys = Collections.emptySet();
+            }
+            this.renderedBoxList = new ArrayList<>();
+            this.renderedParentList = new ArrayList<>();
+        }
+
+        void appendManifests()
+                throws IOException {
+            chunkDataset.appendManifest(level, z, renderedBoxList);
+            chunkDataset.appendManifest(level + 1, z, renderedParentList);
+        }
+    }
+
     /**
      * Utility to support logging of progress during long running layer render processes.
      */
@@ -463,17 +738,20 @@ public class BoxGenerator
         private final int numberOfLevelBoxes;
         final ProcessTimer processTimer;
         private final SimpleDateFormat sdf;
+        private final CacheStats startCacheStats;
 
         Progress(final double z,
                  final int level,
                  final int numberOfLevelBoxes,
-                 final long logIntervalSeconds) {
+                 final long logIntervalSeconds,
+                 final ImageProcessorCache imageProcessorCache) {
 
             this.z = z;
             this.level = level;
             this.numberOfLevelBoxes = numberOfLevelBoxes;
             this.processTimer = new ProcessTimer(logIntervalSeconds * 1000);
             this.sdf = new SimpleDateFormat("HH:mm:ss");
+            this.startCacheStats = imageProcessorCache.getStats();
         }
 
         void markProcessedBox(final int renderedLevelBoxCount,
@@ -493,7 +771,13 @@ public class BoxGenerator
 
                 String cacheStats = "cache not applicable";
                 if (! imageProcessorCache.equals(ImageProcessorCache.DISABLED_CACHE)) {
-                    cacheStats = String.valueOf(imageProcessorCache.getStats());
+                    // caches are typically created for each partition (task),
+                    // so report hit rates for these boxes and for the cache's lifetime
+                    final CacheStats stats = imageProcessorCache.getStats();
+                    cacheStats = String.format("cache hit rate %.1f%% for layer level, %.1f%% for partition, %s",
+                                               stats.minus(startCacheStats).hitRate() * 100,
+                                               stats.hitRate() * 100,
+                                               stats);
                 }
 
                 LOG.info("renderBoxesForLevel: {} of {} layer {} level {} boxes rendered ({}%){}, {}",
@@ -505,4 +789,19 @@ public class BoxGenerator
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(BoxGenerator.class);
+
+    private static final int MAX_PENDING_WRITES = 16;
+
+    /** Maximum number of child pixels retained for partial families (about 256MB of ARGB boxes). */
+    private static final long MAX_RESIDENT_CHILD_PIXELS = 64 * 1024 * 1024;
+
+    private static final ExecutorService BOX_WRITER_EXECUTOR = Executors.newFixedThreadPool(4, new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "box-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 }
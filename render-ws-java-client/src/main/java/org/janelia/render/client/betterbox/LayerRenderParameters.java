@@ -0,0 +1,109 @@
+package org.janelia.render.client.betterbox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.TileSpec;
+
+/**
+ * Render parameters for all tiles in a layer along with a spatial index of their bounds.
+ *
+ * Parameters for any box within the layer can be derived locally from this instance,
+ * producing the same result as a web service box render-parameters request
+ * (same tiles, same tileId order, and same rendering options) without any additional requests.
+ *
+ * @author Eric Trautman
+ */
+public class LayerRenderParameters {
+
+    private final RenderParameters layerParameters;
+    private final Map<String, TileSpec> tileIdToSpecMap;
+    private final TileBoundsRTree tree;
+
+    /**
+     * @param  z                z value for the layer.
+     * @param  layerParameters  parameters (with resolved and flattened tile specs) for the entire layer.
+     */
+    public LayerRenderParameters(final Double z,
+                                 final RenderParameters layerParameters) {
+
+        this.layerParameters = layerParameters;
+
+        final List<TileSpec> tileSpecs = layerParameters.getTileSpecs();
+        this.tileIdToSpecMap = new HashMap<>(tileSpecs.size() * 2);
+        final List<TileBounds> tileBoundsList = new ArrayList<>(tileSpecs.size());
+        for (final TileSpec tileSpec : tileSpecs) {
+            // tiles without bounds are never returned by database box queries, so skip them here too
+            if (tileSpec.getMinX() != null) {
+                tileIdToSpecMap.put(tileSpec.getTileId(), tileSpec);
+                tileBoundsList.add(tileSpec.toTileBounds());
+            }
+        }
+
+        this.tree = new TileBoundsRTree(z, tileBoundsList);
+    }
+
+    /**
+     * @return number of tiles (with bounds) in the layer.
+     */
+    public int size() {
+        return tileIdToSpecMap.size();
+    }
+
+    /**
+     * @return parameters for rendering all layer tiles that intersect the specified box.
+     *         Each tile spec is a copy that may be modified by the caller.
+     */
+    public RenderParameters getBoxParameters(final double x,
+                                             final double y,
+                                             final int width,
+                                             final int height,
+                                             final double scale) {
+
+        final double lowerRightX = x + width;
+        final double lowerRightY = y + height;
+
+        // tree uses float precision, so search a slightly larger box and then filter precisely
+        final List<TileBounds> candidates = tree.findTilesInBox(x - 1, y - 1, lowerRightX + 1, lowerRightY + 1);
+
+        final List<TileSpec> tileSpecs = new ArrayList<>(candidates.size());
+        for (final TileBounds tileBounds : candidates) {
+            final TileSpec tileSpec = tileIdToSpecMap.get(tileBounds.getTileId());
+            if ((tileSpec.getMinX() <= lowerRightX) &&
+                (tileSpec.getMinY() <= lowerRightY) &&
+                (tileSpec.getMaxX() >= x) &&
+                (tileSpec.getMaxY() >= y)) {
+                tileSpecs.add(tileSpec);
+            }
+        }
+
+        // order tile specs by tileId to ensure consistent rendering (matches database sort order)
+        tileSpecs.sort((o1, o2) -> o1.getTileId().compareTo(o2.getTileId()));
+
+        final RenderParameters boxParameters = layerParameters.copyOptionsForBox(x, y, width, height, scale);
+        for (final TileSpec tileSpec : tileSpecs) {
+            boxParameters.addTileSpec(tileSpec.getCopyWithSharedTransformSpecs());
+        }
+        boxParameters.initializeDerivedValues();
+
+        return boxParameters;
+    }
+
+    /**
+     * @return parameters for the specified layer loaded from the specified web service URL.
+     *
+     * @throws IllegalArgumentException
+     *   if the parameters cannot be loaded.
+     */
+    public static LayerRenderParameters loadFromUrl(final Double z,
+                                                    final String layerParametersUrl)
+            throws IllegalArgumentException {
+        return new LayerRenderParameters(z, RenderParameters.loadFromUrl(layerParametersUrl));
+    }
+
+}
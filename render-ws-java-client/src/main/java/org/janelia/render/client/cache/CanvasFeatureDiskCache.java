@@ -0,0 +1,250 @@
+package org.janelia.render.client.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import mpicbg.imagefeatures.Feature;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.match.CanvasFeatureExtractor;
+import org.janelia.alignment.match.CanvasFeatureList;
+import org.janelia.alignment.match.CanvasId;
+import org.janelia.alignment.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content addressed disk cache for extracted canvas features.
+ *
+ * Cache keys are derived from a hash of the fully resolved render parameters JSON
+ * (tile specs, transforms, scale, clip bounds, ...) and the feature extraction parameters,
+ * so features extracted in one run can be reused by any later run that renders identical canvases
+ * with identical extraction settings (e.g. when only match derivation parameters change).
+ *
+ * Files are stored as [root]/[first two key characters]/[key].features.json.gz.
+ * Once the total size of cached files exceeds the specified capacity,
+ * least recently used files are removed until the cache is back under its low water mark.
+ *
+ * The cache directory may be shared by multiple processes.  Files are written to a temporary
+ * location and then atomically moved into place so that readers never see partial data.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasFeatureDiskCache
+        implements Serializable {
+
+    private final File rootDirectory;
+    private final long maxBytes;
+
+    /** Approximate number of bytes currently cached (lazily derived, -1 if unknown). */
+    private transient long knownBytes;
+
+    /**
+     * @param  rootDirectory  root directory for all cached feature files.
+     * @param  maxBytes       maximum number of bytes to keep in the cache.
+     */
+    public CanvasFeatureDiskCache(final File rootDirectory,
+                                  final long maxBytes) {
+        this.rootDirectory = rootDirectory.getAbsoluteFile();
+        this.maxBytes = maxBytes;
+        this.knownBytes = -1;
+    }
+
+    public File getRootDirectory() {
+        return rootDirectory;
+    }
+
+    /**
+     * @return content based key for the specified render parameters and extractor settings.
+     *
+     * @throws IllegalStateException
+     *   if the key cannot be derived.
+     */
+    public static String buildKey(final RenderParameters renderParameters,
+                                  final CanvasFeatureExtractor featureExtractor)
+            throws IllegalStateException {
+
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(renderParameters.toJson().getBytes(StandardCharsets.UTF_8));
+            messageDigest.update((byte) '\n');
+            messageDigest.update(featureExtractor.getParameterSignature().getBytes(StandardCharsets.UTF_8));
+
+            final byte[] digest = messageDigest.digest();
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+
+        } catch (final NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("failed to derive feature cache key", e);
+        }
+    }
+
+    /**
+     * @return path of the cached file for the specified key.
+     */
+    public Path getPath(final String key) {
+        return Paths.get(rootDirectory.getAbsolutePath(), key.substring(0, 2), key + ".features.json.gz");
+    }
+
+    /**
+     * @return cached features for the specified key or null if they are not in the cache.
+     */
+    public List<Feature> load(final String key) {
+
+        List<Feature> featureList = null;
+
+        final Path path = getPath(key);
+        final File file = path.toFile();
+        if (file.exists()) {
+            try (final Reader reader = new FileUtil().getExtensionBasedReader(path.toString())) {
+                final CanvasFeatureList canvasFeatureList =
+                        JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class);
+                featureList = canvasFeatureList.getFeatureList();
+
+                // touch file so that least recently used eviction treats it as recently used
+                if (! file.setLastModified(System.currentTimeMillis())) {
+                    LOG.debug("load: failed to update last modified time for {}", path);
+                }
+
+                LOG.info("load: loaded {} features from {}", featureList.size(), path);
+
+            } catch (final Exception e) {
+                LOG.warn("load: ignoring unreadable cached features in " + path, e);
+                featureList = null;
+            }
+        }
+
+        return featureList;
+    }
+
+    /**
+     * Saves the specified features in the cache and removes least recently used files
+     * if the cache has exceeded its capacity.
+     * Any exceptions that occur during storage are simply logged (and ignored).
+     */
+    public void store(final String key,
+                      final CanvasId canvasId,
+                      final String renderParametersUrl,
+                      final Double renderScale,
+                      final Integer clipWidth,
+                      final Integer clipHeight,
+                      final List<Feature> featureList) {
+
+        final Path path = getPath(key);
+        final CanvasFeatureList canvasFeatureList = new CanvasFeatureList(canvasId,
+                                                                          renderParametersUrl,
+                                                                          renderScale,
+                                                                          clipWidth,
+                                                                          clipHeight,
+                                                                          featureList);
+        try {
+            final File parentDirectory = path.getParent().toFile();
+            FileUtil.ensureWritableDirectory(parentDirectory);
+
+            final Path tmpPath = Files.createTempFile(path.getParent(), key, ".tmp.json.gz");
+            FileUtil.saveJsonFile(tmpPath.toString(), canvasFeatureList, JsonUtils.FAST_MAPPER);
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            addBytesAndEvictIfNecessary(path.toFile().length());
+
+        } catch (final Exception e) {
+            LOG.warn("store: failed to cache features in " + path, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CanvasFeatureDiskCache{" +
+               "rootDirectory=" + rootDirectory +
+               ", maxBytes=" + maxBytes +
+               '}';
+    }
+
+    private synchronized void addBytesAndEvictIfNecessary(final long addedBytes)
+            throws IOException {
+
+        if (knownBytes < 0) {
+            knownBytes = listCachedFiles().stream().mapToLong(File::length).sum();
+        } else {
+            knownBytes += addedBytes;
+        }
+
+        if (knownBytes > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes least recently used files until the cache size is below its low water mark.
+     * The directory is re-scanned so that files written by other processes are considered.
+     */
+    private void evict()
+            throws IOException {
+
+        final long lowWaterBytes = (long) (maxBytes * LOW_WATER_FRACTION);
+
+        final List<File> files = listCachedFiles();
+        files.sort(Comparator.comparingLong(File::lastModified));
+
+        long totalBytes = files.stream().mapToLong(File::length).sum();
+        int removedCount = 0;
+        for (final File file : files) {
+            if (totalBytes <= lowWaterBytes) {
+                break;
+            }
+            final long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+                removedCount++;
+            }
+        }
+
+        knownBytes = totalBytes;
+
+        LOG.info("evict: removed {} files, {} bytes remain in {}", removedCount, totalBytes, rootDirectory);
+    }
+
+    private List<File> listCachedFiles()
+            throws IOException {
+        final List<File> files;
+        if (rootDirectory.exists()) {
+            try (final Stream<Path> pathStream = Files.walk(rootDirectory.toPath())) {
+                files = pathStream
+                        .filter(p -> p.toString().endsWith(".features.json.gz"))
+                        .map(Path::toFile)
+                        .collect(Collectors.toCollection(ArrayList::new));
+            }
+        } else {
+            files = new ArrayList<>();
+        }
+        return files;
+    }
+
+    private void readObject(final java.io.ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        knownBytes = -1;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureDiskCache.class);
+
+    private static final double LOW_WATER_FRACTION = 0.9;
+}
@@ -25,6 +25,7 @@ public class CanvasFeatureListLoader
     private final CanvasFeatureExtractor featureExtractor;
     private final File rootFeatureStorageDirectory;
     private final boolean requireStoredFeatures;
+    private final CanvasFeatureDiskCache featureDiskCache;
 
     /**
      * @param  urlTemplate                  template for deriving render parameters URL for each canvas.
@@ -32,7 +33,7 @@ public class CanvasFeatureListLoader
      */
     public CanvasFeatureListLoader(final CanvasRenderParametersUrlTemplate urlTemplate,
                                    final CanvasFeatureExtractor featureExtractor) {
-        this(urlTemplate, featureExtractor, null, false);
+        this(urlTemplate, featureExtractor, null, false, null);
     }
 
     /**
@@ -53,10 +54,36 @@ public class CanvasFeatureListLoader
                                    final CanvasFeatureExtractor featureExtractor,
                                    final File rootFeatureStorageDirectory,
                                    final boolean requireStoredFeatures) {
+        this(urlTemplate, featureExtractor, rootFeatureStorageDirectory, requireStoredFeatures, null);
+    }
+
+    /**
+     * @param  urlTemplate                  template for deriving render parameters URL for each canvas.
+     *
+     * @param  featureExtractor             configured feature extractor.
+     *
+     * @param  rootFeatureStorageDirectory  root directory for persisted feature list data
+     *                                      (or null if features should always be extracted
+     *                                      from a dynamically rendered canvas).
+     *
+     * @param  requireStoredFeatures        if true, exception will be thrown when stored features
+     *                                      for a canvas cannot be found on disk;
+     *                                      if false, stored features will be loaded from disk
+     *                                      but missing features will be extracted from a dynamically rendered canvas.
+     *
+     * @param  featureDiskCache             content addressed cache for extracted features
+     *                                      (or null if extracted features should not be cached on disk).
+     */
+    public CanvasFeatureListLoader(final CanvasRenderParametersUrlTemplate urlTemplate,
+                                   final CanvasFeatureExtractor featureExtractor,
+                                   final File rootFeatureStorageDirectory,
+                                   final boolean requireStoredFeatures,
+                                   final CanvasFeatureDiskCache featureDiskCache) {
         super(urlTemplate, CachedCanvasFeatures.class);
         this.featureExtractor = featureExtractor;
         this.rootFeatureStorageDirectory =rootFeatureStorageDirectory;
         this.requireStoredFeatures = requireStoredFeatures;
+        this.featureDiskCache = featureDiskCache;
     }
 
     @Override
@@ -107,8 +134,31 @@ public class CanvasFeatureListLoader
             final RenderParameters renderParameters = getRenderParameters(canvasId);
             offsets = canvasId.getClipOffsets(); // HACK WARNING: offsets get applied by getRenderParameters call
 
-            LOG.info("load: extracting features for {} with offsets ({}, {})", canvasId, offsets[0], offsets[1]);
-            featureList = featureExtractor.extractFeatures(renderParameters, null);
+            String cacheKey = null;
+            if (featureDiskCache != null) {
+                cacheKey = CanvasFeatureDiskCache.buildKey(renderParameters, featureExtractor);
+                featureList = featureDiskCache.load(cacheKey);
+            }
+
+            if (featureList == null) {
+
+                LOG.info("load: extracting features for {} with offsets ({}, {})", canvasId, offsets[0], offsets[1]);
+                featureList = featureExtractor.extractFeatures(renderParameters, null);
+
+                if (cacheKey != null) {
+                    featureDiskCache.store(cacheKey,
+                                           canvasId,
+                                           getRenderParametersUrl(canvasId),
+                                           renderParameters.getScale(),
+                                           getClipWidth(),
+                                           getClipHeight(),
+                                           featureList);
+                }
+
+            } else {
+                LOG.info("load: loaded {} cached features for {} with offsets ({}, {})",
+                         featureList.size(), canvasId, offsets[0], offsets[1]);
+            }
         }
 
         LOG.info("load: exit");
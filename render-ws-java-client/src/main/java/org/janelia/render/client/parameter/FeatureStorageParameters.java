@@ -5,6 +5,8 @@ import com.beust.jcommander.Parameter;
 import java.io.File;
 import java.io.Serializable;
 
+import org.janelia.render.client.cache.CanvasFeatureDiskCache;
+
 /**
  * Parameters for persisting or retrieving extracted feature data to/from disk.
  *
@@ -32,6 +34,19 @@ public class FeatureStorageParameters
             required = false)
     public Integer maxCacheGb = 2;
 
+    @Parameter(
+            names = "--featureCacheDirectory",
+            description = "Directory for content addressed feature cache that can be shared across runs " +
+                          "(omit to disable disk caching of extracted features)",
+            required = false)
+    public String featureCacheDirectory;
+
+    @Parameter(
+            names = "--maxFeatureCacheDirectoryGb",
+            description = "Maximum number of gigabytes of features to keep in the feature cache directory",
+            required = false)
+    public Integer maxFeatureCacheDirectoryGb = 50;
+
     public File getRootFeatureDirectory() {
         File directory = null;
         if (rootFeatureDirectory != null) {
@@ -39,5 +54,17 @@ public class FeatureStorageParameters
         }
         return directory;
     }
+
+    /**
+     * @return content addressed feature cache for these parameters or null if disk caching is disabled.
+     */
+    public CanvasFeatureDiskCache getFeatureDiskCache() {
+        CanvasFeatureDiskCache featureDiskCache = null;
+        if (featureCacheDirectory != null) {
+            featureDiskCache = new CanvasFeatureDiskCache(new File(featureCacheDirectory).getAbsoluteFile(),
+                                                          maxFeatureCacheDirectoryGb * 1000000000L);
+        }
+        return featureDiskCache;
+    }
 }
 
@@ -6,6 +6,8 @@ import java.io.Serializable;
 import java.util.Comparator;
 
 import org.janelia.alignment.Utils;
+import org.janelia.alignment.betterbox.BoxChunkDataset;
+import org.janelia.alignment.betterbox.BoxData;
 import org.janelia.alignment.spec.TileSpec;
 
 /**
@@ -117,10 +119,44 @@ public class MaterializedBoxParameters implements Serializable {
     )
     public boolean sortByClusterGroupId = false;
 
+    @Parameter(
+            names = "--useLayerParameters",
+            description = "Load render parameters for each layer once and derive level 0 box parameters locally " +
+                          "(instead of requesting parameters for each box)",
+            arity = 0)
+    public boolean useLayerParameters = false;
+
+    @Parameter(
+            names = "--chunked",
+            description = "Store boxes as chunks of a multiscale N5 dataset (one dataset per level) " +
+                          "instead of as individual image files",
+            arity = 0)
+    public boolean chunked = false;
+
+    @Parameter(
+            names = "--chunkCompression",
+            description = "Compression for chunked boxes (gzip or raw)"
+    )
+    public String chunkCompression = BoxChunkDataset.GZIP_COMPRESSION;
+
+    @Parameter(
+            names = "--hilbertOrder",
+            description = "Order (and partition) boxes along a Hilbert curve instead of by parent row and column " +
+                          "so that cached source tiles are reused by more adjacent boxes",
+            arity = 0)
+    public boolean hilbertOrder = false;
+
     public boolean isOverviewNeeded() {
         return ((maxOverviewWidthAndHeight != null) && (maxOverviewWidthAndHeight > 0));
     }
 
+    /**
+     * @return ordering for boxes within each layer level.
+     */
+    public Comparator<BoxData> getBoxComparator() {
+        return hilbertOrder ? BoxData.HILBERT_ORDER_COMPARATOR : Comparator.naturalOrder();
+    }
+
     public MaterializedBoxParameters getInstanceForRenderGroup(final int group,
                                                                final int numberOfGroups) {
         final MaterializedBoxParameters p = new MaterializedBoxParameters();
@@ -137,6 +173,10 @@ public class MaterializedBoxParameters implements Serializable {
         p.label = this.label;
         p.createIGrid = this.createIGrid;
         p.forceGeneration = this.forceGeneration;
+        p.useLayerParameters = this.useLayerParameters;
+        p.chunked = this.chunked;
+        p.chunkCompression = this.chunkCompression;
+        p.hilbertOrder = this.hilbertOrder;
 
         p.renderGroup = group;
         p.numberOfRenderGroups = numberOfGroups;
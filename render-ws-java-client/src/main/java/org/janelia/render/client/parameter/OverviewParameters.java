@@ -0,0 +1,87 @@
+package org.janelia.render.client.parameter;
+
+import com.beust.jcommander.Parameter;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.file.Paths;
+
+import org.janelia.alignment.Utils;
+
+/**
+ * Parameters for building layer overview (scape / section) images with bounded memory.
+ *
+ * @author Eric Trautman
+ */
+public class OverviewParameters implements Serializable {
+
+    @Parameter(
+            names = "--stripHeight",
+            description = "Render each layer as a series of horizontal strips with this (scaled) pixel height " +
+                          "so that only tiles intersecting a strip are loaded at one time " +
+                          "(omit to render each layer in one pass)"
+    )
+    public Integer stripHeight;
+
+    @Parameter(
+            names = "--boxRootDirectory",
+            description = "Build overviews from previously materialized boxes in this root directory " +
+                          "(e.g. /tier2/flyTEM/nobackup/rendered_boxes) instead of rendering source tiles"
+    )
+    public String boxRootDirectory;
+
+    @Parameter(
+            names = "--boxWidth",
+            description = "Width of materialized boxes (required with --boxRootDirectory)"
+    )
+    public Integer boxWidth;
+
+    @Parameter(
+            names = "--boxHeight",
+            description = "Height of materialized boxes (required with --boxRootDirectory)"
+    )
+    public Integer boxHeight;
+
+    @Parameter(
+            names = "--boxFormat",
+            description = "Format of materialized boxes"
+    )
+    public String boxFormat = Utils.PNG_FORMAT;
+
+    public boolean isBoxSource() {
+        return boxRootDirectory != null;
+    }
+
+    /**
+     * @return the materialized box directory for the specified stack
+     *         (same layout as {@link org.janelia.render.client.BoxGenerator}).
+     */
+    public File getBoxDirectory(final String project,
+                                final String stack) {
+        return Paths.get(boxRootDirectory,
+                         project,
+                         stack,
+                         boxWidth + "x" + boxHeight).toAbsolutePath().toFile();
+    }
+
+    public void validate() throws IllegalArgumentException {
+
+        if ((stripHeight != null) && (stripHeight < 1)) {
+            throw new IllegalArgumentException("stripHeight must be greater than zero");
+        }
+
+        if (isBoxSource()) {
+
+            if ((boxWidth == null) || (boxHeight == null)) {
+                throw new IllegalArgumentException("boxWidth and boxHeight must be specified with boxRootDirectory");
+            }
+
+            if (stripHeight != null) {
+                throw new IllegalArgumentException("stripHeight is not used when building overviews from boxes " +
+                                                   "(each row of boxes is already a separate strip)");
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.janelia.render.client.request;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Request entity that writes a list of objects as newline delimited JSON directly to the request stream,
+ * so that the request body never needs to be built as a single string in memory.
+ *
+ * Since the objects are held in a list, the entity can be written more than once and is therefore repeatable
+ * (allowing failed requests to be retried by the client's retry handler).
+ *
+ * @author Eric Trautman
+ */
+public class JsonLinesEntity<T>
+        extends AbstractHttpEntity {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private final List<T> list;
+    private final ObjectWriter writer;
+
+    public JsonLinesEntity(final List<T> list) {
+        this.list = list;
+        this.writer = JsonUtils.FAST_MAPPER.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        setContentType(CONTENT_TYPE);
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent()
+            throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("json lines entity content can only be written");
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream)
+            throws IOException {
+        for (final T object : list) {
+            writer.writeValue(outputStream, object);
+            outputStream.write(NEW_LINE);
+        }
+        outputStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private static final int NEW_LINE = '\n';
+}
@@ -0,0 +1,38 @@
+package org.janelia.render.client.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.janelia.alignment.match.CanvasIdPairStream;
+import org.janelia.alignment.match.RenderableCanvasIdPairs;
+
+/**
+ * Converts binary response content stream to a {@link RenderableCanvasIdPairs} (see {@link CanvasIdPairStream}).
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairStreamResponseHandler
+        extends BaseResponseHandler
+        implements ResponseHandler<RenderableCanvasIdPairs> {
+
+    /**
+     * @param  requestContext  context (e.g. "GET http://janelia.org") for use in error messages.
+     */
+    public CanvasIdPairStreamResponseHandler(final String requestContext) {
+        super(requestContext);
+    }
+
+    @Override
+    public RenderableCanvasIdPairs handleResponse(final HttpResponse response)
+            throws IOException {
+
+        final HttpEntity entity = getValidatedResponseEntity(response, OK);
+
+        try (final InputStream in = entity.getContent()) {
+            return CanvasIdPairStream.readFrom(in);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.janelia.render.client.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.janelia.alignment.spec.TileBoundsSnapshot;
+
+/**
+ * Converts binary response content stream to a {@link TileBoundsSnapshot}.
+ *
+ * @author Eric Trautman
+ */
+public class TileBoundsSnapshotResponseHandler
+        extends BaseResponseHandler
+        implements ResponseHandler<TileBoundsSnapshot> {
+
+    /**
+     * @param  requestContext  context (e.g. "GET http://janelia.org") for use in error messages.
+     */
+    public TileBoundsSnapshotResponseHandler(final String requestContext) {
+        super(requestContext);
+    }
+
+    @Override
+    public TileBoundsSnapshot handleResponse(final HttpResponse response)
+            throws IOException {
+
+        final HttpEntity entity = getValidatedResponseEntity(response, OK);
+
+        try (final InputStream in = entity.getContent()) {
+            return TileBoundsSnapshot.readFrom(in);
+        }
+    }
+}
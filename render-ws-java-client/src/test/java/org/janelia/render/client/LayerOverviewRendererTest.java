@@ -0,0 +1,133 @@
+package org.janelia.render.client;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.mipmap.BoxMipmapGenerator;
+import org.janelia.alignment.util.FileUtil;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.render.client.parameter.OverviewParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LayerOverviewRenderer} class.
+ *
+ * @author Eric Trautman
+ */
+public class LayerOverviewRendererTest {
+
+    private File boxRootDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        boxRootDirectory = MipmapClientTest.createTestDirectory("test_layer_overview");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(boxRootDirectory);
+    }
+
+    @Test
+    public void testRenderStrips() throws Exception {
+
+        final OverviewParameters overviewParameters = new OverviewParameters();
+        overviewParameters.stripHeight = 4;
+
+        final double scale = 0.1;
+        final LayerOverviewRenderer renderer =
+                new LayerOverviewRenderer(overviewParameters, PROJECT, STACK, scale,
+                                          ImageProcessorCache.DISABLED_CACHE);
+
+        final List<RenderParameters> requestedStrips = new ArrayList<>();
+        final BufferedImage overview = renderer.render(Z, 0.0, 0.0, 100, 95, (x, y, width, height) -> {
+            final RenderParameters stripParameters = new RenderParameters(null, x, y, width, height, scale);
+            requestedStrips.add(stripParameters);
+            return stripParameters;
+        });
+
+        Assert.assertEquals("invalid overview width", 10, overview.getWidth());
+        Assert.assertEquals("invalid overview height", 9, overview.getHeight());
+
+        Assert.assertEquals("invalid number of strips", 3, requestedStrips.size());
+
+        final int[] expectedTopRows = { 0, 4, 8 };
+        for (int i = 0; i < expectedTopRows.length; i++) {
+            final RenderParameters stripParameters = requestedStrips.get(i);
+            Assert.assertEquals("invalid y for strip " + i,
+                                expectedTopRows[i] / scale, stripParameters.getY(), 0.0001);
+            final int stripRows = Math.min(overviewParameters.stripHeight, overview.getHeight() - expectedTopRows[i]);
+            Assert.assertTrue("strip " + i + " is too short to cover " + stripRows + " rows",
+                              stripParameters.openTargetImage().getHeight() >= stripRows);
+        }
+    }
+
+    @Test
+    public void testRenderFromBoxes() throws Exception {
+
+        final OverviewParameters overviewParameters = new OverviewParameters();
+        overviewParameters.boxRootDirectory = boxRootDirectory.getAbsolutePath();
+        overviewParameters.boxWidth = BOX_SIZE;
+        overviewParameters.boxHeight = BOX_SIZE;
+
+        // only level 1 boxes exist, so the renderer should fall back from level 2 (best for scale 0.25) to level 1
+        final File boxDirectory = overviewParameters.getBoxDirectory(PROJECT, STACK);
+        saveBox(boxDirectory, 1, 0, 0, Color.RED);
+        saveBox(boxDirectory, 1, 0, 1, Color.BLUE);
+
+        final LayerOverviewRenderer renderer =
+                new LayerOverviewRenderer(overviewParameters, PROJECT, STACK, 0.25,
+                                          ImageProcessorCache.DISABLED_CACHE);
+
+        final BufferedImage overview = renderer.render(Z, 0.0, 0.0, 60, 20, (x, y, width, height) -> {
+            throw new IllegalArgumentException("render parameters should not be loaded for box overviews");
+        });
+
+        Assert.assertEquals("invalid overview width", 15, overview.getWidth());
+        Assert.assertEquals("invalid overview height", 5, overview.getHeight());
+
+        // each level 1 box covers 20x20 world pixels, so it is drawn as a 5x5 overview box
+        Assert.assertEquals("invalid first box color", Color.RED.getRGB(), overview.getRGB(2, 2));
+        Assert.assertEquals("invalid second box color", Color.BLUE.getRGB(), overview.getRGB(7, 2));
+        Assert.assertEquals("missing box should be empty", 0, overview.getRGB(12, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingBoxSize() throws Exception {
+        final OverviewParameters overviewParameters = new OverviewParameters();
+        overviewParameters.boxRootDirectory = boxRootDirectory.getAbsolutePath();
+        new LayerOverviewRenderer(overviewParameters, PROJECT, STACK, 0.25, ImageProcessorCache.DISABLED_CACHE);
+    }
+
+    private static void saveBox(final File boxDirectory,
+                                final int level,
+                                final int row,
+                                final int column,
+                                final Color color)
+            throws Exception {
+
+        final BufferedImage boxImage = new BufferedImage(BOX_SIZE, BOX_SIZE, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D boxGraphics = boxImage.createGraphics();
+        boxGraphics.setColor(color);
+        boxGraphics.fillRect(0, 0, BOX_SIZE, BOX_SIZE);
+        boxGraphics.dispose();
+
+        final File boxFile =
+                BoxMipmapGenerator.getImageFile(Utils.PNG_FORMAT, boxDirectory, level, (int) Z, row, column);
+        BoxMipmapGenerator.saveImage(boxImage, boxFile, false, Utils.PNG_FORMAT);
+    }
+
+    private static final String PROJECT = "test_project";
+    private static final String STACK = "test_stack";
+    private static final double Z = 1.0;
+    private static final int BOX_SIZE = 10;
+}
@@ -0,0 +1,103 @@
+package org.janelia.render.client;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.util.FileUtil;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderBatch} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderBatchTest {
+
+    private File batchDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        batchDirectory = MipmapClientTest.createTestDirectory("test_render_batch");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(batchDirectory);
+    }
+
+    @Test
+    public void testRenderBatch() throws Exception {
+
+        // parameters without tiles simply render an empty image
+        final Path emptyParametersPath = batchDirectory.toPath().resolve("empty.json");
+        Files.write(emptyParametersPath,
+                    "{ \"x\": 0, \"y\": 0, \"width\": 20, \"height\": 10, \"scale\": 1.0 }".getBytes());
+
+        final Path missingParametersPath = batchDirectory.toPath().resolve("missing.json");
+
+        final File firstOut = new File(batchDirectory, "out/a/0.png");
+        final File secondOut = new File(batchDirectory, "out/b/1.png");
+        final File thirdOut = new File(batchDirectory, "out/a/2.png");
+
+        final Path manifestPath = batchDirectory.toPath().resolve("manifest.json");
+        final List<String> manifestLines = Arrays.asList(
+                toLine(emptyParametersPath, firstOut),
+                "",
+                toLine(missingParametersPath, secondOut),
+                toLine(emptyParametersPath, thirdOut));
+        Files.write(manifestPath, manifestLines, StandardCharsets.UTF_8);
+
+        final List<RenderBatch.Item> itemList = RenderBatch.loadManifest(manifestPath);
+        Assert.assertEquals("invalid number of items loaded (blank lines should be ignored)", 3, itemList.size());
+
+        final RenderBatch batch = new RenderBatch(itemList, 2, ImageProcessorCache.DISABLED_CACHE);
+        final List<RenderBatch.ItemResult> resultList = batch.render();
+
+        Assert.assertEquals("invalid number of results", 3, resultList.size());
+        for (int i = 0; i < resultList.size(); i++) {
+            Assert.assertEquals("results should be in manifest order", i, resultList.get(i).getIndex());
+        }
+
+        Assert.assertFalse("first item should not fail", resultList.get(0).isFailed());
+        Assert.assertTrue("first image " + firstOut + " not created", firstOut.exists());
+
+        Assert.assertTrue("missing parameters item should fail", resultList.get(1).isFailed());
+        Assert.assertFalse("failed item image " + secondOut + " should not exist", secondOut.exists());
+
+        Assert.assertFalse("third item should not fail after earlier failure", resultList.get(2).isFailed());
+        Assert.assertTrue("third image " + thirdOut + " not created", thirdOut.exists());
+
+        final Path summaryPath = batchDirectory.toPath().resolve("summary.json");
+        RenderBatch.writeSummary(resultList, summaryPath);
+
+        final List<String> summaryLines = Files.readAllLines(summaryPath, StandardCharsets.UTF_8);
+        Assert.assertEquals("invalid number of summary lines", 3, summaryLines.size());
+
+        final RenderBatch.ItemResult parsedFailure =
+                JsonUtils.FAST_MAPPER.readValue(summaryLines.get(1), RenderBatch.ItemResult.class);
+        Assert.assertEquals("invalid parsed index", 1, parsedFailure.getIndex());
+        Assert.assertNotNull("failure details missing from summary", parsedFailure.getError());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNumberOfThreads() throws Exception {
+        new RenderBatch(Arrays.asList(), 0, ImageProcessorCache.DISABLED_CACHE);
+    }
+
+    private static String toLine(final Path parametersPath,
+                                 final File out)
+            throws Exception {
+        return JsonUtils.FAST_MAPPER.writeValueAsString(new RenderBatch.Item(parametersPath.toString(),
+                                                                             out.getAbsolutePath()));
+    }
+
+}
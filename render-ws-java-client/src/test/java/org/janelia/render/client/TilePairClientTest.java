@@ -86,6 +86,32 @@ public class TilePairClientTest {
         testDeriveAndSaveSortedNeighborPairs(zNeighborDistance, expectedNumberOfFiles);
     }
 
+    @Test
+    public void testParallelCrossDeriveAndSaveSortedNeighborPairs() throws Exception {
+
+        final int zNeighborDistance = 2;
+
+        // same as testCrossDeriveAndSaveSortedNeighborPairs but with layers processed in batches of 2
+        final int expectedNumberOfFiles = 11;
+
+        final String toJson = baseFileName + ".json";
+        final TilePairClient.Parameters parameters = getTestParameters(zNeighborDistance, 3, toJson);
+        parameters.numberOfThreads = 3;
+        parameters.boundsSnapshotLayers = 2;
+
+        final MockTilePairClient client = new MockTilePairClient(parameters, 1.0, 2.0, 3.0, 4.0, 5.0);
+        client.deriveAndSaveSortedNeighborPairs();
+
+        final List<Path> pairFilePaths = new ArrayList<>();
+        Files.list(Paths.get(".")).forEach(path -> {
+            if (path.getFileName().toString().startsWith(baseFileName)) {
+                pairFilePaths.add(path);
+            }
+        });
+
+        Assert.assertEquals("invalid number of pairs files created", expectedNumberOfFiles, pairFilePaths.size());
+    }
+
     @Test
     public void testCrossDeriveWithMissingLayers() throws Exception {
 
@@ -0,0 +1,118 @@
+package org.janelia.render.client.betterbox;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.betterbox.BoxData;
+import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.util.FileUtil;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.render.client.parameter.MaterializedBoxParameters;
+import org.janelia.render.client.parameter.RenderWebServiceParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BoxGenerator} class.
+ *
+ * @author Eric Trautman
+ */
+public class BoxGeneratorTest {
+
+    private File rootDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        rootDirectory = Files.createTempDirectory("box_generator_test_").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursive(rootDirectory);
+    }
+
+    @Test
+    public void testRenderWithRetainedChildren() throws Exception {
+
+        final RenderWebServiceParameters renderWebParameters = new RenderWebServiceParameters();
+        renderWebParameters.baseDataUrl = "http://localhost:8080/render-ws/v1";
+        renderWebParameters.owner = "testOwner";
+        renderWebParameters.project = "testProject";
+
+        final MaterializedBoxParameters boxParameters = new MaterializedBoxParameters();
+        boxParameters.stack = "testStack";
+        boxParameters.rootDirectory = rootDirectory.getAbsolutePath();
+        boxParameters.width = BOX_SIZE;
+        boxParameters.height = BOX_SIZE;
+        boxParameters.maxLevel = 2;
+
+        final Bounds stackBounds = new Bounds(0.0, 0.0, Z, 4.0 * BOX_SIZE, 4.0 * BOX_SIZE, Z);
+        final BoxGenerator boxGenerator = new BoxGenerator(renderWebParameters, boxParameters, stackBounds);
+        boxGenerator.setupCommonDirectoriesAndFiles();
+
+        // level 2 parent has four level 1 children, but only the upper two are rendered by "this" partition
+        final BoxData level2Box = new BoxData(Z, 2, 0, 0);
+        final List<BoxData> level1Boxes = Arrays.asList(new BoxData(Z, 1, 0, 0),
+                                                        new BoxData(Z, 1, 0, 1),
+                                                        new BoxData(Z, 1, 1, 0),
+                                                        new BoxData(Z, 1, 1, 1));
+        for (final BoxData level1Box : level1Boxes) {
+            level2Box.addChild(level1Box);
+            final BoxData level0Box = new BoxData(Z, 0, level1Box.getRow() * 2, level1Box.getColumn() * 2);
+            level1Box.addChild(level0Box);
+            saveBox(boxGenerator, level0Box);
+        }
+        level2Box.updateSiblingCountForAllChildren();
+
+        final List<BoxData> partitionBoxes = level1Boxes.subList(0, 2);
+        boxGenerator.renderBoxesForLevel(Z, 1, partitionBoxes, ImageProcessorCache.DISABLED_CACHE, false);
+
+        Assert.assertEquals("incomplete family should be retained", 1, boxGenerator.getResidentParentCount());
+
+        // remove rendered level 1 files to ensure the level 2 box can only be built from retained children
+        for (final BoxData level1Box : partitionBoxes) {
+            final File level1File = getBoxFile(boxGenerator, level1Box);
+            Assert.assertTrue(level1File + " should have been rendered", level1File.exists());
+            Assert.assertTrue(level1File + " could not be removed", level1File.delete());
+        }
+
+        final BoxData level2BoxForPartition = new BoxData(Z, 2, 0, 0);
+        boxGenerator.renderBoxesForLevel(Z,
+                                         2,
+                                         Collections.singletonList(level2BoxForPartition),
+                                         ImageProcessorCache.DISABLED_CACHE,
+                                         false);
+
+        final File level2File = getBoxFile(boxGenerator, level2BoxForPartition);
+        Assert.assertTrue(level2File + " should have been rendered from retained children", level2File.exists());
+
+        Assert.assertEquals("retained family should be released after use", 0, boxGenerator.getResidentParentCount());
+    }
+
+    private File getBoxFile(final BoxGenerator boxGenerator,
+                            final BoxData boxData) {
+        return boxData.getAbsoluteLevelFile(boxGenerator.getBaseBoxPath(), boxGenerator.getBoxPathSuffix());
+    }
+
+    private void saveBox(final BoxGenerator boxGenerator,
+                         final BoxData boxData)
+            throws Exception {
+        final BufferedImage image = new BufferedImage(BOX_SIZE, BOX_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        for (int x = 0; x < BOX_SIZE; x++) {
+            for (int y = 0; y < BOX_SIZE; y++) {
+                image.getRaster().setSample(x, y, 0, 200);
+            }
+        }
+        Utils.saveImage(image, getBoxFile(boxGenerator, boxData).getAbsolutePath(), Utils.PNG_FORMAT, false, 0.85f);
+    }
+
+    private static final double Z = 1.0;
+    private static final int BOX_SIZE = 8;
+}
@@ -0,0 +1,76 @@
+package org.janelia.render.client.betterbox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.spec.TileSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LayerRenderParameters} class.
+ *
+ * @author Eric Trautman
+ */
+public class LayerRenderParametersTest {
+
+    @Test
+    public void testGetBoxParameters() throws Exception {
+
+        final RenderParameters layerParameters = new RenderParameters(null, 0, 0, 3000, 1000, 1.0);
+        layerParameters.setMinIntensity(10.0);
+        layerParameters.setMaxIntensity(200.0);
+        layerParameters.setBinaryMask(true);
+
+        // add tiles out of order to ensure box tiles are sorted by tileId
+        layerParameters.addTileSpec(buildTileSpec("tile-c", 2000));
+        layerParameters.addTileSpec(buildTileSpec("tile-a", 0));
+        layerParameters.addTileSpec(buildTileSpec("tile-b", 1000));
+        layerParameters.addTileSpec(TileSpec.fromJson("{\"tileId\": \"tile-no-bounds\", \"z\": 1.0}"));
+
+        final LayerRenderParameters layerRenderParameters = new LayerRenderParameters(1.0, layerParameters);
+
+        Assert.assertEquals("tile without bounds should be excluded", 3, layerRenderParameters.size());
+
+        RenderParameters boxParameters = layerRenderParameters.getBoxParameters(900, 100, 200, 200, 0.5);
+
+        Assert.assertEquals("invalid tiles for box spanning two tiles",
+                            "[tile-a, tile-b]", getTileIds(boxParameters).toString());
+        Assert.assertEquals("invalid box x", 900, boxParameters.getX(), 0.0);
+        Assert.assertEquals("invalid box width", 200, boxParameters.getWidth());
+        Assert.assertEquals("invalid box scale", 0.5, boxParameters.getScale(), 0.0);
+        Assert.assertEquals("min intensity not copied", 10.0, boxParameters.getMinIntensity(), 0.0);
+        Assert.assertEquals("max intensity not copied", 200.0, boxParameters.getMaxIntensity(), 0.0);
+        Assert.assertTrue("binary mask not copied", boxParameters.binaryMask());
+
+        // box edges that touch tile edges intersect (matching database box queries)
+        boxParameters = layerRenderParameters.getBoxParameters(2999, 0, 100, 100, 1.0);
+        Assert.assertEquals("invalid tiles for box touching last tile",
+                            "[tile-c]", getTileIds(boxParameters).toString());
+
+        boxParameters = layerRenderParameters.getBoxParameters(5000, 0, 100, 100, 1.0);
+        Assert.assertFalse("box outside layer should not have tiles", boxParameters.hasTileSpecs());
+
+        Assert.assertNotSame("box tile specs should be copies",
+                             layerParameters.getTileSpecs().get(1),
+                             layerRenderParameters.getBoxParameters(0, 0, 10, 10, 1.0).getTileSpecs().get(0));
+    }
+
+    private static TileSpec buildTileSpec(final String tileId,
+                                          final double minX) {
+        return TileSpec.fromJson("{\"tileId\": \"" + tileId + "\", \"z\": 1.0, " +
+                                 "\"minX\": " + minX + ", \"minY\": 0.0, " +
+                                 "\"maxX\": " + (minX + 999) + ", \"maxY\": 999.0, " +
+                                 "\"width\": 1000.0, \"height\": 1000.0}");
+    }
+
+    private static List<String> getTileIds(final RenderParameters renderParameters) {
+        final List<String> tileIds = new ArrayList<>();
+        for (final TileSpec tileSpec : renderParameters.getTileSpecs()) {
+            tileIds.add(tileSpec.getTileId());
+        }
+        return tileIds;
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.janelia.render.client.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.imagefeatures.FloatArray2DSIFT;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.match.CanvasFeatureExtractor;
+import org.janelia.alignment.match.CanvasId;
+import org.janelia.alignment.util.FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CanvasFeatureDiskCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasFeatureDiskCacheTest {
+
+    private File cacheDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        cacheDirectory = Files.createTempDirectory("feature_cache_test_").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursive(cacheDirectory);
+    }
+
+    @Test
+    public void testBuildKey() {
+
+        final RenderParameters renderParameters = new RenderParameters(null, 0, 0, 2560, 2160, 0.3);
+
+        final CanvasFeatureExtractor extractor = buildExtractor(0.38);
+
+        final String key = CanvasFeatureDiskCache.buildKey(renderParameters, extractor);
+        Assert.assertEquals("key should be stable for identical parameters",
+                            key, CanvasFeatureDiskCache.buildKey(renderParameters, buildExtractor(0.38)));
+
+        Assert.assertNotEquals("key should change when extraction parameters change",
+                               key, CanvasFeatureDiskCache.buildKey(renderParameters, buildExtractor(0.5)));
+
+        renderParameters.setScale(renderParameters.getScale() / 2);
+        Assert.assertNotEquals("key should change when render parameters change",
+                               key, CanvasFeatureDiskCache.buildKey(renderParameters, extractor));
+    }
+
+    @Test
+    public void testStoreLoadAndEvict() {
+
+        final CanvasFeatureDiskCache diskCache = new CanvasFeatureDiskCache(cacheDirectory, 1);
+        final CanvasId canvasId = new CanvasId("1.0", "tile-a");
+        final List<Feature> emptyList = new ArrayList<>();
+
+        final String keyA = "aa00000000000000000000000000000000000000000000000000000000000000";
+
+        Assert.assertNull("missing key should not be loaded", diskCache.load(keyA));
+
+        diskCache.store(keyA, canvasId, "test-url", 0.4, null, null, emptyList);
+
+        // one byte capacity means every store should trigger eviction of everything stored
+        Assert.assertFalse("file should have been evicted", diskCache.getPath(keyA).toFile().exists());
+
+        final CanvasFeatureDiskCache largeDiskCache = new CanvasFeatureDiskCache(cacheDirectory, 1000000);
+        largeDiskCache.store(keyA, canvasId, "test-url", 0.4, null, null, emptyList);
+
+        final List<Feature> loadedList = largeDiskCache.load(keyA);
+        Assert.assertNotNull("stored features should be loaded", loadedList);
+        Assert.assertEquals("invalid number of features loaded", 0, loadedList.size());
+    }
+
+    private CanvasFeatureExtractor buildExtractor(final double minScale) {
+        final FloatArray2DSIFT.Param siftParameters = new FloatArray2DSIFT.Param();
+        siftParameters.fdSize = 8;
+        siftParameters.steps = 3;
+        return new CanvasFeatureExtractor(siftParameters, minScale, 0.82, true);
+    }
+}
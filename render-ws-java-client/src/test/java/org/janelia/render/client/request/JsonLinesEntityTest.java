@@ -0,0 +1,43 @@
+package org.janelia.render.client.request;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.janelia.alignment.match.MatchBatchResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link JsonLinesEntity} class.
+ *
+ * @author Eric Trautman
+ */
+public class JsonLinesEntityTest {
+
+    @Test
+    public void testRepeatableWrite() throws Exception {
+
+        final List<MatchBatchResult> list = Arrays.asList(new MatchBatchResult(0, 3, 2, 1),
+                                                          new MatchBatchResult(1, 4, 4, 0));
+        final JsonLinesEntity<MatchBatchResult> entity = new JsonLinesEntity<>(list);
+
+        Assert.assertTrue("entity should be repeatable so that failed requests can be retried",
+                          entity.isRepeatable());
+
+        final String firstWrite = write(entity);
+        final String secondWrite = write(entity);
+
+        Assert.assertEquals("invalid number of lines written", list.size(), firstWrite.split("\n").length);
+        Assert.assertEquals("second write should match first write", firstWrite, secondWrite);
+    }
+
+    private static String write(final JsonLinesEntity<?> entity)
+            throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        entity.writeTo(outputStream);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
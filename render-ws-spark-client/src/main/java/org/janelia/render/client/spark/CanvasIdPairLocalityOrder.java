@@ -0,0 +1,162 @@
+package org.janelia.render.client.spark;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.janelia.alignment.match.CanvasId;
+import org.janelia.alignment.match.OrderedCanvasIdPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Orders canvas pairs so that pairs sharing a canvas are adjacent in the list.
+ *
+ * Spark slices parallelized lists into contiguous partitions, so a locality ordered list
+ * ensures that each canvas' data (e.g. extracted features) is loaded on as few executors as possible
+ * and is more likely to be found in the executor's {@link org.janelia.render.client.cache.CanvasDataCache}.
+ *
+ * Ordering is derived by walking the pair graph (canvases are nodes, pairs are edges) breadth first
+ * in Cuthill-McKee fashion, emitting each pair the first time one of its canvases is visited.
+ * This keeps the ordering "bandwidth" small so that contiguous slices cover compact regions
+ * of the pair graph.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairLocalityOrder {
+
+    /**
+     * @param  pairs  pairs to order.
+     *
+     * @return new list containing the specified pairs in locality order.
+     */
+    public static List<OrderedCanvasIdPair> order(final Collection<OrderedCanvasIdPair> pairs) {
+
+        final List<OrderedCanvasIdPair> pairList = new ArrayList<>(pairs);
+        final Map<CanvasId, List<Integer>> canvasToPairIndexes = new HashMap<>(pairList.size());
+        final TreeSet<CanvasId> unvisitedCanvasIds = new TreeSet<>();
+
+        for (int i = 0; i < pairList.size(); i++) {
+            final OrderedCanvasIdPair pair = pairList.get(i);
+            canvasToPairIndexes.computeIfAbsent(pair.getP(), k -> new ArrayList<>()).add(i);
+            canvasToPairIndexes.computeIfAbsent(pair.getQ(), k -> new ArrayList<>()).add(i);
+            unvisitedCanvasIds.add(pair.getP());
+            unvisitedCanvasIds.add(pair.getQ());
+        }
+
+        final List<OrderedCanvasIdPair> orderedList = new ArrayList<>(pairList.size());
+        final boolean[] emitted = new boolean[pairList.size()];
+        final Deque<CanvasId> queue = new ArrayDeque<>();
+
+        while (! unvisitedCanvasIds.isEmpty()) {
+
+            // start each connected component with its least (first sorted) canvas
+            final CanvasId seed = unvisitedCanvasIds.pollFirst();
+            queue.add(seed);
+
+            while (! queue.isEmpty()) {
+
+                final CanvasId canvasId = queue.poll();
+                final TreeSet<CanvasId> neighbors = new TreeSet<>();
+
+                for (final Integer pairIndex : canvasToPairIndexes.get(canvasId)) {
+                    if (! emitted[pairIndex]) {
+                        final OrderedCanvasIdPair pair = pairList.get(pairIndex);
+                        emitted[pairIndex] = true;
+                        orderedList.add(pair);
+
+                        final CanvasId other = canvasId.equals(pair.getP()) ? pair.getQ() : pair.getP();
+                        if (unvisitedCanvasIds.remove(other)) {
+                            neighbors.add(other);
+                        }
+                    }
+                }
+
+                queue.addAll(neighbors);
+            }
+        }
+
+        return orderedList;
+    }
+
+    /**
+     * Orders the specified pairs for locality and then distributes them across
+     * the context's default number of partitions.
+     *
+     * @param  sparkContext  context for current run.
+     * @param  pairs         pairs to distribute.
+     *
+     * @return RDD of locality ordered pairs.
+     */
+    public static JavaRDD<OrderedCanvasIdPair> parallelize(final JavaSparkContext sparkContext,
+                                                           final List<OrderedCanvasIdPair> pairs) {
+
+        final int numberOfPartitions = sparkContext.defaultParallelism();
+        final List<OrderedCanvasIdPair> orderedPairs = order(pairs);
+
+        LOG.info("parallelize: ordered {} pairs for {} partitions, expected reuse ratio is {} (was {} before ordering)",
+                 orderedPairs.size(), numberOfPartitions,
+                 String.format("%4.2f", getSlicedReuseRatio(orderedPairs, numberOfPartitions)),
+                 String.format("%4.2f", getSlicedReuseRatio(pairs, numberOfPartitions)));
+
+        return sparkContext.parallelize(orderedPairs, numberOfPartitions);
+    }
+
+    /**
+     * @param  pairs  pairs processed by one partition.
+     *
+     * @return number of distinct canvases referenced by the specified pairs.
+     */
+    public static int countDistinctCanvases(final Collection<OrderedCanvasIdPair> pairs) {
+        final Set<CanvasId> canvasIds = new HashSet<>(pairs.size() * 2);
+        for (final OrderedCanvasIdPair pair : pairs) {
+            canvasIds.add(pair.getP());
+            canvasIds.add(pair.getQ());
+        }
+        return canvasIds.size();
+    }
+
+    /**
+     * @param  pairCount            number of pairs processed.
+     * @param  distinctCanvasCount  number of distinct canvases referenced by the processed pairs.
+     *
+     * @return fraction of canvas data requests that can be served from a cache
+     *         (0 when every request requires an extraction, approaching 1 with full reuse).
+     */
+    public static double getReuseRatio(final long pairCount,
+                                       final long distinctCanvasCount) {
+        final long requestCount = pairCount * 2;
+        return requestCount == 0 ? 0.0 : 1.0 - ((double) distinctCanvasCount / requestCount);
+    }
+
+    /**
+     * @param  pairs               ordered pairs.
+     * @param  numberOfPartitions  number of contiguous slices the pairs will be split into.
+     *
+     * @return overall reuse ratio for the specified pairs if they are split
+     *         into contiguous slices the same way Spark parallelizes lists.
+     */
+    public static double getSlicedReuseRatio(final List<OrderedCanvasIdPair> pairs,
+                                             final int numberOfPartitions) {
+        long distinctCanvasCount = 0;
+        final long size = pairs.size();
+        for (int i = 0; i < numberOfPartitions; i++) {
+            final int start = (int) ((i * size) / numberOfPartitions);
+            final int end = (int) (((i + 1) * size) / numberOfPartitions);
+            distinctCanvasCount += countDistinctCanvases(pairs.subList(start, end));
+        }
+        return getReuseRatio(size, distinctCanvasCount);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CanvasIdPairLocalityOrder.class);
+
+}
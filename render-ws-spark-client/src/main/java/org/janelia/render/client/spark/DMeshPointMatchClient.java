@@ -9,8 +9,10 @@ import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
@@ -169,7 +171,7 @@ public class DMeshPointMatchClient
 
 
         final JavaRDD<OrderedCanvasIdPair> rddCanvasIdPairs =
-                sparkContext.parallelize(renderableCanvasIdPairs.getNeighborPairs());
+                CanvasIdPairLocalityOrder.parallelize(sparkContext, renderableCanvasIdPairs.getNeighborPairs());
 
         final JavaRDD<CanvasMatches> rddMatches =
                 rddCanvasIdPairs.mapPartitionsWithIndex(
@@ -187,6 +189,7 @@ public class DMeshPointMatchClient
                     final DMeshTool dMeshTool1 = broadcastDMeshTool.getValue();
 
                     final List<CanvasMatches> matchList = new ArrayList<>();
+                    final Set<CanvasId> partitionCanvasIds = new HashSet<>();
                     int pairCount = 0;
 
                     OrderedCanvasIdPair pair;
@@ -206,6 +209,9 @@ public class DMeshPointMatchClient
                         p = pair.getP();
                         q = pair.getQ();
 
+                        partitionCanvasIds.add(p);
+                        partitionCanvasIds.add(q);
+
                         pFile = dataCache.getRenderedImage(p);
                         pRenderParameters = dataCache.getRenderParameters(p);
 
@@ -235,6 +241,11 @@ public class DMeshPointMatchClient
                     log.info("rddMatches: derived matches for {} out of {} pairs, cache stats are {}",
                              matchList.size(), pairCount, dataCache.stats());
 
+                    log.info("rddMatches: partition {} referenced {} distinct canvases, render reuse ratio is {}",
+                             partitionIndex, partitionCanvasIds.size(),
+                             String.format("%4.2f", CanvasIdPairLocalityOrder.getReuseRatio(
+                                     pairCount, partitionCanvasIds.size())));
+
                     return matchList.iterator();
                 },
                 true
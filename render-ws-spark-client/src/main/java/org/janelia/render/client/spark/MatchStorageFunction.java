@@ -1,12 +1,14 @@
 package org.janelia.render.client.spark;
 
-import java.util.ArrayList;
+import com.google.common.collect.Iterators;
+
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import org.apache.spark.api.java.function.Function2;
 import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.MatchBatchResult;
 import org.janelia.render.client.RenderDataClient;
 
 /**
@@ -43,20 +45,24 @@ public class MatchStorageFunction implements Function2<Integer, Iterator<CanvasM
 
         LogUtilities.setupExecutorLog4j("partition " + partitionIndex);
 
-        final List<CanvasMatches> matchesList = new ArrayList<>();
-        CanvasMatches canvasMatches;
-        while (matchesIterator.hasNext()) {
-            canvasMatches = matchesIterator.next();
-            if (canvasMatches.size() > 0) {
-                matchesList.add(canvasMatches);
+        // stream matches to the server as they are derived instead of collecting them in a list first
+        final Iterator<CanvasMatches> nonEmptyMatchesIterator =
+                Iterators.filter(matchesIterator, canvasMatches -> canvasMatches.size() > 0);
+
+        int savedCount = 0;
+        if (nonEmptyMatchesIterator.hasNext()) {
+            final RenderDataClient matchStorageClient = new RenderDataClient(baseDataUrl,
+                                                                             owner,
+                                                                             collection);
+            final List<MatchBatchResult> batchResultList =
+                    matchStorageClient.saveMatchStream(nonEmptyMatchesIterator, STORAGE_BATCH_SIZE);
+            for (final MatchBatchResult batchResult : batchResultList) {
+                savedCount += batchResult.getPairCount();
             }
         }
 
-        final RenderDataClient matchStorageClient = new RenderDataClient(baseDataUrl,
-                                                                         owner,
-                                                                         collection);
-        matchStorageClient.saveMatches(matchesList);
-
-        return Collections.singletonList(matchesList.size()).iterator();
+        return Collections.singletonList(savedCount).iterator();
     }
+
+    private static final int STORAGE_BATCH_SIZE = 10000;
 }
\ No newline at end of file
@@ -7,8 +7,10 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
@@ -182,7 +184,8 @@ public class SIFTPointMatchClient
                         urlTemplateForRun,
                         getCanvasFeatureExtractor(featureExtractionParameters, featureRenderParameters),
                         featureStorageParameters.getRootFeatureDirectory(),
-                        featureStorageParameters.requireStoredFeatures);
+                        featureStorageParameters.requireStoredFeatures,
+                        featureStorageParameters.getFeatureDiskCache());
 
         final double renderScale = featureRenderParameters.renderScale;
 
@@ -193,7 +196,7 @@ public class SIFTPointMatchClient
                 sparkContext.broadcast(new CanvasFeatureMatcher(matchDerivationParameters));
 
         final JavaRDD<OrderedCanvasIdPair> rddCanvasIdPairs =
-                sparkContext.parallelize(renderableCanvasIdPairs.getNeighborPairs());
+                CanvasIdPairLocalityOrder.parallelize(sparkContext, renderableCanvasIdPairs.getNeighborPairs());
 
         final JavaRDD<CanvasMatches> rddMatches = rddCanvasIdPairs.mapPartitionsWithIndex(
                 (Function2<Integer, Iterator<OrderedCanvasIdPair>, Iterator<CanvasMatches>>) (partitionIndex, pairIterator) -> {
@@ -208,6 +211,7 @@ public class SIFTPointMatchClient
                     final CanvasFeatureMatcher featureMatcher = broadcastFeatureMatcher.getValue();
 
                     final List<CanvasMatches> matchList = new ArrayList<>();
+                    final Set<CanvasId> partitionCanvasIds = new HashSet<>();
                     int pairCount = 0;
 
                     OrderedCanvasIdPair pair;
@@ -224,6 +228,9 @@ public class SIFTPointMatchClient
                         p = pair.getP();
                         q = pair.getQ();
 
+                        partitionCanvasIds.add(p);
+                        partitionCanvasIds.add(q);
+
                         pFeatures = dataCache.getCanvasFeatures(p);
                         qFeatures = dataCache.getCanvasFeatures(q);
 
@@ -248,6 +255,11 @@ public class SIFTPointMatchClient
                     log.info("derived matches for {} out of {} pairs, cache stats are {}",
                              matchList.size(), pairCount, dataCache.stats());
 
+                    log.info("partition {} referenced {} distinct canvases, extraction reuse ratio is {}",
+                             partitionIndex, partitionCanvasIds.size(),
+                             String.format("%4.2f", CanvasIdPairLocalityOrder.getReuseRatio(
+                                     pairCount, partitionCanvasIds.size())));
+
                     return matchList.iterator();
                 },
                 true
@@ -25,7 +25,6 @@ import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.Function;
-import org.janelia.alignment.ArgbRenderer;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
 import org.janelia.alignment.json.JsonUtils;
@@ -35,8 +34,10 @@ import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.util.FileUtil;
 import org.janelia.alignment.util.ImageProcessorCache;
 import org.janelia.render.client.ClientRunner;
+import org.janelia.render.client.LayerOverviewRenderer;
 import org.janelia.render.client.RenderDataClient;
 import org.janelia.render.client.parameter.CommandLineParameters;
+import org.janelia.render.client.parameter.OverviewParameters;
 import org.janelia.render.client.parameter.RenderWebServiceParameters;
 import org.janelia.render.client.parameter.ZRangeParameters;
 import org.slf4j.Logger;
@@ -149,6 +150,9 @@ public class ScapeClient
         )
         public Double height;
 
+        @ParametersDelegate
+        public OverviewParameters overview = new OverviewParameters();
+
         File getSectionRootDirectory() {
 
             final String scapeDir = "scape_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
@@ -211,6 +215,8 @@ public class ScapeClient
     public void run()
             throws IOException {
 
+        parameters.overview.validate();
+
         final SparkConf conf = new SparkConf().setAppName("ScapeClient");
         final JavaSparkContext sparkContext = new JavaSparkContext(conf);
 
@@ -261,33 +267,48 @@ public class ScapeClient
                     BufferedImage sectionImage = null;
                     ImageStack projectedStack = null;
 
+                    final LayerOverviewRenderer overviewRenderer =
+                            new LayerOverviewRenderer(parameters.overview,
+                                                      parameters.renderWeb.project,
+                                                      parameters.stack,
+                                                      parameters.scale,
+                                                      imageProcessorCache);
+
                     for (final SectionData sectionData : renderSection.getSectionDataList()) {
 
-                        final String parametersUrl =
-                                workerDataClient.getRenderParametersUrlString(parameters.stack,
-                                                                              sectionData.getMinX(),
-                                                                              sectionData.getMinY(),
-                                                                              sectionData.getZ(),
-                                                                              sectionData.getWidth(),
-                                                                              sectionData.getHeight(),
-                                                                              parameters.scale,
-                                                                              parameters.filterListName);
+                        final LayerOverviewRenderer.RegionParametersLoader loader = (x, y, width, height) -> {
 
-                        LOG.debug("generateScapeFunction: loading {}", parametersUrl);
+                            final String parametersUrl =
+                                    workerDataClient.getRenderParametersUrlString(parameters.stack,
+                                                                                  x,
+                                                                                  y,
+                                                                                  sectionData.getZ(),
+                                                                                  width,
+                                                                                  height,
+                                                                                  parameters.scale,
+                                                                                  parameters.filterListName);
 
-                        final RenderParameters renderParameters = RenderParameters.loadFromUrl(parametersUrl);
-                        renderParameters.setFillWithNoise(parameters.fillWithNoise);
-                        renderParameters.setDoFilter(parameters.doFilter);
-                        renderParameters.setChannels(parameters.channels);
+                            LOG.debug("generateScapeFunction: loading {}", parametersUrl);
 
-                        sectionImage = renderParameters.openTargetImage();
+                            final RenderParameters renderParameters = RenderParameters.loadFromUrl(parametersUrl);
+                            renderParameters.setFillWithNoise(parameters.fillWithNoise);
+                            renderParameters.setDoFilter(parameters.doFilter);
+                            renderParameters.setChannels(parameters.channels);
+
+                            return renderParameters;
+                        };
+
+                        sectionImage = overviewRenderer.render(sectionData.getZ(),
+                                                               sectionData.getMinX(),
+                                                               sectionData.getMinY(),
+                                                               sectionData.getWidth(),
+                                                               sectionData.getHeight(),
+                                                               loader);
 
                         if (isProjectionNeeded && (projectedStack == null)) {
                             projectedStack = new ImageStack(sectionImage.getWidth(), sectionImage.getHeight());
                         }
 
-                        ArgbRenderer.render(renderParameters, sectionImage, imageProcessorCache);
-
                         if (isProjectionNeeded) {
                             projectedStack.addSlice(new ColorProcessor(sectionImage).convertToByteProcessor());
                         }
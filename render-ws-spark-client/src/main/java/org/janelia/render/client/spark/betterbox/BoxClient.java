@@ -14,6 +14,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -35,12 +36,15 @@ import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.Function;
 import org.apache.spark.api.java.function.PairFlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
+import org.janelia.alignment.betterbox.BoxChunkDataset;
 import org.janelia.alignment.betterbox.BoxData;
 import org.janelia.alignment.betterbox.BoxDataPyramidForLayer;
+import org.janelia.alignment.betterbox.DirtyBoxesForLayer;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.TileBounds;
 import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.util.ImageProcessorCache;
 import org.janelia.alignment.util.LabelImageProcessorCache;
@@ -70,6 +74,12 @@ import scala.Tuple2;
  * To facilitate analysis of work distribution, the client supports an --explainPlan option
  * that logs what will be rendered where without actually doing the rendering.
  *
+ * To update previously rendered boxes after a few tiles have changed, the client supports
+ * --changedTileIds and --priorStack options that restrict rendering to the "dirty" level zero boxes
+ * intersecting changed tiles and their parent boxes (see {@link DirtyBoxesForLayer}).
+ * Prior tile bounds are only known when a --priorStack is specified, so --changedTileIds alone
+ * should only be used for tiles that changed in place (e.g. intensity or mask changes).
+ *
  * @author Eric Trautman
  */
 public class BoxClient
@@ -86,6 +96,23 @@ public class BoxClient
         @ParametersDelegate
         public ZRangeParameters layerRange = new ZRangeParameters();
 
+        @Parameter(
+                names = "--changedTileIds",
+                description = "Only regenerate boxes (and their parents) that intersect these tiles.  " +
+                              "Without a --priorStack, only the current bounds of these tiles are known, " +
+                              "so boxes at the prior location of moved tiles are NOT regenerated and " +
+                              "removed tiles are rejected.  Specify a --priorStack if tiles have been " +
+                              "moved or removed.",
+                variableArity = true)
+        public List<String> changedTileIds;
+
+        @Parameter(
+                names = "--priorStack",
+                description = "Stack containing tiles as they were when boxes were last generated.  " +
+                              "If specified, only boxes (and their parents) that intersect tiles that were " +
+                              "added, removed, or moved since then will be regenerated")
+        public String priorStack;
+
         @Parameter(
                 names = "--cleanUpPriorRun",
                 description = "Indicates that you are rerunning a job that previously failed.  " +
@@ -121,6 +148,10 @@ public class BoxClient
                 description = "Explicit z values for layers to be rendered",
                 variableArity = true) // e.g. --z 20.0 --z 21.0 --z 22.0
         public List<Double> zValues;
+
+        boolean isDirtyRun() {
+            return ((changedTileIds != null) && (changedTileIds.size() > 0)) || (priorStack != null);
+        }
     }
 
     public static void main(final String[] args) {
@@ -202,10 +233,22 @@ public class BoxClient
         final Bounds stackBounds = stackMetaData.getStats().getStackBounds();
 
         if (parameters.validateLabelsOnly) {
+            if (parameters.box.chunked) {
+                throw new IllegalArgumentException("label validation is not supported for chunked boxes");
+            }
             parameters.box.label = true;
             parameters.box.maxLevel = 0;
         }
 
+        if (parameters.isDirtyRun()) {
+            if (parameters.validateLabelsOnly || parameters.box.chunked || parameters.box.createIGrid) {
+                throw new IllegalArgumentException(
+                        "changed tile runs are not supported for label validation, chunked boxes, or iGrid files");
+            }
+            // only dirty boxes will be included in the run and all of them need to be regenerated
+            parameters.box.forceGeneration = true;
+        }
+
         boxGenerator = new BoxGenerator(parameters.renderWeb, parameters.box, stackBounds);
         if ((! parameters.explainPlan) && (! parameters.validateLabelsOnly)) {
             boxGenerator.setupCommonDirectoriesAndFiles();
@@ -216,6 +259,18 @@ public class BoxClient
                                                         parameters.layerRange.maxZ,
                                                         parameters.zValues);
 
+        if (parameters.box.chunked) {
+            // fail before distributing work if any layer cannot be mapped to a chunk position
+            this.zValues.forEach(BoxChunkDataset::getZIndex);
+        }
+
+        if ((parameters.changedTileIds != null) && (parameters.changedTileIds.size() > 0) &&
+            (parameters.priorStack == null)) {
+            LOG.warn("setup: no --priorStack specified, so boxes will only be regenerated for the current bounds " +
+                     "of changed tiles (boxes at the prior location of any moved tiles will not be updated)");
+            this.zValues = getChangedTileZValues(driverDataClient);
+        }
+
         // insert IP address into directory name to prevent data collisions when multiple drivers (Spark jobs)
         // are concurrently launched for the same stack (Allen Brain Institute use case)
         final String timestamp = new SimpleDateFormat("yyyy_MMdd_HHmm_ss").format(new Date());
@@ -356,11 +411,34 @@ public class BoxClient
                                                                                   parameters.renderWeb.project);
                     final String stack = parameters.box.stack;
 
+                    Set<String> changedTileIds = null;
+                    if (parameters.changedTileIds != null) {
+                        changedTileIds = new HashSet<>(parameters.changedTileIds);
+                    }
+
                     double z;
                     while (zIterator.hasNext()) {
                         z = zIterator.next();
                         final Bounds layerBounds = localDataClient.getLayerBounds(stack, z);
                         final List<TileBounds> tileBoundsList = localDataClient.getTileBounds(stack, z);
+
+                        DirtyBoxesForLayer dirtyBoxes = null;
+                        if (parameters.isDirtyRun()) {
+                            List<TileBounds> priorTileBoundsList = null;
+                            if (parameters.priorStack != null) {
+                                priorTileBoundsList = localDataClient.getTileBounds(parameters.priorStack, z);
+                            }
+                            dirtyBoxes = new DirtyBoxesForLayer(z,
+                                                                parameters.box.width,
+                                                                parameters.box.height,
+                                                                parameters.box.maxLevel);
+                            final int changedTileCount = dirtyBoxes.addChangedTiles(priorTileBoundsList,
+                                                                                    tileBoundsList,
+                                                                                    changedTileIds);
+                            LOG.info("partitionBoxes: found {} changed tiles and {} dirty boxes for z {}",
+                                     changedTileCount, dirtyBoxes.size(), z);
+                        }
+
                         final BoxDataPyramidForLayer boxPyramid =
                                 new BoxDataPyramidForLayer(z,
                                                            layerBounds,
@@ -370,10 +448,18 @@ public class BoxClient
                                                            parameters.box.maxLevel,
                                                            excludeAlreadyRenderedBoxes,
                                                            boxGenerator.getBaseBoxPath(),
-                                                           boxGenerator.getBoxPathSuffix());
+                                                           boxGenerator.getBoxPathSuffix(),
+                                                           parameters.box.getBoxComparator(),
+                                                           dirtyBoxes);
 
                         zToPyramidList.add(new Tuple2<>(z, boxPyramid));
 
+                        if (! parameters.explainPlan) {
+                            removeObsoleteBoxFiles(boxPyramid.getObsoleteBoxes(),
+                                                   boxGenerator.getBaseBoxPath(),
+                                                   boxGenerator.getBoxPathSuffix());
+                        }
+
                         // if DMG iGrid files have been requested and this is a first run,
                         // create iGrid file for level zero boxes
 
@@ -514,7 +600,8 @@ public class BoxClient
                                 LogUtilities.setupExecutorLog4j("partition " + TaskContext.getPartitionId());
                                 final Logger log = LoggerFactory.getLogger(BoxClient.class);
 
-                                final Map<Double, List<BoxData>> zToBoxList = getBoxesToRender(level, boxDataIterator);
+                                final Map<Double, List<BoxData>> zToBoxList =
+                                        getBoxesToRender(level, boxDataIterator, parameters.box.getBoxComparator());
 
                                 final List<BoxData> renderedBoxes = new ArrayList<>();
 
@@ -599,7 +686,8 @@ public class BoxClient
 
                     final List<BoxData> renderableBoxes = new ArrayList<>();
 
-                    final Map<Double, List<BoxData>> zToBoxList = getBoxesToRender(level, boxDataIterator);
+                    final Map<Double, List<BoxData>> zToBoxList =
+                            getBoxesToRender(level, boxDataIterator, parameters.box.getBoxComparator());
 
                     for (final Double z : zToBoxList.keySet()) {
 
@@ -764,11 +852,13 @@ public class BoxClient
      *
      * @param  level            current level being rendered.
      * @param  boxDataIterator  iterator for boxes assigned to current task.
+     * @param  boxComparator    ordering for the boxes in each list.
      *
      * @return map of z values to box lists for the current task.
      */
     private static Map<Double, List<BoxData>> getBoxesToRender(final int level,
-                                                               final Iterator<BoxData> boxDataIterator) {
+                                                               final Iterator<BoxData> boxDataIterator,
+                                                               final Comparator<BoxData> boxComparator) {
 
         final Map<Double, List<BoxData>> zToBoxList = new LinkedHashMap<>();
         List<BoxData> boxList;
@@ -784,7 +874,7 @@ public class BoxClient
             }
         }
 
-        zToBoxList.values().forEach(Collections::sort);
+        zToBoxList.values().forEach(list -> list.sort(boxComparator));
 
         return zToBoxList;
     }
@@ -812,6 +902,71 @@ public class BoxClient
                                             resolvedTiles.getTileSpecs());
     }
 
+    /**
+     * @return sorted z values for layers in the current run that contain changed tiles.
+     *
+     * @throws IllegalArgumentException
+     *   if any changed tiles are no longer in the stack since their (removed) bounds can only be
+     *   identified with a prior stack.
+     */
+    private List<Double> getChangedTileZValues(final RenderDataClient driverDataClient)
+            throws IllegalArgumentException, IOException {
+
+        final Set<String> missingTileIds = new HashSet<>(parameters.changedTileIds);
+        final Set<Double> changedZValues = new HashSet<>();
+        for (final TileSpec tileSpec : driverDataClient.getTileSpecsWithIds(parameters.changedTileIds,
+                                                                           parameters.box.stack)) {
+            changedZValues.add(tileSpec.getZ());
+            missingTileIds.remove(tileSpec.getTileId());
+        }
+
+        if (missingTileIds.size() > 0) {
+            throw new IllegalArgumentException(
+                    missingTileIds.size() + " changed tiles (e.g. " + missingTileIds.iterator().next() +
+                    ") are not in stack " + parameters.box.stack + ", specify a --priorStack to " +
+                    "regenerate boxes for removed tiles");
+        }
+
+        final List<Double> changedTileZValues = zValues.stream()
+                .filter(changedZValues::contains)
+                .sorted()
+                .collect(Collectors.toList());
+
+        LOG.info("getChangedTileZValues: {} changed tiles are in layers {}",
+                 parameters.changedTileIds.size(), changedTileZValues);
+
+        return changedTileZValues;
+    }
+
+    /**
+     * Removes image files for dirty boxes that no longer contain any tiles
+     * (e.g. because tiles were removed or moved away).
+     *
+     * @param  obsoleteBoxes  boxes to remove.
+     *
+     * @param  baseBoxPath    the base path for all boxes being rendered
+     *                        (e.g. /nrs/spc/rendered_boxes/spc/aibs_mm2_data/1024x1024).
+     *
+     * @param  pathSuffix     the suffix (format extension including '.') to append to each box path (e.g. '.jpg').
+     */
+    private static void removeObsoleteBoxFiles(final List<BoxData> obsoleteBoxes,
+                                               final String baseBoxPath,
+                                               final String pathSuffix) {
+
+        File boxFile;
+        for (final BoxData boxData : obsoleteBoxes) {
+            boxFile = boxData.getAbsoluteLevelFile(baseBoxPath, pathSuffix);
+            if (boxFile.exists()) {
+                if (boxFile.delete()) {
+                    LOG.info("removeObsoleteBoxFiles: removed {}", boxFile);
+                } else {
+                    LOG.warn("removeObsoleteBoxFiles: failed to delete {}", boxFile);
+                }
+            }
+        }
+
+    }
+
     /**
      * Removes the image file for the specified box from disk
      * as well as any existing image files for the box's parents.
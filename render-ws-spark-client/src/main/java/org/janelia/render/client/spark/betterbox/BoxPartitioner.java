@@ -25,7 +25,8 @@ import org.janelia.alignment.betterbox.BoxDataPyramidForLayer;
  *         boxes have already been separated into lists grouped by layer (z) and mipmap level,
  *     </li>
  *     <li>
- *         boxes within each of those lists have been sorted by parent location, and
+ *         boxes within each of those lists have been sorted by parent location
+ *         (or along a Hilbert curve -- see {@link BoxData#HILBERT_ORDER_COMPARATOR}), and
  *     </li>
  *     <li>
  *         each box 'knows' its position with its list (the box's layer level index) --
@@ -33,6 +34,9 @@ import org.janelia.alignment.betterbox.BoxDataPyramidForLayer;
  *     </li>
  * </ol>
  *
+ * Each partition is assigned a contiguous range of the sorted boxes, so partition boundaries follow the
+ * box ordering and boxes rendered by the same task are geographically close.
+ *
  * @author Eric Trautman
  */
 public class BoxPartitioner extends Partitioner {
@@ -0,0 +1,77 @@
+package org.janelia.render.client.spark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.janelia.alignment.match.CanvasId;
+import org.janelia.alignment.match.OrderedCanvasIdPair;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CanvasIdPairLocalityOrder} class.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairLocalityOrderTest {
+
+    @Test
+    public void testOrder() {
+
+        final int layerCount = 3;
+        final int rowCount = 20;
+        final int columnCount = 20;
+        final int numberOfPartitions = 16;
+
+        final List<OrderedCanvasIdPair> pairs = new ArrayList<>();
+        for (int z = 0; z < layerCount; z++) {
+            for (int row = 0; row < rowCount; row++) {
+                for (int column = 0; column < columnCount; column++) {
+                    final CanvasId canvasId = buildCanvasId(z, row, column);
+                    if (column + 1 < columnCount) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, buildCanvasId(z, row, column + 1)));
+                    }
+                    if (row + 1 < rowCount) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, buildCanvasId(z, row + 1, column)));
+                    }
+                    if (z + 1 < layerCount) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, buildCanvasId(z + 1, row, column)));
+                    }
+                }
+            }
+        }
+
+        Collections.shuffle(pairs, new Random(1L));
+
+        final List<OrderedCanvasIdPair> orderedPairs = CanvasIdPairLocalityOrder.order(pairs);
+
+        Assert.assertEquals("invalid number of ordered pairs", pairs.size(), orderedPairs.size());
+        Assert.assertEquals("ordered pairs should be distinct and match original pairs",
+                            new HashSet<>(pairs), new HashSet<>(orderedPairs));
+
+        final double shuffledRatio = CanvasIdPairLocalityOrder.getSlicedReuseRatio(pairs, numberOfPartitions);
+        final double orderedRatio = CanvasIdPairLocalityOrder.getSlicedReuseRatio(orderedPairs, numberOfPartitions);
+
+        Assert.assertTrue("ordered reuse ratio " + orderedRatio + " should be much better than shuffled ratio " +
+                          shuffledRatio, orderedRatio > (shuffledRatio + 0.2));
+    }
+
+    @Test
+    public void testGetReuseRatio() {
+        Assert.assertEquals("invalid ratio for empty partition",
+                            0.0, CanvasIdPairLocalityOrder.getReuseRatio(0, 0), 0.0001);
+        Assert.assertEquals("invalid ratio for disjoint pairs",
+                            0.0, CanvasIdPairLocalityOrder.getReuseRatio(2, 4), 0.0001);
+        Assert.assertEquals("invalid ratio for chain of pairs",
+                            0.25, CanvasIdPairLocalityOrder.getReuseRatio(2, 3), 0.0001);
+    }
+
+    private CanvasId buildCanvasId(final int z,
+                                   final int row,
+                                   final int column) {
+        return new CanvasId(z + ".0", "tile_" + z + "_" + row + "_" + column);
+    }
+}
@@ -3,7 +3,10 @@ package org.janelia.render.service;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -16,6 +19,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
+import org.janelia.alignment.spec.BulkCoordinateMapper;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackId;
@@ -255,6 +260,76 @@ public class CoordinateService {
         return worldCoordinatesList;
     }
 
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/bulk-local-to-world-coordinates")
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Derive array of world coordinates for provided (large) array of tile local coordinates",
+            notes = "Points are grouped by tile so that each tile's transforms are only loaded and instantiated " +
+                    "once.  Tiles are mapped in parallel.  Results are the same as the " +
+                    "local-to-world-coordinates API, but this API is much faster for large arrays of points.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "missing tile or coordinate data")
+    })
+    public List<TileCoordinates> getWorldCoordinatesInBulk(@PathParam("owner") final String owner,
+                                                           @PathParam("project") final String project,
+                                                           @PathParam("stack") final String stack,
+                                                           final List<TileCoordinates> localCoordinatesList) {
+
+        LOG.info("getWorldCoordinatesInBulk: entry, owner={}, project={}, stack={}, localCoordinatesList.size()={}",
+                 owner, project, stack, localCoordinatesList.size());
+
+        List<TileCoordinates> worldCoordinatesList = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            final ResolvedTileSpecCollection tiles =
+                    getTilesForCoordinates(stackId, Collections.singletonList(localCoordinatesList));
+            final BulkCoordinateMapper mapper = new BulkCoordinateMapper(tiles, BULK_MAPPING_POOL);
+            worldCoordinatesList = mapper.localToWorld(localCoordinatesList);
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return worldCoordinatesList;
+    }
+
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/bulk-world-to-local-coordinates")
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Derive array of arrays of local coordinates for provided (large) array of arrays of world coordinates with tileIds",
+            notes = "Each provided array should contain the world coordinates with tileIds returned by the " +
+                    "tileIdsForCoordinates API for one point.  " +
+                    "Points are grouped by tile so that each tile's transforms are only loaded and inverted " +
+                    "once.  Tiles are mapped in parallel.  " +
+                    "For each provided array, an array of local coordinates, " +
+                    "one element per tile, is returned with the visible (last drawn) tile marked.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "missing tile or coordinate data")
+    })
+    public List<List<TileCoordinates>> getLocalCoordinatesInBulk(@PathParam("owner") final String owner,
+                                                                 @PathParam("project") final String project,
+                                                                 @PathParam("stack") final String stack,
+                                                                 final List<List<TileCoordinates>> worldListOfLists) {
+
+        LOG.info("getLocalCoordinatesInBulk: entry, owner={}, project={}, stack={}, worldListOfLists.size()={}",
+                 owner, project, stack, worldListOfLists.size());
+
+        List<List<TileCoordinates>> localListOfLists = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            final ResolvedTileSpecCollection tiles = getTilesForCoordinates(stackId, worldListOfLists);
+            final BulkCoordinateMapper mapper = new BulkCoordinateMapper(tiles, BULK_MAPPING_POOL);
+            localListOfLists = mapper.worldToLocal(worldListOfLists);
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return localListOfLists;
+    }
+
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/local-to-world-coordinates")
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
@@ -473,7 +548,45 @@ public class CoordinateService {
         return localCoordinatesList;
     }
 
+    /**
+     * @return resolved specs for all tiles referenced by the specified coordinates.
+     */
+    private ResolvedTileSpecCollection getTilesForCoordinates(final StackId stackId,
+                                                              final List<List<TileCoordinates>> listOfLists) {
+
+        final Set<String> tileIds = new HashSet<>();
+        for (final List<TileCoordinates> coordinatesList : listOfLists) {
+            if (coordinatesList != null) {
+                for (final TileCoordinates coordinates : coordinatesList) {
+                    if ((coordinates != null) && (coordinates.getTileId() != null)) {
+                        tileIds.add(coordinates.getTileId());
+                    }
+                }
+            }
+        }
+
+        final List<TileSpec> tileSpecs = new ArrayList<>(tileIds.size());
+        final List<String> tileIdBatch = new ArrayList<>(MAX_TILE_IDS_PER_QUERY);
+        for (final String tileId : tileIds) {
+            tileIdBatch.add(tileId);
+            if (tileIdBatch.size() == MAX_TILE_IDS_PER_QUERY) {
+                tileSpecs.addAll(renderDao.getTileSpecs(stackId, tileIdBatch));
+                tileIdBatch.clear();
+            }
+        }
+        if (tileIdBatch.size() > 0) {
+            tileSpecs.addAll(renderDao.getTileSpecs(stackId, tileIdBatch));
+        }
+
+        return new ResolvedTileSpecCollection(new ArrayList<>(), tileSpecs);
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(CoordinateService.class);
 
     private static final long COORDINATE_PROCESSING_LOG_INTERVAL = 5000;
+
+    private static final int MAX_TILE_IDS_PER_QUERY = 50000;
+
+    /** Shared by all bulk mapping requests so that concurrent requests cannot create an unbounded number of threads. */
+    private static final ForkJoinPool BULK_MAPPING_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 }
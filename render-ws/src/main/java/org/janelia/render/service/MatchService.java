@@ -1,5 +1,6 @@
 package org.janelia.render.service;
 
+import java.io.InputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
@@ -22,9 +23,14 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.janelia.alignment.match.CanvasId;
 import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.MatchBatchResult;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
+import org.janelia.alignment.match.MatchGraph;
+import org.janelia.alignment.match.MatchGraphEdge;
+import org.janelia.alignment.match.MatchGraphStatistics;
 import org.janelia.alignment.match.MatchTrial;
 import org.janelia.alignment.match.parameters.MatchTrialParameters;
 import org.janelia.render.service.dao.MatchDao;
@@ -576,6 +582,181 @@ public class MatchService {
         return responseBuilder.build();
     }
 
+    @Path("v1/owner/{owner}/matchCollection/{matchCollection}/matchStream")
+    @PUT
+    @Consumes({ NDJSON_MEDIA_TYPE, MediaType.APPLICATION_JSON })
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Save a stream of matches",
+            notes = "Incrementally parses newline delimited match pairs (or a JSON array of pairs) and " +
+                    "inserts or updates them in fixed size unordered batches as data arrives.  " +
+                    "Server memory use does not depend upon upload size.  Returns counts for each batch.",
+            response = MatchBatchResult.class,
+            responseContainer="List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "If match data cannot be parsed")
+    })
+    public List<MatchBatchResult> saveMatchStream(@PathParam("owner") final String owner,
+                                                  @PathParam("matchCollection") final String matchCollection,
+                                                  @QueryParam("batchSize") @DefaultValue("10000") final Integer batchSize,
+                                                  final InputStream matchStream) {
+
+        LOG.info("saveMatchStream: entry, owner={}, matchCollection={}, batchSize={}",
+                 owner, matchCollection, batchSize);
+
+        final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
+
+        if (matchStream == null) {
+            throw new IllegalServiceArgumentException("no matches provided");
+        }
+
+        List<MatchBatchResult> batchResultList = null;
+        try {
+            batchResultList = matchDao.saveMatches(collectionId, matchStream, batchSize);
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        LOG.info("saveMatchStream: exit, wrote {} batches", batchResultList.size());
+
+        return batchResultList;
+    }
+
+    @Path("v1/owner/{owner}/matchCollection/{matchCollection}/matchGraph/edges")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Find pair identifiers and match counts for all pairs in the collection",
+            notes = "Uses a compact edge index that is maintained as matches are saved, " +
+                    "so match points are never loaded.  " +
+                    "Collections populated before the index existed or with a failed match write " +
+                    "must be indexed (with a PUT to this path) before graph data can be requested.  " +
+                    "Z filters only apply to pairs with numeric group identifiers.  " +
+                    "If a groupId is specified, only pairs with that p or q group are returned.",
+            response = MatchGraphEdge.class,
+            responseContainer="List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "Match collection not found")
+    })
+    public List<MatchGraphEdge> getMatchGraphEdges(@PathParam("owner") final String owner,
+                                                   @PathParam("matchCollection") final String matchCollection,
+                                                   @QueryParam("groupId") final String groupId,
+                                                   @QueryParam("minZ") final Double minZ,
+                                                   @QueryParam("maxZ") final Double maxZ,
+                                                   @QueryParam("minMatchCount") final Integer minMatchCount) {
+
+        LOG.info("getMatchGraphEdges: entry, owner={}, matchCollection={}, groupId={}, minZ={}, maxZ={}, minMatchCount={}",
+                 owner, matchCollection, groupId, minZ, maxZ, minMatchCount);
+
+        final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
+
+        List<MatchGraphEdge> edgeList = null;
+        try {
+            edgeList = matchDao.getMatchGraphEdges(collectionId, groupId, minZ, maxZ, minMatchCount);
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return edgeList;
+    }
+
+    @Path("v1/owner/{owner}/matchCollection/{matchCollection}/matchGraph/edges")
+    @PUT
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Rebuild the edge index for the collection and return the number of indexed edges",
+            notes = "The edge index is maintained as matches are saved or removed, so this is only needed " +
+                    "for collections populated before the index existed, after a failed match write, " +
+                    "or if match data was modified outside of these APIs.  " +
+                    "Indexing scans every pair in the collection, so it can take a while for large collections.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "Match collection not found")
+    })
+    public Long rebuildMatchGraphEdges(@PathParam("owner") final String owner,
+                                       @PathParam("matchCollection") final String matchCollection) {
+
+        LOG.info("rebuildMatchGraphEdges: entry, owner={}, matchCollection={}",
+                 owner, matchCollection);
+
+        final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
+
+        Long edgeCount = null;
+        try {
+            edgeCount = matchDao.rebuildMatchGraphEdges(collectionId);
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        LOG.info("rebuildMatchGraphEdges: exit, indexed {} edges", edgeCount);
+
+        return edgeCount;
+    }
+
+    @Path("v1/owner/{owner}/matchCollection/{matchCollection}/matchGraph/connectedComponents")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "List connected canvas components (largest to smallest)",
+            notes = "Derived from the collection's edge index.  " +
+                    "Z filters only apply to pairs with numeric group identifiers.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "Match collection not found")
+    })
+    public List<List<CanvasId>> getConnectedComponents(@PathParam("owner") final String owner,
+                                                       @PathParam("matchCollection") final String matchCollection,
+                                                       @QueryParam("minZ") final Double minZ,
+                                                       @QueryParam("maxZ") final Double maxZ,
+                                                       @QueryParam("minMatchCount") final Integer minMatchCount) {
+
+        LOG.info("getConnectedComponents: entry, owner={}, matchCollection={}, minZ={}, maxZ={}, minMatchCount={}",
+                 owner, matchCollection, minZ, maxZ, minMatchCount);
+
+        final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
+
+        List<List<CanvasId>> components = null;
+        try {
+            final MatchGraph matchGraph = matchDao.getMatchGraph(collectionId, minZ, maxZ, minMatchCount);
+            components = matchGraph.getSortedConnectedComponents();
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return components;
+    }
+
+    @Path("v1/owner/{owner}/matchCollection/{matchCollection}/matchGraph/statistics")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Summarize connected components and canvas degrees",
+            notes = "Derived from the collection's edge index.  " +
+                    "Z filters only apply to pairs with numeric group identifiers.",
+            response = MatchGraphStatistics.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "Match collection not found")
+    })
+    public MatchGraphStatistics getMatchGraphStatistics(@PathParam("owner") final String owner,
+                                                        @PathParam("matchCollection") final String matchCollection,
+                                                        @QueryParam("minZ") final Double minZ,
+                                                        @QueryParam("maxZ") final Double maxZ,
+                                                        @QueryParam("minMatchCount") final Integer minMatchCount) {
+
+        LOG.info("getMatchGraphStatistics: entry, owner={}, matchCollection={}, minZ={}, maxZ={}, minMatchCount={}",
+                 owner, matchCollection, minZ, maxZ, minMatchCount);
+
+        final MatchCollectionId collectionId = getCollectionId(owner, matchCollection);
+
+        MatchGraphStatistics statistics = null;
+        try {
+            final MatchGraph matchGraph = matchDao.getMatchGraph(collectionId, minZ, maxZ, minMatchCount);
+            statistics = matchGraph.getStatistics();
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return statistics;
+    }
+
     @Path("v1/owner/{owner}/matchCollection/{matchCollection}/pGroup/{pGroupId}/matchCounts")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -776,4 +957,6 @@ public class MatchService {
 
     private static final Logger LOG = LoggerFactory.getLogger(MatchService.class);
 
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
 }
@@ -27,22 +27,30 @@ import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.filter.FilterFactory;
+import org.janelia.alignment.match.CanvasIdPairStream;
+import org.janelia.alignment.match.RenderableCanvasIdPairs;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.LastTileTransform;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsSnapshot;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.TransformSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.util.ProcessTimer;
+import org.janelia.alignment.util.RenderWebServiceUrls;
 import org.janelia.render.service.dao.RenderDao;
+import org.janelia.render.service.dao.ResolvedLayerCache;
+import org.janelia.render.service.dao.TilePairWriter;
 import org.janelia.render.service.dao.TileSpecLayout;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ObjectNotFoundException;
 import org.janelia.render.service.model.RenderQueryParameters;
+import org.janelia.render.service.model.TilePairQueryParameters;
 import org.janelia.render.service.util.RenderServiceUtil;
+import org.janelia.render.service.util.SharedResolvedLayerCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -449,6 +457,91 @@ public class RenderDataService {
         return list;
     }
 
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/tileBoundsSnapshot")
+    @GET
+    @Produces(TileBoundsSnapshot.MEDIA_TYPE)
+    @ApiOperation(
+            tags = "Stack Data APIs",
+            value = "Get bounds for each tile in a layer range as a packed binary snapshot",
+            notes = "Returns tile ids, z values, min/max bounds, and indexed sectionId and groupId values in the " +
+                    "compact binary form described by org.janelia.alignment.spec.TileBoundsSnapshot.  " +
+                    "Intended for clients that need bounds for large numbers of tiles.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "stack not found")
+    })
+    public Response getTileBoundsSnapshot(@PathParam("owner") final String owner,
+                                          @PathParam("project") final String project,
+                                          @PathParam("stack") final String stack,
+                                          @QueryParam("minZ") final Double minZ,
+                                          @QueryParam("maxZ") final Double maxZ) {
+
+        LOG.info("getTileBoundsSnapshot: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}",
+                 owner, project, stack, minZ, maxZ);
+
+        Response response = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            final TileBoundsSnapshot snapshot = renderDao.getTileBoundsSnapshot(stackId, minZ, maxZ);
+            final StreamingOutput responseOutput = snapshot::writeTo;
+            response = Response.ok(responseOutput).build();
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return response;
+    }
+
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/tilePairs")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Stack Data APIs",
+            value = "Derive neighbor tile pairs for a layer range",
+            notes = "Pairs are derived from tile bounds held by the server using the same criteria as the " +
+                    "TilePairClient and are returned as a RenderableCanvasIdPairs object.  Use the " +
+                    "tilePairStream API to receive the same pairs in compact binary form.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "invalid pair parameters"),
+            @ApiResponse(code = 404, message = "stack not found")
+    })
+    public Response getTilePairs(@PathParam("owner") final String owner,
+                                 @PathParam("project") final String project,
+                                 @PathParam("stack") final String stack,
+                                 @QueryParam("minZ") final Double minZ,
+                                 @QueryParam("maxZ") final Double maxZ,
+                                 @BeanParam final TilePairQueryParameters tilePairQueryParameters) {
+
+        LOG.info("getTilePairs: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}, tilePairQueryParameters={}",
+                 owner, project, stack, minZ, maxZ, tilePairQueryParameters);
+
+        return getTilePairsResponse(owner, project, stack, minZ, maxZ, tilePairQueryParameters, false);
+    }
+
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/tilePairStream")
+    @GET
+    @Produces(CanvasIdPairStream.MEDIA_TYPE)
+    @ApiOperation(
+            tags = "Stack Data APIs",
+            value = "Derive neighbor tile pairs for a layer range in compact binary form",
+            notes = "Pairs are derived with the same criteria as the tilePairs API but are returned in the " +
+                    "compact binary form described by org.janelia.alignment.match.CanvasIdPairStream.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "invalid pair parameters"),
+            @ApiResponse(code = 404, message = "stack not found")
+    })
+    public Response getTilePairStream(@PathParam("owner") final String owner,
+                                      @PathParam("project") final String project,
+                                      @PathParam("stack") final String stack,
+                                      @QueryParam("minZ") final Double minZ,
+                                      @QueryParam("maxZ") final Double maxZ,
+                                      @BeanParam final TilePairQueryParameters tilePairQueryParameters) {
+
+        LOG.info("getTilePairStream: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}, tilePairQueryParameters={}",
+                 owner, project, stack, minZ, maxZ, tilePairQueryParameters);
+
+        return getTilePairsResponse(owner, project, stack, minZ, maxZ, tilePairQueryParameters, true);
+    }
+
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/tileIds")
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
@@ -1076,12 +1169,62 @@ public class RenderDataService {
                                                  final RenderQueryParameters renderQueryParameters)
             throws ObjectNotFoundException {
 
-        final RenderParameters parameters = renderDao.getParameters(stackId, groupId, x, y, z, width, height, scale);
         final StackMetaData stackMetaData = getStackMetaData(stackId);
+
+        RenderParameters parameters = null;
+        final ResolvedLayerCache resolvedLayerCache = SharedResolvedLayerCache.getInstance();
+        if (resolvedLayerCache != null) {
+            parameters = resolvedLayerCache.getParameters(renderDao, stackMetaData, groupId,
+                                                          x, y, z, width, height, scale);
+        }
+        if (parameters == null) {
+            parameters = renderDao.getParameters(stackId, groupId, x, y, z, width, height, scale);
+        }
+
         renderQueryParameters.applyQueryAndDefaultParameters(parameters, stackMetaData, this);
         return parameters;
     }
 
+    private Response getTilePairsResponse(final String owner,
+                                          final String project,
+                                          final String stack,
+                                          final Double minZ,
+                                          final Double maxZ,
+                                          final TilePairQueryParameters tilePairQueryParameters,
+                                          final boolean isBinary) {
+        Response response = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            final StackMetaData stackMetaData = getStackMetaData(stackId);
+            final List<Double> zValues = renderDao.getZValues(stackId, minZ, maxZ);
+            final TilePairWriter tilePairWriter =
+                    tilePairQueryParameters.buildWriter(renderDao,
+                                                        SharedResolvedLayerCache.getInstance(),
+                                                        stackMetaData,
+                                                        zValues);
+
+            // relative template (like those generated by the TilePairClient) so that pairs can be used with any server
+            final RenderWebServiceUrls urls =
+                    new RenderWebServiceUrls(RenderableCanvasIdPairs.TEMPLATE_BASE_DATA_URL_TOKEN, owner, project);
+            final String renderParametersUrlTemplate =
+                    urls.getStackUrlString(stack) + "/tile/" + RenderableCanvasIdPairs.TEMPLATE_ID_TOKEN +
+                    "/render-parameters";
+
+            final StreamingOutput responseOutput;
+            if (isBinary) {
+                responseOutput = output -> tilePairWriter.writeBinary(output, renderParametersUrlTemplate);
+            } else {
+                responseOutput = output -> tilePairWriter.writeJson(output, renderParametersUrlTemplate);
+            }
+            response = Response.ok(responseOutput).build();
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return response;
+    }
+
     public StackMetaData getStackMetaData(final StackId stackId)
             throws ObjectNotFoundException {
         return StackMetaDataService.getStackMetaData(stackId, renderDao);
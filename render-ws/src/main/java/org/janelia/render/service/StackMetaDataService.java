@@ -30,9 +30,11 @@ import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackStats;
 import org.janelia.alignment.spec.stack.StackVersion;
 import org.janelia.render.service.dao.RenderDao;
+import org.janelia.render.service.dao.ResolvedLayerCache;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ObjectNotFoundException;
 import org.janelia.render.service.util.RenderServiceUtil;
+import org.janelia.render.service.util.SharedResolvedLayerCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -203,6 +205,7 @@ public class StackMetaDataService {
             final StackId fromStackId = new StackId(owner, fromProject, fromStack);
 
             renderDao.renameStack(fromStackId, toStackId);
+            invalidateCachedLayers(fromStackId);
 
             LOG.info("renameStack: renamed {} to {}", fromStackId, toStackId);
 
@@ -219,10 +222,11 @@ public class StackMetaDataService {
     @ApiOperation(
             tags = {"Stack Data APIs"},
             value = "Clones one stack to another",
-            notes = "This operation copies all fromStack tiles and transformations to a new stack with the specified metadata.  This is a potentially long running operation (depending upon the size of the fromStack).")
+            notes = "This operation copies all fromStack tiles and transformations to a new stack with the specified metadata.  This is a potentially long running operation (depending upon the size of the fromStack).  " +
+                    "If derived is true, nothing is copied.  Instead, the new stack references the READ_ONLY fromStack and only stores layers that are subsequently changed.")
     @ApiResponses(value = {
             @ApiResponse(code = 201, message = "stack successfully cloned"),
-            @ApiResponse(code = 400, message = "toStack is not in LOADING state"),
+            @ApiResponse(code = 400, message = "toStack is not in LOADING state or derived fromStack is not READ_ONLY"),
             @ApiResponse(code = 404, message = "fromStack not found")
     })
     public Response cloneStackVersion(@PathParam("owner") final String owner,
@@ -232,11 +236,12 @@ public class StackMetaDataService {
                                       @QueryParam("z") final List<Double> zValues,
                                       @QueryParam("toProject") String toProject,
                                       @QueryParam("skipTransforms") final Boolean skipTransforms,
+                                      @QueryParam("derived") final Boolean derived,
                                       @Context final UriInfo uriInfo,
                                       final StackVersion stackVersion) {
 
-        LOG.info("cloneStackVersion: entry, owner={}, fromProject={}, fromStack={}, toProject={}, toStack={}, zValues={}, stackVersion={}",
-                 owner, fromProject, fromStack, toProject, toStack, zValues, stackVersion);
+        LOG.info("cloneStackVersion: entry, owner={}, fromProject={}, fromStack={}, toProject={}, toStack={}, zValues={}, derived={}, stackVersion={}",
+                 owner, fromProject, fromStack, toProject, toStack, zValues, derived, stackVersion);
 
         try {
             if (stackVersion == null) {
@@ -257,9 +262,23 @@ public class StackMetaDataService {
                                                 " because it is " + toStackMetaData.getState() + ".");
             }
 
-            renderDao.cloneStack(fromStackMetaData.getStackId(), toStackId, zValues, skipTransforms);
-
             toStackMetaData = new StackMetaData(toStackId, stackVersion);
+
+            if ((derived != null) && derived) {
+
+                // derived stacks depend upon the parent stack data remaining unchanged
+                if (! fromStackMetaData.isReadOnly()) {
+                    throw new IllegalArgumentException("Stack " + fromStack + " must be " + READ_ONLY +
+                                                       " before other stacks can be derived from it.");
+                }
+
+                renderDao.deriveStack(fromStackMetaData.getStackId(), toStackId, zValues);
+                toStackMetaData.setParentStackId(fromStackMetaData.getStackId());
+
+            } else {
+                renderDao.cloneStack(fromStackMetaData.getStackId(), toStackId, zValues, skipTransforms);
+            }
+
             renderDao.saveStackMetaData(toStackMetaData);
 
             LOG.info("cloneStackVersion: created {} from {}", toStackId, fromStackMetaData.getStackId());
@@ -349,6 +368,7 @@ public class StackMetaDataService {
 
                 validateStackIsModifiable(stackMetaData);
                 renderDao.removeStack(stackId, true);
+                invalidateCachedLayers(stackId);
 
             }
 
@@ -831,6 +851,16 @@ public class StackMetaDataService {
 
             stackMetaData.validateStateChange(state);
 
+            if (READ_ONLY.equals(currentState) && (! READ_ONLY.equals(state))) {
+                final List<StackId> derivedStackIds = renderDao.getDerivedStackIds(stackMetaData.getStackId());
+                if (derivedStackIds.size() > 0) {
+                    throw new IllegalArgumentException(
+                            "The " + stack + " stack must remain " + READ_ONLY + " because " +
+                            derivedStackIds.size() + " other stack(s) are derived from it, " +
+                            "first materialize or delete the derived stacks: " + derivedStackIds);
+                }
+            }
+
             if (COMPLETE.equals(state)) {
 
                 if (READ_ONLY.equals(currentState)) {
@@ -852,6 +882,60 @@ public class StackMetaDataService {
                 renderDao.saveStackMetaData(stackMetaData);
             }
 
+            invalidateCachedLayers(stackMetaData.getStackId());
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        final Response.ResponseBuilder responseBuilder = Response.created(uriInfo.getRequestUri());
+
+        return responseBuilder.build();
+    }
+
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/materialize")
+    @PUT
+    @ApiOperation(
+            tags = {"Stack Data APIs"},
+            value = "Copies all parent data into a derived stack",
+            notes = "Derived stacks only store the layers that have been changed and read all other data from " +
+                    "their parent stack.  This operation copies all remaining parent tiles and transformations " +
+                    "into the derived stack and removes its dependency on the parent.  " +
+                    "This is a potentially long running operation (depending upon the size of the parent stack).")
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "stack successfully materialized"),
+            @ApiResponse(code = 400, message = "stack is not in LOADING state or is not derived"),
+            @ApiResponse(code = 404, message = "stack not found"),
+    })
+    public Response materializeStack(@PathParam("owner") final String owner,
+                                     @PathParam("project") final String project,
+                                     @PathParam("stack") final String stack,
+                                     @Context final UriInfo uriInfo) {
+
+        LOG.info("materializeStack: entry, owner={}, project={}, stack={}",
+                 owner, project, stack);
+
+        try {
+            final StackMetaData stackMetaData = getStackMetaData(owner, project, stack);
+
+            if (! stackMetaData.isLoading()) {
+                throw new IllegalArgumentException("stack state is " + stackMetaData.getState() +
+                                                   " but must be LOADING to materialize data");
+            }
+
+            if (! stackMetaData.isDerived()) {
+                throw new IllegalArgumentException("stack " + stack + " is not derived from another stack");
+            }
+
+            renderDao.materializeStack(stackMetaData.getStackId());
+
+            stackMetaData.setParentStackId(null);
+            renderDao.saveStackMetaData(stackMetaData);
+
+            invalidateCachedLayers(stackMetaData.getStackId());
+
+            LOG.info("materializeStack: materialized {}", stackMetaData.getStackId());
+
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
@@ -996,5 +1080,16 @@ public class StackMetaDataService {
         }
     }
 
+    /**
+     * Removes any cached layer data for the specified stack so that memory is released as soon as
+     * the stack changes (instead of waiting for stale layers to be evicted).
+     */
+    private static void invalidateCachedLayers(final StackId stackId) {
+        final ResolvedLayerCache resolvedLayerCache = SharedResolvedLayerCache.getInstance();
+        if (resolvedLayerCache != null) {
+            resolvedLayerCache.invalidateStack(stackId);
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(StackMetaDataService.class);
 }
@@ -1,5 +1,8 @@
 package org.janelia.render.service.dao;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.mongodb.MongoClient;
 import com.mongodb.QueryOperators;
 import com.mongodb.bulk.BulkWriteResult;
@@ -10,11 +13,12 @@ import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.UpdateOneModel;
-import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -25,9 +29,13 @@ import java.util.TreeSet;
 
 import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.MatchBatchResult;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
+import org.janelia.alignment.match.MatchGraph;
+import org.janelia.alignment.match.MatchGraphEdge;
 import org.janelia.alignment.match.MatchTrial;
 import org.janelia.alignment.util.ProcessTimer;
 import org.janelia.render.service.model.ObjectNotFoundException;
@@ -43,6 +51,8 @@ public class MatchDao {
 
     static final String MATCH_DB_NAME = "match";
     static final String MATCH_TRIAL_COLLECTION_NAME = "aaa_match_trial";
+    static final String MATCH_EDGE_DB_NAME = "match_edge";
+    static final String MATCH_EDGE_STATE_COLLECTION_NAME = "aaa_match_edge_state";
 
     public static MatchDao build()
             throws UnknownHostException {
@@ -51,9 +61,11 @@ public class MatchDao {
     }
 
     private final MongoDatabase matchDatabase;
+    private final MongoDatabase edgeDatabase;
 
     MatchDao(final MongoClient client) {
         matchDatabase = client.getDatabase(MATCH_DB_NAME);
+        edgeDatabase = client.getDatabase(MATCH_EDGE_DB_NAME);
     }
 
     /**
@@ -362,10 +374,16 @@ public class MatchDao {
         final MongoCollection<Document> collection = getExistingCollection(collectionId);
         final Document query = getInvolvingObjectQuery(groupId, id);
 
+        startMatchGraphEdgeWrite(collectionId, collection);
+
         final DeleteResult result = collection.deleteMany(query);
 
         LOG.debug("removeMatchesInvolvingObject: removed {} matches using {}.delete({})",
                   result.getDeletedCount(), MongoUtil.fullName(collection), query.toJson());
+
+        removeMatchGraphEdges(collectionId, query);
+
+        completeMatchGraphEdgeWrite(collectionId);
     }
 
     public void removeMatchesBetweenTiles(final MatchCollectionId collectionId,
@@ -382,10 +400,16 @@ public class MatchDao {
         final MongoCollection<Document> collection = getExistingCollection(collectionId);
         final Document query = getNormalizedIdQuery(pGroupId, pId, qGroupId, qId);
 
+        startMatchGraphEdgeWrite(collectionId, collection);
+
         final DeleteResult result = collection.deleteMany(query);
 
         LOG.debug("removeMatchesBetweenTiles: removed {} matches using {}.delete({})",
                   result.getDeletedCount(), MongoUtil.fullName(collection), query.toJson());
+
+        removeMatchGraphEdges(collectionId, query);
+
+        completeMatchGraphEdgeWrite(collectionId);
     }
 
     public void removeMatchesBetweenGroups(final MatchCollectionId collectionId,
@@ -400,10 +424,16 @@ public class MatchDao {
         final MongoCollection<Document> collection = getExistingCollection(collectionId);
         final Document query = getNormalizedGroupIdQuery(pGroupId, qGroupId);
 
+        startMatchGraphEdgeWrite(collectionId, collection);
+
         final DeleteResult result = collection.deleteMany(query);
 
         LOG.debug("removeMatchesBetweenGroups: removed {} matches using {}.delete({})",
                   result.getDeletedCount(), MongoUtil.fullName(collection), query.toJson());
+
+        removeMatchGraphEdges(collectionId, query);
+
+        completeMatchGraphEdgeWrite(collectionId);
     }
 
     public void removeMatchesWithPGroup(final MatchCollectionId collectionId,
@@ -419,10 +449,16 @@ public class MatchDao {
 
         final Document query = new Document("pGroupId", pGroupId);
 
+        startMatchGraphEdgeWrite(collectionId, collection);
+
         final DeleteResult result = collection.deleteMany(query);
 
         LOG.debug("removeMatchesWithPGroup: removed {} matches using {}.delete({})",
                   result.getDeletedCount(), MongoUtil.fullName(collection), query.toJson());
+
+        removeMatchGraphEdges(collectionId, query);
+
+        completeMatchGraphEdgeWrite(collectionId);
     }
 
     public void removeMatchesOutsideGroup(final MatchCollectionId collectionId,
@@ -433,12 +469,28 @@ public class MatchDao {
         final MongoCollection<Document> collection = getExistingCollection(collectionId);
         final Document query = getOutsideGroupQuery(groupId);
 
+        startMatchGraphEdgeWrite(collectionId, collection);
+
         final DeleteResult result = collection.deleteMany(query);
 
         LOG.debug("removeMatchesOutsideGroup: removed {} matches using {}.delete({})",
                   result.getDeletedCount(), MongoUtil.fullName(collection), query.toJson());
+
+        removeMatchGraphEdges(collectionId, query);
+
+        completeMatchGraphEdgeWrite(collectionId);
     }
 
+    /**
+     * Saves the specified matches.  Each save also upserts the corresponding edges
+     * with a second bulk write to the collection's match graph edge index.
+     *
+     * @param  collectionId  collection for the matches.
+     * @param  matchesList   matches to save.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
     public void saveMatches(final MatchCollectionId collectionId,
                             final List<CanvasMatches> matchesList)
             throws IllegalArgumentException {
@@ -455,23 +507,23 @@ public class MatchDao {
 
             ensureMatchIndexes(collection);
 
-            final List<WriteModel<Document>> modelList = new ArrayList<>(matchesList.size());
+            final MongoCollection<Document> edgeCollection = getMatchGraphEdgeCollection(collectionId);
+            ensureMatchGraphEdgeIndexes(edgeCollection);
 
-            final UpdateOptions upsertOption = new UpdateOptions().upsert(true);
-            Document filter;
-            Document matchesObject;
+            final List<WriteModel<Document>> modelList = new ArrayList<>(matchesList.size());
+            final List<WriteModel<Document>> edgeModelList = new ArrayList<>(matchesList.size());
             for (final CanvasMatches canvasMatches : matchesList) {
-                canvasMatches.normalize();
-                filter = new Document(
-                        "pGroupId", canvasMatches.getpGroupId()).append(
-                        "pId", canvasMatches.getpId()).append(
-                        "qGroupId", canvasMatches.getqGroupId()).append(
-                        "qId", canvasMatches.getqId());
-                matchesObject = Document.parse(canvasMatches.toJson());
-                modelList.add(new ReplaceOneModel<>(filter, matchesObject, upsertOption));
+                modelList.add(buildUpsertModel(canvasMatches));
+                edgeModelList.add(buildEdgeUpsertModel(canvasMatches));
             }
 
+            // the edge index is only considered current if both writes succeed (see validateMatchGraphEdges)
+            startMatchGraphEdgeWrite(collectionId, collection);
+
             final BulkWriteResult result = collection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+            edgeCollection.bulkWrite(edgeModelList, MongoUtil.UNORDERED_OPTION);
+
+            completeMatchGraphEdgeWrite(collectionId);
 
             if (LOG.isDebugEnabled()) {
                 final String bulkResultMessage = MongoUtil.toMessage("matches", result, matchesList.size());
@@ -481,6 +533,99 @@ public class MatchDao {
         }
     }
 
+    /**
+     * Incrementally parses match pairs from the specified stream and saves them in fixed size
+     * unordered bulk writes as data arrives, so that memory use does not depend upon upload size.
+     * Each batch also upserts the corresponding edges with a second bulk write
+     * to the collection's match graph edge index.
+     *
+     * @param  collectionId  collection for the matches.
+     * @param  inputStream   stream of newline delimited (or concatenated) {@link CanvasMatches} JSON objects.
+     *                       A JSON array of {@link CanvasMatches} objects is also supported.
+     * @param  batchSize     number of pairs to include in each bulk write.
+     *
+     * @return list of counts for each written batch.
+     *
+     * @throws IllegalArgumentException
+     *   if any of the streamed data cannot be parsed.
+     *
+     * @throws IOException
+     *   if the stream cannot be read.
+     */
+    public List<MatchBatchResult> saveMatches(final MatchCollectionId collectionId,
+                                              final InputStream inputStream,
+                                              final int batchSize)
+            throws IllegalArgumentException, IOException {
+
+        MongoUtil.validateRequiredParameter("collectionId", collectionId);
+        MongoUtil.validateRequiredParameter("inputStream", inputStream);
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+
+        LOG.debug("saveMatches: entry, collectionId={}, batchSize={}", collectionId, batchSize);
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        final MongoCollection<Document> collection =
+                matchDatabase.getCollection(collectionId.getDbCollectionName());
+
+        ensureMatchIndexes(collection);
+
+        final MongoCollection<Document> edgeCollection = getMatchGraphEdgeCollection(collectionId);
+        ensureMatchGraphEdgeIndexes(edgeCollection);
+
+        final List<MatchBatchResult> batchResultList = new ArrayList<>();
+        final List<WriteModel<Document>> modelList = new ArrayList<>(batchSize);
+        final List<WriteModel<Document>> edgeModelList = new ArrayList<>(batchSize);
+        long pairCount = 0;
+
+        try (final MappingIterator<CanvasMatches> iterator =
+                     CANVAS_MATCHES_READER.readValues(inputStream)) {
+
+            while (iterator.hasNext()) {
+
+                final CanvasMatches canvasMatches = iterator.next();
+                modelList.add(buildUpsertModel(canvasMatches));
+                edgeModelList.add(buildEdgeUpsertModel(canvasMatches));
+                pairCount++;
+
+                if (modelList.size() == batchSize) {
+                    batchResultList.add(writeBatch(collectionId,
+                                                   collection,
+                                                   edgeCollection,
+                                                   batchResultList.size(),
+                                                   modelList,
+                                                   edgeModelList));
+                    modelList.clear();
+                    edgeModelList.clear();
+                }
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("saveMatches: parsed {} pairs", pairCount);
+                }
+            }
+
+        } catch (final JsonProcessingException e) {
+            throw new IllegalArgumentException("failed to parse match data after " + pairCount + " pairs", e);
+        }
+
+        if (modelList.size() > 0) {
+            batchResultList.add(writeBatch(collectionId,
+                                           collection,
+                                           edgeCollection,
+                                           batchResultList.size(),
+                                           modelList,
+                                           edgeModelList));
+        }
+
+        LOG.debug("saveMatches: wrote {} pairs in {} batches to {}, elapsedSeconds={}",
+                  pairCount, batchResultList.size(), MongoUtil.fullName(collection), timer.getElapsedSeconds());
+
+        return batchResultList;
+    }
+
     public void removeAllMatches(final MatchCollectionId collectionId)
             throws IllegalArgumentException, ObjectNotFoundException {
 
@@ -489,6 +634,9 @@ public class MatchDao {
         final MongoCollection<Document> collection = getExistingCollection(collectionId);
 
         collection.drop();
+
+        getMatchGraphEdgeCollection(collectionId).drop();
+        getMatchGraphEdgeStateCollection().deleteOne(getMatchGraphEdgeStateQuery(collectionId));
     }
 
     /**
@@ -521,6 +669,180 @@ public class MatchDao {
         }
 
         MongoUtil.renameCollection(matchDatabase, fromCollectionName, toCollectionName);
+
+        // drop any stale edges for the new name before moving the edges for the original collection
+        edgeDatabase.getCollection(toCollectionName).drop();
+        MongoUtil.renameCollection(edgeDatabase, fromCollectionName, toCollectionName);
+
+        final MongoCollection<Document> stateCollection = getMatchGraphEdgeStateCollection();
+        final Document fromStateQuery = getMatchGraphEdgeStateQuery(fromCollectionId);
+        stateCollection.deleteOne(getMatchGraphEdgeStateQuery(toCollectionId));
+        final Document fromState = stateCollection.find(fromStateQuery).first();
+        if (fromState != null) {
+            fromState.put("_id", toCollectionName);
+            stateCollection.insertOne(fromState);
+            stateCollection.deleteOne(fromStateQuery);
+        }
+    }
+
+    /**
+     * Loads the compact edge index for the specified collection into a {@link MatchGraph}.
+     * The edge index is maintained as matches are saved or removed.
+     * Collections that were populated before the index existed must first be indexed
+     * with {@link #rebuildMatchGraphEdges}.
+     *
+     * @param  collectionId   collection to analyze.
+     * @param  minZ           if specified, only include edges between groups with z values greater than or equal
+     *                        to this value (groups with non-numeric identifiers are excluded from z filtered graphs).
+     * @param  maxZ           if specified, only include edges between groups with z values less than or equal
+     *                        to this value (groups with non-numeric identifiers are excluded from z filtered graphs).
+     * @param  minMatchCount  if specified, only include edges with at least this many matches.
+     *
+     * @return graph of the matching edges.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws ObjectNotFoundException
+     *   if the collection does not exist.
+     *
+     * @throws IllegalStateException
+     *   if the edge index for the collection is incomplete.
+     */
+    public MatchGraph getMatchGraph(final MatchCollectionId collectionId,
+                                    final Double minZ,
+                                    final Double maxZ,
+                                    final Integer minMatchCount)
+            throws IllegalArgumentException, ObjectNotFoundException, IllegalStateException {
+
+        return new MatchGraph(getMatchGraphEdges(collectionId, null, minZ, maxZ, minMatchCount));
+    }
+
+    /**
+     * @return list of edges (pair identifiers with match counts) for the specified collection.
+     *         See {@link #getMatchGraph} for parameter details.
+     */
+    public List<MatchGraphEdge> getMatchGraphEdges(final MatchCollectionId collectionId,
+                                                   final Double minZ,
+                                                   final Double maxZ,
+                                                   final Integer minMatchCount)
+            throws IllegalArgumentException, ObjectNotFoundException, IllegalStateException {
+        return getMatchGraphEdges(collectionId, null, minZ, maxZ, minMatchCount);
+    }
+
+    /**
+     * @param  groupId  if specified, only include edges with this p or q group.
+     *
+     * @return list of edges (pair identifiers with match counts) for the specified collection.
+     *         See {@link #getMatchGraph} for other parameter details.
+     */
+    public List<MatchGraphEdge> getMatchGraphEdges(final MatchCollectionId collectionId,
+                                                   final String groupId,
+                                                   final Double minZ,
+                                                   final Double maxZ,
+                                                   final Integer minMatchCount)
+            throws IllegalArgumentException, ObjectNotFoundException, IllegalStateException {
+
+        MongoUtil.validateRequiredParameter("collectionId", collectionId);
+
+        LOG.debug("getMatchGraphEdges: entry, collectionId={}, groupId={}, minZ={}, maxZ={}, minMatchCount={}",
+                  collectionId, groupId, minZ, maxZ, minMatchCount);
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        final MongoCollection<Document> collection = getExistingCollection(collectionId);
+        final MongoCollection<Document> edgeCollection = getMatchGraphEdgeCollection(collectionId);
+
+        validateMatchGraphEdges(collectionId, collection);
+
+        final Document query = new Document();
+        if (groupId != null) {
+            final List<Document> groupCriteria = new ArrayList<>();
+            groupCriteria.add(new Document("pGroupId", groupId));
+            groupCriteria.add(new Document("qGroupId", groupId));
+            query.append(QueryOperators.OR, groupCriteria);
+        }
+        if ((minZ != null) || (maxZ != null)) {
+            final Document zRange = new Document();
+            if (minZ != null) {
+                zRange.append(QueryOperators.GTE, minZ);
+            }
+            if (maxZ != null) {
+                zRange.append(QueryOperators.LTE, maxZ);
+            }
+            query.append("pZ", zRange).append("qZ", zRange);
+        }
+        if ((minMatchCount != null) && (minMatchCount > 0)) {
+            query.append("matchCount", new Document(QueryOperators.GTE, minMatchCount));
+        }
+
+        final List<MatchGraphEdge> edgeList = new ArrayList<>();
+        try (final MongoCursor<Document> cursor =
+                     edgeCollection.find(query).projection(EDGE_KEYS).sort(MATCH_ORDER_BY).iterator()) {
+            while (cursor.hasNext()) {
+                final Document document = cursor.next();
+                edgeList.add(new MatchGraphEdge(document.getString("pGroupId"),
+                                                document.getString("pId"),
+                                                document.getString("qGroupId"),
+                                                document.getString("qId"),
+                                                document.getInteger("matchCount")));
+            }
+        }
+
+        LOG.debug("getMatchGraphEdges: returning {} edges for {}.find({}), elapsedMilliseconds={}",
+                  edgeList.size(), MongoUtil.fullName(edgeCollection), query.toJson(),
+                  timer.getElapsedMilliseconds());
+
+        return edgeList;
+    }
+
+    /**
+     * Drops and rebuilds the edge index for the specified collection.
+     * This is needed for collections that were populated before the index existed,
+     * after any failed match write, or if match documents were modified outside of this service.
+     * The rebuilt index is only marked as current if no other writes to the collection
+     * were started while it was being built.
+     *
+     * @param  collectionId  collection to index.
+     *
+     * @return number of indexed edges.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws ObjectNotFoundException
+     *   if the collection does not exist.
+     */
+    public long rebuildMatchGraphEdges(final MatchCollectionId collectionId)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("collectionId", collectionId);
+
+        final MongoCollection<Document> collection = getExistingCollection(collectionId);
+        final MongoCollection<Document> edgeCollection = getMatchGraphEdgeCollection(collectionId);
+
+        final MongoCollection<Document> stateCollection = getMatchGraphEdgeStateCollection();
+        final Document stateQuery = getMatchGraphEdgeStateQuery(collectionId);
+        stateCollection.updateOne(stateQuery,
+                                  new Document("$setOnInsert", new Document("writeVersion", 0L)),
+                                  MongoUtil.UPSERT_OPTION);
+        final Document state = stateCollection.find(stateQuery).first();
+        final long writeVersion = getVersion(state, "writeVersion");
+
+        edgeCollection.drop();
+        ensureMatchGraphEdgeIndexes(edgeCollection);
+
+        final long edgeCount = buildMatchGraphEdges(collection, edgeCollection);
+
+        final UpdateResult result =
+                stateCollection.updateOne(new Document(stateQuery).append("writeVersion", writeVersion),
+                                          new Document("$set", new Document("edgeVersion", writeVersion)));
+        if (result.getMatchedCount() == 0) {
+            LOG.warn("rebuildMatchGraphEdges: {} was changed during rebuild so edge index is still out of date",
+                     MongoUtil.fullName(collection));
+        }
+
+        return edgeCount;
     }
 
     public MatchTrial getMatchTrial(final String trialId)
@@ -580,7 +902,7 @@ public class MatchDao {
         //         },
         //         {
         //             "$project":  {
-        //                 "_id": "$_id",
+        //                 "_id": "$_id", "pGroupId": 1, "pId": 1, "qGroupId": 1, "qId": 1,
         //                 "matchCount": { "$size": "$matches.w" } } }
         //             }
         //         }
@@ -588,14 +910,19 @@ public class MatchDao {
         // )
 
         final Document matchCriteria = new Document("pGroupId", pGroupId);
-        final Document projectCriteria = new Document("_id", "$_id").append("matchCount",
-                                                                           new Document("$size", "$matches.w"));
+        final Document projectCriteria = new Document("_id", "$_id").append(
+                "pGroupId", 1).append(
+                "pId", 1).append(
+                "qGroupId", 1).append(
+                "qId", 1).append(
+                "matchCount", new Document("$size", "$matches.w"));
 
         final List<Document> pipeline = new ArrayList<>();
         pipeline.add(new Document("$match", matchCriteria));
         pipeline.add(new Document("$project", projectCriteria));
 
         final List<WriteModel<Document>> modelList = new ArrayList<>();
+        final List<WriteModel<Document>> edgeModelList = new ArrayList<>();
 
         try (final MongoCursor<Document> cursor = collection.aggregate(pipeline).iterator()) {
             while (cursor.hasNext()) {
@@ -605,6 +932,13 @@ public class MatchDao {
                                                      new Document("matchCount",
                                                                   result.getInteger("matchCount")));
                 modelList.add(new UpdateOneModel<>(filter, update));
+
+                final Document edgeFilter = new Document(
+                        "pGroupId", result.getString("pGroupId")).append(
+                        "pId", result.getString("pId")).append(
+                        "qGroupId", result.getString("qGroupId")).append(
+                        "qId", result.getString("qId"));
+                edgeModelList.add(new UpdateOneModel<>(edgeFilter, update));
             }
         }
 
@@ -613,7 +947,12 @@ public class MatchDao {
                       modelList.size(), MongoUtil.fullName(collection), MongoUtil.toJson(pipeline));
         }
 
+        startMatchGraphEdgeWrite(collectionId, collection);
+
         final BulkWriteResult result = collection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+        getMatchGraphEdgeCollection(collectionId).bulkWrite(edgeModelList, MongoUtil.UNORDERED_OPTION);
+
+        completeMatchGraphEdgeWrite(collectionId);
 
         if (LOG.isDebugEnabled()) {
             final String bulkResultMessage = MongoUtil.toMessage("matches", result, modelList.size());
@@ -623,6 +962,257 @@ public class MatchDao {
 
     }
     
+    private WriteModel<Document> buildUpsertModel(final CanvasMatches canvasMatches) {
+        canvasMatches.normalize();
+        final Document filter = new Document(
+                "pGroupId", canvasMatches.getpGroupId()).append(
+                "pId", canvasMatches.getpId()).append(
+                "qGroupId", canvasMatches.getqGroupId()).append(
+                "qId", canvasMatches.getqId());
+        final Document matchesObject = Document.parse(canvasMatches.toJson());
+        return new ReplaceOneModel<>(filter, matchesObject, MongoUtil.UPSERT_OPTION);
+    }
+
+    private MatchBatchResult writeBatch(final MatchCollectionId collectionId,
+                                        final MongoCollection<Document> collection,
+                                        final MongoCollection<Document> edgeCollection,
+                                        final int batchIndex,
+                                        final List<WriteModel<Document>> modelList,
+                                        final List<WriteModel<Document>> edgeModelList) {
+
+        startMatchGraphEdgeWrite(collectionId, collection);
+
+        final BulkWriteResult result = collection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+        edgeCollection.bulkWrite(edgeModelList, MongoUtil.UNORDERED_OPTION);
+
+        completeMatchGraphEdgeWrite(collectionId);
+
+        if (LOG.isDebugEnabled()) {
+            final String bulkResultMessage = MongoUtil.toMessage("matches", result, modelList.size());
+            LOG.debug("writeBatch: batch {} {} using {}.initializeUnorderedBulkOp()",
+                      batchIndex, bulkResultMessage, MongoUtil.fullName(collection));
+        }
+
+        return new MatchBatchResult(batchIndex,
+                                    modelList.size(),
+                                    result.getUpserts().size(),
+                                    result.getModifiedCount());
+    }
+
+    private WriteModel<Document> buildEdgeUpsertModel(final CanvasMatches normalizedMatches) {
+        final Document filter = new Document(
+                "pGroupId", normalizedMatches.getpGroupId()).append(
+                "pId", normalizedMatches.getpId()).append(
+                "qGroupId", normalizedMatches.getqGroupId()).append(
+                "qId", normalizedMatches.getqId());
+        final Document edgeObject = buildEdgeDocument(normalizedMatches.getpGroupId(),
+                                                      normalizedMatches.getpId(),
+                                                      normalizedMatches.getqGroupId(),
+                                                      normalizedMatches.getqId(),
+                                                      normalizedMatches.getMatchCount());
+        return new ReplaceOneModel<>(filter, edgeObject, MongoUtil.UPSERT_OPTION);
+    }
+
+    private Document buildEdgeDocument(final String pGroupId,
+                                       final String pId,
+                                       final String qGroupId,
+                                       final String qId,
+                                       final Integer matchCount) {
+        final Document edgeObject = new Document(
+                "pGroupId", pGroupId).append(
+                "pId", pId).append(
+                "qGroupId", qGroupId).append(
+                "qId", qId).append(
+                "matchCount", matchCount);
+
+        // numeric group ids (the usual case) are also stored as z values to support range queries
+        final Double pZ = parseZ(pGroupId);
+        final Double qZ = parseZ(qGroupId);
+        if ((pZ != null) && (qZ != null)) {
+            edgeObject.append("pZ", pZ).append("qZ", qZ);
+        }
+
+        return edgeObject;
+    }
+
+    private MongoCollection<Document> getMatchGraphEdgeCollection(final MatchCollectionId collectionId) {
+        return edgeDatabase.getCollection(collectionId.getDbCollectionName());
+    }
+
+    private MongoCollection<Document> getMatchGraphEdgeStateCollection() {
+        return edgeDatabase.getCollection(MATCH_EDGE_STATE_COLLECTION_NAME);
+    }
+
+    private Document getMatchGraphEdgeStateQuery(final MatchCollectionId collectionId) {
+        return new Document("_id", collectionId.getDbCollectionName());
+    }
+
+    /**
+     * Increments the write version for the specified collection's edge index.
+     * This must be called before any change to the collection's matches and
+     * must be followed by {@link #completeMatchGraphEdgeWrite} once both the matches
+     * and their edges have been successfully written.
+     * If either write fails, the edge version lags behind the write version
+     * and the index remains out of date until it is rebuilt.
+     *
+     * The edge version for a new (empty) collection starts at zero.  Collections that were
+     * populated before the index existed never get an edge version until they are rebuilt.
+     */
+    void startMatchGraphEdgeWrite(final MatchCollectionId collectionId,
+                                          final MongoCollection<Document> collection) {
+
+        final MongoCollection<Document> stateCollection = getMatchGraphEdgeStateCollection();
+        final Document stateQuery = getMatchGraphEdgeStateQuery(collectionId);
+
+        if ((stateCollection.count(stateQuery) == 0) && (collection.count() == 0)) {
+            stateCollection.updateOne(stateQuery,
+                                      new Document("$setOnInsert", new Document("edgeVersion", 0L)),
+                                      MongoUtil.UPSERT_OPTION);
+        }
+
+        stateCollection.updateOne(stateQuery,
+                                  new Document("$inc", new Document("writeVersion", 1L)),
+                                  MongoUtil.UPSERT_OPTION);
+    }
+
+    private void completeMatchGraphEdgeWrite(final MatchCollectionId collectionId) {
+        getMatchGraphEdgeStateCollection().updateOne(getMatchGraphEdgeStateQuery(collectionId),
+                                                     new Document("$inc", new Document("edgeVersion", 1L)));
+    }
+
+    /**
+     * The edge index for a collection is only current when every started write has been completed
+     * (see {@link #startMatchGraphEdgeWrite}).  Collections that were populated before the index existed
+     * or that had a failed write must be indexed explicitly with {@link #rebuildMatchGraphEdges}
+     * since indexing requires a full scan of the match collection.
+     *
+     * @throws IllegalStateException
+     *   if the edge index for the collection is incomplete or out of date.
+     */
+    private void validateMatchGraphEdges(final MatchCollectionId collectionId,
+                                         final MongoCollection<Document> collection)
+            throws IllegalStateException {
+
+        final Document state =
+                getMatchGraphEdgeStateCollection().find(getMatchGraphEdgeStateQuery(collectionId)).first();
+
+        if ((state == null) || (state.get("edgeVersion") == null)) {
+
+            if (collection.count() > 0) {
+                throw new IllegalStateException(
+                        "the match graph edge index for " + MongoUtil.fullName(collection) + " is incomplete " +
+                        "because it has never been built, rebuild the index before requesting graph data");
+            }
+
+        } else {
+
+            final long writeVersion = getVersion(state, "writeVersion");
+            final long edgeVersion = getVersion(state, "edgeVersion");
+
+            if (writeVersion != edgeVersion) {
+                throw new IllegalStateException(
+                        "the match graph edge index for " + MongoUtil.fullName(collection) + " is incomplete " +
+                        "(only " + edgeVersion + " of " + writeVersion + " writes have been indexed), " +
+                        "wait for in-progress writes to finish or rebuild the index if any writes failed");
+            }
+
+        }
+    }
+
+    private static long getVersion(final Document state,
+                                   final String key) {
+        final Number version = (Number) state.get(key);
+        return version == null ? 0 : version.longValue();
+    }
+
+    private long buildMatchGraphEdges(final MongoCollection<Document> collection,
+                                      final MongoCollection<Document> edgeCollection) {
+
+        LOG.debug("buildMatchGraphEdges: entry, collection={}", MongoUtil.fullName(collection));
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        // db.<matchCollection>.aggregate(
+        //     [
+        //         {
+        //             "$project":  {
+        //                 "_id": 0, "pGroupId": 1, "pId": 1, "qGroupId": 1, "qId": 1,
+        //                 "matchCount": { "$size": { "$ifNull": [ "$matches.w", [] ] } }
+        //             }
+        //         }
+        //     ]
+        // )
+
+        final List<Object> ifNullArguments = new ArrayList<>();
+        ifNullArguments.add("$matches.w");
+        ifNullArguments.add(new ArrayList<>());
+
+        final Document projectCriteria =
+                new Document("_id", 0).append(
+                        "pGroupId", 1).append(
+                        "pId", 1).append(
+                        "qGroupId", 1).append(
+                        "qId", 1).append(
+                        "matchCount", new Document("$size", new Document("$ifNull", ifNullArguments)));
+
+        final List<Document> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$project", projectCriteria));
+
+        final List<WriteModel<Document>> modelList = new ArrayList<>(EDGE_BATCH_SIZE);
+        long edgeCount = 0;
+
+        try (final MongoCursor<Document> cursor =
+                     collection.aggregate(pipeline).allowDiskUse(true).iterator()) {
+            while (cursor.hasNext()) {
+                final Document result = cursor.next();
+                final String pGroupId = result.getString("pGroupId");
+                final String pId = result.getString("pId");
+                final String qGroupId = result.getString("qGroupId");
+                final String qId = result.getString("qId");
+                final Document filter = new Document(
+                        "pGroupId", pGroupId).append(
+                        "pId", pId).append(
+                        "qGroupId", qGroupId).append(
+                        "qId", qId);
+                final Document edgeObject =
+                        buildEdgeDocument(pGroupId, pId, qGroupId, qId, result.getInteger("matchCount"));
+                modelList.add(new ReplaceOneModel<>(filter, edgeObject, MongoUtil.UPSERT_OPTION));
+
+                if (modelList.size() == EDGE_BATCH_SIZE) {
+                    edgeCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+                    edgeCount += modelList.size();
+                    modelList.clear();
+                }
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("buildMatchGraphEdges: indexed {} edges", edgeCount);
+                }
+            }
+        }
+
+        if (modelList.size() > 0) {
+            edgeCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+            edgeCount += modelList.size();
+        }
+
+        LOG.debug("buildMatchGraphEdges: indexed {} edges in {}, elapsedSeconds={}",
+                  edgeCount, MongoUtil.fullName(edgeCollection), timer.getElapsedSeconds());
+
+        return edgeCount;
+    }
+
+    private void removeMatchGraphEdges(final MatchCollectionId collectionId,
+                                       final Document query) {
+
+        // edge documents use the same pair identifier fields as match documents,
+        // so match removal queries can be applied to edges without modification
+        final MongoCollection<Document> edgeCollection = getMatchGraphEdgeCollection(collectionId);
+        final DeleteResult result = edgeCollection.deleteMany(query);
+
+        LOG.debug("removeMatchGraphEdges: removed {} edges using {}.delete({})",
+                  result.getDeletedCount(), MongoUtil.fullName(edgeCollection), query.toJson());
+    }
+
     private MongoCollection<Document> getMatchTrialCollection() {
         return matchDatabase.getCollection(MATCH_TRIAL_COLLECTION_NAME);
     }
@@ -771,63 +1361,11 @@ public class MatchDao {
                                     final OutputStream outputStream)
             throws IOException {
 
-        // exclude mongo id from results
         final ProcessTimer timer = new ProcessTimer();
 
-        outputStream.write(OPEN_BRACKET);
-
-        int count = 0;
-
-        final int numberOfCollections = collectionList.size();
-        final List<MongoCursor<Document>> cursorList = new ArrayList<>(numberOfCollections);
-        final List<CanvasMatches> matchesList = new ArrayList<>(numberOfCollections);
-
-        try {
-
-            int numberOfCompletedCursors = 0;
-            MongoCollection<Document> collection;
-            for (int i = 0; i < numberOfCollections; i++) {
-                collection = collectionList.get(i);
-                cursorList.add(collection.find(query).projection(projection).sort(MATCH_ORDER_BY).iterator());
-                matchesList.add(null);
-                numberOfCompletedCursors += updateMatches(cursorList, matchesList, i);
-            }
-
-            if (numberOfCompletedCursors > 0) {
-                removeCompletedCursors(cursorList, matchesList);
-            }
-
-            CanvasMatches mergedMatches;
-            while (matchesList.size() > 0) {
-                if (count > 0) {
-                    outputStream.write(COMMA_WITH_NEW_LINE);
-                }
-
-                mergedMatches = getNextMergedMatches(cursorList, matchesList);
-
-                outputStream.write(mergedMatches.toJson().getBytes());
-                count++;
-
-                if (timer.hasIntervalPassed()) {
-                    LOG.debug("writeMergedMatches: data written for {} matches", count);
-                }
-            }
-
-        } finally {
-
-            for (final MongoCursor<Document> cursor : cursorList) {
-                if (cursor != null) {
-                    try {
-                        cursor.close();
-                    } catch (final Throwable t) {
-                        LOG.error("failed to close cursor, ignoring exception", t);
-                    }
-                }
-            }
-
-        }
-
-        outputStream.write(CLOSE_BRACKET);
+        final MergedMatchesWriter mergedMatchesWriter =
+                new MergedMatchesWriter(collectionList, query, projection, MATCH_ORDER_BY);
+        final int count = mergedMatchesWriter.write(outputStream);
 
         if (LOG.isDebugEnabled()) {
             final StringBuilder collectionNames = new StringBuilder(512);
@@ -842,59 +1380,6 @@ public class MatchDao {
         }
     }
 
-    private CanvasMatches getNextMergedMatches(final List<MongoCursor<Document>> cursorList,
-                                               final List<CanvasMatches> matchesList) {
-
-        int numberOfCompletedCursors = 0;
-        int nextMatchesIndex = 0;
-        CanvasMatches nextMatches = matchesList.get(nextMatchesIndex);
-        CanvasMatches matches;
-        int comparisonResult;
-        for (int i = 1; i < matchesList.size(); i++) {
-            matches = matchesList.get(i);
-            comparisonResult = matches.compareTo(nextMatches);
-            if (comparisonResult == 0) {
-                nextMatches.append(matches.getMatches());
-                numberOfCompletedCursors += updateMatches(cursorList, matchesList, i);
-            } else if (comparisonResult < 0) {
-                nextMatchesIndex = i;
-                nextMatches = matches;
-            }
-        }
-
-        numberOfCompletedCursors += updateMatches(cursorList, matchesList, nextMatchesIndex);
-
-        if (numberOfCompletedCursors > 0) {
-            removeCompletedCursors(cursorList, matchesList);
-        }
-
-        return nextMatches;
-    }
-
-    private void removeCompletedCursors(final List<MongoCursor<Document>> cursorList,
-                                        final List<CanvasMatches> matchesList) {
-        MongoCursor<Document> cursor;
-        for (int i = matchesList.size() - 1; i >=0; i--) {
-            if (matchesList.get(i) == null) {
-                matchesList.remove(i);
-                cursor = cursorList.remove(i);
-                cursor.close();
-            }
-        }
-    }
-
-    private int updateMatches(final List<MongoCursor<Document>> cursorList,
-                              final List<CanvasMatches> matchesList,
-                              final int index) {
-        CanvasMatches canvasMatches = null;
-        final MongoCursor<Document> cursor = cursorList.get(index);
-        if (cursor.hasNext()) {
-            canvasMatches = CanvasMatches.fromJson(cursor.next().toJson());
-        }
-        matchesList.set(index, canvasMatches);
-        return (canvasMatches == null ? 1 : 0);
-    }
-
     private Set<String> getMultiConsensusGroupIds(final MatchCollectionId collectionId,
                                                   final boolean includeQGroupIds)
             throws IllegalArgumentException {
@@ -998,6 +1483,25 @@ public class MatchDao {
                               MATCH_B_OPTIONS);
     }
 
+    private void ensureMatchGraphEdgeIndexes(final MongoCollection<Document> edgeCollection) {
+        ensureMatchIndexes(edgeCollection);
+        MongoUtil.createIndex(edgeCollection,
+                              new Document("pZ", 1).append("qZ", 1),
+                              EDGE_Z_OPTIONS);
+    }
+
+    private static Double parseZ(final String groupId) {
+        Double z = null;
+        if (groupId != null) {
+            try {
+                z = Double.parseDouble(groupId);
+            } catch (final NumberFormatException e) {
+                LOG.trace("parseZ: ignoring non-numeric groupId {}", groupId);
+            }
+        }
+        return z;
+    }
+
     private static void validateRequiredCanvasIds(final String groupId,
                                                   final String id) {
         MongoUtil.validateRequiredParameter("groupId", groupId);
@@ -1027,11 +1531,16 @@ public class MatchDao {
     private static final String MATCH_ORDER_BY_JSON = MATCH_ORDER_BY.toJson();
     private static final Document EXCLUDE_MONGO_ID_KEY = new Document("_id", 0);
     private static final Document EXCLUDE_MONGO_ID_KEY_AND_MATCHES = new Document("_id", 0).append("matches", 0);
+    private static final Document EDGE_KEYS = new Document("_id", 0).append("pZ", 0).append("qZ", 0);
     private static final byte[] OPEN_BRACKET = "[".getBytes();
     private static final byte[] COMMA_WITH_NEW_LINE = ",\n".getBytes();
     private static final byte[] CLOSE_BRACKET = "]".getBytes();
 
+    private static final int EDGE_BATCH_SIZE = 10000;
+    private static final ObjectReader CANVAS_MATCHES_READER = JsonUtils.FAST_MAPPER.readerFor(CanvasMatches.class);
+
     private static final IndexOptions MATCH_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions MATCH_B_OPTIONS = new IndexOptions().background(true).name("B");
+    private static final IndexOptions EDGE_Z_OPTIONS = new IndexOptions().background(true).name("Z");
 
 }
@@ -0,0 +1,369 @@
+package org.janelia.render.service.dao;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.util.ProcessTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges sorted match documents from multiple collections into one JSON array.
+ *
+ * Each collection's cursor is drained by a separate prefetch thread that decodes documents
+ * in batches and hands them off through a small bounded queue.  The writer thread only
+ * performs a k-way heap merge (keyed by {@link CanvasMatches#compareTo} which matches the
+ * DAO sort order) and serializes merged matches through a reusable byte buffer.
+ *
+ * Prefetch threads are shared by all requests and limited to {@link #MAX_PREFETCH_THREADS}.
+ * When no prefetch thread is immediately available, the collection is read on the request thread instead
+ * (prefetch tasks are never queued since a queued task could wait forever behind blocked prefetchers).
+ *
+ * @author Eric Trautman
+ */
+class MergedMatchesWriter {
+
+    private final List<MongoCollection<Document>> collectionList;
+    private final Document query;
+    private final Document projection;
+    private final Document orderBy;
+
+    MergedMatchesWriter(final List<MongoCollection<Document>> collectionList,
+                        final Document query,
+                        final Document projection,
+                        final Document orderBy) {
+        this.collectionList = collectionList;
+        this.query = query;
+        this.projection = projection;
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * Writes merged matches as a JSON array to the specified stream.
+     *
+     * @return number of merged matches written.
+     *
+     * @throws IOException
+     *   if any collection cannot be read or the data cannot be written.
+     */
+    int write(final OutputStream outputStream)
+            throws IOException {
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        final List<BatchSource> batchSourceList = new ArrayList<>(collectionList.size());
+        final List<Future<?>> futureList = new ArrayList<>(collectionList.size());
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(OUTPUT_BUFFER_SIZE + 8192);
+        int count = 0;
+
+        try {
+
+            for (final MongoCollection<Document> collection : collectionList) {
+                final CursorPrefetcher prefetcher = new CursorPrefetcher(collection);
+                try {
+                    futureList.add(PREFETCH_EXECUTOR.submit(prefetcher));
+                    batchSourceList.add(prefetcher);
+                } catch (final RejectedExecutionException e) {
+                    LOG.debug("write: all prefetch threads are busy, reading {} on request thread",
+                              MongoUtil.fullName(collection));
+                    batchSourceList.add(new CursorReader(collection));
+                }
+            }
+
+            final PriorityQueue<MatchSource> heap = new PriorityQueue<>(collectionList.size());
+            for (final BatchSource batchSource : batchSourceList) {
+                final MatchSource source = new MatchSource(batchSource);
+                if (source.advance()) {
+                    heap.add(source);
+                }
+            }
+
+            buffer.write(OPEN_BRACKET);
+
+            while (heap.size() > 0) {
+
+                final MatchSource nextSource = heap.poll();
+                final CanvasMatches mergedMatches = nextSource.current;
+
+                // append matches for the same pair from all other sources
+                while ((heap.size() > 0) && (heap.peek().current.compareTo(mergedMatches) == 0)) {
+                    final MatchSource duplicateSource = heap.poll();
+                    if (duplicateSource.current.getMatches() != null) {
+                        mergedMatches.append(duplicateSource.current.getMatches());
+                    }
+                    if (duplicateSource.advance()) {
+                        heap.add(duplicateSource);
+                    }
+                }
+
+                if (nextSource.advance()) {
+                    heap.add(nextSource);
+                }
+
+                if (count > 0) {
+                    buffer.write(COMMA_WITH_NEW_LINE);
+                }
+                MATCHES_WRITER.writeValue(buffer, mergedMatches);
+                count++;
+
+                if (buffer.size() >= OUTPUT_BUFFER_SIZE) {
+                    buffer.writeTo(outputStream);
+                    buffer.reset();
+                }
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("write: data written for {} matches", count);
+                }
+            }
+
+            buffer.write(CLOSE_BRACKET);
+            buffer.writeTo(outputStream);
+
+        } catch (final InterruptedException e) {
+            throw new IOException("interrupted while merging matches", e);
+        } finally {
+            for (final BatchSource batchSource : batchSourceList) {
+                batchSource.close();
+            }
+            for (final Future<?> future : futureList) {
+                future.cancel(true);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Source of sorted batches of decoded matches for one collection.
+     */
+    private interface BatchSource {
+
+        /**
+         * @return the next batch of matches or {@link #END_OF_DATA} if the collection has been exhausted.
+         */
+        List<CanvasMatches> takeBatch()
+                throws InterruptedException, IOException;
+
+        /**
+         * Releases any resources (threads or cursors) held by this source.
+         */
+        void close();
+    }
+
+    /**
+     * Drains one collection's cursor into batches of decoded matches on a prefetch thread.
+     */
+    private class CursorPrefetcher
+            implements Runnable, BatchSource {
+
+        private final MongoCollection<Document> collection;
+        private final BlockingQueue<List<CanvasMatches>> batchQueue;
+        private volatile boolean isCancelled;
+        private volatile Throwable failure;
+
+        CursorPrefetcher(final MongoCollection<Document> collection) {
+            this.collection = collection;
+            this.batchQueue = new ArrayBlockingQueue<>(PREFETCH_QUEUE_CAPACITY);
+            this.isCancelled = false;
+            this.failure = null;
+        }
+
+        @Override
+        public void run() {
+            try (final MongoCursor<Document> cursor =
+                         collection.find(query).projection(projection).sort(orderBy).batchSize(PREFETCH_BATCH_SIZE).iterator()) {
+
+                List<CanvasMatches> batch = new ArrayList<>(PREFETCH_BATCH_SIZE);
+                while ((! isCancelled) && cursor.hasNext()) {
+                    batch.add(MATCHES_READER.readValue(cursor.next().toJson()));
+                    if (batch.size() == PREFETCH_BATCH_SIZE) {
+                        batchQueue.put(batch);
+                        batch = new ArrayList<>(PREFETCH_BATCH_SIZE);
+                    }
+                }
+
+                if (batch.size() > 0) {
+                    batchQueue.put(batch);
+                }
+
+            } catch (final InterruptedException e) {
+                LOG.debug("run: prefetch of {} interrupted", MongoUtil.fullName(collection));
+                return;
+            } catch (final Throwable t) {
+                failure = t;
+            }
+
+            try {
+                batchQueue.put(END_OF_DATA);
+            } catch (final InterruptedException e) {
+                LOG.debug("run: prefetch of {} interrupted", MongoUtil.fullName(collection));
+            }
+        }
+
+        @Override
+        public List<CanvasMatches> takeBatch()
+                throws InterruptedException, IOException {
+            final List<CanvasMatches> batch = batchQueue.take();
+            if (failure != null) {
+                throw new IOException("failed to read matches from " + MongoUtil.fullName(collection), failure);
+            }
+            return batch;
+        }
+
+        @Override
+        public void close() {
+            isCancelled = true;
+            batchQueue.clear();
+        }
+    }
+
+    /**
+     * Reads batches of decoded matches from one collection's cursor on the request thread.
+     */
+    private class CursorReader
+            implements BatchSource {
+
+        private final MongoCollection<Document> collection;
+        private MongoCursor<Document> cursor;
+
+        CursorReader(final MongoCollection<Document> collection) {
+            this.collection = collection;
+            this.cursor = null;
+        }
+
+        @Override
+        public List<CanvasMatches> takeBatch()
+                throws IOException {
+
+            final List<CanvasMatches> batch = new ArrayList<>(PREFETCH_BATCH_SIZE);
+            try {
+                if (cursor == null) {
+                    cursor = collection.find(query).projection(projection).sort(orderBy).batchSize(PREFETCH_BATCH_SIZE).iterator();
+                }
+                while ((batch.size() < PREFETCH_BATCH_SIZE) && cursor.hasNext()) {
+                    batch.add(MATCHES_READER.readValue(cursor.next().toJson()));
+                }
+            } catch (final Throwable t) {
+                throw new IOException("failed to read matches from " + MongoUtil.fullName(collection), t);
+            }
+
+            return batch.size() > 0 ? batch : END_OF_DATA;
+        }
+
+        @Override
+        public void close() {
+            if (cursor != null) {
+                try {
+                    cursor.close();
+                } catch (final Throwable t) {
+                    LOG.error("failed to close cursor, ignoring exception", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge heap entry that tracks the current matches for one prefetched collection.
+     */
+    private static class MatchSource
+            implements Comparable<MatchSource> {
+
+        private final BatchSource batchSource;
+        private List<CanvasMatches> batch;
+        private int batchIndex;
+        private CanvasMatches current;
+
+        MatchSource(final BatchSource batchSource) {
+            this.batchSource = batchSource;
+            this.batch = Collections.emptyList();
+            this.batchIndex = 0;
+            this.current = null;
+        }
+
+        /**
+         * @return true if a current match is available; false if the source has been exhausted.
+         */
+        boolean advance()
+                throws InterruptedException, IOException {
+            if (batchIndex == batch.size()) {
+                batch = batchSource.takeBatch();
+                batchIndex = 0;
+            }
+            if (batch == END_OF_DATA) {
+                current = null;
+            } else {
+                current = batch.get(batchIndex);
+                batchIndex++;
+            }
+            return current != null;
+        }
+
+        @Override
+        public int compareTo(final MatchSource that) {
+            return this.current.compareTo(that.current);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(MergedMatchesWriter.class);
+
+    /** Maximum number of prefetch threads shared by all concurrent merge requests. */
+    private static final int MAX_PREFETCH_THREADS = 16;
+
+    private static final int PREFETCH_BATCH_SIZE = 1000;
+    private static final int PREFETCH_QUEUE_CAPACITY = 4;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final List<CanvasMatches> END_OF_DATA = Collections.unmodifiableList(new ArrayList<>());
+
+    private static final byte[] OPEN_BRACKET = "[".getBytes();
+    private static final byte[] COMMA_WITH_NEW_LINE = ",\n".getBytes();
+    private static final byte[] CLOSE_BRACKET = "]".getBytes();
+
+    private static final ObjectReader MATCHES_READER = JsonUtils.FAST_MAPPER.readerFor(CanvasMatches.class);
+
+    // use the same (pretty printed) format as CanvasMatches.toJson()
+    private static final ObjectWriter MATCHES_WRITER =
+            JsonUtils.MAPPER.writerFor(CanvasMatches.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final ThreadFactory PREFETCH_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "match-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static final ExecutorService PREFETCH_EXECUTOR = new ThreadPoolExecutor(0,
+                                                                                    MAX_PREFETCH_THREADS,
+                                                                                    60L,
+                                                                                    TimeUnit.SECONDS,
+                                                                                    new SynchronousQueue<>(),
+                                                                                    PREFETCH_THREAD_FACTORY);
+}
@@ -1,5 +1,7 @@
 package org.janelia.render.service.dao;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.mongodb.BasicDBList;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoException;
@@ -10,7 +12,9 @@ import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
@@ -22,22 +26,27 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.ListTransformSpec;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsSnapshot;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.TransformSpec;
@@ -46,6 +55,7 @@ import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackStats;
 import org.janelia.alignment.util.ProcessTimer;
 import org.janelia.render.service.model.ObjectNotFoundException;
+import org.janelia.render.service.util.SharedTransformSpecCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,13 +72,29 @@ public class RenderDao {
     public static RenderDao build()
             throws UnknownHostException {
         final MongoClient mongoClient = SharedMongoClient.getInstance();
-        return new RenderDao(mongoClient);
+        return new RenderDao(mongoClient, SharedTransformSpecCache.getInstance());
     }
 
     private final MongoDatabase renderDatabase;
+    private final TransformSpecCache transformSpecCache;
+    private final Cache<StackId, List<StackTileSource>> immutableTileSourcesCache;
 
     public RenderDao(final MongoClient client) {
-        renderDatabase = client.getDatabase(RENDER_DB_NAME);
+        this(client, null);
+    }
+
+    /**
+     * @param  client              client for the render database.
+     * @param  transformSpecCache  cache for resolved transform specs or null to disable caching.
+     */
+    public RenderDao(final MongoClient client,
+                     final TransformSpecCache transformSpecCache) {
+        this.renderDatabase = client.getDatabase(RENDER_DB_NAME);
+        this.transformSpecCache = transformSpecCache;
+        this.immutableTileSourcesCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_TILE_SOURCE_LISTS)
+                .expireAfterWrite(TILE_SOURCE_CACHE_SECONDS, TimeUnit.SECONDS)
+                .build();
     }
 
     /**
@@ -124,7 +150,9 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("z", z);
 
-        final Bounds bounds = getLayerBounds(stackId, z);
+        final List<StackTileSource> sources = getTileSources(stackId);
+
+        final Bounds bounds = getLayerBounds(stackId, sources, z);
         final Double x = bounds.getMinX();
         final Double y = bounds.getMinY();
         final Double width = bounds.getMaxX() - x;
@@ -134,7 +162,7 @@ public class RenderDao {
 
         final RenderParameters renderParameters =
                 new RenderParameters(null, x, y, width.intValue(), height.intValue(), scale);
-        addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+        addResolvedTileSpecs(sources, tileQuery, renderParameters);
 
         return renderParameters;
     }
@@ -163,20 +191,45 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("width", width);
         MongoUtil.validateRequiredParameter("height", height);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-
         final double lowerRightX = x + width;
         final double lowerRightY = y + height;
         final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
 
-        final long count = tileCollection.count(tileQuery);
+        long count = 0;
+        for (final StackTileSource source : getTileSources(stackId, tileQuery)) {
+            count += source.getTileCollection().count(tileQuery);
+            LOG.debug("getTileCount: found {} total tile spec(s) after {}.find({})",
+                      count, source, tileQuery.toJson());
+        }
 
         if (count == 0) {
             throwExceptionIfStackIsMissing(stackId);
         }
 
-        LOG.debug("getTileCount: found {} tile spec(s) for {}.find({})",
-                  count, MongoUtil.fullName(tileCollection), tileQuery.toJson());
+        return count;
+    }
+
+    /**
+     * @return number of tiles with the specified z.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
+    public long getTileCount(final StackId stackId,
+                             final Double z)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        final Document tileQuery = new Document("z", z);
+
+        long count = 0;
+        for (final StackTileSource source : getTileSources(stackId, tileQuery)) {
+            count += source.getTileCollection().count(source.getFilteredQuery(tileQuery));
+        }
+
+        LOG.debug("getTileCount: found {} tile spec(s) for z {} in {}", count, z, stackId);
 
         return count;
     }
@@ -199,32 +252,41 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("tileId", tileId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final List<StackTileSource> sources = getTileSources(stackId);
 
         final Document query = new Document();
         query.put("tileId", tileId);
 
-        LOG.debug("getTileSpec: {}.find({})", MongoUtil.fullName(tileCollection), query.toJson());
+        Document document = null;
+        for (final StackTileSource source : sources) {
+
+            final Document sourceQuery = source.getFilteredQuery(query);
+
+            LOG.debug("getTileSpec: {}.find({})", source, sourceQuery.toJson());
 
-        // EXAMPLE:   find({ "tileId" : "140723171842050101.3299.0"})
-        // INDEX:     tileId_1
-        final Document document = tileCollection.find(query).first();
+            // EXAMPLE:   find({ "tileId" : "140723171842050101.3299.0"})
+            // INDEX:     tileId_1
+            document = source.getTileCollection().find(sourceQuery).first();
+            if (document != null) {
+                break;
+            }
+        }
 
         if (document == null) {
             throw new ObjectNotFoundException("tile spec with id '" + tileId + "' does not exist in the " +
-                                              MongoUtil.fullName(tileCollection) + " collection");
+                                              MongoUtil.fullName(getTileCollection(stackId)) + " collection");
         }
 
         final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
 
         if (resolveTransformReferences) {
-            resolveTransformReferencesForTiles(stackId, Collections.singletonList(tileSpec));
+            resolveTransformReferencesForTiles(sources, Collections.singletonList(tileSpec));
         }
 
         return tileSpec;
     }
 
-    private Map<String, TransformSpec> resolveTransformReferencesForTiles(final StackId stackId,
+    private Map<String, TransformSpec> resolveTransformReferencesForTiles(final List<StackTileSource> sources,
                                                                           final List<TileSpec> tileSpecs)
             throws IllegalStateException {
 
@@ -242,12 +304,39 @@ public class RenderDao {
         final int unresolvedCount = unresolvedIds.size();
         if (unresolvedCount > 0) {
 
-            final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
-            getDataForTransformSpecReferences(transformCollection, unresolvedIds, resolvedIdToSpecMap, 1);
+            // cached specs for immutable stacks are already fully resolved and shared across requests
+            final String cacheVersion = getCacheVersion(sources);
+            if (cacheVersion != null) {
+                transformSpecCache.moveCachedSpecs(sources.get(0).getStackId(),
+                                                   cacheVersion,
+                                                   unresolvedIds,
+                                                   resolvedIdToSpecMap);
+            }
+
+            final Map<String, TransformSpec> loadedIdToSpecMap = new HashMap<>();
+            if (unresolvedIds.size() > 0) {
+
+                final List<MongoCollection<Document>> transformCollections = getTransformCollections(sources);
+                getDataForTransformSpecReferences(transformCollections,
+                                                  unresolvedIds,
+                                                  resolvedIdToSpecMap,
+                                                  loadedIdToSpecMap,
+                                                  1);
+
+                // resolve any references within the retrieved transform specs
+                for (final TransformSpec transformSpec : loadedIdToSpecMap.values()) {
+                    transformSpec.resolveReferences(resolvedIdToSpecMap);
+                }
 
-            // resolve any references within the retrieved transform specs
-            for (final TransformSpec transformSpec : resolvedIdToSpecMap.values()) {
-                transformSpec.resolveReferences(resolvedIdToSpecMap);
+                if (cacheVersion != null) {
+                    final List<TransformSpec> fullyResolvedSpecs = new ArrayList<>(loadedIdToSpecMap.size());
+                    for (final TransformSpec transformSpec : loadedIdToSpecMap.values()) {
+                        if (transformSpec.isFullyResolved()) {
+                            fullyResolvedSpecs.add(transformSpec);
+                        }
+                    }
+                    transformSpecCache.putAll(sources.get(0).getStackId(), cacheVersion, fullyResolvedSpecs);
+                }
             }
 
             // apply fully resolved transform specs to tiles
@@ -262,6 +351,9 @@ public class RenderDao {
                 }
             }
 
+            LOG.debug("resolveTransformReferencesForTiles: exit, resolved {} ids ({} loaded from db)",
+                      unresolvedCount, loadedIdToSpecMap.size());
+
         }
 
         return resolvedIdToSpecMap;
@@ -336,7 +428,8 @@ public class RenderDao {
 
         MongoUtil.validateRequiredParameter("stackId", stackId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final List<StackTileSource> sources = getTileSources(stackId);
+        MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document tileKeys = new Document("tileId", 1).append("_id", 0);
 
         // order tile specs by tileId to ensure consistent coordinate mapping
@@ -381,6 +474,14 @@ public class RenderDao {
 
                 tileQuery = getIntersectsBoxQuery(coordinateZ, world[0], world[1], world[0], world[1]);
 
+                // derived stacks may read each layer from a different collection
+                if (sources.size() > 1) {
+                    final StackTileSource sourceForZ = StackTileSource.findSourceForZ(sources, coordinateZ);
+                    if (sourceForZ != null) {
+                        tileCollection = sourceForZ.getTileCollection();
+                    }
+                }
+
                 // EXAMPLE:   find({"z": 3299.0 , "minX": {"$lte": 95000.0}, "minY": {"$lte": 200000.0}, "maxX": {"$gte": 95000.0}, "maxY": {"$gte": 200000.0}}, {"tileId":1, "_id": 0}).sort({"tileId" : 1})
                 // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
                 cursor = tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator();
@@ -562,14 +663,22 @@ public class RenderDao {
             final MongoCollection<Document> tileCollection = getTileCollection(stackId);
 
             final List<WriteModel<Document>> modelList = new ArrayList<>(tileSpecs.size());
+            final List<String> tileIds = new ArrayList<>(tileSpecs.size());
+            final Set<Double> changedZValues = new HashSet<>();
             Document query = new Document();
             Document tileSpecObject;
             for (final TileSpec tileSpec : tileSpecs) {
                 query = new Document("tileId", tileSpec.getTileId());
                 tileSpecObject = Document.parse(tileSpec.toJson());
                 modelList.add(new ReplaceOneModel<>(query, tileSpecObject, MongoUtil.UPSERT_OPTION));
+                tileIds.add(tileSpec.getTileId());
+                changedZValues.add(tileSpec.getZ());
             }
 
+            // existing tiles may be moved to a different layer, so include their current z values
+            changedZValues.addAll(getDistinctZValues(stackId, getTileIdsQuery(tileIds)));
+            markLayersChanged(stackId, changedZValues);
+
             final BulkWriteResult result = tileCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
 
             if (LOG.isDebugEnabled()) {
@@ -608,6 +717,10 @@ public class RenderDao {
 
         final Document tileSpecObject = Document.parse(tileSpec.toJson());
 
+        final Set<Double> changedZValues = new HashSet<>(getDistinctZValues(stackId, query));
+        changedZValues.add(tileSpec.getZ());
+        markLayersChanged(stackId, changedZValues);
+
         final UpdateResult result = tileCollection.replaceOne(query, tileSpecObject, MongoUtil.UPSERT_OPTION);
 
         LOG.debug("saveTileSpec: {}.{},({}), upsertedId is {}",
@@ -634,14 +747,17 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("transformId", transformId);
 
-        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
-
         final Document query = new Document();
         query.put("id", transformId);
 
-        LOG.debug("getTransformSpec: {}.find({})", MongoUtil.fullName(transformCollection), query.toJson());
-
-        final Document document = transformCollection.find(query).first();
+        Document document = null;
+        for (final MongoCollection<Document> transformCollection : getTransformCollections(getTileSources(stackId))) {
+            LOG.debug("getTransformSpec: {}.find({})", MongoUtil.fullName(transformCollection), query.toJson());
+            document = transformCollection.find(query).first();
+            if (document != null) {
+                break;
+            }
+        }
 
         if (document == null) {
             throwExceptionIfStackIsMissing(stackId);
@@ -674,6 +790,8 @@ public class RenderDao {
         final String context = "transform spec with id '" + transformSpec.getId() + "'";
         validateTransformReferences(context, stackId, transformSpec);
 
+        invalidateCachedTransformSpecs(stackId);
+
         final Document query = new Document();
         query.put("id", transformSpec.getId());
 
@@ -716,10 +834,23 @@ public class RenderDao {
 
         MongoUtil.validateRequiredParameter("stackId", stackId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final List<StackTileSource> sources = getTileSources(stackId);
+
+        // derived stack layers are distributed across collections, so merge and sort them
+        final Collection<Double> distinctZValues;
+        if (sources.size() == 1) {
+            distinctZValues = getTileCollection(stackId).distinct("z", Double.class).into(new ArrayList<>());
+        } else {
+            distinctZValues = new TreeSet<>();
+            for (final StackTileSource source : sources) {
+                source.getTileCollection().distinct("z",
+                                                    source.getFilteredQuery(new Document()),
+                                                    Double.class).into(distinctZValues);
+            }
+        }
 
         final List<Double> list = new ArrayList<>();
-        for (final Double zValue : tileCollection.distinct("z", Double.class)) {
+        for (final Double zValue : distinctZValues) {
             if (zValue != null) {
                 if (minZ == null) {
                     if (maxZ == null) {
@@ -738,7 +869,7 @@ public class RenderDao {
         }
 
         LOG.debug("getZValues: returning {} values between {} and {} for {}",
-                  list.size(), minZ, maxZ, MongoUtil.fullName(tileCollection));
+                  list.size(), minZ, maxZ, sources);
 
         return list;
     }
@@ -750,10 +881,15 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("sectionId", sectionId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document query = new Document("layout.sectionId", sectionId);
 
-        final Document document = tileCollection.find(query).first();
+        Document document = null;
+        for (final StackTileSource source : getTileSources(stackId)) {
+            document = source.getTileCollection().find(source.getFilteredQuery(query)).first();
+            if (document != null) {
+                break;
+            }
+        }
 
         if (document == null) {
             throwExceptionIfStackIsMissing(stackId);
@@ -778,6 +914,10 @@ public class RenderDao {
         final Document query = new Document("layout.sectionId", sectionId);
         final Document update = new Document("$set", new Document("z", z));
 
+        final Set<Double> changedZValues = new HashSet<>(getDistinctZValues(stackId, query));
+        changedZValues.add(z);
+        markLayersChanged(stackId, changedZValues);
+
         final UpdateResult result = tileCollection.updateMany(query, update);
 
         LOG.debug("updateZForSection: updated {} tile specs with {}.update({},{})",
@@ -794,9 +934,13 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("tileIds", tileIds);
 
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document query = new Document("tileId", new Document("$in", tileIds));
+        final Document query = getTileIdsQuery(tileIds);
         final Document update = new Document("$set", new Document("z", z));
 
+        final Set<Double> changedZValues = new HashSet<>(getDistinctZValues(stackId, query));
+        changedZValues.add(z);
+        markLayersChanged(stackId, changedZValues);
+
         final UpdateResult result = tileCollection.updateMany(query, update);
 
         final String shortQueryForLog = "{ 'tileId': { '$in': [ " + tileIds.size() + " tile ids ... ] } }";
@@ -877,6 +1021,9 @@ public class RenderDao {
             }
         }
 
+        // sections for incrementally updated layers are appended to the collection, so explicitly sort them here
+        list.sort(Comparator.comparing(SectionData::getSectionId));
+
         LOG.debug("getSectionData: returning {} values for {}.find({})",
                   list.size(), sectionCollection.getNamespace().getFullName());
 
@@ -1007,6 +1154,8 @@ public class RenderDao {
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
 
+        invalidateCachedTileSources();
+
         final String action;
         if (result.getMatchedCount() > 0) {
             action = "update";
@@ -1037,133 +1186,37 @@ public class RenderDao {
 
         ensureSupplementaryTileIndexes(tileCollection);
 
-        deriveSectionData(stackId);
+        final List<StackTileSource> sources = getTileSources(stackId);
 
-        final List<Double> zValues = getZValues(stackId);
-        final long sectionCount = zValues.size();
+        long tileCount = 0;
+        for (final StackTileSource source : sources) {
+            tileCount += source.getTileCollection().count(source.getFilteredQuery(new Document()));
+        }
+        LOG.debug("ensureIndexesAndDeriveStats: tileCount for {} is {}", stackId, tileCount);
 
-        long nonIntegralSectionCount = 0;
-        double truncatedZ;
-        for (final Double z : zValues) {
-            truncatedZ = (double) z.intValue();
-            if (z > truncatedZ) {
-                nonIntegralSectionCount++;
+        // snapshot changed layer marks before aggregating so that concurrent changes are not lost
+        final List<Document> dirtyZSnapshot = getDirtyZDocuments(stackId);
+        List<Double> dirtyZValues = getDirtyZValues(stackId, dirtyZSnapshot);
+        if (dirtyZValues == null) {
+            deriveSectionData(stackId, sources);
+        } else {
+            updateSectionData(stackId, sources, dirtyZValues);
+
+            // fall back to full derivation if tiles were changed without being tracked (e.g. by a direct import)
+            final long sectionTileCount = getSectionDataTileCount(stackId);
+            if (sectionTileCount != tileCount) {
+                LOG.warn("ensureIndexesAndDeriveStats: section data for {} includes {} tiles but stack has {} tiles, " +
+                         "re-deriving all section data", stackId, sectionTileCount, tileCount);
+                dirtyZValues = null;
+                deriveSectionData(stackId, sources);
             }
         }
 
-        final long tileCount = tileCollection.count();
-        LOG.debug("ensureIndexesAndDeriveStats: tileCount for {} is {}", stackId, tileCount);
-
-        final long transformCount = transformCollection.count();
+        final long transformCount = getTransformCount(sources);
         LOG.debug("ensureIndexesAndDeriveStats: transformCount for {} is {}, deriving aggregate stats ...",
                   stackId, transformCount);
 
-        // db.<stack_prefix>__tile.aggregate(
-        //     [
-        //         {
-        //             "$project":  {
-        //                 "z": "$z",
-        //                 "minX": "$minX",
-        //                 "minY": "$minY",
-        //                 "maxX": "$maxX",
-        //                 "maxY": "$maxY",
-        //                 "width":  { "$subtract": [ "$maxX", "$minX" ] },
-        //                 "height": { "$subtract": [ "$maxY", "$minY" ] }
-        //             }
-        //         },
-        //         {
-        //             "$group": {
-        //                 "_id": "minAndMaxValues",
-        //                 "stackMinX": { "$min": "$minX" },
-        //                 "stackMinY": { "$min": "$minY" },
-        //                 "stackMinZ": { "$min": "$z" },
-        //                 "stackMaxX": { "$max": "$maxX" },
-        //                 "stackMaxY": { "$max": "$maxY" },
-        //                 "stackMaxZ": { "$max": "$z" } } } )
-        //                 "stackMinTileWidth":  { "$min": "$width" },
-        //                 "stackMaxTileWidth":  { "$max": "$width" },
-        //                 "stackMinTileHeight": { "$min": "$height" },
-        //                 "stackMaxTileHeight": { "$max": "$height" }
-        //             }
-        //         }
-        //     ]
-        // )
-
-        final Document tileWidth = new Document("$subtract", buildBasicDBList(new String[] {"$maxX","$minX" }));
-        final Document tileHeight = new Document("$subtract", buildBasicDBList(new String[] {"$maxY","$minY" }));
-        final Document tileValues = new Document("z", "$z").append(
-                "minX", "$minX").append("minY", "$minY").append("maxX", "$maxX").append("maxY", "$maxY").append(
-                "width", tileWidth).append("height", tileHeight);
-
-        final Document projectStage = new Document("$project", tileValues);
-
-        final String minXKey = "stackMinX";
-        final String minYKey = "stackMinY";
-        final String minZKey = "stackMinZ";
-        final String maxXKey = "stackMaxX";
-        final String maxYKey = "stackMaxY";
-        final String maxZKey = "stackMaxZ";
-        final String minWidthKey = "stackMinTileWidth";
-        final String maxWidthKey = "stackMaxTileWidth";
-        final String minHeightKey = "stackMinTileHeight";
-        final String maxHeightKey = "stackMaxTileHeight";
-
-        final Document minAndMaxValues = new Document("_id", "minAndMaxValues");
-        minAndMaxValues.append(minXKey, new Document(QueryOperators.MIN, "$minX"));
-        minAndMaxValues.append(minYKey, new Document(QueryOperators.MIN, "$minY"));
-        minAndMaxValues.append(minZKey, new Document(QueryOperators.MIN, "$z"));
-        minAndMaxValues.append(maxXKey, new Document(QueryOperators.MAX, "$maxX"));
-        minAndMaxValues.append(maxYKey, new Document(QueryOperators.MAX, "$maxY"));
-        minAndMaxValues.append(maxZKey, new Document(QueryOperators.MAX, "$z"));
-        minAndMaxValues.append(minWidthKey, new Document(QueryOperators.MIN, "$width"));
-        minAndMaxValues.append(maxWidthKey, new Document(QueryOperators.MAX, "$width"));
-        minAndMaxValues.append(minHeightKey, new Document(QueryOperators.MIN, "$height"));
-        minAndMaxValues.append(maxHeightKey, new Document(QueryOperators.MAX, "$height"));
-        final Document groupStage = new Document("$group", minAndMaxValues);
-
-        final List<Document> pipeline = new ArrayList<>();
-        pipeline.add(projectStage);
-        pipeline.add(groupStage);
-
-
-        // mongodb java 3.0 driver notes:
-        // -- need to set cursor batchSize to prevent NPE from cursor creation
-        final Document aggregateResult = tileCollection.aggregate(pipeline).batchSize(1).first();
-        if (aggregateResult == null) {
-            String cause = "";
-            if (tileCollection.count() == 0) {
-                cause = " because the stack has no tiles";
-            }
-            throw new IllegalStateException("Stack data aggregation returned no results" + cause + ".  " +
-                                            "The aggregation query was " + MongoUtil.fullName(tileCollection) +
-                                            ".aggregate(" + pipeline + ") .");
-        }
-
-        final List<String> channelNames = tileCollection.distinct("channels.name", String.class).into(new ArrayList<>());
-        Collections.sort(channelNames);
-
-        final Bounds stackBounds = new Bounds(aggregateResult.get(minXKey, Double.class),
-                                              aggregateResult.get(minYKey, Double.class),
-                                              aggregateResult.get(minZKey, Double.class),
-                                              aggregateResult.get(maxXKey, Double.class),
-                                              aggregateResult.get(maxYKey, Double.class),
-                                              aggregateResult.get(maxZKey, Double.class));
-
-        final Integer minTileWidth = MongoUtil.toInteger(aggregateResult.get(minWidthKey, Double.class));
-        final Integer maxTileWidth = MongoUtil.toInteger(aggregateResult.get(maxWidthKey, Double.class));
-        final Integer minTileHeight = MongoUtil.toInteger(aggregateResult.get(minHeightKey, Double.class));
-        final Integer maxTileHeight = MongoUtil.toInteger(aggregateResult.get(maxHeightKey, Double.class));
-
-        final StackStats stats = new StackStats(stackBounds,
-                                                sectionCount,
-                                                nonIntegralSectionCount,
-                                                tileCount,
-                                                transformCount,
-                                                minTileWidth,
-                                                maxTileWidth,
-                                                minTileHeight,
-                                                maxTileHeight,
-                                                new LinkedHashSet<>(channelNames));
+        final StackStats stats = deriveStackStats(stackId, tileCount, transformCount);
         stackMetaData.setStats(stats);
 
         LOG.debug("ensureIndexesAndDeriveStats: completed stat derivation for {}, stats={}", stackId, stats);
@@ -1177,15 +1230,28 @@ public class RenderDao {
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
 
+        invalidateCachedTileSources();
+
         LOG.debug("ensureIndexesAndDeriveStats: {}.{}({})",
                   MongoUtil.fullName(stackMetaDataCollection), MongoUtil.action(result), query.toJson());
 
+        clearDirtyZValues(stackId, dirtyZSnapshot);
+        if (dirtyZValues == null) {
+            markSectionDataDerived(stackId);
+        }
+
         return stackMetaData;
     }
 
-    private void deriveSectionData(final StackId stackId)
+    private void deriveSectionData(final StackId stackId,
+                                   final List<StackTileSource> sources)
             throws IllegalArgumentException {
 
+        if (sources.size() > 1) {
+            deriveMergedSectionData(stackId, sources);
+            return;
+        }
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final String sectionCollectionName = stackId.getSectionCollectionName();
 
@@ -1194,27 +1260,15 @@ public class RenderDao {
         //         { "$group": { "_id": { "sectionId": "$layout.sectionId", "z": "$z" } },
         //                       "tileCount": { "$sum": 1 },
         //                       "minX": { "$min": "$minX" }, "maxX": { "$max": "$maxX" },
-        //                       "minY": { "$min": "$minY" }, "maxY": { "$max": "$maxY" }},
+        //                       "minY": { "$min": "$minY" }, "maxY": { "$max": "$maxY" },
+        //                       "minTileWidth": { "$min": { "$subtract": [ "$maxX", "$minX" ] } }, ...
+        //                       "channelNames": { "$addToSet": "$channels.name" } },
         //         { "$sort": { "_id.sectionId": 1 } }
         //     ]
         // )
 
-        final Document idComponents = new Document("sectionId", "$layout.sectionId").append("z", "$z");
-        final Document tileCountComponents = new Document("$sum", 1);
-        final Document minXComponents = new Document("$min", "$minX");
-        final Document maxXComponents = new Document("$max", "$maxX");
-        final Document minYComponents = new Document("$min", "$minY");
-        final Document maxYComponents = new Document("$max", "$maxY");
-        final Document group = new Document(
-                "_id", idComponents).append(
-                "tileCount", tileCountComponents).append(
-                "minX", minXComponents).append(
-                "maxX", maxXComponents).append(
-                "minY", minYComponents).append(
-                "maxY", maxYComponents);
-
         final List<Document> pipeline = new ArrayList<>();
-        pipeline.add(new Document("$group", group));
+        pipeline.add(buildSectionDataGroupStage());
         pipeline.add(new Document("$sort", new Document("_id.sectionId", 1)));
         pipeline.add(new Document("$out", sectionCollectionName));
 
@@ -1242,108 +1296,684 @@ public class RenderDao {
                   sectionCount, MongoUtil.fullName(sectionCollection));
     }
 
-    public void removeStack(final StackId stackId,
-                            final boolean includeMetaData)
+    /**
+     * Derives section data for a derived stack by separately aggregating each of its tile sources
+     * (the $out stage used for other stacks can only be applied to a single collection).
+     */
+    private void deriveMergedSectionData(final StackId stackId,
+                                         final List<StackTileSource> sources)
             throws IllegalArgumentException {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
-
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final long tileCount = tileCollection.count();
-        tileCollection.drop();
-
-        LOG.debug("removeStack: {}.drop() deleted {} document(s)", MongoUtil.fullName(tileCollection), tileCount);
-
-        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
-        final long transformCount = transformCollection.count();
-        transformCollection.drop();
-
-        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
-                  MongoUtil.fullName(transformCollection), transformCount);
-
         final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
-        final long sectionCount = sectionCollection.count();
         sectionCollection.drop();
 
-        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
-                  MongoUtil.fullName(sectionCollection), sectionCount);
+        long sectionCount = 0;
+        for (final StackTileSource source : sources) {
 
-        if (includeMetaData) {
-            final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
-            final Document stackIdQuery = getStackIdQuery(stackId);
-            final DeleteResult stackMetaDataRemoveResult = stackMetaDataCollection.deleteOne(stackIdQuery);
+            final List<Document> pipeline = new ArrayList<>();
+            if (source.isFiltered()) {
+                pipeline.add(new Document("$match", source.getFilteredQuery(new Document())));
+            }
+            pipeline.add(buildSectionDataGroupStage());
 
-            LOG.debug("removeStack: {}.remove({}) deleted {} document(s)",
-                      MongoUtil.fullName(stackMetaDataCollection),
-                      stackIdQuery.toJson(),
-                      stackMetaDataRemoveResult.getDeletedCount());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("deriveMergedSectionData: running {}.aggregate({})",
+                          MongoUtil.fullName(source.getTileCollection()),
+                          MongoUtil.toJson(pipeline));
+            }
+
+            final List<Document> sectionDocuments =
+                    source.getTileCollection().aggregate(pipeline).into(new ArrayList<>());
+            if (sectionDocuments.size() > 0) {
+                sectionCollection.insertMany(sectionDocuments);
+                sectionCount += sectionDocuments.size();
+            }
         }
+
+        LOG.debug("deriveMergedSectionData: saved data for {} sections in {}",
+                  sectionCount, MongoUtil.fullName(sectionCollection));
     }
 
-    public void removeTilesWithSectionId(final StackId stackId,
-                                         final String sectionId)
+    /**
+     * Re-derives section data for only the specified (changed) layers,
+     * replacing any previously derived data for those layers.
+     * Each tile source is aggregated separately so that layers a derived stack
+     * still reads from its ancestors are included.
+     */
+    private void updateSectionData(final StackId stackId,
+                                   final List<StackTileSource> sources,
+                                   final List<Double> zValues)
             throws IllegalArgumentException {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
-        MongoUtil.validateRequiredParameter("sectionId", sectionId);
+        if (zValues.size() == 0) {
+            LOG.debug("updateSectionData: no layers have changed in {} since section data was derived", stackId);
+            return;
+        }
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document tileQuery = new Document("layout.sectionId", sectionId);
-        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
 
-        LOG.debug("removeTilesWithSectionId: {}.remove({}) deleted {} document(s)",
-                  MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
+        final Document sectionQuery = new Document("_id.z", new Document(QueryOperators.IN, zValues));
+        final DeleteResult removeResult = sectionCollection.deleteMany(sectionQuery);
+
+        final Document tileQuery = new Document("z", new Document(QueryOperators.IN, zValues));
+        final List<Document> sectionDocuments = new ArrayList<>();
+        for (final StackTileSource source : sources) {
+            final List<Document> pipeline = new ArrayList<>();
+            pipeline.add(new Document("$match", source.getFilteredQuery(tileQuery)));
+            pipeline.add(buildSectionDataGroupStage());
+            source.getTileCollection().aggregate(pipeline).into(sectionDocuments);
+        }
+        if (sectionDocuments.size() > 0) {
+            sectionCollection.insertMany(sectionDocuments);
+        }
+
+        LOG.debug("updateSectionData: replaced {} with {} section(s) for {} changed layer(s) in {}",
+                  removeResult.getDeletedCount(), sectionDocuments.size(), zValues.size(),
+                  MongoUtil.fullName(sectionCollection));
     }
 
-    public void removeTilesWithZ(final StackId stackId,
-                                 final Double z)
-            throws IllegalArgumentException {
+    private long getSectionDataTileCount(final StackId stackId) {
+        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
+        long tileCount = 0;
+        try (final MongoCursor<Document> cursor =
+                     sectionCollection.find().projection(new Document("tileCount", 1)).iterator()) {
+            Number sectionTileCount;
+            while (cursor.hasNext()) {
+                sectionTileCount = cursor.next().get("tileCount", Number.class);
+                if (sectionTileCount != null) {
+                    tileCount += sectionTileCount.longValue();
+                }
+            }
+        }
+        return tileCount;
+    }
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
-        MongoUtil.validateRequiredParameter("z", z);
+    private Document buildSectionDataGroupStage() {
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document tileQuery = new Document("z", z);
-        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+        final Document idComponents = new Document("sectionId", "$layout.sectionId").append("z", "$z");
+        final Document tileCountComponents = new Document("$sum", 1);
+        final Document minXComponents = new Document("$min", "$minX");
+        final Document maxXComponents = new Document("$max", "$maxX");
+        final Document minYComponents = new Document("$min", "$minY");
+        final Document maxYComponents = new Document("$max", "$maxY");
+        final Document tileWidth = new Document("$subtract", buildBasicDBList(new String[] {"$maxX","$minX" }));
+        final Document tileHeight = new Document("$subtract", buildBasicDBList(new String[] {"$maxY","$minY" }));
+        final Document group = new Document(
+                "_id", idComponents).append(
+                "tileCount", tileCountComponents).append(
+                "minX", minXComponents).append(
+                "maxX", maxXComponents).append(
+                "minY", minYComponents).append(
+                "maxY", maxYComponents).append(
+                "minTileWidth", new Document("$min", tileWidth)).append(
+                "maxTileWidth", new Document("$max", tileWidth)).append(
+                "minTileHeight", new Document("$min", tileHeight)).append(
+                "maxTileHeight", new Document("$max", tileHeight)).append(
+                "channelNames", new Document("$addToSet", "$channels.name"));
 
-        LOG.debug("removeTilesWithZ: {}.remove({}) deleted {} document(s)",
-                  MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
+        return new Document("$group", group);
     }
 
-    void removeTilesWithIds(final StackId stackId,
-                            final List<String> tileIds)
-            throws IllegalArgumentException {
+    /**
+     * @return stack stats derived from the (much smaller) section data collection
+     *         instead of from the tile collection.
+     */
+    private StackStats deriveStackStats(final StackId stackId,
+                                        final long tileCount,
+                                        final long transformCount)
+            throws IllegalStateException {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
-        MongoUtil.validateRequiredParameter("tileIds", tileIds);
+        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document tileQuery = new Document("tileId",
-                                                new Document(QueryOperators.IN,
-                                                             tileIds));
-        final Document tileQueryForLog = new Document("tileId",
-                                                      new Document(QueryOperators.IN,
-                                                                   Arrays.asList("list of",
-                                                                                 tileIds.size() + " tileIds")));
-        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+        final Set<Double> zValues = new HashSet<>();
+        final Set<String> channelNames = new TreeSet<>();
+        Double minX = null;
+        Double minY = null;
+        Double maxX = null;
+        Double maxY = null;
+        Double minTileWidth = null;
+        Double maxTileWidth = null;
+        Double minTileHeight = null;
+        Double maxTileHeight = null;
+
+        try (final MongoCursor<Document> cursor = sectionCollection.find().iterator()) {
+            Document document;
+            Double z;
+            while (cursor.hasNext()) {
+                document = cursor.next();
+                z = document.get("_id", Document.class).get("z", Double.class);
+                if (z != null) {
+                    zValues.add(z);
+                }
+                minX = getMin(minX, document.get("minX", Double.class));
+                minY = getMin(minY, document.get("minY", Double.class));
+                maxX = getMax(maxX, document.get("maxX", Double.class));
+                maxY = getMax(maxY, document.get("maxY", Double.class));
+                minTileWidth = getMin(minTileWidth, document.get("minTileWidth", Double.class));
+                maxTileWidth = getMax(maxTileWidth, document.get("maxTileWidth", Double.class));
+                minTileHeight = getMin(minTileHeight, document.get("minTileHeight", Double.class));
+                maxTileHeight = getMax(maxTileHeight, document.get("maxTileHeight", Double.class));
+                addChannelNames(document.get("channelNames"), channelNames);
+            }
+        }
 
-        LOG.debug("removeTilesWithIds: {}.remove({}) deleted {} document(s)",
-                  MongoUtil.fullName(tileCollection), tileQueryForLog.toJson(), removeResult.getDeletedCount());
+        if (zValues.size() == 0) {
+            String cause = "";
+            if (tileCount == 0) {
+                cause = " because the stack has no tiles";
+            }
+            throw new IllegalStateException("Stack data aggregation returned no results" + cause + ".  " +
+                                            "The section data collection is " +
+                                            MongoUtil.fullName(sectionCollection) + ".");
+        }
+
+        long nonIntegralSectionCount = 0;
+        double truncatedZ;
+        for (final Double z : zValues) {
+            truncatedZ = (double) z.intValue();
+            if (z > truncatedZ) {
+                nonIntegralSectionCount++;
+            }
+        }
+
+        final Bounds stackBounds = new Bounds(minX,
+                                              minY,
+                                              Collections.min(zValues),
+                                              maxX,
+                                              maxY,
+                                              Collections.max(zValues));
+
+        return new StackStats(stackBounds,
+                              (long) zValues.size(),
+                              nonIntegralSectionCount,
+                              tileCount,
+                              transformCount,
+                              MongoUtil.toInteger(minTileWidth),
+                              MongoUtil.toInteger(maxTileWidth),
+                              MongoUtil.toInteger(minTileHeight),
+                              MongoUtil.toInteger(maxTileHeight),
+                              new LinkedHashSet<>(channelNames));
     }
 
-    public void removeTile(final StackId stackId,
-                           final String tileId)
-            throws IllegalArgumentException {
+    /**
+     * @return number of distinct transform specs available to the stack with the specified sources
+     *         (overridden transform specs in ancestor stacks are not counted).
+     */
+    private long getTransformCount(final List<StackTileSource> sources) {
 
-        MongoUtil.validateRequiredParameter("stackId", stackId);
-        MongoUtil.validateRequiredParameter("tileId", tileId);
+        final int lastIndex = sources.size() - 1;
+        final Set<String> overlayTransformIds = new HashSet<>();
+        for (int i = 0; i < lastIndex; i++) {
+            sources.get(i).getTransformCollection().distinct("id", String.class).into(overlayTransformIds);
+        }
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-        final Document tileQuery = new Document("tileId", tileId);
-        final DeleteResult removeResult = tileCollection.deleteOne(tileQuery);
+        final MongoCollection<Document> rootTransformCollection = sources.get(lastIndex).getTransformCollection();
+        final long rootCount;
+        if (overlayTransformIds.size() == 0) {
+            rootCount = rootTransformCollection.count();
+        } else {
+            rootCount = rootTransformCollection.count(
+                    new Document("id", new Document(QueryOperators.NIN, new ArrayList<>(overlayTransformIds))));
+        }
 
-        LOG.debug("removeTile: {}.remove({}) deleted {} document(s)",
-                  MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
+        return overlayTransformIds.size() + rootCount;
+    }
+
+    /**
+     * @return snapshot of all documents currently in the dirty z collection for the specified stack.
+     */
+    List<Document> getDirtyZDocuments(final StackId stackId) {
+        return getDirtyZCollection(stackId).find().into(new ArrayList<>());
+    }
+
+    /**
+     * @return z values for layers that have changed since section data was last derived for the specified stack
+     *         or null if section data must be completely (re)derived.
+     */
+    private List<Double> getDirtyZValues(final StackId stackId,
+                                         final List<Document> dirtyZSnapshot) {
+
+        List<Double> dirtyZValues = null;
+
+        if (MongoUtil.exists(renderDatabase, stackId.getSectionCollectionName())) {
+
+            boolean isSectionDataDerived = false;
+            final List<Double> zValues = new ArrayList<>();
+            Object id;
+            for (final Document dirtyZDocument : dirtyZSnapshot) {
+                id = dirtyZDocument.get("_id");
+                if (SECTION_DATA_DERIVED_ID.equals(id)) {
+                    isSectionDataDerived = true;
+                } else if (id instanceof Number) {
+                    zValues.add(((Number) id).doubleValue());
+                }
+            }
+
+            if (isSectionDataDerived) {
+                dirtyZValues = zValues;
+            }
+        }
+
+        LOG.debug("getDirtyZValues: returning {} for {}",
+                  dirtyZValues == null ? "null" : dirtyZValues.size() + " values", stackId);
+
+        return dirtyZValues;
+    }
+
+    /**
+     * Records z values for layers that have changed so that the next stats derivation
+     * only needs to re-aggregate data for those layers.
+     * Each mark gets a new change id so that a layer changed again while stats are being derived
+     * stays marked (see {@link #clearDirtyZValues}).
+     */
+    void addDirtyZValues(final StackId stackId,
+                         final Collection<Double> zValues) {
+
+        final List<WriteModel<Document>> modelList = new ArrayList<>(zValues.size());
+        for (final Double z : zValues) {
+            if (z != null) {
+                final Document update = new Document("$set", new Document(DIRTY_Z_CHANGE_ID_KEY, new ObjectId()));
+                modelList.add(new UpdateOneModel<>(new Document("_id", z), update, MongoUtil.UPSERT_OPTION));
+            }
+        }
+
+        if (modelList.size() > 0) {
+            final MongoCollection<Document> dirtyZCollection = getDirtyZCollection(stackId);
+            dirtyZCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+            LOG.debug("addDirtyZValues: marked {} layer(s) as changed in {}",
+                      modelList.size(), MongoUtil.fullName(dirtyZCollection));
+        }
+    }
+
+    /**
+     * Removes changed layer marks after their section data has been derived.
+     * Only marks that are unchanged since the snapshot was taken are removed,
+     * so layers that were changed again during derivation stay marked for the next derivation.
+     *
+     * @param  stackId         stack identifier.
+     * @param  dirtyZSnapshot  dirty z documents read before section data was derived.
+     */
+    void clearDirtyZValues(final StackId stackId,
+                           final List<Document> dirtyZSnapshot) {
+
+        final List<WriteModel<Document>> modelList = new ArrayList<>(dirtyZSnapshot.size());
+        Object id;
+        for (final Document dirtyZDocument : dirtyZSnapshot) {
+            id = dirtyZDocument.get("_id");
+            if (! SECTION_DATA_DERIVED_ID.equals(id)) {
+                // a null change id only matches legacy marks that have not been changed since the snapshot
+                final Document query = new Document("_id", id).append(DIRTY_Z_CHANGE_ID_KEY,
+                                                                      dirtyZDocument.get(DIRTY_Z_CHANGE_ID_KEY));
+                modelList.add(new DeleteOneModel<>(query));
+            }
+        }
+
+        final MongoCollection<Document> dirtyZCollection = getDirtyZCollection(stackId);
+        long deletedCount = 0;
+        if (modelList.size() > 0) {
+            deletedCount = dirtyZCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION).getDeletedCount();
+        }
+
+        LOG.debug("clearDirtyZValues: cleared {} of {} value(s) in {}",
+                  deletedCount, modelList.size(), MongoUtil.fullName(dirtyZCollection));
+    }
+
+    /**
+     * Records that section data has been completely derived for the specified stack
+     * so that subsequent derivations only need to re-aggregate changed layers.
+     */
+    private void markSectionDataDerived(final StackId stackId) {
+        final MongoCollection<Document> dirtyZCollection = getDirtyZCollection(stackId);
+        final Document derivedDocument = new Document("_id", SECTION_DATA_DERIVED_ID);
+        dirtyZCollection.replaceOne(derivedDocument, derivedDocument, MongoUtil.UPSERT_OPTION);
+    }
+
+    private List<Double> getDistinctZValues(final StackId stackId,
+                                            final Document tileQuery) {
+        final List<Double> zValues = new ArrayList<>();
+        for (final StackTileSource source : getTileSources(stackId)) {
+            source.getTileCollection().distinct("z", source.getFilteredQuery(tileQuery), Double.class).into(zValues);
+        }
+        return zValues;
+    }
+
+    /**
+     * Prepares the specified layers for modification.
+     * Derived stacks first copy the tiles for any layers they do not already own from their ancestors
+     * so that subsequent updates can be applied to the derived stack's own tile collection.
+     * Changed layers are then recorded so that the next stats derivation
+     * only needs to re-aggregate data for those layers.
+     */
+    private void markLayersChanged(final StackId stackId,
+                                   final Collection<Double> zValues) {
+
+        final List<StackTileSource> sources = getTileSources(stackId);
+
+        if (sources.size() > 1) {
+
+            final StackTileSource overlaySource = sources.get(0);
+            final List<WriteModel<Document>> modelList = new ArrayList<>();
+
+            for (final Double z : zValues) {
+                if ((z != null) && (! overlaySource.includesZ(z))) {
+                    final StackTileSource parentSource = StackTileSource.findSourceForZ(sources, z);
+                    if (parentSource != null) {
+                        cloneCollection(parentSource.getTileCollection(),
+                                        overlaySource.getTileCollection(),
+                                        new Document("z", z));
+                    }
+                    final Document zDocument = new Document("_id", z);
+                    modelList.add(new ReplaceOneModel<>(zDocument, zDocument, MongoUtil.UPSERT_OPTION));
+                }
+            }
+
+            if (modelList.size() > 0) {
+                final MongoCollection<Document> ownedZCollection = getOwnedZCollection(stackId);
+                ownedZCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+                LOG.debug("markLayersChanged: copied {} layer(s) to {}",
+                          modelList.size(), MongoUtil.fullName(ownedZCollection));
+            }
+        }
+
+        addDirtyZValues(stackId, zValues);
+    }
+
+    /**
+     * @return all tile sources for the specified stack, starting with the stack's own tile collection
+     *         and followed by collections for any ancestors (if the stack is derived).
+     *
+     *         Sources for immutable (COMPLETE or READ_ONLY) stacks are cached for a few seconds so that
+     *         bursts of reads do not each need to look up stack meta data.  Cached sources are dropped
+     *         whenever stack meta data is changed through this object, but changes made by other servers
+     *         may not be seen until the cached sources expire.
+     */
+    private List<StackTileSource> getTileSources(final StackId stackId) {
+        List<StackTileSource> sources = immutableTileSourcesCache.getIfPresent(stackId);
+        if (sources == null) {
+            sources = loadTileSources(stackId);
+            if (isImmutable(sources)) {
+                immutableTileSourcesCache.put(stackId, sources);
+            }
+        }
+        return sources;
+    }
+
+    private List<StackTileSource> loadTileSources(final StackId stackId) {
+
+        final List<StackTileSource> sources = new ArrayList<>();
+        final Set<Double> excludedZValues = new HashSet<>();
+
+        StackId sourceStackId = stackId;
+        while (sourceStackId != null) {
+
+            if (sources.size() > MAX_DERIVED_STACK_DEPTH) {
+                throw new IllegalStateException(stackId + " is derived from more than " + MAX_DERIVED_STACK_DEPTH +
+                                                " ancestor stacks, exiting in case there is a recursion error");
+            }
+
+            final Document sourceMetaData = getStackMetaDataCollection().find(getStackIdQuery(sourceStackId))
+                    .projection(TILE_SOURCE_META_DATA_KEYS).first();
+            final StackId parentStackId = getParentStackId(sourceMetaData);
+            final Set<Double> ownedZValues = parentStackId == null ? null : getOwnedZValues(sourceStackId);
+
+            sources.add(new StackTileSource(sourceStackId,
+                                            getTileCollection(sourceStackId),
+                                            getTransformCollection(sourceStackId),
+                                            ownedZValues,
+                                            new HashSet<>(excludedZValues),
+                                            getCacheVersion(sourceMetaData)));
+            if (ownedZValues != null) {
+                excludedZValues.addAll(ownedZValues);
+            }
+
+            sourceStackId = parentStackId;
+        }
+
+        return sources;
+    }
+
+    /**
+     * @return the tile sources for the specified stack that may contain tiles matching the specified query.
+     */
+    private List<StackTileSource> getTileSources(final StackId stackId,
+                                                 final Document tileQuery) {
+        return getTileSources(getTileSources(stackId), tileQuery);
+    }
+
+    private List<StackTileSource> getTileSources(final List<StackTileSource> sources,
+                                                 final Document tileQuery) {
+        final List<StackTileSource> sourcesForQuery;
+        final Object z = tileQuery.get("z");
+        if ((sources.size() > 1) && (z instanceof Number)) {
+            final StackTileSource sourceForZ = StackTileSource.findSourceForZ(sources, ((Number) z).doubleValue());
+            sourcesForQuery = sourceForZ == null ? new ArrayList<>() : Collections.singletonList(sourceForZ);
+        } else {
+            sourcesForQuery = sources;
+        }
+        return sourcesForQuery;
+    }
+
+    private List<MongoCollection<Document>> getTransformCollections(final List<StackTileSource> sources) {
+        final List<MongoCollection<Document>> transformCollections = new ArrayList<>(sources.size());
+        for (final StackTileSource source : sources) {
+            transformCollections.add(source.getTransformCollection());
+        }
+        return transformCollections;
+    }
+
+    private StackId getParentStackId(final Document stackMetaData) {
+        StackId parentStackId = null;
+        if (stackMetaData != null) {
+            final Document parentDocument = stackMetaData.get("parentStackId", Document.class);
+            if (parentDocument != null) {
+                parentStackId = new StackId(parentDocument.getString("owner"),
+                                            parentDocument.getString("project"),
+                                            parentDocument.getString("stack"));
+            }
+        }
+        return parentStackId;
+    }
+
+    private static boolean isImmutable(final List<StackTileSource> sources) {
+        boolean isImmutable = true;
+        for (final StackTileSource source : sources) {
+            if (source.getCacheVersion() == null) {
+                isImmutable = false;
+                break;
+            }
+        }
+        return isImmutable;
+    }
+
+    private void invalidateCachedTileSources() {
+        // derived stacks include sources for all of their ancestors, so simply drop everything
+        immutableTileSourcesCache.invalidateAll();
+    }
+
+    /**
+     * @return version string for cached transform specs from the specified sources
+     *         or null if the sources should not be cached.
+     */
+    private String getCacheVersion(final List<StackTileSource> sources) {
+        String cacheVersion = null;
+        if ((transformSpecCache != null) && (sources.size() > 0)) {
+            cacheVersion = sources.get(0).getCacheVersion();
+            for (final StackTileSource source : sources) {
+                if (source.getCacheVersion() == null) {
+                    cacheVersion = null;
+                    break;
+                }
+            }
+        }
+        return cacheVersion;
+    }
+
+    /**
+     * @return version string for cached stack data or null if the stack's data may change
+     *         (stacks in the LOADING state can be modified by any server).
+     */
+    private String getCacheVersion(final Document stackMetaData) {
+        String cacheVersion = null;
+        if (stackMetaData != null) {
+            final String state = stackMetaData.getString("state");
+            if (StackMetaData.StackState.COMPLETE.name().equals(state) ||
+                StackMetaData.StackState.READ_ONLY.name().equals(state)) {
+                cacheVersion = String.valueOf(stackMetaData.get("lastModifiedTimestamp"));
+            }
+        }
+        return cacheVersion;
+    }
+
+    /**
+     * Removes any cached transform specs for the specified stack.
+     * Cached specs are versioned by the stack's last modified timestamp, so this is only
+     * strictly needed to free memory and to handle writes that do not change the timestamp.
+     */
+    private void invalidateCachedTransformSpecs(final StackId stackId) {
+        if (transformSpecCache != null) {
+            transformSpecCache.invalidateStack(stackId);
+        }
+    }
+
+    private Set<Double> getOwnedZValues(final StackId stackId) {
+        final Set<Double> ownedZValues = new HashSet<>();
+        try (final MongoCursor<Document> cursor = getOwnedZCollection(stackId).find().iterator()) {
+            Object id;
+            while (cursor.hasNext()) {
+                id = cursor.next().get("_id");
+                if (id instanceof Number) {
+                    ownedZValues.add(((Number) id).doubleValue());
+                }
+            }
+        }
+        return ownedZValues;
+    }
+
+    public void removeStack(final StackId stackId,
+                            final boolean includeMetaData)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final long tileCount = tileCollection.count();
+        tileCollection.drop();
+
+        invalidateCachedTransformSpecs(stackId);
+        invalidateCachedTileSources();
+
+        LOG.debug("removeStack: {}.drop() deleted {} document(s)", MongoUtil.fullName(tileCollection), tileCount);
+
+        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+        final long transformCount = transformCollection.count();
+        transformCollection.drop();
+
+        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
+                  MongoUtil.fullName(transformCollection), transformCount);
+
+        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
+        final long sectionCount = sectionCollection.count();
+        sectionCollection.drop();
+
+        LOG.debug("removeStack: {}.drop() deleted {} document(s)",
+                  MongoUtil.fullName(sectionCollection), sectionCount);
+
+        final MongoCollection<Document> dirtyZCollection = getDirtyZCollection(stackId);
+        dirtyZCollection.drop();
+
+        LOG.debug("removeStack: {}.drop()", MongoUtil.fullName(dirtyZCollection));
+
+        final MongoCollection<Document> ownedZCollection = getOwnedZCollection(stackId);
+        ownedZCollection.drop();
+
+        LOG.debug("removeStack: {}.drop()", MongoUtil.fullName(ownedZCollection));
+
+        if (includeMetaData) {
+            final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
+            final Document stackIdQuery = getStackIdQuery(stackId);
+            final DeleteResult stackMetaDataRemoveResult = stackMetaDataCollection.deleteOne(stackIdQuery);
+
+            LOG.debug("removeStack: {}.remove({}) deleted {} document(s)",
+                      MongoUtil.fullName(stackMetaDataCollection),
+                      stackIdQuery.toJson(),
+                      stackMetaDataRemoveResult.getDeletedCount());
+        }
+    }
+
+    public void removeTilesWithSectionId(final StackId stackId,
+                                         final String sectionId)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("sectionId", sectionId);
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileQuery = new Document("layout.sectionId", sectionId);
+
+        markLayersChanged(stackId, getDistinctZValues(stackId, tileQuery));
+
+        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+
+        LOG.debug("removeTilesWithSectionId: {}.remove({}) deleted {} document(s)",
+                  MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
+    }
+
+    public void removeTilesWithZ(final StackId stackId,
+                                 final Double z)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileQuery = new Document("z", z);
+
+        markLayersChanged(stackId, Collections.singletonList(z));
+
+        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+
+        LOG.debug("removeTilesWithZ: {}.remove({}) deleted {} document(s)",
+                  MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
+    }
+
+    void removeTilesWithIds(final StackId stackId,
+                            final List<String> tileIds)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("tileIds", tileIds);
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileQuery = getTileIdsQuery(tileIds);
+        final Document tileQueryForLog = new Document("tileId",
+                                                      new Document(QueryOperators.IN,
+                                                                   Arrays.asList("list of",
+                                                                                 tileIds.size() + " tileIds")));
+
+        markLayersChanged(stackId, getDistinctZValues(stackId, tileQuery));
+
+        final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
+
+        LOG.debug("removeTilesWithIds: {}.remove({}) deleted {} document(s)",
+                  MongoUtil.fullName(tileCollection), tileQueryForLog.toJson(), removeResult.getDeletedCount());
+    }
+
+    public void removeTile(final StackId stackId,
+                           final String tileId)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("tileId", tileId);
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileQuery = new Document("tileId", tileId);
+
+        markLayersChanged(stackId, getDistinctZValues(stackId, tileQuery));
+
+        final DeleteResult removeResult = tileCollection.deleteOne(tileQuery);
+
+        LOG.debug("removeTile: {}.remove({}) deleted {} document(s)",
+                  MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
     }
 
     /**
@@ -1359,7 +1989,17 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("z", z);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        return getLayerBounds(stackId, getTileSources(stackId), z);
+    }
+
+    private Bounds getLayerBounds(final StackId stackId,
+                                  final List<StackTileSource> sources,
+                                  final Double z)
+            throws IllegalArgumentException {
+
+        final StackTileSource source = StackTileSource.findSourceForZ(sources, z);
+        final MongoCollection<Document> tileCollection =
+                source == null ? getTileCollection(stackId) : source.getTileCollection();
         final Document tileQuery = new Document("z", z);
 
         final Double minX = getBound(tileCollection, tileQuery, "minX", true);
@@ -1463,10 +2103,15 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("fromStackId", fromStackId);
         MongoUtil.validateRequiredParameter("toStackId", toStackId);
 
+        // derived stacks are flattened into the clone
+        final List<StackTileSource> sources = getTileSources(fromStackId);
+
+        invalidateCachedTransformSpecs(toStackId);
+        invalidateCachedTileSources();
+
         if ((skipTransforms == null) || (! skipTransforms)) {
-            final MongoCollection<Document> fromTransformCollection = getTransformCollection(fromStackId);
             final MongoCollection<Document> toTransformCollection = getTransformCollection(toStackId);
-            cloneCollection(fromTransformCollection, toTransformCollection, new Document());
+            cloneTransforms(sources, toTransformCollection, new HashSet<>());
         }
 
         final Document filterQuery = new Document();
@@ -1477,9 +2122,145 @@ public class RenderDao {
             filterQuery.append("z", zFilter);
         }
 
-        final MongoCollection<Document> fromTileCollection = getTileCollection(fromStackId);
         final MongoCollection<Document> toTileCollection = getTileCollection(toStackId);
-        cloneCollection(fromTileCollection, toTileCollection, filterQuery);
+        for (final StackTileSource source : sources) {
+            cloneCollection(source.getTileCollection(), toTileCollection, source.getFilteredQuery(filterQuery));
+        }
+
+        // force full section data derivation for the cloned stack
+        getDirtyZCollection(toStackId).drop();
+    }
+
+    /**
+     * Creates a stack that is derived from the specified (read only) parent stack.
+     * The derived stack initially stores no tiles or transforms of its own - all data is read from the parent.
+     * Tiles for a layer are only copied to the derived stack when that layer is first modified,
+     * so the cost of creating and updating a derived stack is proportional to the number of changed layers.
+     *
+     * @param  parentStackId  parent stack.
+     * @param  toStackId      derived stack.
+     * @param  zValues        if specified (not null or empty), only include these parent layers in the derived stack.
+     *
+     * @throws IllegalArgumentException
+     *   if the derived stack already contains tiles.
+     */
+    public void deriveStack(final StackId parentStackId,
+                            final StackId toStackId,
+                            final List<Double> zValues)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("parentStackId", parentStackId);
+        MongoUtil.validateRequiredParameter("toStackId", toStackId);
+
+        invalidateCachedTransformSpecs(toStackId);
+        invalidateCachedTileSources();
+
+        final MongoCollection<Document> toTileCollection = getTileCollection(toStackId);
+        if (toTileCollection.count() > 0) {
+            throw new IllegalArgumentException(toStackId + " already contains tiles so it cannot be derived from " +
+                                               parentStackId);
+        }
+
+        // excluded parent layers are simply owned (and empty) in the derived stack
+        final Set<Double> ownedZValues = new HashSet<>();
+        if ((zValues != null) && (zValues.size() > 0)) {
+            ownedZValues.addAll(getZValues(parentStackId));
+            ownedZValues.removeAll(zValues);
+        }
+
+        final MongoCollection<Document> ownedZCollection = getOwnedZCollection(toStackId);
+        ownedZCollection.drop();
+        if (ownedZValues.size() > 0) {
+            final List<Document> ownedZDocuments = new ArrayList<>(ownedZValues.size());
+            for (final Double z : ownedZValues) {
+                ownedZDocuments.add(new Document("_id", z));
+            }
+            ownedZCollection.insertMany(ownedZDocuments);
+        }
+
+        // start with the parent's section data so that only changed layers need to be aggregated later
+        getSectionCollection(toStackId).drop();
+        getDirtyZCollection(toStackId).drop();
+        if (MongoUtil.exists(renderDatabase, parentStackId.getSectionCollectionName())) {
+            final Document sectionFilter = new Document();
+            if (ownedZValues.size() > 0) {
+                sectionFilter.append("_id.z", new Document(QueryOperators.NIN, new ArrayList<>(ownedZValues)));
+            }
+            cloneCollection(getSectionCollection(parentStackId), getSectionCollection(toStackId), sectionFilter);
+            markSectionDataDerived(toStackId);
+        }
+
+        LOG.debug("deriveStack: derived {} from {} excluding {} parent layer(s)",
+                  toStackId, parentStackId, ownedZValues.size());
+    }
+
+    /**
+     * Copies all tiles and transforms that a derived stack currently reads from its ancestors
+     * into the derived stack's own collections so that the stack no longer depends upon its ancestors.
+     * The caller is responsible for removing the parent reference from the stack's meta data.
+     *
+     * @param  stackId  derived stack.
+     *
+     * @throws IllegalArgumentException
+     *   if the stack is not derived.
+     */
+    public void materializeStack(final StackId stackId)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        final List<StackTileSource> sources = getTileSources(stackId);
+        if (sources.size() == 1) {
+            throw new IllegalArgumentException(stackId + " is not derived from another stack");
+        }
+
+        final StackTileSource overlaySource = sources.get(0);
+        final List<StackTileSource> ancestorSources = sources.subList(1, sources.size());
+
+        invalidateCachedTransformSpecs(stackId);
+        invalidateCachedTileSources();
+
+        final Set<String> overlayTransformIds =
+                overlaySource.getTransformCollection().distinct("id", String.class).into(new HashSet<>());
+        cloneTransforms(ancestorSources, overlaySource.getTransformCollection(), overlayTransformIds);
+
+        for (final StackTileSource source : ancestorSources) {
+            cloneCollection(source.getTileCollection(),
+                            overlaySource.getTileCollection(),
+                            source.getFilteredQuery(new Document()));
+        }
+
+        final MongoCollection<Document> ownedZCollection = getOwnedZCollection(stackId);
+        ownedZCollection.drop();
+
+        LOG.debug("materializeStack: copied data from {} ancestor stack(s) into {}, dropped {}",
+                  ancestorSources.size(), stackId, MongoUtil.fullName(ownedZCollection));
+    }
+
+    /**
+     * @return list of stacks that have been derived from the specified stack.
+     */
+    public List<StackId> getDerivedStackIds(final StackId parentStackId)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("parentStackId", parentStackId);
+
+        final Document query = new Document(
+                "parentStackId.owner", parentStackId.getOwner()).append(
+                "parentStackId.project", parentStackId.getProject()).append(
+                "parentStackId.stack", parentStackId.getStack());
+
+        final List<StackId> list = new ArrayList<>();
+        try (final MongoCursor<Document> cursor = getStackMetaDataCollection().find(query).iterator()) {
+            while (cursor.hasNext()) {
+                list.add(StackMetaData.fromJson(cursor.next().toJson()).getStackId());
+            }
+        }
+
+        LOG.debug("getDerivedStackIds: returning {} stacks for {}.find({})",
+                  list.size(), MongoUtil.fullName(getStackMetaDataCollection()), query.toJson());
+
+        return list;
     }
 
     /**
@@ -1516,8 +2297,16 @@ public class RenderDao {
             throw new IllegalArgumentException(toStackId + " already exists");
         }
 
+        invalidateCachedTransformSpecs(fromStackId);
+        invalidateCachedTransformSpecs(toStackId);
+        invalidateCachedTileSources();
+
         MongoUtil.renameCollection(renderDatabase,
                                    fromStackId.getSectionCollectionName(), toStackId.getSectionCollectionName());
+        MongoUtil.renameCollection(renderDatabase,
+                                   fromStackId.getDirtyZCollectionName(), toStackId.getDirtyZCollectionName());
+        MongoUtil.renameCollection(renderDatabase,
+                                   fromStackId.getOwnedZCollectionName(), toStackId.getOwnedZCollectionName());
         MongoUtil.renameCollection(renderDatabase,
                                    fromStackId.getTransformCollectionName(), toStackId.getTransformCollectionName());
         MongoUtil.renameCollection(renderDatabase,
@@ -1578,7 +2367,7 @@ public class RenderDao {
             outputStream.write(header.getBytes());
         }
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final List<StackTileSource> sources = getTileSources(stackId);
 
         Document zFilter = null;
         if (minZ != null) {
@@ -1593,11 +2382,24 @@ public class RenderDao {
         // EXAMPLE:   find({"z": {"$gte": 4370.0, "$lte": 4370.0}}, {"tileId": 1, "z": 1, "minX": 1, "minY": 1, "layout": 1, "mipmapLevels": 1}).sort({"z": 1, "minY": 1, "minX": 1})
         // INDEX:     z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1
 
-        final Document tileQuery;
-        if (zFilter == null) {
-            tileQuery = new Document();
+        // all layout formats are ordered by z first, so derived stacks can simply be written one layer at a time
+        final List<MongoCollection<Document>> tileCollections = new ArrayList<>();
+        final List<Document> tileQueries = new ArrayList<>();
+        if (sources.size() == 1) {
+            tileCollections.add(sources.get(0).getTileCollection());
+            if (zFilter == null) {
+                tileQueries.add(new Document());
+            } else {
+                tileQueries.add(new Document("z", zFilter));
+            }
         } else {
-            tileQuery = new Document("z", zFilter);
+            for (final Double z : getZValues(stackId, minZ, maxZ)) {
+                final StackTileSource sourceForZ = StackTileSource.findSourceForZ(sources, z);
+                if (sourceForZ != null) {
+                    tileCollections.add(sourceForZ.getTileCollection());
+                    tileQueries.add(new Document("z", z));
+                }
+            }
         }
 
         final Document tileKeys = new Document();
@@ -1605,29 +2407,35 @@ public class RenderDao {
         final ProcessTimer timer = new ProcessTimer();
         int tileSpecCount = 0;
         final Document orderBy = format.getOrderBy();
-        try (final MongoCursor<Document> cursor =
-                     tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator()) {
+        for (int i = 0; i < tileCollections.size(); i++) {
 
-            Document document;
-            TileSpec tileSpec;
-            String layoutText;
-            while (cursor.hasNext()) {
-                document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
-                layoutText = format.formatTileSpec(tileSpec, stackRequestUri);
-                outputStream.write(layoutText.getBytes());
-                tileSpecCount++;
+            final MongoCollection<Document> tileCollection = tileCollections.get(i);
+            final Document tileQuery = tileQueries.get(i);
 
-                if (timer.hasIntervalPassed()) {
-                    LOG.debug("writeLayoutFileData: data written for {} tiles", tileSpecCount);
-                }
+            try (final MongoCursor<Document> cursor =
+                         tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator()) {
+
+                Document document;
+                TileSpec tileSpec;
+                String layoutText;
+                while (cursor.hasNext()) {
+                    document = cursor.next();
+                    tileSpec = TileSpec.fromJson(document.toJson());
+                    layoutText = format.formatTileSpec(tileSpec, stackRequestUri);
+                    outputStream.write(layoutText.getBytes());
+                    tileSpecCount++;
+
+                    if (timer.hasIntervalPassed()) {
+                        LOG.debug("writeLayoutFileData: data written for {} tiles", tileSpecCount);
+                    }
 
+                }
             }
-        }
 
-        LOG.debug("writeLayoutFileData: wrote data for {} tile spec(s) returned by {}.find({},{}).sort({}), elapsedSeconds={}",
-                  tileSpecCount, MongoUtil.fullName(tileCollection),
-                  tileQuery.toJson(), tileKeys.toJson(), orderBy.toJson(), timer.getElapsedSeconds());
+            LOG.debug("writeLayoutFileData: wrote data for {} total tile spec(s) after {}.find({},{}).sort({}), elapsedSeconds={}",
+                      tileSpecCount, MongoUtil.fullName(tileCollection),
+                      tileQuery.toJson(), tileKeys.toJson(), orderBy.toJson(), timer.getElapsedSeconds());
+        }
     }
 
     /**
@@ -1654,7 +2462,7 @@ public class RenderDao {
         final byte[] commaBytes = ",".getBytes();
         final byte[] singleQuoteBytes = "'".getBytes();
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final List<StackTileSource> sources = getTileSources(stackId);
 
         // EXAMPLE:   find( { "tileId": { $gt: "" } }, {"_id": 0, "tileId": 1} ).sort( { "tileId": 1} )
 
@@ -1668,14 +2476,30 @@ public class RenderDao {
         final ProcessTimer timer = new ProcessTimer();
         int tileSpecCount = 0;
         final Document orderBy = new Document(tileIdKey, 1);
-        try (final MongoCursor<Document> cursor =
-                     tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator()) {
 
-            Document document;
+        final List<MongoCursor<Document>> cursorList = new ArrayList<>(sources.size());
+        try {
+
+            // merge sorted ids from all sources (there is only one source for stacks that are not derived)
+            final PriorityQueue<TileIdCursor> heap = new PriorityQueue<>(sources.size());
+            for (final StackTileSource source : sources) {
+                final MongoCursor<Document> cursor = source.getTileCollection()
+                        .find(source.getFilteredQuery(tileQuery)).projection(tileKeys).sort(orderBy).iterator();
+                cursorList.add(cursor);
+                final TileIdCursor tileIdCursor = new TileIdCursor(cursor, tileIdKey);
+                if (tileIdCursor.advance()) {
+                    heap.add(tileIdCursor);
+                }
+            }
+
+            TileIdCursor tileIdCursor;
             String tileId;
-            while (cursor.hasNext()) {
-                document = cursor.next();
-                tileId = document.getString(tileIdKey);
+            while (heap.size() > 0) {
+                tileIdCursor = heap.poll();
+                tileId = tileIdCursor.current;
+                if (tileIdCursor.advance()) {
+                    heap.add(tileIdCursor);
+                }
 
                 if (tileSpecCount > 0) {
                     outputStream.write(commaBytes);
@@ -1692,13 +2516,18 @@ public class RenderDao {
                 }
 
             }
+
+        } finally {
+            for (final MongoCursor<Document> cursor : cursorList) {
+                cursor.close();
+            }
         }
 
         outputStream.write("]".getBytes());
 
         LOG.debug("writeTileIds: wrote IDs for {} tile spec(s) returned by {}.find({},{}).sort({}), elapsedSeconds={}",
-                  tileSpecCount, MongoUtil.fullName(tileCollection),
-                  tileQuery.toJson(), tileKeys.toJson(), orderBy.toJson(), timer.getElapsedSeconds());
+                  tileSpecCount, sources, tileQuery.toJson(), tileKeys.toJson(), orderBy.toJson(),
+                  timer.getElapsedSeconds());
     }
 
     /**
@@ -1714,8 +2543,6 @@ public class RenderDao {
                                            final Document tileQuery)
             throws IllegalArgumentException, ObjectNotFoundException {
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-
         // EXAMPLE:   find({"z" : 3466.0},{"tileId": 1, "minX": 1, "minY": 1, "maxX": 1, "maxY": 1, "_id": 0})
         // INDEX:     z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1
         final Document tileKeys =
@@ -1724,6 +2551,103 @@ public class RenderDao {
 
         final List<TileBounds> list = new ArrayList<>();
 
+        for (final StackTileSource source : getTileSources(stackId, tileQuery)) {
+            addTileBounds(source.getTileCollection(), source.getFilteredQuery(tileQuery), tileKeys, list);
+        }
+
+        if (list.size() == 0) {
+            throwExceptionIfStackIsMissing(stackId);
+        }
+
+        return list;
+    }
+
+    /**
+     * @return compact snapshot of spatial data for all tiles in the specified stack layer range.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws ObjectNotFoundException
+     *    if the stack cannot be found
+     */
+    public TileBoundsSnapshot getTileBoundsSnapshot(final StackId stackId,
+                                                    final Double minZ,
+                                                    final Double maxZ)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        final Document tileQuery = new Document();
+        if (minZ != null) {
+            if (maxZ != null) {
+                tileQuery.append("z", new Document(QueryOperators.GTE, minZ).append(QueryOperators.LTE, maxZ));
+            } else {
+                tileQuery.append("z", new Document(QueryOperators.GTE, minZ));
+            }
+        } else if (maxZ != null) {
+            tileQuery.append("z", new Document(QueryOperators.LTE, maxZ));
+        }
+
+        final Document tileKeys =
+                new Document("tileId", 1).append("layout.sectionId", 1).append("groupId", 1).append("z", 1).append(
+                        "minX", 1).append("minY", 1).append("maxX", 1).append("maxY", 1).append("_id", 0);
+        final Document orderBy = new Document("z", 1);
+
+        final ProcessTimer timer = new ProcessTimer();
+        final TileBoundsSnapshot.Builder builder = new TileBoundsSnapshot.Builder();
+
+        for (final StackTileSource source : getTileSources(stackId, tileQuery)) {
+
+            final MongoCollection<Document> tileCollection = source.getTileCollection();
+            final Document filteredQuery = source.getFilteredQuery(tileQuery);
+
+            try (final MongoCursor<Document> cursor =
+                         tileCollection.find(filteredQuery).projection(tileKeys).sort(orderBy).iterator()) {
+                Document document;
+                Document layoutDocument;
+                String sectionId;
+                while (cursor.hasNext()) {
+
+                    document = cursor.next();
+
+                    layoutDocument = (Document) document.get("layout");
+                    if (layoutDocument == null) {
+                        sectionId = null;
+                    } else {
+                        sectionId = layoutDocument.getString("sectionId");
+                    }
+
+                    builder.add(document.getString("tileId"),
+                                sectionId,
+                                document.getString("groupId"),
+                                document.getDouble("z"),
+                                document.getDouble("minX"),
+                                document.getDouble("minY"),
+                                document.getDouble("maxX"),
+                                document.getDouble("maxY"));
+                }
+            }
+
+            LOG.debug("getTileBoundsSnapshot: {} tile spec(s) loaded after {}.find({},{}), elapsedSeconds={}",
+                      builder.size(), MongoUtil.fullName(tileCollection), filteredQuery.toJson(), tileKeys.toJson(),
+                      timer.getElapsedSeconds());
+        }
+
+        if (builder.size() == 0) {
+            throwExceptionIfStackIsMissing(stackId);
+        }
+
+        return builder.build();
+    }
+
+    private void addTileBounds(final MongoCollection<Document> tileCollection,
+                               final Document tileQuery,
+                               final Document tileKeys,
+                               final List<TileBounds> list) {
+
+        final int startSize = list.size();
+
         try (final MongoCursor<Document> cursor = tileCollection.find(tileQuery).projection(tileKeys).iterator()) {
             Document document;
             Document layoutDocument;
@@ -1749,46 +2673,56 @@ public class RenderDao {
             }
         }
 
-        if (list.size() == 0) {
-            throwExceptionIfStackIsMissing(stackId);
-        }
-
-        LOG.debug("getTileBounds: found {} tile spec(s) for {}.find({},{})",
-                  list.size(), MongoUtil.fullName(tileCollection), tileQuery.toJson(), tileKeys.toJson());
-
-        return list;
+        LOG.debug("addTileBounds: found {} tile spec(s) for {}.find({},{})",
+                  list.size() - startSize, MongoUtil.fullName(tileCollection), tileQuery.toJson(), tileKeys.toJson());
     }
 
-    private List<TransformSpec> getTransformSpecs(final MongoCollection<Document> transformCollection,
+    /**
+     * @return specs with the specified ids, looking in each of the specified collections (in order)
+     *         until all specs have been found.
+     */
+    private List<TransformSpec> getTransformSpecs(final List<MongoCollection<Document>> transformCollections,
                                                   final Set<String> specIds) {
         final int specCount = specIds.size();
         final List<TransformSpec> transformSpecList = new ArrayList<>(specCount);
-        if (specCount > 0) {
+        final Set<String> missingSpecIds = new HashSet<>(specIds);
+
+        for (final MongoCollection<Document> transformCollection : transformCollections) {
+
+            if (missingSpecIds.size() == 0) {
+                break;
+            }
 
             final Document transformQuery = new Document();
-            transformQuery.put("id", new Document(QueryOperators.IN, specIds));
+            transformQuery.put("id", new Document(QueryOperators.IN, missingSpecIds));
 
             LOG.debug("getTransformSpecs: {}.find({})",
                       MongoUtil.fullName(transformCollection), transformQuery.toJson());
 
+            final List<TransformSpec> foundSpecList = new ArrayList<>();
             try (final MongoCursor<Document> cursor = transformCollection.find(transformQuery).iterator()) {
                 Document document;
                 TransformSpec transformSpec;
                 while (cursor.hasNext()) {
                     document = cursor.next();
                     transformSpec = TransformSpec.fromJson(document.toJson());
-                    transformSpecList.add(transformSpec);
+                    foundSpecList.add(transformSpec);
                 }
             }
 
+            for (final TransformSpec transformSpec : foundSpecList) {
+                missingSpecIds.remove(transformSpec.getId());
+            }
+            transformSpecList.addAll(foundSpecList);
         }
 
         return transformSpecList;
     }
 
-    private void getDataForTransformSpecReferences(final MongoCollection<Document> transformCollection,
+    private void getDataForTransformSpecReferences(final List<MongoCollection<Document>> transformCollections,
                                                    final Set<String> unresolvedSpecIds,
                                                    final Map<String, TransformSpec> resolvedIdToSpecMap,
+                                                   final Map<String, TransformSpec> loadedIdToSpecMap,
                                                    final int callCount) {
 
         if (callCount > 10) {
@@ -1799,7 +2733,7 @@ public class RenderDao {
         final int specCount = unresolvedSpecIds.size();
         if (specCount > 0) {
 
-            final List<TransformSpec> transformSpecList = getTransformSpecs(transformCollection,
+            final List<TransformSpec> transformSpecList = getTransformSpecs(transformCollections,
                                                                             unresolvedSpecIds);
 
             LOG.debug("resolveTransformSpecReferences: on pass {} retrieved {} transform specs",
@@ -1809,6 +2743,7 @@ public class RenderDao {
 
             for (final TransformSpec spec : transformSpecList) {
                 resolvedIdToSpecMap.put(spec.getId(), spec);
+                loadedIdToSpecMap.put(spec.getId(), spec);
                 for (final String id : spec.getUnresolvedIds()) {
                     if ((! resolvedIdToSpecMap.containsKey(id)) && (! unresolvedSpecIds.contains(id))) {
                         newlyUnresolvedSpecIds.add(id);
@@ -1817,9 +2752,10 @@ public class RenderDao {
             }
 
             if (newlyUnresolvedSpecIds.size() > 0) {
-                getDataForTransformSpecReferences(transformCollection,
+                getDataForTransformSpecReferences(transformCollections,
                                                   newlyUnresolvedSpecIds,
                                                   resolvedIdToSpecMap,
+                                                  loadedIdToSpecMap,
                                                   (callCount + 1));
             }
         }
@@ -1828,8 +2764,14 @@ public class RenderDao {
     private Map<String, TransformSpec> addResolvedTileSpecs(final StackId stackId,
                                                             final Document tileQuery,
                                                             final RenderParameters renderParameters) {
+        return addResolvedTileSpecs(getTileSources(stackId), tileQuery, renderParameters);
+    }
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+    private Map<String, TransformSpec> addResolvedTileSpecs(final List<StackTileSource> sources,
+                                                            final Document tileQuery,
+                                                            final RenderParameters renderParameters) {
+
+        final List<StackTileSource> sourcesForQuery = getTileSources(sources, tileQuery);
 
         // EXAMPLE:   find({"z": 4050.0 , "minX": {"$lte": 239850.0} , "minY": {"$lte": 149074.0}, "maxX": {"$gte": -109.0}, "maxY": {"$gte": 370.0}}).sort({"tileId": 1})
         // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
@@ -1837,32 +2779,46 @@ public class RenderDao {
         // order tile specs by tileId to ensure consistent coordinate mapping
         final Document orderBy = new Document("tileId", 1);
 
-        try (final MongoCursor<Document> cursor = tileCollection.find(tileQuery).sort(orderBy).iterator()) {
-            Document document;
-            TileSpec tileSpec;
-            int count = 0;
-            while (cursor.hasNext()) {
-                if (count > 50000) {
-                    throw new IllegalArgumentException("query too broad, over " + count + " tiles match " + tileQuery);
+        final List<TileSpec> tileSpecList = new ArrayList<>();
+        for (final StackTileSource source : sourcesForQuery) {
+
+            final Document sourceQuery = source.getFilteredQuery(tileQuery);
+
+            try (final MongoCursor<Document> cursor =
+                         source.getTileCollection().find(sourceQuery).sort(orderBy).iterator()) {
+                Document document;
+                TileSpec tileSpec;
+                while (cursor.hasNext()) {
+                    if (tileSpecList.size() > 50000) {
+                        throw new IllegalArgumentException("query too broad, over " + tileSpecList.size() +
+                                                           " tiles match " + tileQuery);
+                    }
+                    document = cursor.next();
+                    tileSpec = TileSpec.fromJson(document.toJson());
+                    tileSpecList.add(tileSpec);
                 }
-                document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
-                renderParameters.addTileSpec(tileSpec);
-                count++;
             }
-        }
 
-        if (LOG.isDebugEnabled()) {
-            String queryJson = tileQuery.toJson();
-            if (queryJson.length() > 100) {
-                queryJson = queryJson.substring(0, 95) + " ...}";
+            if (LOG.isDebugEnabled()) {
+                String queryJson = sourceQuery.toJson();
+                if (queryJson.length() > 100) {
+                    queryJson = queryJson.substring(0, 95) + " ...}";
+                }
+                LOG.debug("addResolvedTileSpecs: found {} total tile spec(s) after {}.find({}).sort({})",
+                          tileSpecList.size(), source, queryJson, orderBy.toJson());
             }
-            LOG.debug("addResolvedTileSpecs: found {} tile spec(s) for {}.find({}).sort({})",
-                      renderParameters.numberOfTileSpecs(), MongoUtil.fullName(tileCollection),
-                      queryJson, orderBy.toJson());
         }
 
-        return resolveTransformReferencesForTiles(stackId, renderParameters.getTileSpecs());
+        // tiles from different sources need to be merged into a consistent order
+        if (sourcesForQuery.size() > 1) {
+            tileSpecList.sort(Comparator.comparing(TileSpec::getTileId));
+        }
+
+        for (final TileSpec tileSpec : tileSpecList) {
+            renderParameters.addTileSpec(tileSpec);
+        }
+
+        return resolveTransformReferencesForTiles(sources, renderParameters.getTileSpecs());
     }
 
     private Document lte(final double value) {
@@ -1873,6 +2829,10 @@ public class RenderDao {
         return new Document(QueryOperators.GTE, value);
     }
 
+    private Document getTileIdsQuery(final List<String> tileIds) {
+        return new Document("tileId", new Document(QueryOperators.IN, tileIds));
+    }
+
     private Document getIntersectsBoxQuery(final double z,
                                            final double x,
                                            final double y,
@@ -1955,8 +2915,9 @@ public class RenderDao {
 
         if (unresolvedTransformSpecIds.size() > 0) {
             final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
-            final List<TransformSpec> transformSpecList = getTransformSpecs(transformCollection,
-                                                                            unresolvedTransformSpecIds);
+            final List<TransformSpec> transformSpecList =
+                    getTransformSpecs(getTransformCollections(getTileSources(stackId)),
+                                      unresolvedTransformSpecIds);
             if (transformSpecList.size() != unresolvedTransformSpecIds.size()) {
                 final Set<String> existingIds = new HashSet<>(transformSpecList.size());
                 for (final TransformSpec existingTransformSpec : transformSpecList) {
@@ -2085,6 +3046,33 @@ public class RenderDao {
                   toCount, fromFullName, toFullName);
     }
 
+    /**
+     * Copies transforms from each of the specified sources (in order) to the specified collection,
+     * skipping any transforms that have already been copied or have been overridden.
+     */
+    private void cloneTransforms(final List<StackTileSource> sources,
+                                 final MongoCollection<Document> toTransformCollection,
+                                 final Set<String> existingTransformIds)
+            throws IllegalStateException {
+
+        for (int i = 0; i < sources.size(); i++) {
+
+            final MongoCollection<Document> fromTransformCollection = sources.get(i).getTransformCollection();
+
+            final Document filterQuery = new Document();
+            if (existingTransformIds.size() > 0) {
+                filterQuery.append("id", new Document(QueryOperators.NIN, new ArrayList<>(existingTransformIds)));
+            }
+
+            cloneCollection(fromTransformCollection, toTransformCollection, filterQuery);
+
+            // no need to track the ids for the last source
+            if (i < (sources.size() - 1)) {
+                fromTransformCollection.distinct("id", String.class).into(existingTransformIds);
+            }
+        }
+    }
+
     // Individually upserts each transform spec in the specified list, retrying if a duplicate key error occurs.
     // This should work around concurrent update issues that MongoDB does not currently handle
     // ( see https://jira.mongodb.org/browse/SERVER-14322 ).  If MongoDB ever corrects this issue,
@@ -2094,6 +3082,8 @@ public class RenderDao {
 
         final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
 
+        invalidateCachedTransformSpecs(stackId);
+
         int updateCount = 0;
         int insertCount = 0;
         UpdateResult result;
@@ -2140,6 +3130,14 @@ public class RenderDao {
         return renderDatabase.getCollection(stackId.getTileCollectionName());
     }
 
+    private MongoCollection<Document> getDirtyZCollection(final StackId stackId) {
+        return renderDatabase.getCollection(stackId.getDirtyZCollectionName());
+    }
+
+    private MongoCollection<Document> getOwnedZCollection(final StackId stackId) {
+        return renderDatabase.getCollection(stackId.getOwnedZCollectionName());
+    }
+
     private MongoCollection<Document> getSectionCollection(final StackId stackId) {
         return renderDatabase.getCollection(stackId.getSectionCollectionName());
     }
@@ -2201,8 +3199,73 @@ public class RenderDao {
 
     }
 
+    private static Double getMin(final Double currentMin,
+                                 final Double value) {
+        return (currentMin == null) || ((value != null) && (value < currentMin)) ? value : currentMin;
+    }
+
+    private static Double getMax(final Double currentMax,
+                                 final Double value) {
+        return (currentMax == null) || ((value != null) && (value > currentMax)) ? value : currentMax;
+    }
+
+    private static void addChannelNames(final Object value,
+                                        final Set<String> channelNames) {
+        // aggregated channel names are (nested) lists with one name list per tile
+        if (value instanceof String) {
+            channelNames.add((String) value);
+        } else if (value instanceof List) {
+            for (final Object item : (List<?>) value) {
+                addChannelNames(item, channelNames);
+            }
+        }
+    }
+
+    /**
+     * Tracks the current tileId for one sorted cursor during a merge.
+     */
+    private static class TileIdCursor
+            implements Comparable<TileIdCursor> {
+
+        private final MongoCursor<Document> cursor;
+        private final String tileIdKey;
+        private String current;
+
+        TileIdCursor(final MongoCursor<Document> cursor,
+                     final String tileIdKey) {
+            this.cursor = cursor;
+            this.tileIdKey = tileIdKey;
+            this.current = null;
+        }
+
+        boolean advance() {
+            current = cursor.hasNext() ? cursor.next().getString(tileIdKey) : null;
+            return current != null;
+        }
+
+        @Override
+        public int compareTo(final TileIdCursor that) {
+            return this.current.compareTo(that.current);
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderDao.class);
 
+    /** Identifies the dirty z collection document that indicates section data has been derived for a stack. */
+    private static final String SECTION_DATA_DERIVED_ID = "sectionDataDerived";
+
+    /** Dirty z document key for the id of the most recent change to a layer. */
+    private static final String DIRTY_Z_CHANGE_ID_KEY = "changeId";
+
+    private static final int MAX_DERIVED_STACK_DEPTH = 10;
+
+    /** Stack meta data needed to identify tile sources. */
+    private static final long MAX_CACHED_TILE_SOURCE_LISTS = 1000;
+    private static final long TILE_SOURCE_CACHE_SECONDS = 5;
+
+    private static final Document TILE_SOURCE_META_DATA_KEYS =
+            new Document("parentStackId", 1).append("state", 1).append("lastModifiedTimestamp", 1);
+
     /** Explicitly named index options allow a little more namespace room for stack id components. */
     private static final IndexOptions TRANSFORM_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions TILE_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
@@ -0,0 +1,355 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.alignment.util.ProcessTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.janelia.alignment.spec.stack.StackMetaData.StackState.COMPLETE;
+import static org.janelia.alignment.spec.stack.StackMetaData.StackState.READ_ONLY;
+
+/**
+ * Bounded in-memory cache of resolved tile specs for layers in stacks that cannot change
+ * (stacks in the COMPLETE or READ_ONLY state).
+ *
+ * Box requests for cached layers are answered with an in-memory {@link TileBoundsRTree} search
+ * instead of a database query plus transform reference resolution.
+ * Layers are keyed by stack, z, and the stack's last modified timestamp so that any modification
+ * to a stack (which requires a state change) implicitly invalidates its cached layers.
+ * Cache size is bounded by the estimated number of bytes needed for each layer's tile specs.
+ * Guava divides that bound evenly among its cache segments, so layers that would not comfortably fit
+ * within one segment are never cached (their box requests are always answered by the database).
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedLayerCache {
+
+    private final Cache<LayerKey, ResolvedLayer> cache;
+    private final long maxLayerBytes;
+
+    /**
+     * @param  maxCachedBytes  maximum (estimated) number of bytes to retain in the cache.
+     */
+    public ResolvedLayerCache(final long maxCachedBytes) {
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(CONCURRENCY_LEVEL)
+                .maximumWeight(maxCachedBytes)
+                .weigher((final LayerKey key, final ResolvedLayer layer) -> layer.weight)
+                .recordStats()
+                .build();
+
+        // a layer that fills its segment would be evicted (along with everything else in the segment)
+        // as soon as it is loaded, so only cache layers that leave room for at least one other layer
+        this.maxLayerBytes = maxCachedBytes / CONCURRENCY_LEVEL / 2;
+    }
+
+    /**
+     * @return render parameters for all tiles within the specified box,
+     *         or null if the stack's layers cannot be cached (e.g. because the stack is still being loaded).
+     *         Each returned tile spec is a copy that may be modified by the caller.
+     *
+     * @param  renderDao      source for uncached layer data.
+     * @param  stackMetaData  current meta data for the stack.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     */
+    public RenderParameters getParameters(final RenderDao renderDao,
+                                          final StackMetaData stackMetaData,
+                                          final String groupId,
+                                          final Double x,
+                                          final Double y,
+                                          final Double z,
+                                          final Integer width,
+                                          final Integer height,
+                                          final Double scale)
+            throws IllegalArgumentException {
+
+        if (! isCacheable(stackMetaData)) {
+            return null;
+        }
+
+        MongoUtil.validateRequiredParameter("x", x);
+        MongoUtil.validateRequiredParameter("y", y);
+        MongoUtil.validateRequiredParameter("z", z);
+        MongoUtil.validateRequiredParameter("width", width);
+        MongoUtil.validateRequiredParameter("height", height);
+
+        final LayerKey key = new LayerKey(stackMetaData.getStackId(), z, stackMetaData.getLastModifiedTimestamp());
+
+        final ResolvedLayer layer;
+        try {
+            layer = cache.get(key, () -> loadLayer(renderDao, key, maxLayerBytes));
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("failed to load layer for " + key, e.getCause());
+        }
+
+        RenderParameters renderParameters = null;
+        if (layer.isCached()) {
+            renderParameters = new RenderParameters(null, x, y, width, height, scale);
+            for (final TileSpec tileSpec : layer.findTileSpecsInBox(groupId, x, y, x + width, y + height)) {
+                renderParameters.addTileSpec(tileSpec.getCopyWithSharedTransformSpecs());
+            }
+        }
+
+        return renderParameters;
+    }
+
+    /**
+     * @return spatial index of tile bounds for the specified layer if the layer has already been cached,
+     *         otherwise null.  Layers are never loaded by this method, so callers that only need tile bounds
+     *         can use it without paying for full tile spec resolution.
+     *
+     * @param  stackMetaData  current meta data for the stack.
+     */
+    public TileBoundsRTree getCachedTree(final StackMetaData stackMetaData,
+                                         final Double z) {
+        TileBoundsRTree tree = null;
+        if (isCacheable(stackMetaData)) {
+            final LayerKey key = new LayerKey(stackMetaData.getStackId(), z, stackMetaData.getLastModifiedTimestamp());
+            final ResolvedLayer layer = cache.getIfPresent(key);
+            if (layer != null) {
+                tree = layer.tree;
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Removes all cached layers for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        final List<LayerKey> keysToRemove = new ArrayList<>();
+        for (final LayerKey key : cache.asMap().keySet()) {
+            if (key.stackId.equals(stackId)) {
+                keysToRemove.add(key);
+            }
+        }
+        if (keysToRemove.size() > 0) {
+            cache.invalidateAll(keysToRemove);
+            LOG.debug("invalidateStack: removed {} cached layers for {}", keysToRemove.size(), stackId);
+        }
+    }
+
+    CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfLayers: " + cache.size() + ", stats: " + cache.stats() + '}';
+    }
+
+    /**
+     * Empty or oversized layers are not cached.  Those layers are remembered with a small
+     * uncached marker so that they are not reloaded for every request.
+     */
+    private static ResolvedLayer loadLayer(final RenderDao renderDao,
+                                           final LayerKey key,
+                                           final long maxLayerBytes) {
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        ResolvedLayer layer = UNCACHED_LAYER;
+
+        // every tile needs at least BYTES_PER_TILE, so most oversized layers can be identified without loading them
+        final long tileCount = renderDao.getTileCount(key.stackId, key.z);
+        if ((tileCount * BYTES_PER_TILE) > maxLayerBytes) {
+
+            LOG.info("loadLayer: skipping cache for {}, {} tiles will not fit within {} bytes",
+                     key, tileCount, maxLayerBytes);
+
+        } else {
+
+            try {
+                layer = new ResolvedLayer(key.z, renderDao.getTileSpecs(key.stackId, key.z));
+            } catch (final IllegalArgumentException e) {
+                LOG.info("loadLayer: skipping cache for {}, {}", key, e.getMessage());
+            }
+
+            if (layer.weight > maxLayerBytes) {
+                LOG.info("loadLayer: skipping cache for {}, {} estimated bytes will not fit within {} bytes",
+                         key, layer.weight, maxLayerBytes);
+                layer = UNCACHED_LAYER;
+            }
+        }
+
+        LOG.debug("loadLayer: loaded {} tiles ({} estimated bytes) for {}, elapsedSeconds={}",
+                  layer.size(), layer.weight, key, timer.getElapsedSeconds());
+
+        return layer;
+    }
+
+    private static boolean isCacheable(final StackMetaData stackMetaData) {
+        return (stackMetaData != null) &&
+               (stackMetaData.getLastModifiedTimestamp() != null) &&
+               (COMPLETE.equals(stackMetaData.getState()) || READ_ONLY.equals(stackMetaData.getState()));
+    }
+
+    /**
+     * Identifies a specific version of a layer.
+     */
+    private static class LayerKey {
+
+        private final StackId stackId;
+        private final Double z;
+        private final Date lastModifiedTimestamp;
+
+        LayerKey(final StackId stackId,
+                 final Double z,
+                 final Date lastModifiedTimestamp) {
+            this.stackId = stackId;
+            this.z = z;
+            this.lastModifiedTimestamp = lastModifiedTimestamp;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final LayerKey that = (LayerKey) o;
+            return stackId.equals(that.stackId) &&
+                   z.equals(that.z) &&
+                   lastModifiedTimestamp.equals(that.lastModifiedTimestamp);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stackId, z, lastModifiedTimestamp);
+        }
+
+        @Override
+        public String toString() {
+            return stackId + " z " + z + " (modified " + lastModifiedTimestamp.getTime() + ")";
+        }
+    }
+
+    /**
+     * Resolved tile specs for one layer along with a spatial index of their bounds.
+     */
+    private static class ResolvedLayer {
+
+        private final Map<String, TileSpec> tileIdToSpecMap;
+        private final TileBoundsRTree tree;
+        private final int weight;
+
+        ResolvedLayer(final Double z,
+                      final List<TileSpec> tileSpecs) {
+
+            if (tileSpecs == null) {
+
+                this.tileIdToSpecMap = null;
+                this.tree = null;
+                this.weight = 1;
+
+            } else {
+
+                this.tileIdToSpecMap = new HashMap<>(tileSpecs.size() * 2);
+                final List<TileBounds> tileBoundsList = new ArrayList<>(tileSpecs.size());
+                long estimatedBytes = 0;
+                for (final TileSpec tileSpec : tileSpecs) {
+                    // tiles without bounds are never returned by database box queries, so skip them here too
+                    if (tileSpec.getMinX() != null) {
+                        tileIdToSpecMap.put(tileSpec.getTileId(), tileSpec);
+                        tileBoundsList.add(tileSpec.toTileBounds());
+                        estimatedBytes += estimateBytes(tileSpec);
+                    }
+                }
+                this.tree = new TileBoundsRTree(z, tileBoundsList);
+                this.weight = (int) Math.min(Integer.MAX_VALUE, estimatedBytes);
+            }
+        }
+
+        boolean isCached() {
+            return tree != null;
+        }
+
+        int size() {
+            return tileIdToSpecMap == null ? 0 : tileIdToSpecMap.size();
+        }
+
+        /**
+         * @return tile specs (sorted by tileId) that intersect the specified box using the same
+         *         criteria as {@link RenderDao#getParameters}.
+         */
+        List<TileSpec> findTileSpecsInBox(final String groupId,
+                                          final double x,
+                                          final double y,
+                                          final double lowerRightX,
+                                          final double lowerRightY) {
+
+            // tree uses float precision, so search a slightly larger box and then filter precisely
+            final List<TileBounds> candidates = tree.findTilesInBox(x - 1, y - 1, lowerRightX + 1, lowerRightY + 1);
+
+            final List<TileSpec> tileSpecs = new ArrayList<>(candidates.size());
+            for (final TileBounds tileBounds : candidates) {
+                final TileSpec tileSpec = tileIdToSpecMap.get(tileBounds.getTileId());
+                if ((tileSpec.getMinX() <= lowerRightX) &&
+                    (tileSpec.getMinY() <= lowerRightY) &&
+                    (tileSpec.getMaxX() >= x) &&
+                    (tileSpec.getMaxY() >= y) &&
+                    ((groupId == null) || groupId.equals(tileSpec.getGroupId()))) {
+                    tileSpecs.add(tileSpec);
+                }
+            }
+
+            // order tile specs by tileId to ensure consistent rendering (matches database sort order)
+            Collections.sort(tileSpecs, (o1, o2) -> o1.getTileId().compareTo(o2.getTileId()));
+
+            return tileSpecs;
+        }
+
+        private static long estimateBytes(final TileSpec tileSpec) {
+            long bytes = BYTES_PER_TILE;
+            final ListTransformSpec transforms = tileSpec.getTransforms();
+            if (transforms != null) {
+                final ListTransformSpec flattenedList = new ListTransformSpec();
+                transforms.flatten(flattenedList);
+                for (int i = 0; i < flattenedList.size(); i++) {
+                    final TransformSpec spec = flattenedList.getSpec(i);
+                    bytes += BYTES_PER_TRANSFORM;
+                    if (spec instanceof LeafTransformSpec) {
+                        // java strings use (at least) 2 bytes per character
+                        bytes += 2 * ((LeafTransformSpec) spec).getDataString().length();
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResolvedLayerCache.class);
+
+    private static final ResolvedLayer UNCACHED_LAYER = new ResolvedLayer(null, null);
+
+    private static final int CONCURRENCY_LEVEL = 4;
+
+    // rough estimates of the memory needed for a tile spec (with mipmap levels and bounds) and a transform spec
+    private static final long BYTES_PER_TILE = 2048;
+    private static final long BYTES_PER_TRANSFORM = 256;
+}
@@ -0,0 +1,124 @@
+package org.janelia.render.service.dao;
+
+import com.mongodb.QueryOperators;
+import com.mongodb.client.MongoCollection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.janelia.alignment.spec.stack.StackId;
+
+/**
+ * One of the collections that contribute tiles to a stack.
+ *
+ * Most stacks have exactly one source: their own tile collection.
+ * Derived stacks only store tiles for the layers they own (have changed),
+ * so they also have a source for each ancestor stack that excludes any layers
+ * owned by descendants in the chain.
+ *
+ * @author Eric Trautman
+ */
+class StackTileSource {
+
+    private final StackId stackId;
+    private final MongoCollection<Document> tileCollection;
+    private final MongoCollection<Document> transformCollection;
+    private final Set<Double> ownedZValues;
+    private final Set<Double> excludedZValues;
+    private final String cacheVersion;
+
+    /**
+     * @param  stackId              stack that stores the source data.
+     * @param  tileCollection       collection containing the source tiles.
+     * @param  transformCollection  collection containing the source transforms.
+     * @param  ownedZValues         layers stored by a derived stack or null if the stack stores all of its layers.
+     * @param  excludedZValues      layers that have been overridden by derived stacks.
+     * @param  cacheVersion         identifies the current version of an immutable (COMPLETE or READ_ONLY)
+     *                              stack or null if the stack's data may change.
+     */
+    StackTileSource(final StackId stackId,
+                    final MongoCollection<Document> tileCollection,
+                    final MongoCollection<Document> transformCollection,
+                    final Set<Double> ownedZValues,
+                    final Set<Double> excludedZValues,
+                    final String cacheVersion) {
+        this.stackId = stackId;
+        this.tileCollection = tileCollection;
+        this.transformCollection = transformCollection;
+        this.ownedZValues = ownedZValues;
+        this.excludedZValues = excludedZValues;
+        this.cacheVersion = cacheVersion;
+    }
+
+    StackId getStackId() {
+        return stackId;
+    }
+
+    MongoCollection<Document> getTileCollection() {
+        return tileCollection;
+    }
+
+    MongoCollection<Document> getTransformCollection() {
+        return transformCollection;
+    }
+
+    String getCacheVersion() {
+        return cacheVersion;
+    }
+
+    boolean isFiltered() {
+        return excludedZValues.size() > 0;
+    }
+
+    /**
+     * @return true if this source provides the tiles for the specified layer.
+     */
+    boolean includesZ(final Double z) {
+        return (! excludedZValues.contains(z)) && ((ownedZValues == null) || ownedZValues.contains(z));
+    }
+
+    /**
+     * @return the specified query with an additional constraint that removes
+     *         any tiles in layers that have been overridden by derived stacks.
+     */
+    Document getFilteredQuery(final Document query) {
+        final Document filteredQuery;
+        if (isFiltered() && (! (query.get("z") instanceof Number))) {
+            final Document zFilter = new Document("z",
+                                                  new Document(QueryOperators.NIN,
+                                                               new ArrayList<>(excludedZValues)));
+            if (query.keySet().size() == 0) {
+                filteredQuery = zFilter;
+            } else {
+                filteredQuery = new Document(QueryOperators.AND, Arrays.asList(query, zFilter));
+            }
+        } else {
+            filteredQuery = query;
+        }
+        return filteredQuery;
+    }
+
+    @Override
+    public String toString() {
+        return MongoUtil.fullName(tileCollection) + " excluding " + excludedZValues.size() + " layer(s)";
+    }
+
+    /**
+     * @return the source that provides tiles for the specified layer
+     *         or null if no source includes the layer.
+     */
+    static StackTileSource findSourceForZ(final List<StackTileSource> sources,
+                                          final Double z) {
+        StackTileSource sourceForZ = null;
+        for (final StackTileSource source : sources) {
+            if (source.includesZ(z)) {
+                sourceForZ = source;
+                break;
+            }
+        }
+        return sourceForZ;
+    }
+}
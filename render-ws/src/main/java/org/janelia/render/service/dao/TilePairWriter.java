@@ -0,0 +1,272 @@
+package org.janelia.render.service.dao;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.match.CanvasIdPairStream;
+import org.janelia.alignment.match.OrderedCanvasIdPair;
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.TileBoundsSnapshot;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.alignment.util.ProcessTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Derives neighbor tile pairs for a range of layers and streams them as
+ * {@link org.janelia.alignment.match.RenderableCanvasIdPairs} JSON or as a {@link CanvasIdPairStream}.
+ *
+ * Pairs are derived with the same {@link TileBoundsRTree#getCircleNeighbors} criteria used by the
+ * TilePairClient.  Layers are processed in batches: trees for layers that are already held by the
+ * {@link ResolvedLayerCache} are reused and bounds for all other batch (and neighbor) layers are
+ * loaded with one {@link RenderDao#getTileBoundsSnapshot} query.  Pairs for each layer are sorted
+ * and written before the next layer is processed, so only trees for the current batch are held in memory.
+ *
+ * @author Eric Trautman
+ */
+public class TilePairWriter {
+
+    private final RenderDao renderDao;
+    private final ResolvedLayerCache resolvedLayerCache;
+    private final StackMetaData stackMetaData;
+    private final List<Double> zValues;
+    private final double xyNeighborFactor;
+    private final Double explicitRadius;
+    private final int zNeighborDistance;
+    private final boolean excludeCornerNeighbors;
+    private final boolean excludeCompletelyObscuredTiles;
+    private final boolean excludeSameLayerNeighbors;
+    private final boolean excludeSameSectionNeighbors;
+
+    /**
+     * @param  renderDao           source for tile bounds.
+     * @param  resolvedLayerCache  cache of resolved layers (or null if caching is disabled).
+     * @param  stackMetaData       meta data for the stack containing the tiles.
+     * @param  zValues             sorted z values for all layers to process.
+     */
+    public TilePairWriter(final RenderDao renderDao,
+                          final ResolvedLayerCache resolvedLayerCache,
+                          final StackMetaData stackMetaData,
+                          final List<Double> zValues,
+                          final double xyNeighborFactor,
+                          final Double explicitRadius,
+                          final int zNeighborDistance,
+                          final boolean excludeCornerNeighbors,
+                          final boolean excludeCompletelyObscuredTiles,
+                          final boolean excludeSameLayerNeighbors,
+                          final boolean excludeSameSectionNeighbors) {
+        this.renderDao = renderDao;
+        this.resolvedLayerCache = resolvedLayerCache;
+        this.stackMetaData = stackMetaData;
+        this.zValues = zValues;
+        this.xyNeighborFactor = xyNeighborFactor;
+        this.explicitRadius = explicitRadius;
+        this.zNeighborDistance = zNeighborDistance;
+        this.excludeCornerNeighbors = excludeCornerNeighbors;
+        this.excludeCompletelyObscuredTiles = excludeCompletelyObscuredTiles;
+        this.excludeSameLayerNeighbors = excludeSameLayerNeighbors;
+        this.excludeSameSectionNeighbors = excludeSameSectionNeighbors;
+    }
+
+    /**
+     * Writes pairs as a {@link org.janelia.alignment.match.RenderableCanvasIdPairs} JSON object.
+     *
+     * @return number of pairs written.
+     */
+    public int writeJson(final OutputStream outputStream,
+                         final String renderParametersUrlTemplate)
+            throws IOException {
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(OUTPUT_BUFFER_SIZE + 8192);
+
+        buffer.write("{\n  \"renderParametersUrlTemplate\" : ".getBytes(StandardCharsets.UTF_8));
+        JsonUtils.FAST_MAPPER.writeValue(buffer, renderParametersUrlTemplate);
+        buffer.write(",\n  \"neighborPairs\" : [\n".getBytes(StandardCharsets.UTF_8));
+
+        final int[] count = { 0 };
+        write(pair -> {
+            if (count[0] > 0) {
+                buffer.write(COMMA_WITH_NEW_LINE);
+            }
+            PAIR_WRITER.writeValue(buffer, pair);
+            count[0]++;
+            if (buffer.size() >= OUTPUT_BUFFER_SIZE) {
+                buffer.writeTo(outputStream);
+                buffer.reset();
+            }
+        });
+
+        buffer.write("\n  ]\n}".getBytes(StandardCharsets.UTF_8));
+        buffer.writeTo(outputStream);
+        outputStream.flush();
+
+        return count[0];
+    }
+
+    /**
+     * Writes pairs in {@link CanvasIdPairStream} form.
+     *
+     * @return number of pairs written.
+     */
+    public int writeBinary(final OutputStream outputStream,
+                           final String renderParametersUrlTemplate)
+            throws IOException {
+
+        final CanvasIdPairStream.Writer writer = new CanvasIdPairStream.Writer(outputStream,
+                                                                               renderParametersUrlTemplate);
+        write(writer::write);
+        writer.finish();
+
+        return writer.getPairCount();
+    }
+
+    private void write(final PairConsumer pairConsumer)
+            throws IOException {
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        final Map<Double, TileBoundsRTree> zToTreeMap = new HashMap<>(BATCH_SIZE * 2);
+        int lastTreeIndex = -1;
+        int pairCount = 0;
+
+        for (int fromIndex = 0; fromIndex < zValues.size(); fromIndex += BATCH_SIZE) {
+
+            final int toIndex = Math.min(fromIndex + BATCH_SIZE, zValues.size());
+            final int lastNeighborIndex = getLastNeighborIndex(toIndex - 1);
+
+            // release trees for layers that were completed in prior batches
+            final double batchMinZ = zValues.get(fromIndex);
+            zToTreeMap.keySet().removeIf(treeZ -> treeZ < batchMinZ);
+
+            if (lastNeighborIndex > lastTreeIndex) {
+                loadTrees(lastTreeIndex + 1, lastNeighborIndex, zToTreeMap);
+                lastTreeIndex = lastNeighborIndex;
+            }
+
+            for (int zIndex = fromIndex; zIndex < toIndex; zIndex++) {
+
+                final TileBoundsRTree currentZTree = zToTreeMap.get(zValues.get(zIndex));
+
+                final List<TileBoundsRTree> neighborTreeList = new ArrayList<>();
+                final int lastZNeighborIndex = getLastNeighborIndex(zIndex);
+                for (int neighborZIndex = zIndex + 1; neighborZIndex <= lastZNeighborIndex; neighborZIndex++) {
+                    neighborTreeList.add(zToTreeMap.get(zValues.get(neighborZIndex)));
+                }
+
+                final Set<OrderedCanvasIdPair> currentNeighborPairs =
+                        new TreeSet<>(currentZTree.getCircleNeighbors(currentZTree.getTileBoundsList(),
+                                                                      neighborTreeList,
+                                                                      xyNeighborFactor,
+                                                                      explicitRadius,
+                                                                      excludeCornerNeighbors,
+                                                                      excludeSameLayerNeighbors,
+                                                                      excludeSameSectionNeighbors));
+                for (final OrderedCanvasIdPair pair : currentNeighborPairs) {
+                    pairConsumer.accept(pair);
+                }
+
+                pairCount += currentNeighborPairs.size();
+            }
+
+            if (timer.hasIntervalPassed()) {
+                LOG.debug("write: derived {} pairs for layers with z {} to {}",
+                          pairCount, zValues.get(0), zValues.get(toIndex - 1));
+            }
+        }
+
+        LOG.debug("write: derived {} pairs for {} layers of {}, elapsedSeconds={}",
+                  pairCount, zValues.size(), stackMetaData.getStackId(), timer.getElapsedSeconds());
+    }
+
+    /**
+     * Adds trees for layers with the specified index range to the map,
+     * reusing cached trees when possible and loading bounds for all other layers with one query.
+     */
+    private void loadTrees(final int fromIndex,
+                           final int toIndex,
+                           final Map<Double, TileBoundsRTree> zToTreeMap) {
+
+        final List<Double> uncachedZValues = new ArrayList<>();
+        for (int zIndex = fromIndex; zIndex <= toIndex; zIndex++) {
+            final Double z = zValues.get(zIndex);
+            TileBoundsRTree tree = null;
+            if (resolvedLayerCache != null) {
+                tree = resolvedLayerCache.getCachedTree(stackMetaData, z);
+            }
+            if (tree == null) {
+                uncachedZValues.add(z);
+            } else {
+                zToTreeMap.put(z, getFilteredTree(z, tree));
+            }
+        }
+
+        if (uncachedZValues.size() > 0) {
+
+            final TileBoundsSnapshot snapshot =
+                    renderDao.getTileBoundsSnapshot(stackMetaData.getStackId(),
+                                                    uncachedZValues.get(0),
+                                                    uncachedZValues.get(uncachedZValues.size() - 1));
+
+            for (final Double z : uncachedZValues) {
+                final List<TileBounds> tileBoundsList = snapshot.getTileBoundsForZ(z);
+                // tiles without bounds are never returned by database box queries, so skip them here too
+                tileBoundsList.removeIf(tileBounds -> tileBounds.getMinX() == null);
+                zToTreeMap.put(z, getFilteredTree(z, new TileBoundsRTree(z, tileBoundsList)));
+            }
+        }
+
+        LOG.debug("loadTrees: loaded {} trees ({} uncached) for layers with z {} to {}",
+                  (toIndex - fromIndex + 1), uncachedZValues.size(), zValues.get(fromIndex), zValues.get(toIndex));
+    }
+
+    private TileBoundsRTree getFilteredTree(final Double z,
+                                            final TileBoundsRTree tree) {
+        TileBoundsRTree filteredTree = tree;
+        if (excludeCompletelyObscuredTiles) {
+            final List<TileBounds> visibleTiles = tree.findVisibleTiles();
+            if (visibleTiles.size() < tree.size()) {
+                filteredTree = new TileBoundsRTree(z, visibleTiles);
+            }
+        }
+        return filteredTree;
+    }
+
+    /**
+     * @return index of the last layer that is within zNeighborDistance of the specified layer.
+     */
+    private int getLastNeighborIndex(final int zIndex) {
+        final double idealMaxNeighborZ = zValues.get(zIndex) + zNeighborDistance;
+        int lastNeighborIndex = zIndex;
+        while ((lastNeighborIndex + 1 < zValues.size()) && (zValues.get(lastNeighborIndex + 1) <= idealMaxNeighborZ)) {
+            lastNeighborIndex++;
+        }
+        return lastNeighborIndex;
+    }
+
+    private interface PairConsumer {
+        void accept(OrderedCanvasIdPair pair) throws IOException;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(TilePairWriter.class);
+
+    private static final int BATCH_SIZE = 100;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] COMMA_WITH_NEW_LINE = ",\n".getBytes();
+
+    private static final ObjectWriter PAIR_WRITER =
+            JsonUtils.FAST_MAPPER.writerFor(OrderedCanvasIdPair.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+}
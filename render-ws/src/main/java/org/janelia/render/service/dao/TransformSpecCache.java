@@ -0,0 +1,142 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in-memory cache of fully resolved transform specs for stacks that cannot change
+ * (stacks in the COMPLETE or READ_ONLY state).
+ *
+ * Hierarchical and lens corrected stacks reference the same small set of shared transforms from
+ * (potentially millions of) tiles.  Caching the resolved specs means those shared transforms are
+ * only loaded from the database once and that all tiles resolve references to the same spec instances.
+ * Specs are keyed by stack, the stack's last modified timestamp, and transform id so that
+ * state changes implicitly invalidate cached specs.  Cached specs must not be modified.
+ *
+ * @author Eric Trautman
+ */
+public class TransformSpecCache {
+
+    private final Cache<SpecKey, TransformSpec> cache;
+
+    /**
+     * @param  maxNumberOfSpecs  maximum number of specs to retain in the cache.
+     */
+    public TransformSpecCache(final long maxNumberOfSpecs) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxNumberOfSpecs)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Moves any cached specs with the specified ids to the specified map.
+     *
+     * @param  stackId              stack being read.
+     * @param  stackVersion         identifies the current (immutable) version of the stack.
+     * @param  specIds              ids of specs to find.  Ids for cached specs are removed from this set.
+     * @param  resolvedIdToSpecMap  map to which cached specs are added.
+     */
+    void moveCachedSpecs(final StackId stackId,
+                         final String stackVersion,
+                         final Set<String> specIds,
+                         final Map<String, TransformSpec> resolvedIdToSpecMap) {
+
+        final List<String> cachedIds = new ArrayList<>();
+        TransformSpec spec;
+        for (final String specId : specIds) {
+            spec = cache.getIfPresent(new SpecKey(stackId, stackVersion, specId));
+            if (spec != null) {
+                resolvedIdToSpecMap.put(specId, spec);
+                cachedIds.add(specId);
+            }
+        }
+
+        specIds.removeAll(cachedIds);
+    }
+
+    /**
+     * Adds the specified fully resolved specs to the cache.
+     */
+    void putAll(final StackId stackId,
+                final String stackVersion,
+                final Collection<TransformSpec> resolvedSpecs) {
+        for (final TransformSpec spec : resolvedSpecs) {
+            if (spec.hasId()) {
+                cache.put(new SpecKey(stackId, stackVersion, spec.getId()), spec);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached specs for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        final List<SpecKey> keysToRemove = new ArrayList<>();
+        for (final SpecKey key : cache.asMap().keySet()) {
+            if (key.stackId.equals(stackId)) {
+                keysToRemove.add(key);
+            }
+        }
+        if (keysToRemove.size() > 0) {
+            cache.invalidateAll(keysToRemove);
+            LOG.debug("invalidateStack: removed {} cached specs for {}", keysToRemove.size(), stackId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfSpecs: " + cache.size() + ", stats: " + cache.stats() + '}';
+    }
+
+    /**
+     * Identifies a specific version of a transform spec.
+     */
+    private static class SpecKey {
+
+        private final StackId stackId;
+        private final String stackVersion;
+        private final String specId;
+
+        SpecKey(final StackId stackId,
+                final String stackVersion,
+                final String specId) {
+            this.stackId = stackId;
+            this.stackVersion = stackVersion;
+            this.specId = specId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final SpecKey that = (SpecKey) o;
+            return stackId.equals(that.stackId) &&
+                   stackVersion.equals(that.stackVersion) &&
+                   specId.equals(that.specId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stackId, stackVersion, specId);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransformSpecCache.class);
+}
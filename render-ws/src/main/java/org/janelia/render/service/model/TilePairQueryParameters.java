@@ -0,0 +1,132 @@
+package org.janelia.render.service.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+import javax.ws.rs.QueryParam;
+
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.render.service.dao.RenderDao;
+import org.janelia.render.service.dao.ResolvedLayerCache;
+import org.janelia.render.service.dao.TilePairWriter;
+
+/**
+ * Query parameters for tile pair requests.
+ * Omitted parameters default to the same values used by the TilePairClient.
+ *
+ * @author Eric Trautman
+ */
+public class TilePairQueryParameters
+        implements Serializable {
+
+    @QueryParam("xyNeighborFactor")
+    private final Double xyNeighborFactor;
+
+    @QueryParam("explicitRadius")
+    private final Double explicitRadius;
+
+    @QueryParam("zNeighborDistance")
+    private final Integer zNeighborDistance;
+
+    @QueryParam("excludeCornerNeighbors")
+    private final Boolean excludeCornerNeighbors;
+
+    @QueryParam("excludeCompletelyObscuredTiles")
+    private final Boolean excludeCompletelyObscuredTiles;
+
+    @QueryParam("excludeSameLayerNeighbors")
+    private final Boolean excludeSameLayerNeighbors;
+
+    @QueryParam("excludeSameSectionNeighbors")
+    private final Boolean excludeSameSectionNeighbors;
+
+    public TilePairQueryParameters() {
+        this.xyNeighborFactor = null;
+        this.explicitRadius = null;
+        this.zNeighborDistance = null;
+        this.excludeCornerNeighbors = null;
+        this.excludeCompletelyObscuredTiles = null;
+        this.excludeSameLayerNeighbors = null;
+        this.excludeSameSectionNeighbors = null;
+    }
+
+    @SuppressWarnings("unused") // getter required for Swagger to detect parameter
+    public Double getXyNeighborFactor() {
+        return xyNeighborFactor;
+    }
+
+    @SuppressWarnings("unused") // getter required for Swagger to detect parameter
+    public Double getExplicitRadius() {
+        return explicitRadius;
+    }
+
+    @SuppressWarnings("unused") // getter required for Swagger to detect parameter
+    public Integer getZNeighborDistance() {
+        return zNeighborDistance;
+    }
+
+    @SuppressWarnings("unused") // getter required for Swagger to detect parameter
+    public Boolean getExcludeCornerNeighbors() {
+        return excludeCornerNeighbors;
+    }
+
+    @SuppressWarnings("unused") // getter required for Swagger to detect parameter
+    public Boolean getExcludeCompletelyObscuredTiles() {
+        return excludeCompletelyObscuredTiles;
+    }
+
+    @SuppressWarnings("unused") // getter required for Swagger to detect parameter
+    public Boolean getExcludeSameLayerNeighbors() {
+        return excludeSameLayerNeighbors;
+    }
+
+    @SuppressWarnings("unused") // getter required for Swagger to detect parameter
+    public Boolean getExcludeSameSectionNeighbors() {
+        return excludeSameSectionNeighbors;
+    }
+
+    /**
+     * @return writer for pairs in the specified layers using these parameters (or their defaults).
+     *
+     * @throws IllegalArgumentException
+     *   if any parameter values are invalid.
+     */
+    public TilePairWriter buildWriter(final RenderDao renderDao,
+                                      final ResolvedLayerCache resolvedLayerCache,
+                                      final StackMetaData stackMetaData,
+                                      final List<Double> zValues)
+            throws IllegalArgumentException {
+
+        final int distance = zNeighborDistance == null ? DEFAULT_Z_NEIGHBOR_DISTANCE : zNeighborDistance;
+        if (distance < 0) {
+            throw new IllegalArgumentException("zNeighborDistance must not be negative");
+        }
+
+        return new TilePairWriter(renderDao,
+                                  resolvedLayerCache,
+                                  stackMetaData,
+                                  zValues,
+                                  xyNeighborFactor == null ? DEFAULT_XY_NEIGHBOR_FACTOR : xyNeighborFactor,
+                                  explicitRadius,
+                                  distance,
+                                  excludeCornerNeighbors == null || excludeCornerNeighbors,
+                                  excludeCompletelyObscuredTiles == null || excludeCompletelyObscuredTiles,
+                                  excludeSameLayerNeighbors != null && excludeSameLayerNeighbors,
+                                  excludeSameSectionNeighbors != null && excludeSameSectionNeighbors);
+    }
+
+    @Override
+    public String toString() {
+        return "{xyNeighborFactor: " + xyNeighborFactor +
+               ", explicitRadius: " + explicitRadius +
+               ", zNeighborDistance: " + zNeighborDistance +
+               ", excludeCornerNeighbors: " + excludeCornerNeighbors +
+               ", excludeCompletelyObscuredTiles: " + excludeCompletelyObscuredTiles +
+               ", excludeSameLayerNeighbors: " + excludeSameLayerNeighbors +
+               ", excludeSameSectionNeighbors: " + excludeSameSectionNeighbors +
+               '}';
+    }
+
+    private static final double DEFAULT_XY_NEIGHBOR_FACTOR = 0.9;
+    private static final int DEFAULT_Z_NEIGHBOR_DISTANCE = 2;
+}
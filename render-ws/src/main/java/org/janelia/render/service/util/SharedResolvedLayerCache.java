@@ -0,0 +1,59 @@
+package org.janelia.render.service.util;
+
+import org.janelia.render.service.dao.ResolvedLayerCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The resolved layer cache to be shared across all render web service requests.
+ *
+ * @author Eric Trautman
+ */
+public class SharedResolvedLayerCache {
+
+    private static ResolvedLayerCache sharedCache;
+
+    /**
+     * @return the shared cache or null if caching has been disabled
+     *         (by setting webService.maxResolvedLayerCacheMb to 0).
+     */
+    public static ResolvedLayerCache getInstance() {
+        if (! isInitialized) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache() {
+        if (! isInitialized) {
+
+            long maxCachedBytes = DEFAULT_MAX_CACHED_BYTES;
+
+            final Integer maxMb = RenderServerProperties.getProperties().getInteger("webService.maxResolvedLayerCacheMb");
+
+            if (maxMb == null) {
+                final long maxMemory = Runtime.getRuntime().maxMemory();
+                if (maxMemory < Long.MAX_VALUE) {
+                    maxCachedBytes = maxMemory / 8;
+                }
+            } else {
+                maxCachedBytes = maxMb * 1_000_000L;
+            }
+
+            if (maxCachedBytes > 0) {
+                sharedCache = new ResolvedLayerCache(maxCachedBytes);
+                LOG.info("setSharedCache: exit, created cache with maxCachedBytes {}", maxCachedBytes);
+            } else {
+                LOG.info("setSharedCache: exit, resolved layer caching is disabled");
+            }
+
+            isInitialized = true;
+        }
+    }
+
+    private static volatile boolean isInitialized = false;
+
+    private static final long DEFAULT_MAX_CACHED_BYTES = 1_000_000_000L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedResolvedLayerCache.class);
+}
@@ -0,0 +1,53 @@
+package org.janelia.render.service.util;
+
+import org.janelia.render.service.dao.TransformSpecCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The transform spec cache to be shared across all render web service requests.
+ *
+ * @author Eric Trautman
+ */
+public class SharedTransformSpecCache {
+
+    private static TransformSpecCache sharedCache;
+
+    /**
+     * @return the shared cache or null if caching has been disabled
+     *         (by setting webService.maxCachedTransformSpecs to 0).
+     */
+    public static TransformSpecCache getInstance() {
+        if (! isInitialized) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache() {
+        if (! isInitialized) {
+
+            long maxNumberOfSpecs = DEFAULT_MAX_NUMBER_OF_SPECS;
+
+            final Integer maxSpecs = RenderServerProperties.getProperties().getInteger("webService.maxCachedTransformSpecs");
+            if (maxSpecs != null) {
+                maxNumberOfSpecs = maxSpecs;
+            }
+
+            if (maxNumberOfSpecs > 0) {
+                sharedCache = new TransformSpecCache(maxNumberOfSpecs);
+                LOG.info("setSharedCache: exit, created cache with maxNumberOfSpecs {}", maxNumberOfSpecs);
+            } else {
+                LOG.info("setSharedCache: exit, transform spec caching is disabled");
+            }
+
+            isInitialized = true;
+        }
+    }
+
+    private static volatile boolean isInitialized = false;
+
+    private static final long DEFAULT_MAX_NUMBER_OF_SPECS = 100_000L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedTransformSpecCache.class);
+}
@@ -42,6 +42,7 @@ VIEW_MATCH_COLLECTION=$(stripQuotes ${VIEW_MATCH_COLLECTION})
 
 WEB_SERVICE_MAX_TILE_SPECS_TO_RENDER=$(stripQuotes ${WEB_SERVICE_MAX_TILE_SPECS_TO_RENDER})
 WEB_SERVICE_MAX_IMAGE_PROCESSOR_GB=$(stripQuotes ${WEB_SERVICE_MAX_IMAGE_PROCESSOR_GB})
+WEB_SERVICE_MAX_RESOLVED_LAYER_MB=$(stripQuotes ${WEB_SERVICE_MAX_RESOLVED_LAYER_MB})
 
 # --------------------------------------------------------------
 # Mongo config
@@ -157,4 +158,5 @@ sed -i """
   s@view.renderStackProject=.*@view.renderStackProject=${VIEW_RENDER_STACK_PROJECT}@
   s@webService.maxTileSpecsToRender=.*@webService.maxTileSpecsToRender=${WEB_SERVICE_MAX_TILE_SPECS_TO_RENDER}@
   s@webService.maxImageProcessorCacheGb=.*@webService.maxImageProcessorCacheGb=${WEB_SERVICE_MAX_IMAGE_PROCESSOR_GB}@
+  s@webService.maxResolvedLayerCacheMb=.*@webService.maxResolvedLayerCacheMb=${WEB_SERVICE_MAX_RESOLVED_LAYER_MB}@
 """ "${JETTY_BASE}/resources/render-server.properties"
\ No newline at end of file
@@ -262,6 +262,7 @@ public class StackMetaDataServiceTest {
                                   null,
                                   null,
                                   null,
+                                  null,
                                   getUriInfo(),
                                   clonedStackVersion);
 
@@ -308,6 +309,7 @@ public class StackMetaDataServiceTest {
                                   null,
                                   null,
                                   null,
+                                  null,
                                   getUriInfo(),
                                   clonedStackVersion);
 
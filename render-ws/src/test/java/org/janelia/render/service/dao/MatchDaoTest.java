@@ -2,14 +2,20 @@ package org.janelia.render.service.dao;
 
 import com.mongodb.client.MongoCollection;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.bson.Document;
 import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.MatchBatchResult;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
+import org.janelia.alignment.match.MatchGraphEdge;
+import org.janelia.alignment.match.MatchGraphStatistics;
 import org.janelia.alignment.match.MatchTrial;
 import org.janelia.alignment.match.Matches;
 import org.junit.After;
@@ -148,6 +154,227 @@ public class MatchDaoTest {
         }
     }
 
+    @Test
+    public void testSaveMatchStream() throws Exception {
+
+        final String pId = "stream.p";
+
+        final StringBuilder ndJson = new StringBuilder();
+        for (int i = 1; i < 6; i++) {
+            final CanvasMatches canvasMatches =
+                    new CanvasMatches(groupId,
+                                      pId,
+                                      groupId + i,
+                                      "stream.q",
+                                      new Matches(new double[][]{{1, 2, 3}, {4, 5, 6},},
+                                                  new double[][]{{11, 12, 13}, {14, 15, 16}},
+                                                  new double[]{7, 8, 9}));
+            ndJson.append(canvasMatches.toJson().replace('\n', ' ')).append('\n');
+        }
+
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(ndJson.toString().getBytes());
+
+        final List<MatchBatchResult> batchResultList = dao.saveMatches(collectionId, inputStream, 2);
+
+        Assert.assertEquals("invalid number of batches written", 3, batchResultList.size());
+
+        int pairCount = 0;
+        int insertedCount = 0;
+        for (final MatchBatchResult batchResult : batchResultList) {
+            pairCount += batchResult.getPairCount();
+            insertedCount += batchResult.getInsertedCount();
+        }
+
+        Assert.assertEquals("invalid number of pairs written", 5, pairCount);
+        Assert.assertEquals("invalid number of pairs inserted", 5, insertedCount);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+
+        dao.writeMatchesOutsideGroup(collectionId, null, groupId, false, outputStream);
+
+        final List<CanvasMatches> canvasMatchesList = getListFromStream(outputStream);
+
+        int streamPCount = 0;
+        for (final CanvasMatches canvasMatches : canvasMatchesList) {
+            if (pId.equals(canvasMatches.getpId())) {
+                streamPCount++;
+            }
+        }
+
+        Assert.assertEquals("invalid number of streamed matches saved", 5, streamPCount);
+    }
+
+    @Test
+    public void testMatchGraphEdges() throws Exception {
+
+        final List<CanvasMatches> canvasMatchesList = new ArrayList<>();
+        canvasMatchesList.add(new CanvasMatches("2.0", "tile2", "1.0", "tile1",
+                                                new Matches(new double[][]{{1, 2, 3}, {4, 5, 6},},
+                                                            new double[][]{{11, 12, 13}, {14, 15, 16}},
+                                                            new double[]{7, 8, 9})));
+
+        // saving to a collection populated before the index existed should not make the index usable
+        dao.saveMatches(collectionId, canvasMatchesList);
+
+        try {
+            dao.getMatchGraphEdges(collectionId, null, null, null);
+            Assert.fail("edges should not be returned from an incomplete index");
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue("exception should explain why edges were not returned",
+                              e.getMessage().contains("incomplete"));
+        }
+
+        Assert.assertEquals("invalid number of edges after initial build",
+                            12, dao.rebuildMatchGraphEdges(collectionId));
+
+        List<MatchGraphEdge> edgeList = dao.getMatchGraphEdges(collectionId, null, null, null);
+
+        Assert.assertEquals("invalid number of edges returned after initial build", 12, edgeList.size());
+
+        dao.removeMatchesOutsideGroup(collectionId, groupId);
+
+        edgeList = dao.getMatchGraphEdges(collectionId, null, null, null);
+
+        Assert.assertEquals("invalid number of edges after removal", 9, edgeList.size());
+
+        dao.saveMatches(collectionId, canvasMatchesList);
+
+        edgeList = dao.getMatchGraphEdges(collectionId, null, null, null);
+
+        Assert.assertEquals("invalid number of edges after save", 10, edgeList.size());
+
+        final long expectedGroupEdgeCount = edgeList.stream()
+                .filter(e -> groupId.equals(e.getpGroupId()) || groupId.equals(e.getqGroupId()))
+                .count();
+
+        edgeList = dao.getMatchGraphEdges(collectionId, groupId, null, null, null);
+
+        Assert.assertTrue("test data should include edges for " + groupId, expectedGroupEdgeCount > 0);
+        Assert.assertEquals("invalid number of edges for " + groupId, expectedGroupEdgeCount, edgeList.size());
+
+        edgeList = dao.getMatchGraphEdges(collectionId, 1.0, 2.0, null);
+
+        Assert.assertEquals("invalid number of edges within z range", 1, edgeList.size());
+
+        final MatchGraphEdge edge = edgeList.get(0);
+        Assert.assertEquals("edge should be normalized", "1.0", edge.getpGroupId());
+        Assert.assertEquals("invalid edge match count", 3, edge.getMatchCount().intValue());
+
+        edgeList = dao.getMatchGraphEdges(collectionId, 1.0, 2.0, 4);
+
+        Assert.assertEquals("invalid number of edges with minMatchCount", 0, edgeList.size());
+
+        final MatchGraphStatistics statistics = dao.getMatchGraph(collectionId, null, null, null).getStatistics();
+
+        Assert.assertEquals("invalid edge count in statistics", 10, statistics.getEdgeCount().intValue());
+
+        Assert.assertEquals("invalid number of edges after rebuild",
+                            10, dao.rebuildMatchGraphEdges(collectionId));
+
+        // simulate a match write that failed before its edges were written
+        dao.startMatchGraphEdgeWrite(collectionId, dao.getExistingCollection(collectionId));
+
+        try {
+            dao.getMatchGraphEdges(collectionId, null, null, null);
+            Assert.fail("edges should not be returned after a failed write");
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue("exception should explain why edges were not returned",
+                              e.getMessage().contains("incomplete"));
+        }
+
+        dao.rebuildMatchGraphEdges(collectionId);
+
+        edgeList = dao.getMatchGraphEdges(collectionId, null, null, null);
+
+        Assert.assertEquals("invalid number of edges after rebuilding failed write", 10, edgeList.size());
+    }
+
+    @Test
+    public void testWriteMergedMatches() throws Exception {
+
+        final MatchCollectionId collectionIdA = new MatchCollectionId("testOwner", "mergeA");
+        final MatchCollectionId collectionIdB = new MatchCollectionId("testOwner", "mergeB");
+        final MatchCollectionId emptyCollectionId = new MatchCollectionId("testOwner", "mergeEmpty");
+
+        saveMergeTestMatches(collectionIdA, emptyCollectionId);
+
+        final List<MatchCollectionId> mergeCollectionIdList = new ArrayList<>();
+        mergeCollectionIdList.add(emptyCollectionId);
+        mergeCollectionIdList.add(collectionIdB);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+
+        dao.writeMatchesOutsideGroup(collectionIdA, mergeCollectionIdList, "g1", false, outputStream);
+
+        final String json = outputStream.toString();
+        Assert.assertTrue("merged matches should be pretty printed like CanvasMatches.toJson, json=" + json,
+                          json.contains("\"pGroupId\" : \"g0\""));
+
+        final List<CanvasMatches> canvasMatchesList = CanvasMatches.fromJsonArray(json);
+
+        // sorted by pGroupId, qGroupId, pId, qId with duplicate pairs combined
+        final String[] expectedPairs = {
+                "g0 t0.1 g1 t1.1 3",
+                "g0 t0.2 g1 t1.1 2",
+                "g1 t1.1 g2 t2.1 1",
+                "g1 t1.1 g2 t2.2 2",
+                "g1 t1.2 g2 t2.1 4",
+                "g1 t1.1 g3 t3.1 1"
+        };
+
+        Assert.assertEquals("invalid number of merged matches returned, matches=" + canvasMatchesList,
+                            expectedPairs.length, canvasMatchesList.size());
+
+        for (int i = 0; i < expectedPairs.length; i++) {
+            final CanvasMatches canvasMatches = canvasMatchesList.get(i);
+            final String actualPair = canvasMatches.getpGroupId() + " " + canvasMatches.getpId() + " " +
+                                      canvasMatches.getqGroupId() + " " + canvasMatches.getqId() + " " +
+                                      canvasMatches.size();
+            Assert.assertEquals("invalid merged pair " + i, expectedPairs[i], actualPair);
+        }
+
+        outputStream.reset();
+
+        dao.writeMatchesOutsideGroup(collectionIdA, mergeCollectionIdList, "g1", true, outputStream);
+
+        Assert.assertEquals("invalid number of merged matches returned without details",
+                            expectedPairs.length, getListFromStream(outputStream).size());
+
+        outputStream.reset();
+
+        dao.writeMatchesOutsideGroup(emptyCollectionId,
+                                     Collections.singletonList(collectionIdB),
+                                     "g3",
+                                     false,
+                                     outputStream);
+
+        Assert.assertEquals("invalid number of matches returned when merging with empty collection",
+                            1, getListFromStream(outputStream).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteMergedMatchesWithReadFailure() throws Exception {
+
+        final MatchCollectionId collectionIdA = new MatchCollectionId("testOwner", "mergeA");
+        final MatchCollectionId collectionIdB = new MatchCollectionId("testOwner", "mergeB");
+        final MatchCollectionId emptyCollectionId = new MatchCollectionId("testOwner", "mergeEmpty");
+
+        saveMergeTestMatches(collectionIdA, emptyCollectionId);
+
+        // store a document that cannot be decoded
+        dao.getExistingCollection(collectionIdB).insertOne(new Document("pGroupId", "g1").append(
+                "pId", "t1.9").append(
+                "qGroupId", "g2").append(
+                "qId", "t2.9").append(
+                "matches", "invalid"));
+
+        dao.writeMatchesOutsideGroup(collectionIdA,
+                                     Collections.singletonList(collectionIdB),
+                                     "g1",
+                                     false,
+                                     new ByteArrayOutputStream(1024));
+    }
+
     @Test
     public void testUpdateMatches() throws Exception {
 
@@ -354,6 +581,49 @@ public class MatchDaoTest {
         return metaData;
     }
 
+    private void saveMergeTestMatches(final MatchCollectionId collectionIdA,
+                                      final MatchCollectionId emptyCollectionId)
+            throws Exception {
+
+        final List<CanvasMatches> listA = new ArrayList<>();
+        listA.add(buildMatches("g0", "t0.1", "g1", "t1.1", 1));
+        listA.add(buildMatches("g1", "t1.1", "g2", "t2.1", 1));
+        listA.add(buildMatches("g1", "t1.2", "g2", "t2.1", 1));
+        listA.add(buildMatches("g5", "t5.1", "g6", "t6.1", 1)); // excluded by query
+        dao.saveMatches(collectionIdA, listA);
+
+        final List<CanvasMatches> listB = new ArrayList<>();
+        listB.add(buildMatches("g0", "t0.1", "g1", "t1.1", 2)); // same pair as A
+        listB.add(buildMatches("g0", "t0.2", "g1", "t1.1", 2)); // different pId
+        listB.add(buildMatches("g1", "t1.1", "g2", "t2.2", 2)); // different qId
+        listB.add(buildMatches("g1", "t1.1", "g3", "t3.1", 1)); // different qGroupId
+        listB.add(buildMatches("g1", "t1.2", "g2", "t2.1", 3)); // same pair as A
+        dao.saveMatches(new MatchCollectionId("testOwner", "mergeB"), listB);
+
+        // leave an existing collection without any matches
+        dao.saveMatches(emptyCollectionId,
+                        Collections.singletonList(buildMatches("g8", "t8.1", "g9", "t9.1", 1)));
+        dao.removeMatchesWithPGroup(emptyCollectionId, "g8");
+    }
+
+    private CanvasMatches buildMatches(final String pGroupId,
+                                       final String pId,
+                                       final String qGroupId,
+                                       final String qId,
+                                       final int numberOfMatches) {
+        final double[][] p = new double[2][numberOfMatches];
+        final double[][] q = new double[2][numberOfMatches];
+        final double[] w = new double[numberOfMatches];
+        for (int i = 0; i < numberOfMatches; i++) {
+            p[0][i] = i;
+            p[1][i] = i;
+            q[0][i] = i + 10;
+            q[1][i] = i + 10;
+            w[i] = 1.0;
+        }
+        return new CanvasMatches(pGroupId, pId, qGroupId, qId, new Matches(p, q, w));
+    }
+
     private List<CanvasMatches> getListFromStream(final ByteArrayOutputStream outputStream) {
         final String json = outputStream.toString();
         return CanvasMatches.fromJsonArray(json);
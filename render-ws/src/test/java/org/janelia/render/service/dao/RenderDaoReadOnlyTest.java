@@ -161,6 +161,42 @@ public class RenderDaoReadOnlyTest {
 
     }
 
+    @Test
+    public void testResolvedLayerCache() {
+
+        final Double x = 1000.0;
+        final Double y = 3000.0;
+        final Double z = 3903.0;
+        final Integer width = 5000;
+        final Integer height = 2000;
+        final Double scale = 0.5;
+
+        final StackMetaData stackMetaData = dao.getStackMetaData(stackId);
+        final int expectedTileCount =
+                dao.getParameters(stackId, null, x, y, z, width, height, scale).numberOfTileSpecs();
+
+        final ResolvedLayerCache cache = new ResolvedLayerCache(100_000_000L);
+
+        RenderParameters parameters =
+                cache.getParameters(dao, stackMetaData, null, x, y, z, width, height, scale);
+
+        Assert.assertNotNull("parameters should be returned for cached layer", parameters);
+        Assert.assertEquals("invalid number of tiles for cached layer",
+                            expectedTileCount, parameters.numberOfTileSpecs());
+
+        // each cache segment only gets a quarter of this budget, so the layer is too heavy to cache
+        final ResolvedLayerCache smallCache = new ResolvedLayerCache(expectedTileCount * 2048L);
+
+        for (int i = 0; i < 3; i++) {
+            parameters = smallCache.getParameters(dao, stackMetaData, null, x, y, z, width, height, scale);
+            Assert.assertNull("parameters should not be returned for oversized layer (request " + i + ")",
+                              parameters);
+        }
+
+        Assert.assertEquals("oversized layer should only be checked once",
+                            1, smallCache.getStats().loadCount());
+    }
+
     @Test
     public void testGetTileSpec() {
         final String existingTileId = "134";
@@ -3,11 +3,13 @@ package org.janelia.render.service.dao;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
 import mpicbg.trakem2.transform.AffineModel2D;
 
+import org.bson.Document;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.LayoutData;
 import org.janelia.alignment.spec.LeafTransformSpec;
@@ -180,6 +182,75 @@ public class RenderDaoTest {
         Assert.assertEquals("invalid z value after clone filter", newZValue, zValues.get(0));
     }
 
+    @Test
+    public void testDeriveStack() throws Exception {
+
+        final StackMetaData parentStackMetaData = dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+        final StackId derivedStackId = new StackId(stackId.getOwner(), stackId.getProject(), "derivedStack");
+
+        dao.deriveStack(stackId, derivedStackId, null);
+
+        StackMetaData derivedStackMetaData = new StackMetaData(derivedStackId,
+                                                               parentStackMetaData.getCurrentVersion());
+        derivedStackMetaData.setParentStackId(stackId);
+        dao.saveStackMetaData(derivedStackMetaData);
+
+        Assert.assertEquals("invalid number of z values for derived stack",
+                            2, dao.getZValues(derivedStackId).size());
+        Assert.assertEquals("invalid number of tiles for derived stack layer",
+                            2, dao.getTileBoundsForZ(derivedStackId, 3903.1).size());
+
+        dao.removeTilesWithZ(derivedStackId, 3903.1);
+
+        Assert.assertEquals("invalid number of z values for derived stack after layer removal",
+                            1, dao.getZValues(derivedStackId).size());
+        Assert.assertEquals("parent stack should not be changed by derived stack layer removal",
+                            2, dao.getZValues(stackId).size());
+
+        derivedStackMetaData = dao.ensureIndexesAndDeriveStats(derivedStackMetaData);
+        final StackStats derivedStats = derivedStackMetaData.getStats();
+        Assert.assertEquals("invalid tile count for derived stack", new Long(12), derivedStats.getTileCount());
+        Assert.assertEquals("invalid transform count for derived stack",
+                            parentStackMetaData.getStats().getTransformCount(), derivedStats.getTransformCount());
+
+        dao.materializeStack(derivedStackId);
+        derivedStackMetaData.setParentStackId(null);
+        dao.saveStackMetaData(derivedStackMetaData);
+
+        Assert.assertEquals("invalid number of tiles for materialized stack layer",
+                            12, dao.getTileBoundsForZ(derivedStackId, 3903.0).size());
+        Assert.assertEquals("invalid number of z values for materialized stack",
+                            1, dao.getZValues(derivedStackId).size());
+    }
+
+    @Test
+    public void testCachedTileSourcesForDerivedStack() throws Exception {
+
+        final StackMetaData parentStackMetaData = dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+        final StackId derivedStackId = new StackId(stackId.getOwner(), stackId.getProject(), "derivedStack");
+
+        dao.deriveStack(stackId, derivedStackId, null);
+
+        StackMetaData derivedStackMetaData = new StackMetaData(derivedStackId,
+                                                               parentStackMetaData.getCurrentVersion());
+        derivedStackMetaData.setParentStackId(stackId);
+        dao.saveStackMetaData(derivedStackMetaData);
+
+        // completing the derived stack allows its tile sources to be cached
+        derivedStackMetaData = dao.ensureIndexesAndDeriveStats(derivedStackMetaData);
+
+        Assert.assertEquals("invalid number of z values for complete derived stack",
+                            2, dao.getZValues(derivedStackId).size());
+
+        derivedStackMetaData.setState(LOADING);
+        dao.saveStackMetaData(derivedStackMetaData);
+
+        dao.removeTilesWithZ(derivedStackId, 3903.1);
+
+        Assert.assertEquals("removed layer should not be read from previously cached ancestor sources",
+                            1, dao.getZValues(derivedStackId).size());
+    }
+
     @Test
     public void testSaveStackMetaDataAndDeriveStats() throws Exception {
 
@@ -228,6 +299,82 @@ public class RenderDaoTest {
         Assert.assertEquals("invalid number of sections found for filtered list", 2, filteredList.size());
     }
 
+    @Test
+    public void testIncrementalStatsDerivation() throws Exception {
+
+        StackMetaData stackMetaData = dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+
+        StackStats stats = stackMetaData.getStats();
+        Assert.assertEquals("invalid tile count after first derivation", new Long(14), stats.getTileCount());
+        Assert.assertEquals("invalid max z after first derivation", 3903.1, stats.getStackBounds().getMaxZ(), 0.01);
+
+        dao.removeTilesWithZ(stackId, 3903.1);
+
+        stackMetaData = dao.ensureIndexesAndDeriveStats(stackMetaData);
+
+        stats = stackMetaData.getStats();
+        Assert.assertEquals("invalid tile count after layer removal", new Long(12), stats.getTileCount());
+        Assert.assertEquals("invalid section count after layer removal", new Long(1), stats.getSectionCount());
+        Assert.assertEquals("invalid max z after layer removal", 3903.0, stats.getStackBounds().getMaxZ(), 0.01);
+
+        final List<SectionData> list = dao.getSectionData(stackId, null, null);
+        for (final SectionData sectionData : list) {
+            Assert.assertEquals("section data for removed layer remains", 3903.0, sectionData.getZ(), 0.01);
+        }
+    }
+
+    @Test
+    public void testLayerChangedDuringStatsDerivation() throws Exception {
+
+        dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+
+        dao.removeTilesWithZ(stackId, 3903.1);
+
+        final List<Document> dirtyZSnapshot = dao.getDirtyZDocuments(stackId);
+
+        // simulate a layer change that occurs after the snapshot is taken but before derivation completes
+        dao.addDirtyZValues(stackId, Collections.singletonList(3903.1));
+
+        dao.clearDirtyZValues(stackId, dirtyZSnapshot);
+
+        final List<Object> remainingIds = new ArrayList<>();
+        dao.getDirtyZDocuments(stackId).forEach(document -> remainingIds.add(document.get("_id")));
+
+        Assert.assertTrue("layer changed during derivation should remain marked, remaining ids are " + remainingIds,
+                          remainingIds.contains(3903.1));
+    }
+
+    @Test
+    public void testIncrementalStatsDerivationForDerivedStack() throws Exception {
+
+        final StackMetaData parentStackMetaData = dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+        final StackId derivedStackId = new StackId(stackId.getOwner(), stackId.getProject(), "derivedStack");
+
+        dao.deriveStack(stackId, derivedStackId, null);
+
+        StackMetaData derivedStackMetaData = new StackMetaData(derivedStackId,
+                                                               parentStackMetaData.getCurrentVersion());
+        derivedStackMetaData.setParentStackId(stackId);
+        dao.saveStackMetaData(derivedStackMetaData);
+
+        // mark a layer that is still only stored in the parent stack as changed
+        dao.addDirtyZValues(derivedStackId, Collections.singletonList(3903.0));
+
+        derivedStackMetaData = dao.ensureIndexesAndDeriveStats(derivedStackMetaData);
+
+        Assert.assertEquals("invalid tile count for derived stack",
+                            parentStackMetaData.getStats().getTileCount(),
+                            derivedStackMetaData.getStats().getTileCount());
+
+        final List<SectionData> list = dao.getSectionData(derivedStackId, 3903.0, 3903.0);
+        long tileCount = 0;
+        for (final SectionData sectionData : list) {
+            tileCount += sectionData.getTileCount();
+        }
+
+        Assert.assertEquals("section data for parent layer should be derived from parent tiles", 12, tileCount);
+    }
+
     @Test
     public void testRemoveStack() throws Exception {
 
@@ -394,6 +541,43 @@ public class RenderDaoTest {
         Assert.assertFalse("transformSpec should not be resolved after update", updatedSpec.isFullyResolved());
     }
 
+    @Test
+    public void testCachedTransformSpecResolution() throws Exception {
+
+        final String tileId = "134";
+
+        final TileSpec uncachedTileSpecA = dao.getTileSpec(stackId, tileId, true);
+        final TileSpec uncachedTileSpecB = dao.getTileSpec(stackId, tileId, true);
+        uncachedTileSpecA.flattenTransforms();
+        uncachedTileSpecB.flattenTransforms();
+
+        Assert.assertNotSame("uncached tiles should resolve distinct transform instances",
+                             uncachedTileSpecA.getTransforms().getSpec(0),
+                             uncachedTileSpecB.getTransforms().getSpec(0));
+
+        final TransformSpecCache transformSpecCache = new TransformSpecCache(100);
+        final RenderDao cachingDao = new RenderDao(embeddedMongoDb.getMongoClient(), transformSpecCache);
+
+        final TileSpec cachedTileSpecA = cachingDao.getTileSpec(stackId, tileId, true);
+        final TileSpec cachedTileSpecB = cachingDao.getTileSpec(stackId, tileId, true);
+        cachedTileSpecA.flattenTransforms();
+        cachedTileSpecB.flattenTransforms();
+
+        Assert.assertNotSame("cached tiles should be distinct", cachedTileSpecA, cachedTileSpecB);
+        Assert.assertSame("cached tiles should share resolved transform instance",
+                          cachedTileSpecA.getTransforms().getSpec(0),
+                          cachedTileSpecB.getTransforms().getSpec(0));
+
+        transformSpecCache.invalidateStack(stackId);
+
+        final TileSpec tileSpecAfterInvalidation = cachingDao.getTileSpec(stackId, tileId, true);
+        tileSpecAfterInvalidation.flattenTransforms();
+
+        Assert.assertNotSame("transform instance should be reloaded after invalidation",
+                             cachedTileSpecA.getTransforms().getSpec(0),
+                             tileSpecAfterInvalidation.getTransforms().getSpec(0));
+    }
+
     @Test
     public void testUpdateZForSection() throws Exception {
 